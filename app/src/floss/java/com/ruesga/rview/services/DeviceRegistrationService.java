@@ -18,6 +18,9 @@ package com.ruesga.rview.services;
 import android.content.Context;
 
 import com.ruesga.rview.model.Account;
+import com.ruesga.rview.preferences.Preferences;
+
+import java.util.List;
 
 public class DeviceRegistrationService {
 
@@ -26,5 +29,19 @@ public class DeviceRegistrationService {
     }
 
     public static void register(Context context, Account account) {
+        // There is no push support. Just schedule (or cancel) the notifications poller
+        List<Account> accounts = Preferences.getAccounts(context);
+        for (Account acct : accounts) {
+            if (account != null && !acct.getAccountHash().equals(account.getAccountHash())) {
+                continue;
+            }
+            if (acct.hasAuthenticatedAccessMode()
+                    && Preferences.isAccountNotificationsEnabled(context, acct)) {
+                // Settings were changed for an account, so start polling again
+                NotificationsPollWorker.schedule(context, acct, account != null);
+            } else {
+                NotificationsPollWorker.cancel(context, acct);
+            }
+        }
     }
 }
@@ -0,0 +1,344 @@
+/*
+ * Copyright (C) 2020 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.rview.services;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.os.BatteryManager;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import com.ruesga.rview.gerrit.GerritApi;
+import com.ruesga.rview.gerrit.filter.ChangeQuery;
+import com.ruesga.rview.gerrit.filter.IsType;
+import com.ruesga.rview.gerrit.model.AccountInfo;
+import com.ruesga.rview.gerrit.model.ChangeInfo;
+import com.ruesga.rview.gerrit.model.ChangeMessageInfo;
+import com.ruesga.rview.gerrit.model.ChangeOptions;
+import com.ruesga.rview.gerrit.model.CloudNotificationEvents;
+import com.ruesga.rview.gerrit.model.ReviewerStatus;
+import com.ruesga.rview.gerrit.model.ReviewerUpdateInfo;
+import com.ruesga.rview.misc.FowlerNollVo;
+import com.ruesga.rview.misc.ModelHelper;
+import com.ruesga.rview.misc.NotificationsHelper;
+import com.ruesga.rview.misc.SerializationManager;
+import com.ruesga.rview.model.Account;
+import com.ruesga.rview.model.Notification;
+import com.ruesga.rview.preferences.Preferences;
+import com.ruesga.rview.providers.NotificationEntity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+import androidx.core.net.ConnectivityManagerCompat;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+/**
+ * Polls the server for the changes the account is interested in, and synthesizes the same
+ * notifications that the cloud notifications plugin would push. The poll interval grows while
+ * the account has no activity, and it's stretched on metered networks or when the device
+ * isn't charging.
+ */
+public class NotificationsPollWorker extends Worker {
+
+    private static final String TAG = "NotificationsPoller";
+
+    private static final String WORK_NAME = "notifications-poll-";
+
+    private static final String EXTRA_ACCOUNT = "account";
+    private static final String EXTRA_INTERVAL = "interval";
+
+    private static final long MIN_POLL_INTERVAL = DateUtils.MINUTE_IN_MILLIS * 15L;
+    private static final long MAX_POLL_INTERVAL = DateUtils.HOUR_IN_MILLIS * 4L;
+    // Covers the clock differences between the device and the server
+    private static final long POLL_CLOCK_SKEW = DateUtils.MINUTE_IN_MILLIS * 5L;
+
+    private static final int MAX_POLLED_CHANGES = 50;
+
+    private static final List<ChangeOptions> OPTIONS = new ArrayList<ChangeOptions>() {{
+        add(ChangeOptions.DETAILED_ACCOUNTS);
+        add(ChangeOptions.CURRENT_REVISION);
+        add(ChangeOptions.MESSAGES);
+        add(ChangeOptions.REVIEWER_UPDATES);
+    }};
+
+    private static final String TAG_PREFIX = "autogenerated:gerrit:";
+
+    public NotificationsPollWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    public static void schedule(Context context, Account account, boolean replace) {
+        enqueue(context, account, MIN_POLL_INTERVAL, MIN_POLL_INTERVAL,
+                replace ? ExistingWorkPolicy.REPLACE : ExistingWorkPolicy.KEEP);
+    }
+
+    public static void cancel(Context context, Account account) {
+        WorkManager.getInstance(context).cancelUniqueWork(
+                WORK_NAME + account.getAccountHash());
+    }
+
+    private static void enqueue(Context context, Account account,
+            long delay, long interval, ExistingWorkPolicy policy) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .setRequiresBatteryNotLow(true)
+                .build();
+        Data data = new Data.Builder()
+                .putString(EXTRA_ACCOUNT, account.getAccountHash())
+                .putLong(EXTRA_INTERVAL, interval)
+                .build();
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(NotificationsPollWorker.class)
+                .setInitialDelay(delay, TimeUnit.MILLISECONDS)
+                .setConstraints(constraints)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL,
+                        MIN_POLL_INTERVAL, TimeUnit.MILLISECONDS)
+                .setInputData(data)
+                .build();
+        WorkManager.getInstance(context).enqueueUniqueWork(
+                WORK_NAME + account.getAccountHash(), policy, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        final Context ctx = getApplicationContext();
+        final Account account = ModelHelper.getAccountFromHash(
+                ctx, getInputData().getString(EXTRA_ACCOUNT));
+        if (account == null || !account.hasAuthenticatedAccessMode()
+                || !Preferences.isAccountNotificationsEnabled(ctx, account)) {
+            // Don't poll anymore
+            return Result.success();
+        }
+
+        final long now = System.currentTimeMillis();
+        final long lastPoll = Preferences.getAccountNotificationsLastPoll(ctx, account);
+        int notifications = 0;
+        try {
+            // The first poll just marks where to start from
+            if (lastPoll > 0) {
+                notifications = poll(ctx, account, lastPoll - POLL_CLOCK_SKEW);
+            }
+        } catch (Exception ex) {
+            Log.w(TAG, "Failed to poll notifications for " + account.getAccountHash(), ex);
+            return Result.retry();
+        }
+        Preferences.setAccountNotificationsLastPoll(ctx, account, now);
+
+        // Poll more often while there is activity, and back off while there isn't
+        long interval = getInputData().getLong(EXTRA_INTERVAL, MIN_POLL_INTERVAL);
+        interval = notifications > 0
+                ? MIN_POLL_INTERVAL : Math.min(interval * 2, MAX_POLL_INTERVAL);
+        enqueue(ctx, account, adjustToDeviceState(ctx, interval), interval,
+                ExistingWorkPolicy.APPEND);
+        return Result.success();
+    }
+
+    private int poll(Context ctx, Account account, long since) {
+        ChangeQuery query = new ChangeQuery()
+                .wrap(new ChangeQuery().is(IsType.REVIEWER)
+                        .or(new ChangeQuery().ownerSelf()))
+                .and(new ChangeQuery().since(new Date(since)));
+        GerritApi api = ModelHelper.getGerritApi(ctx, account);
+        List<ChangeInfo> changes =
+                api.getChanges(query, MAX_POLLED_CHANGES, 0, OPTIONS).blockingFirst();
+        if (changes.isEmpty()) {
+            return 0;
+        }
+
+        // Skip the events that were already notified
+        Set<Long> notified = NotificationEntity.getAccountNotificationIds(
+                ctx, account.getAccountHash());
+
+        final int events = Preferences.getAccountNotificationsEvents(ctx, account);
+        List<NotificationEntity> entities = new ArrayList<>();
+        Set<Integer> groups = new LinkedHashSet<>();
+        for (ChangeInfo change : changes) {
+            for (NotificationEntity entity : createEntities(account, change, since)) {
+                if (notified.contains(entity.mMessageId)
+                        || (entity.mNotification.event & events) == 0
+                        || !NotificationsHelper.canHandleNotification(
+                                ctx, entity.mNotification)) {
+                    continue;
+                }
+                entities.add(entity);
+                groups.add(entity.mGroupId);
+            }
+        }
+        NotificationEntity.addOrUpdate(ctx, entities);
+
+        for (int groupId : groups) {
+            NotificationsHelper.createNotification(ctx, account, groupId, true);
+        }
+        return entities.size();
+    }
+
+    private static List<NotificationEntity> createEntities(
+            Account account, ChangeInfo change, long since) {
+        List<NotificationEntity> entities = new ArrayList<>();
+        if (change.messages != null) {
+            for (ChangeMessageInfo message : change.messages) {
+                if (message.date == null || message.date.getTime() < since
+                        || isSameAccount(account, message.author)) {
+                    continue;
+                }
+                int event = resolveEvent(message);
+                if (event == 0) {
+                    continue;
+                }
+                Notification notification = createNotification(
+                        account, change, message.date, message.author, event);
+                if (event == CloudNotificationEvents.COMMENT_ADDED_EVENT) {
+                    notification.extra = message.message;
+                }
+                entities.add(createEntity(account, change, message.id, notification));
+            }
+        }
+
+        // Messages don't tell when the account was added as reviewer
+        if (change.reviewerUpdates != null) {
+            for (ReviewerUpdateInfo update : change.reviewerUpdates) {
+                if (update.updated == null || update.updated.getTime() < since
+                        || update.state != ReviewerStatus.REVIEWER
+                        || !isSameAccount(account, update.reviewer)
+                        || isSameAccount(account, update.updatedBy)) {
+                    continue;
+                }
+                Notification notification = createNotification(account, change,
+                        update.updated, update.updatedBy,
+                        CloudNotificationEvents.REVIEWER_ADDED_EVENT);
+                notification.extra = SerializationManager.getInstance().toJson(
+                        Collections.singletonList(update.reviewer));
+                entities.add(createEntity(account, change,
+                        "reviewer-" + update.updated.getTime(), notification));
+            }
+        }
+        return entities;
+    }
+
+    private static Notification createNotification(Account account, ChangeInfo change,
+            Date when, AccountInfo who, int event) {
+        Notification notification = new Notification();
+        notification.when = when.getTime();
+        notification.who = who;
+        notification.token = account.getAccountHash();
+        notification.event = event;
+        notification.change = change.changeId;
+        notification.legacyChangeId = change.legacyChangeId;
+        notification.revision = change.currentRevision;
+        notification.project = change.project;
+        notification.branch = change.branch;
+        notification.topic = change.topic;
+        notification.subject = change.subject;
+        return notification;
+    }
+
+    private static NotificationEntity createEntity(Account account, ChangeInfo change,
+            String eventId, Notification notification) {
+        String id = account.getAccountHash() + "/" + change.id + "/" + eventId;
+        long messageId = FowlerNollVo.fnv1_64(id.getBytes()).longValue();
+        return new NotificationEntity(messageId,
+                NotificationsHelper.generateGroupId(notification),
+                account.getAccountHash(), notification.when, notification);
+    }
+
+    private static int resolveEvent(ChangeMessageInfo message) {
+        if (message.tag != null && message.tag.startsWith(TAG_PREFIX)) {
+            switch (message.tag.substring(TAG_PREFIX.length())) {
+                case "newPatchSet":
+                case "newWipPatchSet":
+                    return CloudNotificationEvents.PATCHSET_CREATED_EVENT;
+                case "merged":
+                    return CloudNotificationEvents.CHANGE_MERGED_EVENT;
+                case "abandon":
+                    return CloudNotificationEvents.CHANGE_ABANDONED_EVENT;
+                case "restore":
+                    return CloudNotificationEvents.CHANGE_RESTORED_EVENT;
+                case "revert":
+                    return CloudNotificationEvents.CHANGE_REVERTED_EVENT;
+                case "setTopic":
+                    return CloudNotificationEvents.TOPIC_CHANGED_EVENT;
+                case "setHashtag":
+                    return CloudNotificationEvents.HASHTAG_CHANGED_EVENT;
+                case "deleteVote":
+                    return CloudNotificationEvents.VOTE_DELETED_EVENT;
+                case "setPrivate":
+                case "unsetPrivate":
+                    return CloudNotificationEvents.PRIVATE_STATE_CHANGED_EVENT;
+                case "setWorkInProgress":
+                case "setReadyForReview":
+                    return CloudNotificationEvents.WIP_STATE_CHANGED_EVENT;
+                default:
+                    // Assignee and reviewers messages don't carry enough information
+                    return 0;
+            }
+        }
+
+        // Old servers don't tag the messages
+        String msg = message.message != null ? message.message : "";
+        if (msg.startsWith("Uploaded patch set")) {
+            return CloudNotificationEvents.PATCHSET_CREATED_EVENT;
+        }
+        if (msg.startsWith("Change has been successfully")) {
+            return CloudNotificationEvents.CHANGE_MERGED_EVENT;
+        }
+        if (msg.startsWith("Abandoned")) {
+            return CloudNotificationEvents.CHANGE_ABANDONED_EVENT;
+        }
+        if (msg.startsWith("Restored")) {
+            return CloudNotificationEvents.CHANGE_RESTORED_EVENT;
+        }
+        return CloudNotificationEvents.COMMENT_ADDED_EVENT;
+    }
+
+    private static boolean isSameAccount(Account account, AccountInfo other) {
+        return other != null && account.mAccount.accountId == other.accountId;
+    }
+
+    private static long adjustToDeviceState(Context ctx, long interval) {
+        long delay = interval;
+        ConnectivityManager cm =
+                (ConnectivityManager) ctx.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (cm != null && ConnectivityManagerCompat.isActiveNetworkMetered(cm)) {
+            delay *= 2;
+        }
+        Intent battery = ctx.registerReceiver(
+                null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        int status = battery != null
+                ? battery.getIntExtra(BatteryManager.EXTRA_STATUS, -1) : -1;
+        if (status != BatteryManager.BATTERY_STATUS_CHARGING
+                && status != BatteryManager.BATTERY_STATUS_FULL) {
+            delay += delay / 2;
+        }
+        return Math.min(delay, MAX_POLL_INTERVAL * 2);
+    }
+}
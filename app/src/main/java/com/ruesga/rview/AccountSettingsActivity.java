@@ -81,7 +81,8 @@ public class AccountSettingsActivity extends AppCompatDelegateActivity {
         // Register the account to push notifications
         Account account = Preferences.getAccount(this);
         if (account != null && account.hasAuthenticatedAccessMode()
-                && account.hasNotificationsSupport()) {
+                && (account.hasNotificationsSupport()
+                        || getResources().getBoolean(R.bool.has_notifications_polling))) {
             // Register device
             DeviceRegistrationService.register(this, account);
         }
@@ -87,6 +87,11 @@ public class ChangeDetailsActivity extends BaseActivity {
                 CacheHelper.removeAccountDiffCacheDir(ChangeDetailsActivity.this);
 
                 final ChangeInfo change = result.mChange;
+                if (CacheHelper.markAccountOfflinePackIfStale(ChangeDetailsActivity.this, change)) {
+                    Toast.makeText(ChangeDetailsActivity.this, getString(
+                            R.string.offline_download_stale, change.legacyChangeId),
+                            Toast.LENGTH_LONG).show();
+                }
                 final int legacyChangeId = change.legacyChangeId;
                 final String changeId = change.changeId;
 
@@ -78,6 +78,7 @@ import com.ruesga.rview.model.Account;
 import com.ruesga.rview.model.CustomFilter;
 import com.ruesga.rview.preferences.Constants;
 import com.ruesga.rview.preferences.Preferences;
+import com.ruesga.rview.providers.ChangeStore;
 import com.ruesga.rview.providers.NotificationEntity;
 import com.ruesga.rview.services.AccountStatusFetcherService;
 import com.ruesga.rview.wizards.AuthorizationAccountSetupActivity;
@@ -487,7 +488,9 @@ public class MainActivity extends ChangeListBaseActivity implements Reloadable {
 
     private void performUpdateNavigationDrawer(boolean show) {
         final boolean auth = mAccount != null && mAccount.hasAuthenticatedAccessMode();
-        final boolean supportNotifications = mAccount != null && mAccount.hasNotificationsSupport()
+        final boolean supportNotifications = mAccount != null
+                && (mAccount.hasNotificationsSupport()
+                        || getResources().getBoolean(R.bool.has_notifications_polling))
                 && Preferences.isAccountNotificationsEnabled(this, mAccount)
                 && getResources().getBoolean(R.bool.has_notifications_support);
         final Menu menu = mBinding.drawerNavigationView.getMenu();
@@ -852,6 +855,7 @@ public class MainActivity extends ChangeListBaseActivity implements Reloadable {
         Preferences.removeAccountPreferences(this, acct);
         CacheHelper.removeAccountCacheDir(this, acct);
         NotificationEntity.deleteAccountNotifications(this, acct.getAccountHash());
+        ChangeStore.getInstance(this).deleteAccountChanges(acct.getAccountHash());
         NotificationsHelper.deleteNotificationChannel(this, acct);
 
         // Unregister the url handling for this repository if no other account for the
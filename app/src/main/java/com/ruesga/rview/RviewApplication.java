@@ -22,6 +22,7 @@ import com.ruesga.rview.analytics.AnalyticsFlavor;
 import com.ruesga.rview.attachments.AttachmentsProviderFactory;
 import com.ruesga.rview.misc.Formatter;
 import com.ruesga.rview.misc.ModelHelper;
+import com.ruesga.rview.misc.NetworkingHelper;
 import com.ruesga.rview.misc.NotificationsHelper;
 import com.ruesga.rview.model.Account;
 import com.ruesga.rview.preferences.Preferences;
@@ -53,6 +54,7 @@ public class RviewApplication extends Application {
 
         // Initialize application resources
         Formatter.refreshCachedPreferences(getApplicationContext());
+        NetworkingHelper.initialize(getApplicationContext());
         AttachmentsProviderFactory.initialize(getApplicationContext());
 
         // Recreate notifications
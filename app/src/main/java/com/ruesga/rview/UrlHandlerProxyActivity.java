@@ -27,6 +27,7 @@ import com.ruesga.rview.gerrit.filter.antlr.QueryParseException;
 import com.ruesga.rview.gerrit.model.DashboardInfo;
 import com.ruesga.rview.misc.ActivityHelper;
 import com.ruesga.rview.misc.DashboardHelper;
+import com.ruesga.rview.misc.LinkifierCache;
 import com.ruesga.rview.misc.StringHelper;
 import com.ruesga.rview.misc.UriHelper;
 import com.ruesga.rview.model.Account;
@@ -77,7 +78,7 @@ public class UrlHandlerProxyActivity extends AppCompatActivity {
         String type = "";
         for (Account acct : accounts) {
             List<RegExLinkifyTextView.RegExLink> links =
-                    RegExLinkifyTextView.createRepositoryRegExpLinks(acct.mRepository);
+                    LinkifierCache.getRepositoryLinkifier(acct.mRepository).getRegExs();
             for (RegExLinkifyTextView.RegExLink link : links) {
                 if (link.mPattern.matcher(uri.toString()).find()) {
                     targetAccounts.add(acct);
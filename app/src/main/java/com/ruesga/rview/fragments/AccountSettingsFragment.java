@@ -294,7 +294,9 @@ public class AccountSettingsFragment extends PreferenceFragmentCompat
                 getPreferenceScreen().removePreference(mNotificationsCategory);
                 mNotificationsCategory = null;
             }
-        } else if (mAccount.hasNotificationsSupport()) {
+        } else if (mAccount.hasNotificationsSupport()
+                || getResources().getBoolean(R.bool.has_notifications_polling)) {
+            // Notifications are polled if the server can't push them
             enableNotificationsSupport();
         } else {
             // Check notification support to server
@@ -39,6 +39,7 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import com.google.gson.reflect.TypeToken;
 import com.ruesga.rview.BaseActivity;
@@ -60,6 +61,7 @@ import com.ruesga.rview.databinding.MessageItemBinding;
 import com.ruesga.rview.databinding.MoreFilesBinding;
 import com.ruesga.rview.databinding.TotalAddedDeletedBinding;
 import com.ruesga.rview.exceptions.OperationFailedException;
+import com.ruesga.rview.gerrit.CachePolicy;
 import com.ruesga.rview.gerrit.GerritApi;
 import com.ruesga.rview.gerrit.filter.ChangeQuery;
 import com.ruesga.rview.gerrit.model.AbandonInput;
@@ -110,9 +112,12 @@ import com.ruesga.rview.misc.ActivityHelper;
 import com.ruesga.rview.misc.AndroidHelper;
 import com.ruesga.rview.misc.BitmapUtils;
 import com.ruesga.rview.misc.CacheHelper;
+import com.ruesga.rview.misc.ChangeMessageRenderer;
+import com.ruesga.rview.misc.ChangeMessageRenderer.RenderedMessage;
 import com.ruesga.rview.misc.ContinuousIntegrationHelper;
 import com.ruesga.rview.misc.ExceptionHelper;
 import com.ruesga.rview.misc.ModelHelper;
+import com.ruesga.rview.misc.RequestScheduler;
 import com.ruesga.rview.misc.RviewImageHelper;
 import com.ruesga.rview.misc.SerializationManager;
 import com.ruesga.rview.misc.StringHelper;
@@ -741,7 +746,8 @@ public class ChangeDetailsFragment extends Fragment implements
             }
             Map<String, List<CommentInfo>> comments = mMessagesWithComments.get(message.id);
 
-            List<Attachment> attachments = StringHelper.extractAllAttachments(message);
+            RenderedMessage rendered = ChangeMessageRenderer.render(context, message);
+            List<Attachment> attachments = rendered.mAttachments;
             RviewImageHelper.bindAvatar(context, message.author, holder.mBinding.avatar,
                     RviewImageHelper.getDefaultAvatar(context, R.color.primaryDarkForeground));
             if (ModelHelper.isOnBehalfOf(message)) {
@@ -751,6 +757,7 @@ public class ChangeDetailsFragment extends Fragment implements
             holder.mBinding.setIsAuthenticated(mIsAuthenticated);
             holder.mBinding.setIndex(position);
             holder.mBinding.setModel(message);
+            holder.mBinding.message.setLinkifiedText(rendered.mMessage);
             holder.mBinding.reviewerUpdates
                     .listenOn(mAccountPressedListener)
                     .from(message._reviewer_updates);
@@ -872,6 +879,28 @@ public class ChangeDetailsFragment extends Fragment implements
         List<ContinuousIntegrationInfo> mCI;
     }
 
+    // The results of the requests of a change, before they are combined into its response
+    private static class ChangeData {
+        final DataResponse mResponse = new DataResponse();
+        Map<String, FileInfo> mFiles;
+        SubmitType mSubmitType;
+        Map<String, List<CommentInfo>> mRevisionComments;
+        Map<String, List<CommentInfo>> mBaseRevisionComments;
+        Map<String, List<CommentInfo>> mRevisionDrafts;
+        Map<String, List<CommentInfo>> mBaseRevisionDrafts;
+        List<ContinuousIntegrationInfo> mCI = new ArrayList<>();
+
+        private ChangeData(ChangeInfo change) {
+            mResponse.mChange = change;
+        }
+    }
+
+    private interface ChangeDataStage {
+        void apply(ChangeData data);
+    }
+
+    private static final ChangeDataStage NO_CHANGE_DATA = data -> { };
+
     private final RxLoaderObserver<DataResponse> mChangeObserver =
             new RxLoaderObserver<DataResponse>() {
         @Override
@@ -938,6 +967,11 @@ public class ChangeDetailsFragment extends Fragment implements
 
             // Invalidate the diff cache. we have new data
             CacheHelper.removeAccountDiffCacheDir(getContext());
+            if (change != null
+                    && CacheHelper.markAccountOfflinePackIfStale(getContext(), change)) {
+                Toast.makeText(getContext(), getString(R.string.offline_download_stale,
+                        change.legacyChangeId), Toast.LENGTH_LONG).show();
+            }
 
             mBinding.setModel(mModel);
             mBinding.setHandlers(mEventHandlers);
@@ -2037,102 +2071,127 @@ public class ChangeDetailsFragment extends Fragment implements
     private Observable<DataResponse> fetchChange(String changeId) {
         final Context ctx = getActivity();
         final GerritApi api = ModelHelper.getGerritApi(ctx);
-        return SafeObservable.fromNullCallable(() -> {
-                DataResponse dataResponse = new DataResponse();
-                dataResponse.mChange = api.getChange(
-                        changeId, OPTIONS).blockingFirst();
-
-                // Obtain the project configuration
-                if (dataResponse.mChange != null) {
-                    // Request mergeable info
-                    ChangeStatus status = dataResponse.mChange.status;
-                    if (!ChangeStatus.MERGED.equals(status) && !ChangeStatus.ABANDONED.equals(status)) {
-                        dataResponse.mMergeableInfo = api.getChangeRevisionMergeableStatus(
-                                changeId, dataResponse.mChange.currentRevision, null).blockingFirst();
+        final RequestScheduler.Timings timings = new RequestScheduler.Timings("fetchChange");
+        return RequestScheduler.stage(timings, "change", api.getChange(changeId, OPTIONS))
+            .flatMap(change -> {
+                    if (change == null) {
+                        return SafeObservable.<DataResponse>fromNullCallable(() -> null);
                     }
 
-                    // Request project config
-                    dataResponse.mProjectConfig = api.getProjectConfig(
-                            dataResponse.mChange.project).blockingFirst();
-
+                    // Everything else only depends on the change, so fan-out all the
+                    // requests at once. Every stage returns its own result, which is
+                    // only applied to the response once all of them are available
+                    final ChangeStatus status = change.status;
+                    final boolean isOpen = !ChangeStatus.MERGED.equals(status)
+                            && !ChangeStatus.ABANDONED.equals(status);
+                    final boolean isAuthenticated = mAccount.hasAuthenticatedAccessMode();
                     final String revId = !TextUtils.isEmpty(mCurrentRevision) ? mCurrentRevision
-                            : ModelHelper.extractBestRevisionId(dataResponse.mChange);
+                            : ModelHelper.extractBestRevisionId(change);
+                    final List<Observable<ChangeDataStage>> stages = new ArrayList<>();
+                    if (isOpen) {
+                        // Request mergeable info
+                        stages.add(RequestScheduler.stage(timings, "mergeable",
+                                api.getChangeRevisionMergeableStatus(
+                                        changeId, change.currentRevision, null))
+                                .map(mergeable -> data ->
+                                        data.mResponse.mMergeableInfo = mergeable));
+                    }
+
+                    // Request project config (it barely changes, so just use the cached
+                    // one and revalidate it in background)
+                    stages.add(RequestScheduler.stage(timings, "config", api
+                            .withCachePolicy(CachePolicy.STALE_WHILE_REVALIDATE)
+                            .getProjectConfig(change.project))
+                            .map(config -> data -> data.mResponse.mProjectConfig = config));
 
                     // Only request actions when we don't know which actions
                     // the change could have for the user. In other case, we
                     // have some logic to deal with basic actions.
                     // Request actions could be a heavy operation in old and complex
                     // changes, so just try to omit it.
-                    if (mAccount.hasAuthenticatedAccessMode()
-                            && !ChangeStatus.MERGED.equals(status)
-                            && !ChangeStatus.ABANDONED.equals(status)) {
-                        dataResponse.mActions = api.getChangeRevisionActions(
-                                changeId, revId).blockingFirst();
+                    if (isAuthenticated && isOpen) {
+                        stages.add(RequestScheduler.stage(timings, "actions",
+                                api.getChangeRevisionActions(changeId, revId))
+                                .map(actions -> data -> data.mResponse.mActions = actions));
                     } else {
                         // At least a cherry-pick action should be present if user
                         // is authenticated
-                        dataResponse.mActions = new HashMap<>();
-                        if (mAccount.hasAuthenticatedAccessMode()) {
-                            dataResponse.mActions.put(
-                                    ModelHelper.ACTION_CHERRY_PICK, new ActionInfo());
-                        }
+                        stages.add(Observable.just(data -> {
+                            data.mResponse.mActions = new HashMap<>();
+                            if (isAuthenticated) {
+                                data.mResponse.mActions.put(
+                                        ModelHelper.ACTION_CHERRY_PICK, new ActionInfo());
+                            }
+                        }));
                     }
-                }
 
-                return dataResponse;
-            })
-            .flatMap(dataResponse -> {
-                    final String revId = !TextUtils.isEmpty(mCurrentRevision) ? mCurrentRevision
-                            : ModelHelper.extractBestRevisionId(dataResponse.mChange);
-                    return Observable.zip(
-                        SafeObservable.fromNullCallable(() -> dataResponse),
-                        api.getChangeRevisionFiles(
-                                changeId, revId, mDiffAgainstRevision, null),
-                        api.getChangeRevisionSubmitType(changeId, revId),
-                        fetchAndMergeAllChangeRevisionComments(api, changeId, revId),
-                        SafeObservable.fromNullCallable(() -> {
-                            if (mDiffAgainstRevision != null) {
-                                return fetchAndMergeAllChangeRevisionComments(
-                                        api, changeId, mDiffAgainstRevision).blockingFirst();
-                            }
-                            return new HashMap<>();
-                        }),
-                        SafeObservable.fromNullCallable(() -> {
-                            // Do no fetch drafts if the account is not authenticated
-                            if (mAccount.hasAuthenticatedAccessMode()) {
-                                return api.getChangeRevisionDrafts(
-                                        changeId, revId).blockingFirst();
-                            }
-                            return new HashMap<>();
-                        }),
-                        SafeObservable.fromNullCallable(() -> {
-                            // Do no fetch drafts if the account is not authenticated
-                            if (mDiffAgainstRevision != null &&
-                                    mAccount.hasAuthenticatedAccessMode()) {
-                                return api.getChangeRevisionDrafts(
-                                        changeId, mDiffAgainstRevision).blockingFirst();
-                            }
-                            return new HashMap<>();
-                        }),
-                        SafeObservable.fromNullCallable(() -> {
-                            // Fetch external CI servers to obtain job statuses
-                            Repository repository =
-                                    ModelHelper.findRepositoryForAccount(ctx, mAccount);
-                            if (!Preferences.isAccountShowCIStatuses(ctx, mAccount)
-                                    || repository == null
-                                    || TextUtils.isEmpty(repository.mCiAccounts)) {
-                                return new ArrayList<>();
-                            }
+                    stages.add(RequestScheduler.stage(timings, "files",
+                            api.getChangeRevisionFiles(
+                                    changeId, revId, mDiffAgainstRevision, null))
+                            .map(files -> data -> data.mFiles = files));
+                    stages.add(RequestScheduler.stage(timings, "submitType",
+                            api.getChangeRevisionSubmitType(changeId, revId))
+                            .map(submitType -> data -> data.mSubmitType = submitType));
+                    stages.add(RequestScheduler.stage(timings, "comments",
+                            fetchAndMergeAllChangeRevisionComments(api, changeId, revId))
+                            .map(comments -> data -> data.mRevisionComments = comments));
+                    if (mDiffAgainstRevision != null) {
+                        stages.add(RequestScheduler.stage(timings, "baseComments",
+                                fetchAndMergeAllChangeRevisionComments(
+                                        api, changeId, mDiffAgainstRevision))
+                                .map(comments -> data -> data.mBaseRevisionComments = comments));
+                    }
+
+                    // Do no fetch drafts if the account is not authenticated
+                    if (isAuthenticated) {
+                        stages.add(RequestScheduler.stage(timings, "drafts",
+                                api.getChangeRevisionDrafts(changeId, revId))
+                                .map(drafts -> data -> data.mRevisionDrafts = drafts));
+                        if (mDiffAgainstRevision != null) {
+                            stages.add(RequestScheduler.stage(timings, "baseDrafts",
+                                    api.getChangeRevisionDrafts(changeId, mDiffAgainstRevision))
+                                    .map(drafts -> data -> data.mBaseRevisionDrafts = drafts));
+                        }
+                    }
 
-                            if (!dataResponse.mChange.revisions.containsKey(revId)) {
-                                return new ArrayList<>();
+                    // The CI servers and the messages rendering don't go through the Gerrit
+                    // client, so they run in the bounded request pool
+                    stages.add(RequestScheduler.stage(timings, "ci", () -> {
+                        // Fetch external CI servers to obtain job statuses
+                        Repository repository =
+                                ModelHelper.findRepositoryForAccount(ctx, mAccount);
+                        if (!Preferences.isAccountShowCIStatuses(ctx, mAccount)
+                                || repository == null
+                                || TextUtils.isEmpty(repository.mCiAccounts)
+                                || !change.revisions.containsKey(revId)) {
+                            return NO_CHANGE_DATA;
+                        }
+                        int revNumber = change.revisions.get(revId).number;
+                        List<ContinuousIntegrationInfo> ci =
+                                ContinuousIntegrationHelper.getContinuousIntegrationStatus(
+                                        repository, changeId, revNumber);
+                        return data -> data.mCI = ci;
+                    }));
+                    stages.add(RequestScheduler.stage(timings, "messages", () -> {
+                        // Render the messages now, so binding them doesn't need to
+                        ChangeMessageRenderer.prerender(ctx, change.messages);
+                        return NO_CHANGE_DATA;
+                    }));
+
+                    return Observable.zip(stages, results -> {
+                            ChangeData data = new ChangeData(change);
+                            for (Object result : results) {
+                                ((ChangeDataStage) result).apply(data);
                             }
-                            int revNumber = dataResponse.mChange.revisions.get(revId).number;
-                            return ContinuousIntegrationHelper.getContinuousIntegrationStatus(
-                                    repository, changeId, revNumber);
-                        }),
-                        this::combineResponse
-                    );
+                            return data;
+                        })
+                        // Combining the response could need to fetch more comments
+                        .observeOn(Schedulers.io())
+                        .map(data -> {
+                            DataResponse response = combineResponse(data);
+                            timings.log();
+                            return response;
+                        });
                 }
             )
             .subscribeOn(Schedulers.io())
@@ -2448,13 +2507,14 @@ public class ChangeDetailsFragment extends Fragment implements
         mBinding.refresh.setRefreshing(false);
     }
 
-    private DataResponse combineResponse(
-            DataResponse response, Map<String, FileInfo> files, SubmitType submitType,
-            Map<String, List<CommentInfo>> revisionComments,
-            Map<String, List<CommentInfo>> baseRevisionComments,
-            Map<String, List<CommentInfo>> revisionDraftComments,
-            Map<String, List<CommentInfo>> baseRevisionDraftComments,
-            List<ContinuousIntegrationInfo> ci) {
+    private DataResponse combineResponse(ChangeData data) {
+        final DataResponse response = data.mResponse;
+        final Map<String, List<CommentInfo>> revisionComments = data.mRevisionComments;
+        final Map<String, List<CommentInfo>> baseRevisionComments = data.mBaseRevisionComments;
+        final Map<String, List<CommentInfo>> revisionDraftComments = data.mRevisionDrafts;
+        final Map<String, List<CommentInfo>> baseRevisionDraftComments = data.mBaseRevisionDrafts;
+        final List<ContinuousIntegrationInfo> ci = data.mCI;
+
         // Map inline and draft comments
         Map<String, Integer> inlineComments = new HashMap<>();
         if (revisionComments != null) {
@@ -2493,7 +2553,7 @@ public class ChangeDetailsFragment extends Fragment implements
         fetchNeededRevisionComments(response);
 
         // Join the actions
-        response.mFiles = files;
+        response.mFiles = data.mFiles;
         if (response.mActions == null) {
             response.mActions = response.mChange.actions;
         } else {
@@ -2519,7 +2579,7 @@ public class ChangeDetailsFragment extends Fragment implements
             }
         }
 
-        response.mSubmitType = submitType;
+        response.mSubmitType = data.mSubmitType;
         response.mInlineComments = inlineComments;
         response.mDraftComments = draftComments;
         return response;
@@ -3938,17 +3998,16 @@ public class ChangeDetailsFragment extends Fragment implements
 
     private Observable<Map<String, List<CommentInfo>>> fetchAndMergeAllChangeRevisionComments(
             GerritApi api, String changeId, String revId) {
-        return SafeObservable.fromNullCallable(() -> {
-            Map<String, List<CommentInfo>> comments =
-                    api.getChangeRevisionComments(changeId, revId).blockingFirst();
-
-            // Fetch robot comments if the Gerrit server supports them (2.14 and up)
-            if (mAccount.mServerVersion.getVersion() >= 2.14d) {
-                Map<String, List<RobotCommentInfo>> robotComments =
-                        api.getChangeRevisionRobotComments(changeId, revId).blockingFirst();
-                mergeCommentsAndRobotComments(comments, robotComments);
-            }
-            return comments;
-        });
+        // Fetch robot comments if the Gerrit server supports them (2.14 and up)
+        if (mAccount.mServerVersion.getVersion() >= 2.14d) {
+            return Observable.zip(
+                    api.getChangeRevisionComments(changeId, revId),
+                    api.getChangeRevisionRobotComments(changeId, revId),
+                    (comments, robotComments) -> {
+                        mergeCommentsAndRobotComments(comments, robotComments);
+                        return comments;
+                    });
+        }
+        return api.getChangeRevisionComments(changeId, revId);
     }
 }
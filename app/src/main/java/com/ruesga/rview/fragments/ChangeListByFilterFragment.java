@@ -30,16 +30,27 @@ import com.ruesga.rview.gerrit.model.ChangeInput;
 import com.ruesga.rview.gerrit.model.ChangeOptions;
 import com.ruesga.rview.gerrit.model.InitialChangeStatus;
 import com.ruesga.rview.misc.ActivityHelper;
+import com.ruesga.rview.misc.ChangesBatch;
+import com.ruesga.rview.misc.ChangesPager;
 import com.ruesga.rview.misc.ModelHelper;
+import com.ruesga.rview.model.Account;
 import com.ruesga.rview.preferences.Preferences;
+import com.ruesga.rview.providers.ChangeStore;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
 import io.reactivex.Observable;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.schedulers.Schedulers;
@@ -51,9 +62,12 @@ import me.tatarka.rxloader2.safe.SafeObservable;
 public class ChangeListByFilterFragment extends ChangeListFragment
         implements NewChangeDialogFragment.OnNewChangeRequestedListener {
 
-    private static final Pattern LIMIT_FILTER_PATTERN = Pattern.compile(".*( limit:(\\d+))");
+    static final Pattern LIMIT_FILTER_PATTERN = Pattern.compile(".*( limit:(\\d+))");
 
-    private static final List<ChangeOptions> OPTIONS = new ArrayList<ChangeOptions>() {{
+    // The loaded changes are part of the delta request, so keep it bounded
+    private static final int MAX_DELTA_CHANGES = 100;
+
+    static final List<ChangeOptions> OPTIONS = new ArrayList<ChangeOptions>() {{
         add(ChangeOptions.DETAILED_ACCOUNTS);
         add(ChangeOptions.LABELS);
         add(ChangeOptions.REVIEWED);
@@ -88,6 +102,9 @@ public class ChangeListByFilterFragment extends ChangeListFragment
     public static final String EXTRA_HAS_FAB = "hasFab";
 
     private RxLoader1<ChangeInput, ChangeInfo> mNewChangeLoader;
+    private final ChangesPager mPager = new ChangesPager(this::fetchPage);
+    private String mLoadedFilter;
+    private List<ChangeInfo> mDeltaChanges;
 
     public static ChangeListByFilterFragment newInstance(String filter) {
         return newInstance(filter, false, false, false);
@@ -112,6 +129,13 @@ public class ChangeListByFilterFragment extends ChangeListFragment
         setHasOptionsMenu(getArguments().getBoolean(EXTRA_HAS_SEARCH, false));
     }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        // Cancel the pending page requests
+        mPager.reset();
+    }
+
     @Override
     public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
         inflater.inflate(R.menu.search, menu);
@@ -146,14 +170,73 @@ public class ChangeListByFilterFragment extends ChangeListFragment
     }
 
     public Observable<List<ChangeInfo>> fetchChanges(Integer count, Integer start) {
-        return Observable.zip(
+        final Observable<List<ChangeInfo>> changes;
+        Observable<List<ChangeInfo>> local = null;
+        final AtomicBoolean merged = new AtomicBoolean();
+        if (start > 0) {
+            changes = mPager.next(count, start);
+        } else {
+            mPager.reset();
+            final List<ChangeInfo> current = mDeltaChanges;
+            mDeltaChanges = null;
+            mLoadedFilter = getFilter();
+            if (current != null) {
+                changes = SafeObservable.fromCallable(() -> {
+                    List<ChangeInfo> delta = doFetchDelta(count, current);
+                    merged.set(delta != null);
+                    return delta != null ? delta : doFetchChanges(count, 0);
+                });
+            } else {
+                // Only a full fetch uses (and consumes) the batched first page. A delta
+                // refresh leaves it to the next full fetch
+                final Observable<List<ChangeInfo>> batched = consumeBatchedChanges(count, start);
+                changes = SafeObservable.fromCallable(() -> batched != null
+                        ? doFetchChanges(count, start, batched)
+                        : doFetchChanges(count, start));
+                local = fetchLocalChanges(count);
+            }
+        }
+        // A delta refresh only merges the loaded changes, so it keeps their pagination state
+        final boolean hasMore = canFetchMoreItems();
+        final Observable<List<ChangeInfo>> remote = Observable.zip(
                 Observable.just(getCurrentData(start <= 0)),
-                SafeObservable.fromCallable(() -> doFetchChanges(count, start)),
+                changes,
                 Observable.just(count),
-                this::combineChanges
+                (o, n, c) -> merged.get() ? combineChanges(o, n, hasMore) : combineChanges(o, n, c)
             )
             .subscribeOn(Schedulers.io())
             .observeOn(AndroidSchedulers.mainThread());
+        if (local == null) {
+            return remote;
+        }
+
+        // Show the stored changes while the server is queried, unless the server was faster
+        final Observable<List<ChangeInfo>> stored = local;
+        return remote.publish(r -> Observable.merge(stored.takeUntil(r), r));
+    }
+
+    @SuppressWarnings("ConstantConditions")
+    private Observable<List<ChangeInfo>> fetchLocalChanges(int count) {
+        final String filter = getFilter();
+        if (filter == null || !getCurrentData(false).isEmpty()
+                || getArguments().getBoolean(EXTRA_REVERSE, false)
+                || LIMIT_FILTER_PATTERN.matcher(filter).find()) {
+            return null;
+        }
+
+        final Context ctx = getActivity().getApplicationContext();
+        final Account account = Preferences.getAccount(ctx);
+        if (account == null) {
+            return null;
+        }
+        return SafeObservable.fromCallable(() -> {
+                    List<ChangeInfo> changes =
+                            ChangeStore.getInstance(ctx).query(account, filter, count);
+                    return changes != null ? changes : new ArrayList<ChangeInfo>();
+                })
+                .filter(changes -> !changes.isEmpty())
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread());
     }
 
     @SuppressWarnings("ConstantConditions")
@@ -161,8 +244,38 @@ public class ChangeListByFilterFragment extends ChangeListFragment
         return getArguments().getString(EXTRA_FILTER);
     }
 
-    @SuppressWarnings("ConstantConditions")
+    private Observable<List<ChangeInfo>> fetchPage(int count, int start) {
+        return SafeObservable.fromCallable(() -> doFetchChanges(count, start))
+                .subscribeOn(Schedulers.io());
+    }
+
+    @Override
+    boolean isLastPage(List<ChangeInfo> changes) {
+        return !changes.isEmpty() && !changes.get(changes.size() - 1).moreChanges;
+    }
+
+    @Override
+    void onPrefetchMoreItems() {
+        mPager.prefetch(getItemsToFetch(), getLoadedItemsCount());
+    }
+
+    private Observable<List<ChangeInfo>> consumeBatchedChanges(int count, int start) {
+        // Dashboard sections fetch its first page all together
+        Fragment parent = getParentFragment();
+        if (start > 0 || !(parent instanceof DashboardFragment)) {
+            return null;
+        }
+        ChangesBatch batch = ((DashboardFragment) parent).getChangesBatch();
+        return batch != null ? batch.consume(getFilter(), count) : null;
+    }
+
     protected List<ChangeInfo> doFetchChanges(Integer count, Integer start) {
+        return doFetchChanges(count, start, null);
+    }
+
+    @SuppressWarnings("ConstantConditions")
+    private List<ChangeInfo> doFetchChanges(
+            Integer count, Integer start, Observable<List<ChangeInfo>> batched) {
         String filter = getFilter();
         if (filter == null) {
             return new ArrayList<>();
@@ -191,8 +304,9 @@ public class ChangeListByFilterFragment extends ChangeListFragment
             List<ChangeInfo> changes = new ArrayList<>();
             int s = 0;
             while (true) {
-                List<ChangeInfo> fetched = api.getChanges(
-                        query, limit, Math.max(0, s), OPTIONS).blockingFirst();
+                List<ChangeInfo> fetched = s == 0 && batched != null
+                        ? batched.blockingFirst()
+                        : api.getChanges(query, limit, Math.max(0, s), OPTIONS).blockingFirst();
                 changes.addAll(fetched);
                 if (fetched.size() < limit) {
                     break;
@@ -200,19 +314,112 @@ public class ChangeListByFilterFragment extends ChangeListFragment
                 s += limit;
             }
 
+            storeChanges(ctx, filter, changes, true);
+
             // Sort by created date
             Collections.sort(changes, (c1, c2) -> c1.created.compareTo(c2.created));
             return changes;
         }
 
         // Normal fetch
-        return api.getChanges(query, limit, Math.max(0, start), OPTIONS).blockingFirst();
+        List<ChangeInfo> changes = batched != null
+                ? batched.blockingFirst()
+                : api.getChanges(query, limit, Math.max(0, start), OPTIONS).blockingFirst();
+        storeChanges(ctx, start <= 0 ? filter : null, changes, changes.size() < limit);
+        return changes;
+    }
+
+    private void storeChanges(Context ctx, String filter,
+            List<ChangeInfo> changes, boolean complete) {
+        // Keep the fetched changes, so the next queries can be answered locally. The first
+        // page also tells which stored changes don't match the filter anymore
+        Account account = Preferences.getAccount(ctx);
+        if (account != null) {
+            ChangeStore.getInstance(ctx).reconcile(account, filter, changes, complete);
+        }
+    }
+
+    boolean isDeltaRefreshSupported() {
+        String filter = getFilter();
+        //noinspection ConstantConditions
+        return filter != null && filter.equals(mLoadedFilter)
+                && !getArguments().getBoolean(EXTRA_REVERSE, false)
+                && !LIMIT_FILTER_PATTERN.matcher(filter).find();
+    }
+
+    /**
+     * Refreshes the loaded changes by only fetching the changes updated since the newest
+     * loaded change, and merging them into the current list. Returns null if the changes
+     * must be fetched again from scratch.
+     */
+    @SuppressWarnings("ConstantConditions")
+    private List<ChangeInfo> doFetchDelta(Integer count, List<ChangeInfo> current) {
+        Date newest = null;
+        ChangeQuery loaded = null;
+        for (ChangeInfo change : current) {
+            if (change.id == null || change.updated == null) {
+                continue;
+            }
+            if (newest == null || change.updated.after(newest)) {
+                newest = change.updated;
+            }
+            ChangeQuery q = new ChangeQuery().change(String.valueOf(change.legacyChangeId));
+            loaded = loaded == null ? q : loaded.or(q);
+        }
+        if (newest == null) {
+            return null;
+        }
+
+        // Ask for the changes updated since the newest one that match the filter, and for
+        // the loaded ones that were updated (if they don't match anymore, just drop them)
+        final GerritApi api = ModelHelper.getGerritApi(getActivity());
+        List<ChangeQuery> queries = new ArrayList<>();
+        queries.add(new ChangeQuery().wrap(ChangeQuery.parse(getFilter()))
+                .and(new ChangeQuery().since(newest)));
+        queries.add(new ChangeQuery().since(newest).and(loaded));
+        List<List<ChangeInfo>> delta =
+                api.getChangesMulti(queries, count, 0, OPTIONS).blockingFirst();
+        List<ChangeInfo> updated = delta.get(0);
+        List<ChangeInfo> touched = delta.get(1);
+        if (updated.size() >= count || touched.size() >= count) {
+            // Too many changes. Just fetch everything again
+            return null;
+        }
+        List<ChangeInfo> fetched = new ArrayList<>(updated);
+        fetched.addAll(touched);
+        storeChanges(getActivity(), null, fetched, false);
+
+        // Updated changes go first (the server sorts by update date)
+        Map<String, ChangeInfo> merged = new LinkedHashMap<>();
+        for (ChangeInfo change : updated) {
+            merged.put(change.id, change);
+        }
+        Set<String> removed = new HashSet<>();
+        for (ChangeInfo change : touched) {
+            if (!merged.containsKey(change.id)) {
+                removed.add(change.id);
+            }
+        }
+        for (ChangeInfo change : current) {
+            if (change.id != null && !removed.contains(change.id)
+                    && !merged.containsKey(change.id)) {
+                merged.put(change.id, change);
+            }
+        }
+        return new ArrayList<>(merged.values());
     }
 
     @Override
     public void fetchNewItems() {
         resetScroll();
 
+        // Only fetch what changed since the last refresh
+        List<ChangeInfo> current = getCurrentData(false);
+        if (!current.isEmpty() && current.size() <= MAX_DELTA_CHANGES
+                && isDeltaRefreshSupported()) {
+            mDeltaChanges = current;
+        }
+
         final int count = Preferences.getAccountFetchedItems(
                 getContext(), Preferences.getAccount(getContext()));
         final int start = 0;
@@ -222,11 +429,9 @@ public class ChangeListByFilterFragment extends ChangeListFragment
 
     @Override
     public void fetchMoreItems() {
-        // Fetch more
-        final int itemsToFetch = Preferences.getAccountFetchedItems(
-                getContext(), Preferences.getAccount(getContext()));
-        final int count = itemsToFetch + FETCHED_MORE_CHANGES_THRESHOLD;
-        final int start = getCurrentData(false).size() - FETCHED_MORE_CHANGES_THRESHOLD;
+        // Fetch the next page, just after the last loaded change
+        final int count = getItemsToFetch();
+        final int start = getLoadedItemsCount();
         getChangesLoader().clear();
         getChangesLoader().restart(count, start);
     }
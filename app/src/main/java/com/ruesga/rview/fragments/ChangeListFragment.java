@@ -45,7 +45,9 @@ import com.ruesga.rview.widget.EndlessRecyclerViewScrollListener;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import androidx.annotation.Keep;
 import androidx.annotation.NonNull;
@@ -53,9 +55,12 @@ import androidx.annotation.Nullable;
 import androidx.core.content.ContextCompat;
 import androidx.databinding.DataBindingUtil;
 import androidx.fragment.app.Fragment;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import io.reactivex.Observable;
+import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.schedulers.Schedulers;
 import me.tatarka.rxloader2.RxLoader2;
 import me.tatarka.rxloader2.RxLoaderManager;
 import me.tatarka.rxloader2.RxLoaderManagerCompat;
@@ -67,8 +72,6 @@ public abstract class ChangeListFragment extends Fragment implements SelectableF
 
     public static final int NO_SELECTION = -1;
 
-    public static final int FETCHED_MORE_CHANGES_THRESHOLD = 10;
-
     private static final int MESSAGE_FETCH_MORE_ITEMS = 0;
 
     private static final String EXTRA_CHANGE_ID = "changeId";
@@ -109,6 +112,66 @@ public abstract class ChangeListFragment extends Fragment implements SelectableF
         }
     }
 
+    private static class ChangesResult {
+        final List<ChangeInfo> mOldChanges;
+        final List<ChangeInfo> mChanges;
+        DiffUtil.DiffResult mDiff;
+
+        ChangesResult(List<ChangeInfo> oldChanges, List<ChangeInfo> changes) {
+            mOldChanges = oldChanges;
+            mChanges = changes;
+        }
+
+        ChangesResult computeDiff() {
+            if (mChanges != null && !mChanges.isEmpty()) {
+                mDiff = DiffUtil.calculateDiff(new ChangesDiffCallback(mOldChanges, mChanges));
+            }
+            return this;
+        }
+    }
+
+    private static class ChangesDiffCallback extends DiffUtil.Callback {
+        private final List<ChangeInfo> mOldChanges;
+        private final List<ChangeInfo> mNewChanges;
+
+        ChangesDiffCallback(List<ChangeInfo> oldChanges, List<ChangeInfo> newChanges) {
+            mOldChanges = oldChanges;
+            mNewChanges = newChanges;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldChanges.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewChanges.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            String oldId = mOldChanges.get(oldItemPosition).id;
+            String newId = mNewChanges.get(newItemPosition).id;
+            return oldId == null ? newId == null : oldId.equals(newId);
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            ChangeInfo o = mOldChanges.get(oldItemPosition);
+            ChangeInfo n = mNewChanges.get(newItemPosition);
+            if (o == n) {
+                return true;
+            }
+            // Any update of the change (votes, messages, ...) modifies its updated date
+            return o.updated != null && o.updated.equals(n.updated)
+                    && o.status == n.status
+                    && o.starred == n.starred
+                    && o.reviewed == n.reviewed
+                    && o.trendingScore == n.trendingScore;
+        }
+    }
+
     private static class ChangesAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         private static final int FETCHING_MODE_ITEM_VIEW = 0;
         private static final int CHANGE_ITEM_VIEW = 1;
@@ -186,19 +249,28 @@ public abstract class ChangeListFragment extends Fragment implements SelectableF
         }
     }
 
-    private final RxLoaderObserver<List<ChangeInfo>> mLoaderObserver =
-            new RxLoaderObserver<List<ChangeInfo>>() {
+    private final RxLoaderObserver<ChangesResult> mLoaderObserver =
+            new RxLoaderObserver<ChangesResult>() {
         @Override
-        public void onNext(List<ChangeInfo> result) {
+        public void onNext(ChangesResult changes) {
+            List<ChangeInfo> result = changes.mChanges;
             if (result == null || result.isEmpty()) {
                 createNewAdapter();
                 if (getActivity() instanceof OnChangeItemListener) {
                     ((OnChangeItemListener) getActivity()).onChangeItemSelected(NO_SELECTION);
                 }
             } else {
+                // Only dispatch the changed rows, if the diff was computed against the
+                // current data (otherwise, f.e. after a configuration change, just rebind all)
+                boolean canDispatchDiff = changes.mDiff != null
+                        && changes.mOldChanges.equals(mAdapter.mData);
                 mAdapter.clear();
                 mAdapter.addAll(result);
-                mAdapter.notifyDataSetChanged();
+                if (canDispatchDiff) {
+                    changes.mDiff.dispatchUpdatesTo(mAdapter);
+                } else {
+                    mAdapter.notifyDataSetChanged();
+                }
             }
             mEmptyState.state = result != null && !result.isEmpty()
                     ? EmptyState.NORMAL_STATE : getNotResultEmptyState();
@@ -254,6 +326,22 @@ public abstract class ChangeListFragment extends Fragment implements SelectableF
         }
     }
 
+    private final RecyclerView.OnScrollListener mPrefetchScroller =
+            new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+            LinearLayoutManager layoutManager =
+                    (LinearLayoutManager) recyclerView.getLayoutManager();
+            if (dy <= 0 || layoutManager == null || mEndlessScroller.isLoading()) {
+                return;
+            }
+            int lastVisibleItem = layoutManager.findLastVisibleItemPosition();
+            if (lastVisibleItem + getPrefetchDistance() >= layoutManager.getItemCount()) {
+                onPrefetchMoreItems();
+            }
+        }
+    };
+
     private Handler mUiHandler;
     private ChangesFragmentBinding mBinding;
     private final EmptyState mEmptyState = new EmptyState();
@@ -263,8 +351,9 @@ public abstract class ChangeListFragment extends Fragment implements SelectableF
 
     private ChangesAdapter mAdapter;
     private EndlessRecyclerViewScrollListener mEndlessScroller;
+    private volatile boolean mCanFetchMoreItems = true;
 
-    private RxLoader2<Integer, Integer, List<ChangeInfo>> mChangesLoader;
+    private RxLoader2<Integer, Integer, ChangesResult> mChangesLoader;
 
     abstract Observable<List<ChangeInfo>> fetchChanges(Integer count, Integer start);
 
@@ -284,7 +373,31 @@ public abstract class ChangeListFragment extends Fragment implements SelectableF
         return size < expected;
     }
 
-    RxLoader2<Integer, Integer, List<ChangeInfo>> getChangesLoader() {
+    boolean isLastPage(List<ChangeInfo> changes) {
+        return false;
+    }
+
+    /**
+     * The distance (in items) to the end of the list at which the next items start
+     * to be prefetched.
+     */
+    int getPrefetchDistance() {
+        return Math.max(mItemsToFetch / 2, 5);
+    }
+
+    void onPrefetchMoreItems() {
+    }
+
+    int getLoadedItemsCount() {
+        // Skip the fetching more item
+        int count = mAdapter.mData.size();
+        if (count > 0 && mAdapter.mData.get(count - 1).id == null) {
+            count--;
+        }
+        return count;
+    }
+
+    RxLoader2<Integer, Integer, ?> getChangesLoader() {
         return mChangesLoader;
     }
 
@@ -292,43 +405,56 @@ public abstract class ChangeListFragment extends Fragment implements SelectableF
         if (forceRefresh) {
             return Collections.unmodifiableList(new ArrayList<>());
         }
-        return Collections.unmodifiableList(mAdapter.mData);
+        // Callers use the data in background threads, so just pass a copy
+        return Collections.unmodifiableList(new ArrayList<>(mAdapter.mData));
     }
 
     void notifyNoMoreItems() {
         mBinding.list.removeOnScrollListener(mEndlessScroller);
+        mBinding.list.removeOnScrollListener(mPrefetchScroller);
     }
 
     BaseActivity.OnFabPressedListener getFabPressedListener() {
         return null;
     }
 
+    /**
+     * Returns whether the loaded changes can be followed by more pages, as resolved
+     * when the last page was combined.
+     */
+    boolean canFetchMoreItems() {
+        return mCanFetchMoreItems;
+    }
+
     List<ChangeInfo> combineChanges(
             List<ChangeInfo> oldChanges, List<ChangeInfo> newChanges, Integer count) {
         // Check if we end fetching changes
-        if (hasMoreItems(newChanges.size(), count)) {
+        boolean hasMore = !hasMoreItems(newChanges.size(), count) && !isLastPage(newChanges);
+        return combineChanges(oldChanges, newChanges, hasMore);
+    }
+
+    List<ChangeInfo> combineChanges(
+            List<ChangeInfo> oldChanges, List<ChangeInfo> newChanges, boolean hasMore) {
+        mCanFetchMoreItems = hasMore;
+        if (!hasMore) {
             notifyNoMoreItems();
         }
 
-        List<ChangeInfo> combined = new ArrayList<>(oldChanges);
-        if (!oldChanges.isEmpty() && oldChanges.get(oldChanges.size() - 1).id == null) {
-            combined.remove(oldChanges.size() - 1);
+        // Keep the order of the current changes and append the new ones, skipping
+        // the fetching more item
+        Map<String, ChangeInfo> combined = new LinkedHashMap<>();
+        for (ChangeInfo change : oldChanges) {
+            if (change.id != null) {
+                combined.put(change.id, change);
+            }
         }
         for (ChangeInfo newChange : newChanges) {
-            boolean exists = false;
-            for (ChangeInfo change : combined) {
-                if (newChange.id.equals(change.id)) {
-                    exists = true;
-                    break;
-                }
-            }
-
-            if (!exists) {
-                combined.add(newChange);
+            if (!combined.containsKey(newChange.id)) {
+                combined.put(newChange.id, newChange);
             }
         }
 
-        return combined;
+        return new ArrayList<>(combined.values());
     }
 
     @Override
@@ -393,6 +519,7 @@ public abstract class ChangeListFragment extends Fragment implements SelectableF
             };
             mEndlessScroller.setVisibleThreshold(2);
             mBinding.list.addOnScrollListener(mEndlessScroller);
+            mBinding.list.addOnScrollListener(mPrefetchScroller);
 
             // Configure the refresh
             setupSwipeToRefresh();
@@ -400,7 +527,7 @@ public abstract class ChangeListFragment extends Fragment implements SelectableF
             // Fetch or join current loader
             RxLoaderManager loaderManager = RxLoaderManagerCompat.get(this);
             setupLoaders(loaderManager);
-            mChangesLoader = loaderManager.create(this::fetchChanges, mLoaderObserver);
+            mChangesLoader = loaderManager.create(this::fetchChangesAndDiff, mLoaderObserver);
             mChangesLoader.start(mItemsToFetch, 0);
 
             if (mIsTwoPanel) {
@@ -413,6 +540,17 @@ public abstract class ChangeListFragment extends Fragment implements SelectableF
         }
     }
 
+    private Observable<ChangesResult> fetchChangesAndDiff(Integer count, Integer start) {
+        // The diff against the current data is computed in background, so only the
+        // new or updated rows are rebound
+        return fetchChanges(count, start)
+                .observeOn(AndroidSchedulers.mainThread())
+                .map(changes -> new ChangesResult(getCurrentData(false), changes))
+                .observeOn(Schedulers.computation())
+                .map(ChangesResult::computeDiff)
+                .observeOn(AndroidSchedulers.mainThread());
+    }
+
     @Override
     public final void onDestroyView() {
         super.onDestroyView();
@@ -440,6 +578,8 @@ public abstract class ChangeListFragment extends Fragment implements SelectableF
             mEndlessScroller.loadCompleted();
             mBinding.list.removeOnScrollListener(mEndlessScroller);
             mBinding.list.addOnScrollListener(mEndlessScroller);
+            mBinding.list.removeOnScrollListener(mPrefetchScroller);
+            mBinding.list.addOnScrollListener(mPrefetchScroller);
 
             fetchNewItems();
         });
@@ -24,6 +24,7 @@ import com.ruesga.rview.BaseActivity;
 import com.ruesga.rview.R;
 import com.ruesga.rview.Reloadable;
 import com.ruesga.rview.gerrit.model.DashboardInfo;
+import com.ruesga.rview.misc.ChangesBatch;
 import com.ruesga.rview.misc.ModelHelper;
 import com.ruesga.rview.misc.SerializationManager;
 import com.ruesga.rview.model.Account;
@@ -31,6 +32,7 @@ import com.ruesga.rview.preferences.Constants;
 import com.ruesga.rview.preferences.Preferences;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
@@ -43,6 +45,7 @@ public class DashboardFragment extends PageableFragment {
 
     private DashboardInfo mDashboard;
     private String[] mDashboardTabs;
+    private ChangesBatch mChangesBatch;
 
     public static DashboardFragment newInstance() {
         return new DashboardFragment();
@@ -182,6 +185,10 @@ public class DashboardFragment extends PageableFragment {
         fragment.show(getChildFragmentManager(), DashboardChooserDialogFragment.TAG);
     }
 
+    ChangesBatch getChangesBatch() {
+        return mChangesBatch;
+    }
+
     private boolean isDefaultDashboard() {
         return mDashboard == null || Constants.DASHBOARD_DEFAULT_ID.equals(mDashboard.id);
     }
@@ -193,15 +200,33 @@ public class DashboardFragment extends PageableFragment {
                 dashboard.title);
 
         // Cache arrays
+        String[] filters;
         if (isDefaultDashboard()) {
             mDashboardTabs = mDefaultDashboardTabs;
+            filters = mDefaultDashboardFilters;
         } else {
             int count = mDashboard.sections.length;
             String[] tabs = new String[count];
+            filters = new String[count];
             for (int i = 0; i < count; i++) {
                 tabs[i] = mDashboard.sections[i].name;
+                filters[i] = mDashboard.sections[i].query;
             }
             mDashboardTabs = tabs;
         }
+
+        // Fetch the first page of all the sections in a single request. Sections with its
+        // own limit are fetched by themselves.
+        List<String> batched = new ArrayList<>();
+        for (String filter : filters) {
+            if (filter != null
+                    && !ChangeListByFilterFragment.LIMIT_FILTER_PATTERN.matcher(filter).find()) {
+                batched.add(filter);
+            }
+        }
+        final Account account = Preferences.getAccount(getActivity());
+        mChangesBatch = new ChangesBatch(ModelHelper.getGerritApi(getActivity()), batched,
+                Preferences.getAccountFetchedItems(getActivity(), account),
+                ChangeListByFilterFragment.OPTIONS);
     }
 }
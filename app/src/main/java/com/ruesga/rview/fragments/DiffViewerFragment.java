@@ -45,6 +45,7 @@ import com.ruesga.rview.drawer.DrawerNavigationView.OnDrawerNavigationItemSelect
 import com.ruesga.rview.fragments.FileDiffViewerFragment.OnDiffCompleteListener;
 import com.ruesga.rview.gerrit.GerritApi;
 import com.ruesga.rview.gerrit.model.ChangeInfo;
+import com.ruesga.rview.gerrit.model.DiffInfo;
 import com.ruesga.rview.gerrit.model.FileInfo;
 import com.ruesga.rview.gerrit.model.FileStatus;
 import com.ruesga.rview.misc.ActivityHelper;
@@ -56,6 +57,7 @@ import com.ruesga.rview.misc.SerializationManager;
 import com.ruesga.rview.model.Account;
 import com.ruesga.rview.preferences.Constants;
 import com.ruesga.rview.preferences.Preferences;
+import com.ruesga.rview.services.OfflineChangeDownloadService;
 import com.ruesga.rview.widget.DiffView;
 import com.ruesga.rview.widget.PagerControllerLayout.PagerControllerAdapter;
 
@@ -79,6 +81,7 @@ import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentManager;
 import io.reactivex.Observable;
 import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.disposables.Disposable;
 import io.reactivex.schedulers.Schedulers;
 import me.tatarka.rxloader2.RxLoader2;
 import me.tatarka.rxloader2.RxLoaderManager;
@@ -91,6 +94,9 @@ public class DiffViewerFragment extends Fragment
 
     private static final String TAG = "DiffViewerFragment";
 
+    // Number of files at each side of the current one to prefetch
+    private static final int PREFETCH_NEIGHBOUR_FILES = 1;
+
     private static final int REQUEST_PERMISSION_LEFT = 100;
     private static final int REQUEST_PERMISSION_RIGHT = 101;
     private static final String[] PERMISSIONS  = {
@@ -212,6 +218,13 @@ public class DiffViewerFragment extends Fragment
             = new OnDrawerNavigationItemSelectedListener() {
         @Override
         public boolean onDrawerNavigationItemSelected(MenuItem item) {
+            if (item.getItemId() == R.id.offline_download) {
+                performOfflineDownload();
+                //noinspection ConstantConditions
+                ((BaseActivity) getActivity()).closeOptionsDrawer();
+                return true;
+            }
+
             if (mFragment != null && mFragment.get() != null) {
                 switch (item.getItemId()) {
                     case R.id.diff_mode_unified:
@@ -331,6 +344,9 @@ public class DiffViewerFragment extends Fragment
         mHasImagePreview = hasImagePreview;
         applyModeRestrictions();
         updateModel();
+
+        // The current file is ready, so use the idle network to fetch its neighbours
+        prefetchNeighbourFiles();
     }
 
     @Override
@@ -377,6 +393,7 @@ public class DiffViewerFragment extends Fragment
     private String mComment;
 
     private RxLoader2<String, String, Map<String, FileInfo>> mFilesLoader;
+    private Disposable mPrefetchDisposable;
 
     private final List<String> mAllRevisions = new ArrayList<>();
 
@@ -580,6 +597,7 @@ public class DiffViewerFragment extends Fragment
     @Override
     public void onDestroyView() {
         super.onDestroyView();
+        cancelPrefetch();
         if (mBinding != null) {
             mBinding.unbind();
         }
@@ -754,6 +772,7 @@ public class DiffViewerFragment extends Fragment
 
             // Change to the new file
             if (position != mCurrentFile) {
+                cancelPrefetch();
                 mShowBlameA = mShowBlameB = false;
                 mModel.isLeftBlame = mModel.isRightBlame = false;
                 updateModel();
@@ -969,10 +988,100 @@ public class DiffViewerFragment extends Fragment
         }
     }
 
+    private void performOfflineDownload() {
+        final Context ctx = getContext();
+        if (ctx == null || mChange == null || mChange.revisions.get(mRevisionId) == null) {
+            return;
+        }
+
+        Intent intent = new Intent(ctx, OfflineChangeDownloadService.class);
+        intent.setAction(OfflineChangeDownloadService.OFFLINE_CHANGE_DOWNLOAD_ACTION);
+        intent.putExtra(Constants.EXTRA_ACCOUNT_HASH, mAccount.getAccountHash());
+        intent.putExtra(Constants.EXTRA_LEGACY_CHANGE_ID, mChange.legacyChangeId);
+        intent.putExtra(Constants.EXTRA_REVISION_ID, mRevisionId);
+        intent.putExtra(Constants.EXTRA_REVISION, mChange.revisions.get(mRevisionId).number);
+        intent.putExtra(Constants.EXTRA_BASE, mBase);
+        if (mChange.updated != null) {
+            intent.putExtra(Constants.EXTRA_UPDATED, mChange.updated.getTime());
+        }
+        ctx.startService(intent);
+
+        Toast.makeText(ctx, R.string.offline_download_started, Toast.LENGTH_SHORT).show();
+    }
+
+    private void prefetchNeighbourFiles() {
+        cancelPrefetch();
+        final Context ctx = getContext();
+        if (ctx == null || mChange == null || mFiles.isEmpty()
+                || mChange.revisions.get(mRevisionId) == null) {
+            return;
+        }
+
+        final List<String> files = new ArrayList<>();
+        for (int i = 1; i <= PREFETCH_NEIGHBOUR_FILES; i++) {
+            addPrefetchFile(files, mCurrentFile + i);
+            addPrefetchFile(files, mCurrentFile - i);
+        }
+        if (files.isEmpty()) {
+            return;
+        }
+
+        final GerritApi api = ModelHelper.getGerritApi(ctx);
+        final ChangeInfo change = mChange;
+        final String revisionId = mRevisionId;
+        final String baseRevision = mBase;
+        final int revision = mChange.revisions.get(mRevisionId).number;
+        final Integer base = mBase == null ? null : Integer.valueOf(mBase);
+        final boolean isSameBase = base != null && base == revision;
+        mPrefetchDisposable = Observable.fromIterable(files)
+                .subscribeOn(Schedulers.io())
+                .subscribe(file -> {
+                    final String name = CacheHelper.getDiffCacheFileName(
+                            baseRevision, String.valueOf(revision), file);
+                    try {
+                        if (CacheHelper.hasAccountDiffCache(ctx, name)
+                                || CacheHelper.hasAccountOfflinePackEntry(
+                                        ctx, change.legacyChangeId, name)) {
+                            return;
+                        }
+                        boolean rectify = isSameBase && file.equals(Constants.COMMIT_MESSAGE);
+                        DiffInfo diff = ModelHelper.fetchChangeRevisionFileDiff(api,
+                                change.legacyChangeId, revisionId, file,
+                                rectify ? null : base, rectify);
+                        CacheHelper.writeAccountDiffCacheFile(ctx, name,
+                                SerializationManager.getInstance().toJson(diff).getBytes());
+                    } catch (Exception ex) {
+                        // Just a hint. The file will be fetched again when displayed
+                        Log.w(TAG, "Failed to prefetch diff of " + file, ex);
+                    }
+                }, error -> Log.w(TAG, "Failed to prefetch diffs", error));
+    }
+
+    private void addPrefetchFile(List<String> files, int position) {
+        if (position < 0 || position >= mFiles.size()) {
+            return;
+        }
+        String file = mFiles.get(position);
+        FileInfo info = mFilesInfo.get(file);
+        if (info != null && info.binary) {
+            // Binary files have no diff to fetch
+            return;
+        }
+        files.add(file);
+    }
+
+    private void cancelPrefetch() {
+        if (mPrefetchDisposable != null) {
+            mPrefetchDisposable.dispose();
+            mPrefetchDisposable = null;
+        }
+    }
+
     private void configurePageController(BaseActivity activity, boolean refresh) {
         activity.invalidatePages();
         activity.configurePages(mAdapter, (position, fromUser) -> {
             if (position != mCurrentFile) {
+                cancelPrefetch();
                 mShowBlameA = mShowBlameB = false;
                 mModel.isLeftBlame = mModel.isRightBlame = false;
                 updateModel();
@@ -998,7 +1107,7 @@ public class DiffViewerFragment extends Fragment
         final Context ctx = getActivity();
         final GerritApi api = ModelHelper.getGerritApi(ctx);
 
-        Type type = new TypeToken<ArrayList<String>>(){}.getType();
+        Type type = new TypeToken<Map<String, FileInfo>>(){}.getType();
         String current = String.valueOf(mChange.revisions.get(mRevisionId).number);
         String prefix = (mBase == null ? "0" : mBase) + "_" + current + "_";
 
@@ -1037,10 +1146,16 @@ public class DiffViewerFragment extends Fragment
     @SuppressWarnings("unchecked")
     private <T> Observable<T> withCached(Observable<T> call, Type type, String name) {
         try {
+            byte[] data;
             if (CacheHelper.hasAccountDiffCache(getContext(), name)) {
-                T o = SerializationManager.getInstance().fromJson(
-                        new String(CacheHelper.readAccountDiffCacheFile(
-                                getContext(), name)), type);
+                data = CacheHelper.readAccountDiffCacheFile(getContext(), name);
+            } else {
+                // Try the offline pack of the change before going to the network
+                data = CacheHelper.readAccountOfflinePackEntry(
+                        getContext(), mChange.legacyChangeId, name);
+            }
+            if (data != null) {
+                T o = SerializationManager.getInstance().fromJson(new String(data), type);
                 if (o != null) {
                     return Observable.just(o);
                 }
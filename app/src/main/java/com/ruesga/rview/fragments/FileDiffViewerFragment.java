@@ -46,7 +46,6 @@ import com.ruesga.rview.gerrit.model.DiffContentInfo;
 import com.ruesga.rview.gerrit.model.DiffInfo;
 import com.ruesga.rview.gerrit.model.Features;
 import com.ruesga.rview.gerrit.model.FileStatus;
-import com.ruesga.rview.gerrit.model.RobotCommentInfo;
 import com.ruesga.rview.gerrit.model.SideType;
 import com.ruesga.rview.gerrit.model.WhitespaceType;
 import com.ruesga.rview.misc.CacheHelper;
@@ -58,6 +57,8 @@ import com.ruesga.rview.model.Account;
 import com.ruesga.rview.preferences.Constants;
 import com.ruesga.rview.preferences.Preferences;
 import com.ruesga.rview.tasks.AsyncImageDiffProcessor;
+import com.ruesga.rview.tasks.TextDiffStreamProcessor;
+import com.ruesga.rview.tasks.TextDiffStreamProcessor.OnTextDiffStreamListener;
 import com.ruesga.rview.widget.DiffView;
 
 import java.io.BufferedWriter;
@@ -135,6 +136,21 @@ public class FileDiffViewerFragment extends Fragment implements EditDialogFragme
         }
     };
 
+    private final OnTextDiffStreamListener mDiffStreamListener
+            = new OnTextDiffStreamListener() {
+        @Override
+        public void onTextDiffStreamed(List<DiffView.AbstractModel> model, boolean first) {
+            // Check if activity is still attached
+            if (getActivity() == null || mBinding == null) {
+                return;
+            }
+            if (first) {
+                setupDiffView();
+            }
+            mBinding.diff.append(model, first);
+        }
+    };
+
     private final RxLoaderObserver<FileDiffResponse> mBlamesObserver
             = new RxLoaderObserver<FileDiffResponse>() {
         @Override
@@ -361,24 +377,13 @@ public class FileDiffViewerFragment extends Fragment implements EditDialogFragme
                     return;
                 }
 
-                DiffView v = mBinding.diff
-                    .file(mFile)
+                DiffView v = setupDiffView()
                     .from(mResponse.diff)
                     .withLeftContent(mResponse.leftContent)
                     .withRightContent(mResponse.rightContent)
-                    .showBlameA(mShowBlameA)
-                    .showBlameB(mShowBlameB)
                     .withBlames(mResponse.blames)
                     .withComments(mResponse.comments)
                     .withDrafts(mResponse.draftComments)
-                    .mode(mMode)
-                    .textSizeFactor(mTextSizeFactor)
-                    .wrap(mWrap)
-                    .listenOn(mCommentListener)
-                    .canEdit(mAccount.hasAuthenticatedAccessMode())
-                    .highlightTabs(mHighlightTabs)
-                    .highlightTrailingWhitespaces(mHighlightTrailingWhitespaces)
-                    .highlightIntralineDiffs(mHighlightIntralineDiffs)
                     .withSkipLinesHistory(mSkipLinesHistory);
                 if (mComment != null) {
                     v.scrollToComment(mComment);
@@ -391,6 +396,21 @@ public class FileDiffViewerFragment extends Fragment implements EditDialogFragme
         }
     }
 
+    private DiffView setupDiffView() {
+        return mBinding.diff
+                .file(mFile)
+                .showBlameA(mShowBlameA)
+                .showBlameB(mShowBlameB)
+                .mode(mMode)
+                .textSizeFactor(mTextSizeFactor)
+                .wrap(mWrap)
+                .listenOn(mCommentListener)
+                .canEdit(mAccount.hasAuthenticatedAccessMode())
+                .highlightTabs(mHighlightTabs)
+                .highlightTrailingWhitespaces(mHighlightTrailingWhitespaces)
+                .highlightIntralineDiffs(mHighlightIntralineDiffs);
+    }
+
     @Override
     @SuppressWarnings("ConstantConditions")
     public void onCreate(@Nullable Bundle savedInstanceState) {
@@ -504,7 +524,6 @@ public class FileDiffViewerFragment extends Fragment implements EditDialogFragme
     private Observable<FileDiffResponse> fetchDiffs() {
         // Generate ids
         final String baseRevision = mBase == null ? "0" : mBase;
-        final String diffCacheId = baseRevision + "_" + mRevision + "_" + mFileHash + "_";
         final Integer base = mBase == null ? null : Integer.valueOf(mBase);
         final Type commentType = new TypeToken<Map<String, List<CommentInfo>>>(){}.getType();
         final boolean isBinary = !mFile.equals(Constants.COMMIT_MESSAGE)
@@ -523,24 +542,12 @@ public class FileDiffViewerFragment extends Fragment implements EditDialogFragme
                                         && mFile.equals(Constants.COMMIT_MESSAGE));
 
                                 final Integer b = rectify ? null : base;
-                                DiffInfo diff =
-                                        api.getChangeRevisionFileDiff(
-                                            String.valueOf(mChange.legacyChangeId),
-                                            mRevisionId,
-                                            mFile,
-                                            b,
-                                            Option.INSTANCE,
-                                            null,
-                                            WhitespaceType.IGNORE_NONE,
-                                            ContextType.ALL)
-                                            .blockingFirst();
-                                if (rectify) {
-                                    // Server doesn't return any content diff, so just ensure
-                                    // the return structure has the proper data
-                                    diff.content[0].ab = diff.content[0].b;
-                                    diff.content[0].b = null;
+                                if (!rectify && mMode != DiffView.IMAGE_MODE) {
+                                    // Display the diff progressively while it's downloaded
+                                    return fetchStreamedDiff(api, b);
                                 }
-                                return diff;
+                                return ModelHelper.fetchChangeRevisionFileDiff(api,
+                                        mChange.legacyChangeId, mRevisionId, mFile, b, rectify);
                             }
 
                             DiffInfo diff = new DiffInfo();
@@ -548,7 +555,7 @@ public class FileDiffViewerFragment extends Fragment implements EditDialogFragme
                             return diff;
                         }),
                         DiffInfo.class,
-                        diffCacheId + CacheHelper.CACHE_DIFF_JSON
+                        CacheHelper.getDiffCacheFileName(mBase, mRevision, mFile)
                 ),
                 withCached(
                         SafeObservable.fromNullCallable(() -> {
@@ -602,6 +609,25 @@ public class FileDiffViewerFragment extends Fragment implements EditDialogFragme
             .observeOn(AndroidSchedulers.mainThread());
     }
 
+    private DiffInfo fetchStreamedDiff(GerritApi api, Integer base) {
+        TextDiffStreamProcessor processor = new TextDiffStreamProcessor(getContext(), mMode,
+                mHighlightTabs, mHighlightTrailingWhitespaces, mHighlightIntralineDiffs,
+                mDiffStreamListener);
+        DiffInfo diff = api.getChangeRevisionFileDiff(
+                String.valueOf(mChange.legacyChangeId),
+                mRevisionId,
+                mFile,
+                base,
+                Option.INSTANCE,
+                null,
+                WhitespaceType.IGNORE_NONE,
+                ContextType.ALL,
+                processor)
+                .blockingFirst();
+        processor.onEnd();
+        return diff;
+    }
+
     @SuppressWarnings("ConstantConditions")
     private Observable<FileDiffResponse> fetchDrafts() {
         // Generate ids
@@ -734,10 +760,9 @@ public class FileDiffViewerFragment extends Fragment implements EditDialogFragme
         // Cache the fetched data
         try {
             final String baseRevision = mBase == null ? "0" : mBase;
-            final String diffCacheId = baseRevision + "_" + mRevision + "_" + mFileHash + "_";
 
             CacheHelper.writeAccountDiffCacheFile(getContext(),
-                    diffCacheId + CacheHelper.CACHE_DIFF_JSON,
+                    CacheHelper.getDiffCacheFileName(mBase, mRevision, mFile),
                     SerializationManager.getInstance().toJson(diff).getBytes());
             CacheHelper.writeAccountDiffCacheFile(getContext(),
                     baseRevision + "_" + CacheHelper.CACHE_COMMENTS_JSON,
@@ -985,10 +1010,16 @@ public class FileDiffViewerFragment extends Fragment implements EditDialogFragme
     @SuppressWarnings("unchecked")
     private <T> Observable<T> withCached(Observable<T> call, Type type, String name) {
         try {
+            byte[] data;
             if (CacheHelper.hasAccountDiffCache(getContext(), name)) {
-                T o = SerializationManager.getInstance().fromJson(
-                        new String(CacheHelper.readAccountDiffCacheFile(
-                                getContext(), name)), type);
+                data = CacheHelper.readAccountDiffCacheFile(getContext(), name);
+            } else {
+                // Try the offline pack of the change before going to the network
+                data = CacheHelper.readAccountOfflinePackEntry(
+                        getContext(), mChange.legacyChangeId, name);
+            }
+            if (data != null) {
+                T o = SerializationManager.getInstance().fromJson(new String(data), type);
                 if (o != null) {
                     return Observable.just(o);
                 }
@@ -1245,18 +1276,7 @@ public class FileDiffViewerFragment extends Fragment implements EditDialogFragme
     @SuppressWarnings("ConstantConditions")
     private Observable<Map<String, List<CommentInfo>>> fetchAndMergeAllChangeRevisionComments(
             GerritApi api, String changeId, String revId) {
-        return SafeObservable.fromNullCallable(() -> {
-            Map<String, List<CommentInfo>> comments =
-                    api.getChangeRevisionComments(changeId, revId).blockingFirst();
-
-            // Fetch robot comments if the Gerrit server supports them (2.14 and up)
-            if (mAccount.mServerVersion.getVersion() >= 2.14d) {
-                Map<String, List<RobotCommentInfo>> robotComments =
-                        api.getChangeRevisionRobotComments(changeId, revId).blockingFirst();
-                ModelHelper.mergeCommentsAndRobotComments(comments, robotComments);
-            }
-
-            return comments;
-        });
+        return SafeObservable.fromNullCallable(() ->
+                ModelHelper.fetchAllChangeRevisionComments(api, mAccount, changeId, revId));
     }
 }
@@ -93,7 +93,7 @@ public class SetAccountStatusDialogFragment extends RevealDialogFragment {
     private final RxLoaderObserver<String> mSetAccountStateObserver = new RxLoaderObserver<String>() {
         @Override
         public void onNext(String status) {
-            mAccount.mAccount.status = status;
+            mAccount.setAccountStatus(status);
             Preferences.addOrUpdateAccount(getActivity(), mAccount);
 
             Intent i = new Intent(AccountStatusFetcherService.ACCOUNT_STATUS_FETCHER_ACTION);
@@ -49,7 +49,6 @@ import me.tatarka.rxloader2.RxLoader;
 import me.tatarka.rxloader2.RxLoaderManager;
 import me.tatarka.rxloader2.RxLoaderManagerCompat;
 import me.tatarka.rxloader2.RxLoaderObserver;
-import me.tatarka.rxloader2.safe.SafeObservable;
 
 public abstract class StatsPageFragment<T> extends Fragment implements SelectableFragment {
 
@@ -178,19 +177,9 @@ public abstract class StatsPageFragment<T> extends Fragment implements Selectabl
     private Observable<List<Stats>> internalFetchStats() {
         final Context ctx = getActivity();
         final GerritApi api = ModelHelper.getGerritApi(ctx);
-        return SafeObservable.fromNullCallable(() -> {
-                ChangeQuery query = getStatsQuery();
-                List<ChangeInfo> changes = new ArrayList<>();
-                List<ChangeInfo> tmp;
-                int start = 0;
-                do {
-                    tmp = api.getChanges(query, MAX_CHANGES, start, OPTIONS)
-                            .blockingFirst();
-                    changes.addAll(tmp);
-                    start += MAX_CHANGES;
-                } while (tmp.size() == MAX_CHANGES);
-                return changes;
-            })
+        return Observable.defer(() -> fetchChanges(api, getStatsQuery(), 0))
+            .<ArrayList<ChangeInfo>>collect(ArrayList::new, ArrayList::addAll)
+            .toObservable()
             .flatMap((Function<List<ChangeInfo>, ObservableSource<List<Stats>>>) changes -> {
                 ArrayList<Stats> stats = new ArrayList<>(changes.size());
                 for (ChangeInfo change : changes) {
@@ -220,6 +209,16 @@ public abstract class StatsPageFragment<T> extends Fragment implements Selectabl
             .observeOn(AndroidSchedulers.mainThread());
     }
 
+    private Observable<List<ChangeInfo>> fetchChanges(
+            GerritApi api, ChangeQuery query, int start) {
+        // Request the next page once the current one is received, without blocking any thread
+        return api.getChanges(query, MAX_CHANGES, start, OPTIONS)
+                .concatMap(changes -> changes.size() == MAX_CHANGES
+                        ? Observable.just(changes).concatWith(
+                                fetchChanges(api, query, start + MAX_CHANGES))
+                        : Observable.just(changes));
+    }
+
     private void performRequestStats() {
         mStatsLoader.clear();
         mStatsLoader.restart();
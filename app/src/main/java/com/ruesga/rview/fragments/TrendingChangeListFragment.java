@@ -97,6 +97,12 @@ public class TrendingChangeListFragment extends ChangeListByFilterFragment {
         super.fetchNewItems();
     }
 
+    @Override
+    boolean isDeltaRefreshSupported() {
+        // Trending changes are computed from several queries
+        return false;
+    }
+
     @SuppressWarnings("ConstantConditions")
     protected List<ChangeInfo> doFetchChanges(Integer count, Integer start) {
         final ChangeQuery query = ChangeQuery.parse(
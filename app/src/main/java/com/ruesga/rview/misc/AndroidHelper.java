@@ -191,6 +191,18 @@ public class AndroidHelper {
         return url;
     }
 
+    @SuppressWarnings("deprecation")
+    @SuppressLint("Deprecated")
+    public static boolean hasConnectivity(Context context) {
+        ConnectivityManager cm = (ConnectivityManager) context.getSystemService(
+                Context.CONNECTIVITY_SERVICE);
+        if (cm == null) {
+            return true;
+        }
+        NetworkInfo activeNetwork = cm.getActiveNetworkInfo();
+        return activeNetwork != null && activeNetwork.isConnectedOrConnecting();
+    }
+
     @TargetApi(Build.VERSION_CODES.P)
     @SuppressWarnings("deprecation")
     @SuppressLint("Deprecated")
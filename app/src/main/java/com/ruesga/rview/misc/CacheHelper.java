@@ -24,6 +24,7 @@ import android.net.Uri;
 import com.ruesga.rview.attachments.Attachment;
 import com.ruesga.rview.attachments.EmptyMetadataException;
 import com.ruesga.rview.gerrit.NoConnectivityException;
+import com.ruesga.rview.gerrit.model.ChangeInfo;
 import com.ruesga.rview.model.Account;
 import com.ruesga.rview.preferences.Preferences;
 
@@ -37,8 +38,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 import androidx.core.content.FileProvider;
 import okhttp3.OkHttpClient;
@@ -50,11 +57,23 @@ public class CacheHelper {
 
     public static final long MAX_AGE_CACHE = 60 * 60 * 24 * 5L;
     public static final long MAX_DISK_CACHE = 50 * 1024 * 1024L;
+    // Part of the account disk cache reserved to the http response cache
+    public static final long MAX_HTTP_DISK_CACHE = 10 * 1024 * 1024L;
 
     private static final String IMAGES_CACHE_FOLDER = "images";
     private static final String AVATARS_CACHE_FOLDER = "avatars";
     private static final String DIFF_CACHE_FOLDER = "diff";
     private static final String ATTACHMENT_CACHE_FOLDER = "attachments";
+    private static final String HTTP_CACHE_FOLDER = "http";
+    private static final String NETWORK_CACHE_FOLDER = "network";
+    private static final String OFFLINE_CACHE_FOLDER = "offline";
+
+    private static final String EDIT_CACHE_SUFFIX = ".edit";
+    private static final String EDIT_CONTENT_CACHE_SUFFIX = ".content";
+    private static final String EDIT_OPS_CACHE_NAME = "edit.ops";
+    private static final String OFFLINE_PACK_SUFFIX = ".pack";
+    private static final long TRIM_CACHE_INTERVAL = 60 * 1000L;
+    private static final Map<String, Long> sLastTrimCache = new HashMap<>();
 
     public static final String CACHE_CHANGE_JSON = "change.json";
     public static final String CACHE_FILES_JSON = "files.json";
@@ -91,6 +110,15 @@ public class CacheHelper {
         return cacheDir;
     }
 
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    public static File getNetworkCacheDir(Context context) {
+        File cacheDir = new File(context.getCacheDir(), NETWORK_CACHE_FOLDER);
+        if (!cacheDir.exists()) {
+            cacheDir.mkdir();
+        }
+        return cacheDir;
+    }
+
     public static Uri createNewTemporaryFileUri(Context context, String suffix) throws IOException {
         File temp = createNewTemporaryFile(context, suffix);
         if (temp != null) {
@@ -145,6 +173,11 @@ public class CacheHelper {
     }
 
 
+    public static File getAccountHttpCacheDir(Context context, Account account) {
+        return new File(getAccountCacheDir(context, account), HTTP_CACHE_FOLDER);
+    }
+
+
     public static File getAccountDiffCacheDir(Context context) {
         return getAccountDiffCacheDir(context, Preferences.getAccount(context));
     }
@@ -186,10 +219,14 @@ public class CacheHelper {
         return readAccountDiffCacheFile(context, Preferences.getAccount(context), name);
     }
 
+    @SuppressWarnings("ResultOfMethodCallIgnored")
     public static byte[] readAccountDiffCacheFile(Context context, Account account, String name)
             throws IOException {
-        return FileUtils.readFileToByteArray(
-                new File(getAccountDiffCacheDir(context, account), name));
+        File file = new File(getAccountDiffCacheDir(context, account), name);
+        byte[] data = FileUtils.readFileToByteArray(file);
+        // Mark as recently used
+        file.setLastModified(System.currentTimeMillis());
+        return data;
     }
 
     public static void writeAccountDiffCacheFile(Context context, String name, byte[] data)
@@ -197,10 +234,29 @@ public class CacheHelper {
         writeAccountDiffCacheFile(context, Preferences.getAccount(context), name, data);
     }
 
+    @SuppressWarnings("ResultOfMethodCallIgnored")
     public static void writeAccountDiffCacheFile(
             Context context, Account account, String name, byte[] data) throws IOException {
-        FileUtils.writeByteArrayToFile(
-                new File(getAccountDiffCacheDir(context, account), name), data);
+        // Write to a temporary file and then move it, so an interrupted write never
+        // leaves a partial cache file behind
+        final File cacheDir = getAccountDiffCacheDir(context, account);
+        final File file = new File(cacheDir, name);
+        final File temp = File.createTempFile(name, ".tmp", cacheDir);
+        try {
+            FileUtils.writeByteArrayToFile(temp, data);
+            if (!temp.renameTo(file) && (!file.delete() || !temp.renameTo(file))) {
+                throw new IOException("Failed to write cache file: " + file);
+            }
+        } finally {
+            temp.delete();
+        }
+        trimAccountCacheIfNeeded(context, account);
+    }
+
+    public static String getDiffCacheFileName(String base, String revision, String file) {
+        final String baseRevision = base == null ? "0" : base;
+        final String fileHash = FowlerNollVo.fnv1a_64(file.getBytes()).toString();
+        return baseRevision + "_" + revision + "_" + fileHash + "_" + CACHE_DIFF_JSON;
     }
 
     public static void removeAccountDiffCacheFile(Context context, String name) {
@@ -216,6 +272,90 @@ public class CacheHelper {
     }
 
 
+    private static File getAccountOfflineCacheDir(Context context, Account account) {
+        return new File(getAccountCacheDir(context, account), OFFLINE_CACHE_FOLDER);
+    }
+
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    public static File getAccountOfflinePackFile(
+            Context context, Account account, int legacyChangeId) {
+        createAccountCacheDir(context, account);
+        File cacheDir = getAccountOfflineCacheDir(context, account);
+        if (!cacheDir.exists()) {
+            cacheDir.mkdir();
+        }
+        return new File(cacheDir, legacyChangeId + OFFLINE_PACK_SUFFIX);
+    }
+
+    public static byte[] readAccountOfflinePackEntry(
+            Context context, int legacyChangeId, String name) throws IOException {
+        return readAccountOfflinePackEntry(
+                context, Preferences.getAccount(context), legacyChangeId, name);
+    }
+
+    public static byte[] readAccountOfflinePackEntry(
+            Context context, Account account, int legacyChangeId, String name)
+            throws IOException {
+        // The pack is a snapshot of the change when it was downloaded. The diffs and the files
+        // of a revision never change, but the rest of the entries (comments, drafts, ...) are
+        // only used while there is no connectivity and the change wasn't updated since then
+        File pack = getAccountOfflinePackFile(context, account, legacyChangeId);
+        if (!isUsableOfflinePackEntry(context, pack, name)) {
+            return null;
+        }
+        return OfflineChangePack.read(pack, name);
+    }
+
+    public static boolean hasAccountOfflinePackEntry(
+            Context context, int legacyChangeId, String name) throws IOException {
+        return hasAccountOfflinePackEntry(
+                context, Preferences.getAccount(context), legacyChangeId, name);
+    }
+
+    public static boolean hasAccountOfflinePackEntry(
+            Context context, Account account, int legacyChangeId, String name)
+            throws IOException {
+        File pack = getAccountOfflinePackFile(context, account, legacyChangeId);
+        return isUsableOfflinePackEntry(context, pack, name)
+                && OfflineChangePack.contains(pack, name);
+    }
+
+    private static boolean isUsableOfflinePackEntry(Context context, File pack, String name)
+            throws IOException {
+        return isImmutableOfflinePackEntry(name)
+                || (!AndroidHelper.hasConnectivity(context) && !OfflineChangePack.isStale(pack));
+    }
+
+    private static boolean isImmutableOfflinePackEntry(String name) {
+        return name.endsWith(CACHE_DIFF_JSON) || name.endsWith(CACHE_FILES_INFO_JSON);
+    }
+
+    /**
+     * Marks the offline pack of the change as stale if the change was updated after the pack
+     * was downloaded. The diffs of a stale pack are still used, but not its comments and drafts.
+     * Returns whether the pack was marked by this call.
+     */
+    public static boolean markAccountOfflinePackIfStale(Context context, ChangeInfo change) {
+        File pack = getAccountOfflinePackFile(
+                context, Preferences.getAccount(context), change.legacyChangeId);
+        if (!pack.exists() || change.updated == null) {
+            return false;
+        }
+        try {
+            if (OfflineChangePack.isStale(pack)
+                    || change.updated.getTime() <= OfflineChangePack.getUpdated(pack)) {
+                return false;
+            }
+            OfflineChangePack.markStale(pack);
+            return true;
+        } catch (IOException ex) {
+            // The pack can't be read anymore
+            OfflineChangePack.delete(pack);
+            return false;
+        }
+    }
+
+
     public static long getFileCacheAge(Context context, Account account, String name) {
         File file = new File(getAccountCacheDir(context, account), name);
         if (file.exists()) {
@@ -239,6 +379,7 @@ public class CacheHelper {
         File file = new File(getAccountCacheDir(context, account), name);
         file.getParentFile().mkdirs();
         FileUtils.writeByteArrayToFile(file, data);
+        trimAccountCacheIfNeeded(context, account);
     }
 
     @SuppressWarnings("ResultOfMethodCallIgnored")
@@ -251,6 +392,77 @@ public class CacheHelper {
 
 
 
+    private static void trimAccountCacheIfNeeded(Context context, Account account) {
+        long now = System.currentTimeMillis();
+        String accountHash = account.getAccountHash();
+        synchronized (sLastTrimCache) {
+            Long lastTrimCache = sLastTrimCache.get(accountHash);
+            if (lastTrimCache != null && now - lastTrimCache < TRIM_CACHE_INTERVAL) {
+                return;
+            }
+            sLastTrimCache.put(accountHash, now);
+        }
+        trimAccountCache(context, account);
+    }
+
+    /**
+     * Evicts the least recently used cached files of the account until the cache fits
+     * in {@link #MAX_DISK_CACHE}, minus the {@link #MAX_HTTP_DISK_CACHE} reserved to the
+     * http cache (which has its own bounded lru cache). The offline packs explicitly
+     * downloaded by the user and the pending edits (and the contents they are based on)
+     * are never evicted.
+     */
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    public static void trimAccountCache(Context context, Account account) {
+        final File cacheDir = getAccountCacheDir(context, account);
+        final List<File> excludedDirs = Arrays.asList(
+                getAccountHttpCacheDir(context, account),
+                getAccountOfflineCacheDir(context, account));
+        List<File> files = new ArrayList<>();
+        listEvictableFiles(cacheDir, excludedDirs, files);
+
+        final long maxSize = MAX_DISK_CACHE - MAX_HTTP_DISK_CACHE;
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= maxSize) {
+            return;
+        }
+
+        Collections.sort(files, (f1, f2) -> Long.compare(f1.lastModified(), f2.lastModified()));
+        for (File file : files) {
+            if (size <= maxSize) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    private static void listEvictableFiles(
+            File dir, List<File> excludedDirs, List<File> files) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File file : children) {
+            if (file.isDirectory()) {
+                if (!excludedDirs.contains(file)) {
+                    listEvictableFiles(file, excludedDirs, files);
+                }
+            } else if (!file.getName().endsWith(EDIT_CACHE_SUFFIX)
+                    && !file.getName().endsWith(EDIT_CONTENT_CACHE_SUFFIX)
+                    && !file.getName().equals(EDIT_OPS_CACHE_NAME)) {
+                files.add(file);
+            }
+        }
+    }
+
+
+
     @SuppressWarnings("ResultOfMethodCallIgnored")
     public static File getAttachmentCacheDir(Context context) {
         File cacheDir = new File(context.getCacheDir(), ATTACHMENT_CACHE_FOLDER);
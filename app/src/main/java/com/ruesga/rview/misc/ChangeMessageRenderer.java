@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2016 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.rview.misc;
+
+import android.content.Context;
+import android.text.Spannable;
+import android.util.LruCache;
+
+import com.ruesga.rview.attachments.Attachment;
+import com.ruesga.rview.gerrit.model.ChangeMessageInfo;
+
+import java.util.List;
+
+/**
+ * Renders the change messages (emojis, quotes, lists, pre-formatted text, scores and links)
+ * so they can be computed in background when the change is loaded. Rendered messages are
+ * cached by message id and render configuration, so binding a message only needs to set
+ * the already computed spannable.
+ */
+public class ChangeMessageRenderer {
+
+    private static final int MAX_CACHED_MESSAGES = 500;
+
+    public static class RenderedMessage {
+        public final Spannable mMessage;
+        public final List<Attachment> mAttachments;
+
+        private RenderedMessage(Spannable message, List<Attachment> attachments) {
+            mMessage = message;
+            mAttachments = attachments;
+        }
+    }
+
+    private static final LruCache<String, RenderedMessage> sCache =
+            new LruCache<>(MAX_CACHED_MESSAGES);
+
+    public static void prerender(Context context, ChangeMessageInfo[] messages) {
+        if (messages == null) {
+            return;
+        }
+        for (ChangeMessageInfo message : messages) {
+            render(context, message);
+        }
+    }
+
+    public static RenderedMessage render(Context context, ChangeMessageInfo message) {
+        final String key = message.id == null ? null : message.id + "|"
+                + (message.message == null ? 0 : message.message.hashCode()) + "|"
+                + Formatter.getUserMessageRenderConfig();
+        if (key != null) {
+            RenderedMessage rendered = sCache.get(key);
+            if (rendered != null) {
+                return rendered;
+            }
+        }
+
+        Spannable spannable = null;
+        String msg = StringHelper.removeAllAttachments(message.message);
+        if (msg != null) {
+            // Spans are cached, so they must not retain the passed context
+            Spannable userMessage = Formatter.createUserMessage(
+                    context.getApplicationContext(), msg);
+            spannable = Formatter.getUserMessageLinkifier(true).linkify(userMessage);
+            if (spannable == null) {
+                spannable = userMessage;
+            }
+        }
+        RenderedMessage rendered = new RenderedMessage(
+                spannable, StringHelper.extractAllAttachments(message));
+        if (key != null) {
+            sCache.put(key, rendered);
+        }
+        return rendered;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2016 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.rview.misc;
+
+import com.ruesga.rview.gerrit.GerritApi;
+import com.ruesga.rview.gerrit.filter.ChangeQuery;
+import com.ruesga.rview.gerrit.model.ChangeInfo;
+import com.ruesga.rview.gerrit.model.ChangeOptions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.reactivex.Observable;
+
+/**
+ * Fetches the first page of several change filters (f.e. the sections of a dashboard) in a
+ * single request. The request is only sent when the first filter is consumed, and the result
+ * of every filter can only be consumed once, so refreshes go to the network again.
+ */
+public class ChangesBatch {
+
+    private final int mCount;
+    private final Map<String, Integer> mIndexes = new HashMap<>();
+    private final Map<String, Integer> mPending = new HashMap<>();
+    private final Observable<List<List<ChangeInfo>>> mRequest;
+
+    public ChangesBatch(GerritApi api, List<String> filters,
+            int count, List<ChangeOptions> options) {
+        mCount = count;
+        List<ChangeQuery> queries = new ArrayList<>();
+        for (String filter : filters) {
+            Integer pending = mPending.get(filter);
+            if (pending != null) {
+                mPending.put(filter, pending + 1);
+                continue;
+            }
+            try {
+                queries.add(ChangeQuery.parse(filter));
+            } catch (Exception ex) {
+                // Let the owner of the filter deal with it
+                continue;
+            }
+            mIndexes.put(filter, queries.size() - 1);
+            mPending.put(filter, 1);
+        }
+        mRequest = api.getChangesMulti(queries, count, 0, options).cache();
+    }
+
+    /**
+     * Returns the changes of the filter, or null if the filter isn't part of the batch or
+     * it was already consumed.
+     */
+    public synchronized Observable<List<ChangeInfo>> consume(String filter, int count) {
+        Integer pending = mPending.get(filter);
+        if (count != mCount || pending == null || pending == 0) {
+            return null;
+        }
+        mPending.put(filter, pending - 1);
+        final int index = mIndexes.get(filter);
+        return mRequest.map(result -> result.get(index));
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2016 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.rview.misc;
+
+import com.ruesga.rview.gerrit.model.ChangeInfo;
+
+import java.util.ArrayDeque;
+import java.util.List;
+
+import io.reactivex.Observable;
+import io.reactivex.disposables.CompositeDisposable;
+
+/**
+ * Pages a change list by offset, prefetching the next pages in background so they are
+ * already available when the user reaches the end of the list. Only a bounded number of
+ * pages are prefetched, and prefetching stops once the server reports that there aren't
+ * more changes (<code>_more_changes</code>). Resetting the pager cancels the pending
+ * requests, and the results of the requests of previous lists are ignored.
+ */
+public class ChangesPager {
+
+    private static final int MAX_PREFETCHED_PAGES = 2;
+
+    public interface OnFetchPageListener {
+        Observable<List<ChangeInfo>> onFetchPage(int count, int start);
+    }
+
+    private static class Page {
+        final int mCount;
+        final int mStart;
+        final Observable<List<ChangeInfo>> mChanges;
+
+        Page(int count, int start, Observable<List<ChangeInfo>> changes) {
+            mCount = count;
+            mStart = start;
+            mChanges = changes;
+        }
+    }
+
+    private final OnFetchPageListener mListener;
+    private final ArrayDeque<Page> mPages = new ArrayDeque<>();
+    private final CompositeDisposable mRequests = new CompositeDisposable();
+    private int mGeneration;
+    private boolean mHasMore = true;
+
+    public ChangesPager(OnFetchPageListener listener) {
+        mListener = listener;
+    }
+
+    public synchronized void reset() {
+        mPages.clear();
+        mRequests.clear();
+        mGeneration++;
+        mHasMore = true;
+    }
+
+    /**
+     * Starts fetching in background the pages after the passed offset.
+     */
+    public synchronized void prefetch(int count, int start) {
+        Page last = mPages.peekLast();
+        if (mPages.peekFirst() != null
+                && (mPages.peekFirst().mStart != start || mPages.peekFirst().mCount != count)) {
+            // The list changed since the pages were prefetched
+            reset();
+            last = null;
+        }
+        int next = last != null ? last.mStart + last.mCount : start;
+        while (mHasMore && mPages.size() < MAX_PREFETCHED_PAGES) {
+            Page page = request(count, next);
+            mRequests.add(page.mChanges.subscribe(changes -> {}, error -> {}));
+            mPages.add(page);
+            next += count;
+        }
+    }
+
+    /**
+     * Returns the page at the passed offset, from the prefetched pages if available.
+     */
+    public synchronized Observable<List<ChangeInfo>> next(int count, int start) {
+        Page page = mPages.peekFirst();
+        if (page != null && page.mStart == start && page.mCount == count) {
+            return mPages.pollFirst().mChanges;
+        }
+        if (!mPages.isEmpty()) {
+            // The prefetched pages don't follow the list anymore
+            reset();
+        }
+        return request(count, start).mChanges;
+    }
+
+    private Page request(int count, int start) {
+        // Share the request between the prefetch and the final subscriber, keeping the
+        // connection so the request can be cancelled
+        final int generation = mGeneration;
+        Observable<List<ChangeInfo>> changes = mListener.onFetchPage(count, start)
+                .doOnNext(c -> onPageFetched(generation, count, c))
+                .replay()
+                .autoConnect(1, mRequests::add);
+        return new Page(count, start, changes);
+    }
+
+    private synchronized void onPageFetched(int generation, int count, List<ChangeInfo> changes) {
+        if (generation != mGeneration) {
+            // A page of a previous list
+            return;
+        }
+        if (changes.size() < count || !changes.get(changes.size() - 1).moreChanges) {
+            mHasMore = false;
+        }
+    }
+}
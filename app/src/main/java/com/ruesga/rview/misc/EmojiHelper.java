@@ -21,7 +21,9 @@ import android.text.TextUtils;
 
 import com.ruesga.rview.R;
 
-import java.util.regex.Pattern;
+import java.util.Arrays;
+
+import androidx.annotation.VisibleForTesting;
 
 public final class EmojiHelper {
 
@@ -66,82 +68,6 @@ public final class EmojiHelper {
                     ":+1:",
                     ":-1:"
             };
-    private static final Pattern[] REGEXP1 =
-            {
-                    Pattern.compile("^<3", Pattern.MULTILINE),
-                    Pattern.compile("^\\^_\\^", Pattern.MULTILINE),
-                    Pattern.compile("^-_-", Pattern.MULTILINE),
-                    Pattern.compile("^o.O", Pattern.MULTILINE),
-                    Pattern.compile("^>:O", Pattern.MULTILINE),
-                    Pattern.compile("^X\\(", Pattern.MULTILINE),
-                    Pattern.compile("^\\\\o/", Pattern.MULTILINE),
-                    Pattern.compile("^3:\\)", Pattern.MULTILINE),
-                    Pattern.compile("^O:\\)", Pattern.MULTILINE),
-                    Pattern.compile("^>:\\(", Pattern.MULTILINE),
-                    Pattern.compile("^B-\\)", Pattern.MULTILINE),
-                    Pattern.compile("^B\\|", Pattern.MULTILINE),
-                    Pattern.compile("^:'\\(", Pattern.MULTILINE),
-                    Pattern.compile("^:\\*", Pattern.MULTILINE),
-                    Pattern.compile("^:P", Pattern.MULTILINE),
-                    Pattern.compile("^:D", Pattern.MULTILINE),
-                    Pattern.compile("^:'D", Pattern.MULTILINE),
-                    Pattern.compile("^:\\)\\)", Pattern.MULTILINE),
-                    Pattern.compile("^:\\(\\(", Pattern.MULTILINE),
-                    Pattern.compile("^:O", Pattern.MULTILINE),
-                    Pattern.compile("^;\\)", Pattern.MULTILINE),
-                    Pattern.compile("^:/", Pattern.MULTILINE),
-                    Pattern.compile("^:-\\)", Pattern.MULTILINE),
-                    Pattern.compile("^:\\)", Pattern.MULTILINE),
-                    Pattern.compile("^:\\(", Pattern.MULTILINE),
-                    Pattern.compile("^:-\\(", Pattern.MULTILINE),
-                    Pattern.compile("^:-B", Pattern.MULTILINE),
-                    Pattern.compile("^:-\\?", Pattern.MULTILINE),
-                    Pattern.compile("^\\|-\\)", Pattern.MULTILINE),
-                    Pattern.compile("^:-&", Pattern.MULTILINE),
-                    Pattern.compile("^:P", Pattern.MULTILINE),
-                    Pattern.compile("^:D", Pattern.MULTILINE),
-                    Pattern.compile("^:S", Pattern.MULTILINE),
-                    Pattern.compile("^:\\+1:", Pattern.MULTILINE),
-                    Pattern.compile("^:-1:", Pattern.MULTILINE)
-            };
-    private static final Pattern[] REGEXP2 =
-            {
-                    Pattern.compile(" <3"),
-                    Pattern.compile(" \\^_\\^"),
-                    Pattern.compile(" -_-"),
-                    Pattern.compile(" o.O"),
-                    Pattern.compile(" >:O"),
-                    Pattern.compile(" X\\("),
-                    Pattern.compile(" \\\\o/"),
-                    Pattern.compile(" 3:\\)"),
-                    Pattern.compile(" O:\\)"),
-                    Pattern.compile(" >:\\("),
-                    Pattern.compile(" B-\\)"),
-                    Pattern.compile(" B\\|"),
-                    Pattern.compile(" :'\\("),
-                    Pattern.compile(" :\\*"),
-                    Pattern.compile(" :P"),
-                    Pattern.compile(" :D"),
-                    Pattern.compile(" :'D"),
-                    Pattern.compile(" :\\)\\)"),
-                    Pattern.compile(" :\\(\\("),
-                    Pattern.compile(" :O"),
-                    Pattern.compile(" ;\\)"),
-                    Pattern.compile(" :/"),
-                    Pattern.compile(" :-\\)"),
-                    Pattern.compile(" :\\)"),
-                    Pattern.compile(" :\\("),
-                    Pattern.compile(" :-\\("),
-                    Pattern.compile(" :-B"),
-                    Pattern.compile(" :-\\?"),
-                    Pattern.compile(" \\|-\\)"),
-                    Pattern.compile(" :-&"),
-                    Pattern.compile(" :P"),
-                    Pattern.compile(" :D"),
-                    Pattern.compile(" :S"),
-                    Pattern.compile(" :\\+1:"),
-                    Pattern.compile(" :-1:")
-            };
     private static final int[] CODES =
             {
                     0x1F60D, // <3
@@ -181,19 +107,103 @@ public final class EmojiHelper {
                     0x1F44E  // :-1:
             };
 
+    // A trie of all the emoji texts. Emojis are only replaced at the start of a line or
+    // after a space, so matches are anchored and the trie doesn't need failure links.
+    private static final class EmojiNode {
+        private char[] mChars = new char[0];
+        private EmojiNode[] mChildren = new EmojiNode[0];
+        private String mEmoji;
+
+        private EmojiNode child(char c) {
+            int count = mChars.length;
+            for (int i = 0; i < count; i++) {
+                if (mChars[i] == c) {
+                    return mChildren[i];
+                }
+            }
+            return null;
+        }
+
+        private EmojiNode add(char c) {
+            EmojiNode node = child(c);
+            if (node == null) {
+                int count = mChars.length;
+                mChars = Arrays.copyOf(mChars, count + 1);
+                mChildren = Arrays.copyOf(mChildren, count + 1);
+                node = new EmojiNode();
+                mChars[count] = c;
+                mChildren[count] = node;
+            }
+            return node;
+        }
+    }
+
+    private static final EmojiNode EMOJIS = new EmojiNode();
+    static {
+        int count = TEXT.length;
+        for (int i = 0; i < count; i++) {
+            EmojiNode node = EMOJIS;
+            for (char c : TEXT[i].toCharArray()) {
+                node = node.add(c);
+            }
+            if (node.mEmoji == null) {
+                node.mEmoji = getEmojiByUnicode(CODES[i]);
+            }
+        }
+    }
+
     public static String createEmoji(String msg) {
         // Only KitKat and up have a colorful emoji support
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-            int count = TEXT.length;
-            for (int i = 0; i < count; i++) {
-                if (msg.contains(TEXT[i])) {
-                    String emoji = getEmojiByUnicode(CODES[i]);
-                    msg = REGEXP1[i].matcher(msg).replaceAll(emoji);
-                    msg = REGEXP2[i].matcher(msg).replaceAll(" " + emoji);
+            return replaceEmojis(msg);
+        }
+        return msg;
+    }
+
+    @VisibleForTesting
+    static String replaceEmojis(String msg) {
+        StringBuilder sb = null;
+        int last = 0;
+        int length = msg.length();
+        for (int i = 0; i < length; i++) {
+            if (i > 0 && !isEmojiBoundary(msg.charAt(i - 1))) {
+                continue;
+            }
+
+            // Find the longest emoji that starts here
+            String emoji = null;
+            int end = -1;
+            EmojiNode node = EMOJIS;
+            for (int j = i; j < length; j++) {
+                node = node.child(msg.charAt(j));
+                if (node == null) {
+                    break;
+                }
+                if (node.mEmoji != null) {
+                    emoji = node.mEmoji;
+                    end = j + 1;
+                }
+            }
+            if (emoji != null) {
+                if (sb == null) {
+                    sb = new StringBuilder(length);
                 }
+                sb.append(msg, last, i).append(emoji);
+                last = end;
+                i = end - 1;
             }
         }
-        return msg;
+        if (sb == null) {
+            return msg;
+        }
+        sb.append(msg, last, length);
+        return sb.toString();
+    }
+
+    private static boolean isEmojiBoundary(char c) {
+        // A space or any line terminator
+        return c == ' ' || c == '\n' || c == '\r'
+                || c == '\u0085' || c == '\u2028' || c == '\u2029';
     }
 
     public static String getEmojiByUnicode(int unicode){
@@ -62,13 +62,12 @@ import com.ruesga.rview.preferences.Preferences;
 import com.ruesga.rview.text.QuotedSpan;
 import com.ruesga.rview.text.TagSpan;
 import com.ruesga.rview.widget.RegExLinkifyTextView;
-import com.ruesga.rview.widget.RegExLinkifyTextView.RegExLink;
+import com.ruesga.rview.widget.RegExLinkifyTextView.Linkifier;
 import com.ruesga.rview.widget.StyleableTextView;
 
 import org.ocpsoft.prettytime.PrettyTime;
 
 import java.io.File;
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -79,6 +78,7 @@ import java.util.regex.Matcher;
 import androidx.annotation.ColorRes;
 import androidx.annotation.DrawableRes;
 import androidx.annotation.Keep;
+import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
 import androidx.core.graphics.drawable.DrawableCompat;
 import androidx.databinding.BindingAdapter;
@@ -277,11 +277,15 @@ public class Formatter {
 
     @BindingAdapter("userMessage")
     public static void toUserMessage(TextView view, String msg) {
-        if (msg == null) {
-            view.setText(null);
-            return;
-        }
+        view.setText(msg == null ? null : createUserMessage(view.getContext(), msg));
+    }
 
+    /**
+     * Creates the formatted spannable of an user message (emojis, quotes, lists, pre-formatted
+     * text and review scores). This doesn't touch any view, so it's safe to call it from a
+     * background thread.
+     */
+    public static Spannable createUserMessage(Context context, @NonNull String msg) {
         // Clean up paragraphs (to mimic "<p></p>" browsers behaviour) and create Emojis
         String message = EmojiHelper.createEmoji(StringHelper.cleanUpParagraphs(msg));
 
@@ -327,18 +331,17 @@ public class Formatter {
 
         // Highlight user message's scores
         highlightUserMessageReviewScores(
-                view.getContext(), StringHelper.firstLine(userMessage), spannable);
+                context, StringHelper.firstLine(userMessage), spannable);
 
         // If the user message is not formatted, do not try to compute unnecessary stuff
         if (!formattedMessage) {
-            view.setText(spannable);
-            return;
+            return spannable;
         }
 
         if (sQuoteColor == -1) {
-            sQuoteColor = ContextCompat.getColor(view.getContext(), R.color.quote);
-            sQuoteWidth = (int) view.getContext().getResources().getDimension(R.dimen.quote_width);
-            sQuoteMargin = (int) view.getContext().getResources().getDimension(R.dimen.quote_margin);
+            sQuoteMargin = (int) context.getResources().getDimension(R.dimen.quote_margin);
+            sQuoteWidth = (int) context.getResources().getDimension(R.dimen.quote_width);
+            sQuoteColor = ContextCompat.getColor(context, R.color.quote);
         }
         String[] lines = userMessage.split("\n");
 
@@ -395,68 +398,30 @@ public class Formatter {
             start += line.length() - maxIndent + 1;
         }
 
-        view.setText(spannable);
+        return spannable;
     }
 
     @BindingAdapter("regexpLinkifyCommitsOnly")
     public static void toRegExLinkifyCommitsOnly(RegExLinkifyTextView view, Boolean only) {
-        List<RegExLink> linksScanners = new ArrayList<>();
-
-        if (mAccount != null) {
-            linksScanners.addAll(
-                    RegExLinkifyTextView.createRepositoryRegExpLinks(mAccount.mRepository));
-        }
+        view.setLinkifier(getUserMessageLinkifier(only));
+    }
 
-        if (only) {
-            linksScanners.add(RegExLinkifyTextView.GERRIT_CHANGE_ID_REGEX);
-            linksScanners.add(RegExLinkifyTextView.GERRIT_COMMIT_REGEX);
-        }
+    public static Linkifier getUserMessageLinkifier(boolean commits) {
+        return LinkifierCache.getUserMessageLinkifier(mAccount, commits);
+    }
 
-        if (!linksScanners.isEmpty()) {
-            view.addRegEx(linksScanners.toArray(new RegExLink[0]));
-        }
+    /**
+     * Returns a key that identifies the current configuration used to render user messages
+     * (the account, which defines the repository links, and how scores are highlighted).
+     */
+    public static String getUserMessageRenderConfig() {
+        return (mAccount == null ? "" : mAccount.getAccountHash())
+                + "/" + sHighlightScoredMessages;
     }
 
     @BindingAdapter("regexpLinkify")
     public static void toRegExLinkify(RegExLinkifyTextView view, ConfigInfo info) {
-        List<RegExLink> linksScanners = new ArrayList<>();
-        linksScanners.add(RegExLinkifyTextView.GERRIT_CHANGE_ID_REGEX);
-        linksScanners.add(RegExLinkifyTextView.GERRIT_COMMIT_REGEX);
-        if (mAccount != null) {
-            linksScanners.addAll(
-                    RegExLinkifyTextView.createRepositoryRegExpLinks(mAccount.mRepository));
-        }
-
-        if (info != null && info.commentLinks != null) {
-            for (String key : info.commentLinks.keySet()) {
-                switch (key) {
-                    case "changeid":
-                    case "commit":
-                        break;
-                    default:
-                        String match = info.commentLinks.get(key).match;
-                        String link = info.commentLinks.get(key).link;
-                        String htmlLink = StringHelper.extractLinkFromHtml(
-                                info.commentLinks.get(key).html);
-                        if (TextUtils.isEmpty(match) && TextUtils.isEmpty(link)
-                                && TextUtils.isEmpty(htmlLink)) {
-                            continue;
-                        }
-
-                        // Use link if available, otherwise extract the link from the html
-                        if (TextUtils.isEmpty(link)) {
-                            link = htmlLink;
-                        }
-
-                        // Add the link scanner
-                        linksScanners.add(new RegExLink(RegExLinkifyTextView.WEB_LINK_REGEX.mType,
-                                match, link, true));
-                        break;
-                }
-            }
-        }
-
-        view.addRegEx(linksScanners.toArray(new RegExLink[0]));
+        view.setLinkifier(LinkifierCache.getConfigLinkifier(mAccount, info));
     }
 
     @BindingAdapter("committer")
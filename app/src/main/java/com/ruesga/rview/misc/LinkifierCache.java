@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2016 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.rview.misc;
+
+import android.text.TextUtils;
+import android.util.LruCache;
+
+import com.ruesga.rview.gerrit.model.CommentLinkInfo;
+import com.ruesga.rview.gerrit.model.ConfigInfo;
+import com.ruesga.rview.model.Account;
+import com.ruesga.rview.model.Repository;
+import com.ruesga.rview.widget.RegExLinkifyTextView;
+import com.ruesga.rview.widget.RegExLinkifyTextView.Linkifier;
+import com.ruesga.rview.widget.RegExLinkifyTextView.RegExLink;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A cache of compiled linkifiers, so the repository and server comment links regexps are
+ * compiled once per account and server configuration instead of once per bound view.
+ */
+public class LinkifierCache {
+
+    private static final int MAX_CACHED_LINKIFIERS = 32;
+
+    private static final LruCache<String, Linkifier> sLinkifiers =
+            new LruCache<>(MAX_CACHED_LINKIFIERS);
+
+    /**
+     * Returns the linkifier of the links that can be handled by the repository.
+     */
+    public static Linkifier getRepositoryLinkifier(Repository repository) {
+        final String key = "repository|" + repository.mUrl;
+        Linkifier linkifier = sLinkifiers.get(key);
+        if (linkifier == null) {
+            linkifier = new Linkifier(
+                    RegExLinkifyTextView.createRepositoryRegExpLinks(repository));
+            sLinkifiers.put(key, linkifier);
+        }
+        return linkifier;
+    }
+
+    /**
+     * Returns the linkifier for user messages: emails, web links, repository links and,
+     * if requested, change ids and commits.
+     */
+    public static Linkifier getUserMessageLinkifier(Account account, boolean commits) {
+        final String key = "message|" + getRepositoryKey(account) + "|" + commits;
+        Linkifier linkifier = sLinkifiers.get(key);
+        if (linkifier == null) {
+            List<RegExLink> regExs = new ArrayList<>();
+            regExs.add(RegExLinkifyTextView.EMAIL_REGEX);
+            regExs.add(RegExLinkifyTextView.WEB_LINK_REGEX);
+            if (account != null) {
+                regExs.addAll(getRepositoryLinkifier(account.mRepository).getRegExs());
+            }
+            if (commits) {
+                regExs.add(RegExLinkifyTextView.GERRIT_CHANGE_ID_REGEX);
+                regExs.add(RegExLinkifyTextView.GERRIT_COMMIT_REGEX);
+            }
+            linkifier = new Linkifier(regExs);
+            sLinkifiers.put(key, linkifier);
+        }
+        return linkifier;
+    }
+
+    /**
+     * Returns the linkifier for the project's comment links of the server configuration,
+     * plus emails, web links, change ids, commits and repository links.
+     */
+    public static Linkifier getConfigLinkifier(Account account, ConfigInfo info) {
+        // Keep the server order of the comment links, which defines their priority
+        final Map<String, CommentLinkInfo> commentLinks =
+                info == null || info.commentLinks == null
+                        ? new HashMap<>() : info.commentLinks;
+        final String key = "config|" + getRepositoryKey(account)
+                + "|" + getCommentLinksVersion(commentLinks);
+        Linkifier linkifier = sLinkifiers.get(key);
+        if (linkifier == null) {
+            List<RegExLink> regExs = new ArrayList<>();
+            regExs.add(RegExLinkifyTextView.EMAIL_REGEX);
+            regExs.add(RegExLinkifyTextView.WEB_LINK_REGEX);
+            regExs.add(RegExLinkifyTextView.GERRIT_CHANGE_ID_REGEX);
+            regExs.add(RegExLinkifyTextView.GERRIT_COMMIT_REGEX);
+            if (account != null) {
+                regExs.addAll(getRepositoryLinkifier(account.mRepository).getRegExs());
+            }
+            regExs.addAll(createCommentLinks(commentLinks));
+            linkifier = new Linkifier(regExs);
+            sLinkifiers.put(key, linkifier);
+        }
+        return linkifier;
+    }
+
+    private static List<RegExLink> createCommentLinks(Map<String, CommentLinkInfo> commentLinks) {
+        List<RegExLink> regExs = new ArrayList<>();
+        for (String key : commentLinks.keySet()) {
+            switch (key) {
+                case "changeid":
+                case "commit":
+                    break;
+                default:
+                    CommentLinkInfo commentLink = commentLinks.get(key);
+                    String match = commentLink.match;
+                    String link = commentLink.link;
+                    String htmlLink = StringHelper.extractLinkFromHtml(commentLink.html);
+                    if (TextUtils.isEmpty(match) && TextUtils.isEmpty(link)
+                            && TextUtils.isEmpty(htmlLink)) {
+                        continue;
+                    }
+
+                    // Use link if available, otherwise extract the link from the html
+                    if (TextUtils.isEmpty(link)) {
+                        link = htmlLink;
+                    }
+
+                    // Add the link scanner
+                    regExs.add(new RegExLink(RegExLinkifyTextView.WEB_LINK_REGEX.mType,
+                            match, link, true));
+                    break;
+            }
+        }
+        return regExs;
+    }
+
+    private static String getRepositoryKey(Account account) {
+        return account == null ? "" : account.mRepository.mUrl;
+    }
+
+    private static String getCommentLinksVersion(Map<String, CommentLinkInfo> commentLinks) {
+        // The server doesn't version its configuration, so just use its content
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, CommentLinkInfo> entry : commentLinks.entrySet()) {
+            CommentLinkInfo commentLink = entry.getValue();
+            sb.append(entry.getKey()).append('\u0000');
+            if (commentLink != null) {
+                sb.append(commentLink.match).append('\u0000')
+                        .append(commentLink.link).append('\u0000')
+                        .append(commentLink.html).append('\u0000');
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -29,12 +29,15 @@ import com.ruesga.rview.attachments.Attachment;
 import com.ruesga.rview.gerrit.Authorization;
 import com.ruesga.rview.gerrit.GerritApi;
 import com.ruesga.rview.gerrit.GerritServiceFactory;
+import com.ruesga.rview.gerrit.filter.Option;
 import com.ruesga.rview.gerrit.model.AccountInfo;
 import com.ruesga.rview.gerrit.model.AddReviewerResultInfo;
 import com.ruesga.rview.gerrit.model.ApprovalInfo;
 import com.ruesga.rview.gerrit.model.ChangeInfo;
 import com.ruesga.rview.gerrit.model.ChangeMessageInfo;
 import com.ruesga.rview.gerrit.model.CommentInfo;
+import com.ruesga.rview.gerrit.model.ContextType;
+import com.ruesga.rview.gerrit.model.DiffInfo;
 import com.ruesga.rview.gerrit.model.Features;
 import com.ruesga.rview.gerrit.model.FileStatus;
 import com.ruesga.rview.gerrit.model.LabelInfo;
@@ -44,11 +47,11 @@ import com.ruesga.rview.gerrit.model.ReviewerStatus;
 import com.ruesga.rview.gerrit.model.ReviewerUpdateInfo;
 import com.ruesga.rview.gerrit.model.RevisionInfo;
 import com.ruesga.rview.gerrit.model.RobotCommentInfo;
+import com.ruesga.rview.gerrit.model.WhitespaceType;
 import com.ruesga.rview.model.Account;
 import com.ruesga.rview.model.Repository;
 import com.ruesga.rview.preferences.Constants;
 import com.ruesga.rview.preferences.Preferences;
-import com.ruesga.rview.widget.RegExLinkifyTextView;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
@@ -136,7 +139,9 @@ public class ModelHelper {
         Authorization authorization = new Authorization(
                 account.mAccount.username, account.mToken, trustAllCerts);
         return GerritServiceFactory.getInstance(
-                context.getApplicationContext(), account.mRepository.mUrl, authorization);
+                context.getApplicationContext(), account.mRepository.mUrl, authorization,
+                CacheHelper.getAccountHttpCacheDir(context, account),
+                CacheHelper.MAX_HTTP_DISK_CACHE);
     }
 
     public static boolean isTemporaryTrustAllCertificatesAccessGranted(Account account) {
@@ -576,12 +581,8 @@ public class ModelHelper {
                 continue;
             }
 
-            List<RegExLinkifyTextView.RegExLink> links =
-                    RegExLinkifyTextView.createRepositoryRegExpLinks(account.mRepository);
-            for (RegExLinkifyTextView.RegExLink link : links) {
-                if (link.mPattern.matcher(url).find()) {
-                    return true;
-                }
+            if (LinkifierCache.getRepositoryLinkifier(account.mRepository).matches(url)) {
+                return true;
             }
         }
         return false;
@@ -770,6 +771,41 @@ public class ModelHelper {
         return ru;
     }
 
+    public static DiffInfo fetchChangeRevisionFileDiff(GerritApi api, int legacyChangeId,
+            String revisionId, String file, Integer base, boolean rectify) {
+        DiffInfo diff = api.getChangeRevisionFileDiff(
+                String.valueOf(legacyChangeId),
+                revisionId,
+                file,
+                base,
+                Option.INSTANCE,
+                null,
+                WhitespaceType.IGNORE_NONE,
+                ContextType.ALL)
+                .blockingFirst();
+        if (rectify) {
+            // Server doesn't return any content diff, so just ensure
+            // the return structure has the proper data
+            diff.content[0].ab = diff.content[0].b;
+            diff.content[0].b = null;
+        }
+        return diff;
+    }
+
+    public static Map<String, List<CommentInfo>> fetchAllChangeRevisionComments(
+            GerritApi api, Account account, String changeId, String revId) {
+        Map<String, List<CommentInfo>> comments =
+                api.getChangeRevisionComments(changeId, revId).blockingFirst();
+
+        // Fetch robot comments if the Gerrit server supports them (2.14 and up)
+        if (account.mServerVersion.getVersion() >= 2.14d) {
+            Map<String, List<RobotCommentInfo>> robotComments =
+                    api.getChangeRevisionRobotComments(changeId, revId).blockingFirst();
+            mergeCommentsAndRobotComments(comments, robotComments);
+        }
+        return comments;
+    }
+
     @SuppressWarnings("ConstantConditions")
     public static void mergeCommentsAndRobotComments(
             Map<String, List<CommentInfo>> comments,
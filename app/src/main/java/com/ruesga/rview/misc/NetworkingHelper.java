@@ -15,10 +15,14 @@
  */
 package com.ruesga.rview.misc;
 
+import android.content.Context;
 import android.util.Log;
 
 import com.ruesga.rview.gerrit.OkHttpHelper;
 
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cache;
 import okhttp3.OkHttpClient;
 import okhttp3.logging.HttpLoggingInterceptor;
 
@@ -26,9 +30,37 @@ public class NetworkingHelper {
 
     private static final String TAG = "NetworkingHelper";
 
+    private static final long MAX_NETWORK_CACHE_SIZE = 10 * 1024 * 1024L;
+
+    private static OkHttpClient sNetworkClient;
+    private static Cache sNetworkCache;
+
+    public static synchronized void initialize(Context context) {
+        if (sNetworkCache == null) {
+            sNetworkCache = new Cache(
+                    CacheHelper.getNetworkCacheDir(context), MAX_NETWORK_CACHE_SIZE);
+            sNetworkClient = null;
+        }
+    }
+
+    /**
+     * Returns the shared client for small requests to 3rd party services. It shares the
+     * connection pool of the Gerrit clients and has its own response cache.
+     */
+    public static synchronized OkHttpClient getNetworkClient() {
+        if (sNetworkClient == null) {
+            OkHttpClient.Builder builder = createNetworkClient();
+            if (sNetworkCache != null) {
+                builder.cache(sNetworkCache);
+            }
+            sNetworkClient = builder.build();
+        }
+        return sNetworkClient;
+    }
+
     public static OkHttpClient.Builder createNetworkClient() {
         return OkHttpHelper.getSafeClientBuilder()
-            .readTimeout(20000, java.util.concurrent.TimeUnit.MILLISECONDS)
+            .readTimeout(20000, TimeUnit.MILLISECONDS)
             .followRedirects(true)
             .followSslRedirects(true)
             .addInterceptor(createLoggingInterceptor());
@@ -46,6 +46,7 @@ import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import androidx.core.app.NotificationCompat;
@@ -77,13 +78,11 @@ public class NotificationsHelper {
 
     @SuppressWarnings("Convert2streamapi")
     public static void recreateNotifications(Context ctx) {
-        List<NotificationEntity> entities = NotificationEntity.getAllNotifications(ctx, true, true);
+        Map<Integer, String> groups = NotificationEntity.getNotificationGroups(ctx, true, true);
         SparseArray<Account> notifications = new SparseArray<>();
-        for (NotificationEntity entity : entities) {
-            if (notifications.indexOfKey(entity.mGroupId) < 0) {
-                notifications.put(entity.mGroupId,
-                        ModelHelper.getAccountFromHash(ctx, entity.mAccountId));
-            }
+        for (Map.Entry<Integer, String> group : groups.entrySet()) {
+            notifications.put(group.getKey(),
+                    ModelHelper.getAccountFromHash(ctx, group.getValue()));
         }
 
         int count = notifications.size();
@@ -149,7 +148,9 @@ public class NotificationsHelper {
         }
 
         // Create an account group summary notification
-        if (AndroidHelper.isNougatOrGreater()) {
+        // (every group is a change, so only read the subjects when there is more than one)
+        if (AndroidHelper.isNougatOrGreater() && NotificationEntity.countAccountNotificationGroups(
+                ctx, account.getAccountHash(), true, true) > 1) {
             List<NotificationEntity> accountEntities =
                     NotificationEntity.getAllAccountNotifications(
                             ctx, account.getAccountHash(), true, true);
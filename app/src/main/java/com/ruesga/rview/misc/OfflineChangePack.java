@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2016 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.rview.misc;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A compact store of the diff cached data of a whole change. All the entries are deflated
+ * and appended to a single file, followed by an index with the position of every entry:
+ * <pre>
+ *   [entry data]* [count (int)] [name (utf), offset (long), length (int), size (int)]*
+ *   [index offset (long)] [updated (long)] [flags (int)] [version (int)] [magic (int)]
+ * </pre>
+ * The footer keeps the last update time of the change the pack was downloaded from, so
+ * the pack can be marked as stale (in place) once the change is updated.
+ */
+public class OfflineChangePack {
+
+    private static final int MAGIC = 0x52565043;
+    private static final int VERSION = 2;
+    private static final int FOOTER_SIZE = 28;
+    private static final int FLAGS_OFFSET = 16;
+
+    private static final int FLAG_STALE = 1;
+
+    private static class Entry {
+        private final long mOffset;
+        private final int mLength;
+        private final int mSize;
+
+        private Entry(long offset, int length, int size) {
+            mOffset = offset;
+            mLength = length;
+            mSize = size;
+        }
+    }
+
+    private static class Index {
+        private final Map<String, Entry> mEntries;
+        private final long mUpdated;
+        private final int mFlags;
+
+        private Index(Map<String, Entry> entries, long updated, int flags) {
+            mEntries = entries;
+            mUpdated = updated;
+            mFlags = flags;
+        }
+    }
+
+    // The index of the last read pack. The diff viewer reads several entries of
+    // the same pack for every file.
+    private static File sIndexFile;
+    private static long sIndexLength;
+    private static Index sIndex;
+
+    /**
+     * Returns the data of the entry or null if the pack or the entry don't exists.
+     */
+    public static byte[] read(File pack, String name) throws IOException {
+        if (!pack.exists()) {
+            return null;
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(pack, "r")) {
+            Entry entry = readIndex(pack, raf).mEntries.get(name);
+            if (entry == null) {
+                return null;
+            }
+            byte[] data = new byte[entry.mLength];
+            raf.seek(entry.mOffset);
+            raf.readFully(data);
+            return inflate(data, entry.mSize);
+        }
+    }
+
+    /**
+     * Returns whether the pack has the entry. Only the index of the pack is read.
+     */
+    public static boolean contains(File pack, String name) throws IOException {
+        return pack.exists() && readIndex(pack).mEntries.containsKey(name);
+    }
+
+    /**
+     * Returns the last update time of the change when the pack was downloaded.
+     */
+    public static long getUpdated(File pack) throws IOException {
+        return readIndex(pack).mUpdated;
+    }
+
+    /**
+     * Returns whether the pack was marked as stale. Returns false if the pack doesn't exists.
+     */
+    public static boolean isStale(File pack) throws IOException {
+        return pack.exists() && (readIndex(pack).mFlags & FLAG_STALE) != 0;
+    }
+
+    /**
+     * Marks the pack as stale. Only the footer is rewritten, the entries are kept as they are.
+     */
+    public static synchronized void markStale(File pack) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(pack, "rw")) {
+            Index index = readIndex(pack, raf);
+            raf.seek(raf.length() - FOOTER_SIZE + FLAGS_OFFSET);
+            raf.writeInt(index.mFlags | FLAG_STALE);
+        } finally {
+            // The length of the pack didn't change
+            invalidateIndex(pack);
+        }
+    }
+
+    /**
+     * Deletes the pack, if exists.
+     */
+    public static boolean delete(File pack) {
+        invalidateIndex(pack);
+        return pack.delete();
+    }
+
+    private static synchronized Index readIndex(File pack) throws IOException {
+        if (pack.equals(sIndexFile) && pack.length() == sIndexLength) {
+            return sIndex;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(pack, "r")) {
+            return readIndex(pack, raf);
+        }
+    }
+
+    private static synchronized Index readIndex(File pack, RandomAccessFile raf)
+            throws IOException {
+        final long length = raf.length();
+        if (pack.equals(sIndexFile) && length == sIndexLength) {
+            return sIndex;
+        }
+
+        if (length < FOOTER_SIZE) {
+            throw new IOException("Invalid pack: " + pack);
+        }
+        raf.seek(length - FOOTER_SIZE);
+        long indexOffset = raf.readLong();
+        long updated = raf.readLong();
+        int flags = raf.readInt();
+        int version = raf.readInt();
+        int magic = raf.readInt();
+        if (magic != MAGIC || version != VERSION
+                || indexOffset < 0 || indexOffset > length - FOOTER_SIZE) {
+            throw new IOException("Invalid pack: " + pack);
+        }
+
+        // Read the whole index at once. RandomAccessFile is not buffered
+        byte[] data = new byte[(int) (length - FOOTER_SIZE - indexOffset)];
+        raf.seek(indexOffset);
+        raf.readFully(data);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        int count = in.readInt();
+        Map<String, Entry> entries = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            String name = in.readUTF();
+            entries.put(name, new Entry(in.readLong(), in.readInt(), in.readInt()));
+        }
+        Index index = new Index(entries, updated, flags);
+
+        sIndexFile = pack;
+        sIndexLength = length;
+        sIndex = index;
+        return index;
+    }
+
+    private static synchronized void invalidateIndex(File pack) {
+        if (pack.equals(sIndexFile)) {
+            sIndexFile = null;
+            sIndex = null;
+        }
+    }
+
+    private static byte[] inflate(byte[] data, int size) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            byte[] out = new byte[size];
+            int read = 0;
+            while (read < size) {
+                int n = inflater.inflate(out, read, size - read);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("Truncated pack entry");
+                }
+                read += n;
+            }
+            return out;
+        } catch (DataFormatException ex) {
+            throw new IOException("Corrupted pack entry", ex);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Writes a new pack. Entries can be added from any thread. The pack replaces the
+     * previous one (if any) only once it is committed.
+     */
+    public static class Writer implements Closeable {
+        private final File mPack;
+        private final File mTemp;
+        private final long mUpdated;
+        private final DataOutputStream mOut;
+        private final Deflater mDeflater = new Deflater(Deflater.BEST_SPEED);
+        private final byte[] mBuffer = new byte[8192];
+        private final Map<String, Entry> mIndex = new LinkedHashMap<>();
+        private long mOffset;
+        private boolean mCommitted;
+
+        public Writer(File pack, long updated) throws IOException {
+            mPack = pack;
+            mUpdated = updated;
+            mTemp = new File(pack.getParentFile(), pack.getName() + ".tmp");
+            mOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mTemp)));
+        }
+
+        public synchronized void put(String name, byte[] data) throws IOException {
+            byte[] deflated = deflate(data);
+            mOut.write(deflated);
+            mIndex.put(name, new Entry(mOffset, deflated.length, data.length));
+            mOffset += deflated.length;
+        }
+
+        public synchronized int size() {
+            return mIndex.size();
+        }
+
+        public synchronized void commit() throws IOException {
+            mOut.writeInt(mIndex.size());
+            for (Map.Entry<String, Entry> e : mIndex.entrySet()) {
+                mOut.writeUTF(e.getKey());
+                mOut.writeLong(e.getValue().mOffset);
+                mOut.writeInt(e.getValue().mLength);
+                mOut.writeInt(e.getValue().mSize);
+            }
+            mOut.writeLong(mOffset);
+            mOut.writeLong(mUpdated);
+            mOut.writeInt(0);
+            mOut.writeInt(VERSION);
+            mOut.writeInt(MAGIC);
+            mOut.close();
+
+            synchronized (OfflineChangePack.class) {
+                invalidateIndex(mPack);
+                if (!mTemp.renameTo(mPack) && (!mPack.delete() || !mTemp.renameTo(mPack))) {
+                    throw new IOException("Failed to write pack: " + mPack);
+                }
+            }
+            mCommitted = true;
+        }
+
+        @Override
+        @SuppressWarnings("ResultOfMethodCallIgnored")
+        public synchronized void close() {
+            mDeflater.end();
+            if (!mCommitted) {
+                IOUtils.closeQuietly(mOut);
+                mTemp.delete();
+            }
+        }
+
+        private byte[] deflate(byte[] data) {
+            mDeflater.reset();
+            mDeflater.setInput(data);
+            mDeflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+            while (!mDeflater.finished()) {
+                int n = mDeflater.deflate(mBuffer);
+                out.write(mBuffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+}
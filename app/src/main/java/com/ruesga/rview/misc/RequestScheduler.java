@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2016 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.rview.misc;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.ruesga.rview.BuildConfig;
+import com.ruesga.rview.gerrit.OkHttpHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+import me.tatarka.rxloader2.safe.SafeObservable;
+
+/**
+ * A scheduler for fan-out requests. Blocking stages run in a bounded pool and non-blocking
+ * requests are just timed, so all the stages whose inputs are already known can be executed
+ * concurrently. Dependencies between stages are expressed by composing the returned
+ * observables (flatMap over the stages they depend on).
+ */
+public class RequestScheduler {
+
+    private static final String TAG = "RequestScheduler";
+
+    private static final int MAX_CONCURRENT_REQUESTS = 6;
+    private static final long KEEP_ALIVE_SECONDS = 30L;
+
+    private static Scheduler sScheduler;
+
+    public static class Timings {
+        private final String mName;
+        private final long mStart;
+        private final List<String> mStages = new ArrayList<>();
+        private final List<Long> mElapsed = new ArrayList<>();
+
+        public Timings(String name) {
+            mName = name;
+            mStart = SystemClock.elapsedRealtime();
+        }
+
+        public synchronized void record(String stage, long elapsed) {
+            mStages.add(stage);
+            mElapsed.add(elapsed);
+        }
+
+        public synchronized String report() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(mName).append(": total=")
+                    .append(SystemClock.elapsedRealtime() - mStart).append("ms");
+            int slowest = -1;
+            int count = mStages.size();
+            for (int i = 0; i < count; i++) {
+                sb.append(String.format(Locale.US, "; %s=%dms", mStages.get(i), mElapsed.get(i)));
+                if (slowest == -1 || mElapsed.get(i) > mElapsed.get(slowest)) {
+                    slowest = i;
+                }
+            }
+            if (slowest != -1) {
+                sb.append("; slowest=").append(mStages.get(slowest));
+            }
+            return sb.toString();
+        }
+
+        public void log() {
+            if (BuildConfig.DEBUG) {
+                Log.d(TAG, report() + "; " + OkHttpHelper.getConnectionStats());
+            }
+        }
+    }
+
+    private static class RequestThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(@SuppressWarnings("NullableProblems") Runnable r) {
+            Thread thread = new Thread(r, "rview-request-" + mCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    public static synchronized Scheduler scheduler() {
+        if (sScheduler == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                    MAX_CONCURRENT_REQUESTS, MAX_CONCURRENT_REQUESTS,
+                    KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), new RequestThreadFactory());
+            executor.allowCoreThreadTimeOut(true);
+            sScheduler = Schedulers.from(executor);
+        }
+        return sScheduler;
+    }
+
+    /**
+     * Returns an observable that executes the callable in the bounded request pool and records
+     * the time spent by the stage in the passed timings.
+     */
+    public static <T> Observable<T> stage(Timings timings, String name, Callable<T> callable) {
+        return SafeObservable.fromNullCallable(() -> {
+                    long start = SystemClock.elapsedRealtime();
+                    try {
+                        return callable.call();
+                    } finally {
+                        timings.record(name, SystemClock.elapsedRealtime() - start);
+                    }
+                })
+                .subscribeOn(scheduler());
+    }
+
+    /**
+     * Returns the passed request, recording the time spent until it completes in the passed
+     * timings. Non-blocking requests don't need the request pool, so they aren't moved to it.
+     */
+    public static <T> Observable<T> stage(Timings timings, String name, Observable<T> request) {
+        return Observable.defer(() -> {
+            final long start = SystemClock.elapsedRealtime();
+            return request.doFinally(() ->
+                    timings.record(name, SystemClock.elapsedRealtime() - start));
+        });
+    }
+}
@@ -20,6 +20,7 @@ import android.os.Parcelable;
 import android.text.TextUtils;
 import android.util.Base64;
 
+import com.google.gson.Gson;
 import com.google.gson.annotations.SerializedName;
 import com.ruesga.rview.gerrit.model.AccountInfo;
 import com.ruesga.rview.gerrit.model.ServerInfo;
@@ -40,9 +41,37 @@ public class Account implements Parcelable, Comparable<Account> {
     @SerializedName("serverVersion") public ServerVersion mServerVersion;
     @SerializedName("serverInfo") public ServerInfo mServerInfo;
 
+    // Memoized hashes (not serialized)
+    private transient String mRepositoryHash;
+    private transient String mAccountHash;
+    private transient String mHashedRepositoryName;
+    private transient String mHashedRepositoryUrl;
+    private transient int mHashedAccountId;
+
     public Account() {
     }
 
+    /**
+     * Creates a copy of the passed account. Nested models are shared with the passed
+     * account, so they must be replaced instead of modified (see
+     * {@link #setAccountStatus(String)}).
+     */
+    public Account(Account account) {
+        mRepository = account.mRepository;
+        mAccount = account.mAccount;
+        mToken = account.mToken;
+        mNotificationsSenderId = account.mNotificationsSenderId;
+        mServerVersion = account.mServerVersion;
+        mServerInfo = account.mServerInfo;
+        synchronized (account) {
+            mRepositoryHash = account.mRepositoryHash;
+            mAccountHash = account.mAccountHash;
+            mHashedRepositoryName = account.mHashedRepositoryName;
+            mHashedRepositoryUrl = account.mHashedRepositoryUrl;
+            mHashedAccountId = account.mHashedAccountId;
+        }
+    }
+
     protected Account(Parcel in) {
         mRepository = SerializationManager.getInstance().fromJson(in.readString(), Repository.class);
         mAccount = SerializationManager.getInstance().fromJson(in.readString(), AccountInfo.class);
@@ -83,6 +112,14 @@ public class Account implements Parcelable, Comparable<Account> {
         return mServerInfo;
     }
 
+    public void setAccountStatus(String status) {
+        // The account info is shared with the copies of this account
+        final Gson gson = SerializationManager.getInstance();
+        AccountInfo account = gson.fromJson(gson.toJson(mAccount), AccountInfo.class);
+        account.status = status;
+        mAccount = account;
+    }
+
     public boolean isSameAs(Account account) {
         return mRepository.mName.equals(account.mRepository.mName)
                 && UriHelper.sanitizeEndpoint(mRepository.mUrl).equals(
@@ -91,14 +128,31 @@ public class Account implements Parcelable, Comparable<Account> {
     }
 
     public String getRepositoryHash() {
-        String hashId = mRepository.mName + "-" + UriHelper.sanitizeEndpoint(mRepository.mUrl);
-        return Base64.encodeToString(hashId.getBytes(), Base64.NO_WRAP);
+        ensureHashes();
+        return mRepositoryHash;
     }
 
     public String getAccountHash() {
-        String hashId = mRepository.mName + "-" + UriHelper.sanitizeEndpoint(mRepository.mUrl)
-                + "-" + mAccount.accountId;
-        return Base64.encodeToString(hashId.getBytes(), Base64.NO_WRAP);
+        ensureHashes();
+        return mAccountHash;
+    }
+
+    private synchronized void ensureHashes() {
+        // Fields are public, so only reuse the hashes while they are computed from the
+        // same repository and account
+        if (mAccountHash != null && TextUtils.equals(mHashedRepositoryName, mRepository.mName)
+                && TextUtils.equals(mHashedRepositoryUrl, mRepository.mUrl)
+                && mHashedAccountId == mAccount.accountId) {
+            return;
+        }
+
+        String hashId = mRepository.mName + "-" + UriHelper.sanitizeEndpoint(mRepository.mUrl);
+        mRepositoryHash = Base64.encodeToString(hashId.getBytes(), Base64.NO_WRAP);
+        hashId += "-" + mAccount.accountId;
+        mAccountHash = Base64.encodeToString(hashId.getBytes(), Base64.NO_WRAP);
+        mHashedRepositoryName = mRepository.mName;
+        mHashedRepositoryUrl = mRepository.mUrl;
+        mHashedAccountId = mAccount.accountId;
     }
 
     public static final Creator<Account> CREATOR = new Creator<Account>() {
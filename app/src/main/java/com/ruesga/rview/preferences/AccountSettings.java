@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2016 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.rview.preferences;
+
+import android.content.SharedPreferences;
+
+import static com.ruesga.rview.preferences.Constants.DEFAULT_DISPLAY_FORMAT;
+import static com.ruesga.rview.preferences.Constants.DEFAULT_FETCHED_ITEMS;
+import static com.ruesga.rview.preferences.Constants.HIGHLIGHT_SCORED_MESSAGE_MESSAGE;
+import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_ANIMATED_AVATARS;
+import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_CI_SHOW;
+import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_DASHBOARD_OUTGOING_SORT;
+import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_DISPLAY_FORMAT;
+import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_DISPLAY_STATUSES;
+import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_FETCHED_ITEMS;
+import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_HANDLE_LINKS;
+import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_HIGHLIGHT_INTRALINE_DIFFS;
+import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_HIGHLIGHT_TABS;
+import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_HIGHLIGHT_TRAILING_WHITESPACES;
+import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_HIGHLIGHT_UNREVIEWED;
+import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_INLINE_COMMENT_IN_MESSAGES;
+import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_MESSAGES_FOLDED;
+import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_MESSAGES_HIGHLIGHT_SCORED;
+import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_SHORT_FILENAMES;
+import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_TEXT_SIZE_FACTOR;
+import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_TOGGLE_CI_MESSAGES;
+import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_TOGGLE_TAGGED_MESSAGES;
+import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_USE_CUSTOM_TABS;
+import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_WRAP_MODE;
+
+/**
+ * An immutable snapshot of the account preferences read in hot paths (adapters, formatters,
+ * diff processors). It's created by {@link Preferences#getAccountSettings} and discarded
+ * when any of the account preferences changes.
+ */
+public class AccountSettings {
+    public final String mDisplayFormat;
+    public final int mFetchedItems;
+    public final boolean mAnimatedAvatars;
+    public final boolean mDisplayStatuses;
+    public final boolean mHighlightUnreviewed;
+    public final boolean mHandleLinks;
+    public final boolean mUseCustomTabs;
+    public final boolean mWrapMode;
+    public final float mTextSizeFactor;
+    public final boolean mHighlightTabs;
+    public final boolean mHighlightTrailingWhitespaces;
+    public final boolean mHighlightIntralineDiffs;
+    public final boolean mMessagesFolded;
+    public final int mMessagesHighlightScored;
+    public final boolean mInlineCommentInMessages;
+    public final boolean mToggleTaggedMessages;
+    public final boolean mToggleCIAccountsMessages;
+    public final boolean mShortFilenames;
+    public final boolean mShowCIStatuses;
+    public final boolean mDashboardOngoingSort;
+
+    AccountSettings(SharedPreferences prefs) {
+        mDisplayFormat = prefs.getString(PREF_ACCOUNT_DISPLAY_FORMAT, DEFAULT_DISPLAY_FORMAT);
+        mFetchedItems = Integer.valueOf(
+                prefs.getString(PREF_ACCOUNT_FETCHED_ITEMS, DEFAULT_FETCHED_ITEMS));
+        mAnimatedAvatars = prefs.getBoolean(PREF_ACCOUNT_ANIMATED_AVATARS, true);
+        mDisplayStatuses = prefs.getBoolean(PREF_ACCOUNT_DISPLAY_STATUSES, true);
+        mHighlightUnreviewed = prefs.getBoolean(PREF_ACCOUNT_HIGHLIGHT_UNREVIEWED, true);
+        mHandleLinks = prefs.getBoolean(PREF_ACCOUNT_HANDLE_LINKS, true);
+        mUseCustomTabs = prefs.getBoolean(PREF_ACCOUNT_USE_CUSTOM_TABS, true);
+        mWrapMode = prefs.getBoolean(PREF_ACCOUNT_WRAP_MODE, true);
+        mTextSizeFactor = prefs.getFloat(
+                PREF_ACCOUNT_TEXT_SIZE_FACTOR, Constants.DEFAULT_TEXT_SIZE_NORMAL);
+        mHighlightTabs = prefs.getBoolean(PREF_ACCOUNT_HIGHLIGHT_TABS, true);
+        mHighlightTrailingWhitespaces =
+                prefs.getBoolean(PREF_ACCOUNT_HIGHLIGHT_TRAILING_WHITESPACES, true);
+        mHighlightIntralineDiffs = prefs.getBoolean(PREF_ACCOUNT_HIGHLIGHT_INTRALINE_DIFFS, true);
+        mMessagesFolded = prefs.getBoolean(PREF_ACCOUNT_MESSAGES_FOLDED, false);
+        mMessagesHighlightScored = Integer.parseInt(prefs.getString(
+                PREF_ACCOUNT_MESSAGES_HIGHLIGHT_SCORED,
+                String.valueOf(HIGHLIGHT_SCORED_MESSAGE_MESSAGE)));
+        mInlineCommentInMessages = prefs.getBoolean(PREF_ACCOUNT_INLINE_COMMENT_IN_MESSAGES, true);
+        mToggleTaggedMessages = prefs.getBoolean(PREF_ACCOUNT_TOGGLE_TAGGED_MESSAGES, false);
+        mToggleCIAccountsMessages = prefs.getBoolean(PREF_ACCOUNT_TOGGLE_CI_MESSAGES, false);
+        mShortFilenames = prefs.getBoolean(PREF_ACCOUNT_SHORT_FILENAMES, false);
+        mShowCIStatuses = prefs.getBoolean(PREF_ACCOUNT_CI_SHOW, true);
+        mDashboardOngoingSort = prefs.getBoolean(PREF_ACCOUNT_DASHBOARD_OUTGOING_SORT, false);
+    }
+}
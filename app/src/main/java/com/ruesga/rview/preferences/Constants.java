@@ -41,6 +41,7 @@ public class Constants {
     public static final String EXTRA_SUBTITLE = "subtitle";
     public static final String EXTRA_ACTION = "action";
     public static final String EXTRA_BASE = "base";
+    public static final String EXTRA_UPDATED = "updated";
     public static final String EXTRA_DATA = "data";
     public static final String EXTRA_FRAGMENT = "fragment";
     public static final String EXTRA_FRAGMENT_ARGS = "fragment_args";
@@ -157,6 +158,8 @@ public class Constants {
     public static final String PREF_ACCOUNT_NOTIFICATIONS_ADVISE = "account_notifications_advise";
     public static final String PREF_ACCOUNT_NOTIFICATIONS = "account_notifications";
     public static final String PREF_ACCOUNT_NOTIFICATIONS_EVENTS = "account_notifications_events";
+    public static final String PREF_ACCOUNT_NOTIFICATIONS_LAST_POLL =
+            "account_notifications_last_poll";
     public static final String PREF_ACCOUNT_EXTERNAL_CATEGORY = "account_external_category";
     public static final String PREF_ACCOUNT_SEARCH_HISTORY = "account_search_history";
     public static final String PREF_ACCOUNT_SEARCH_CLEAR = "account_search_clear";
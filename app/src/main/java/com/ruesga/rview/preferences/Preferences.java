@@ -18,6 +18,7 @@ package com.ruesga.rview.preferences;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.Editor;
+import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.graphics.Bitmap;
 import android.text.TextUtils;
 
@@ -33,9 +34,11 @@ import com.ruesga.rview.model.CustomFilter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
@@ -50,37 +53,24 @@ import static com.ruesga.rview.preferences.Constants.MAX_SEARCH_HISTORY;
 import static com.ruesga.rview.preferences.Constants.MY_FILTERS_GROUP_BASE_ID;
 import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT;
 import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNTS;
-import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_ANIMATED_AVATARS;
 import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_ATTACHMENTS_IMAGE_OPTIMIZATIONS;
 import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_ATTACHMENTS_IMAGE_OPTIMIZATIONS_FORMAT;
 import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_ATTACHMENTS_IMAGE_OPTIMIZATIONS_QUALITY;
-import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_CI_SHOW;
 import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_CUSTOM_FILTERS;
 import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_DASHBOARD;
-import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_DASHBOARD_OUTGOING_SORT;
 import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_DIFF_MODE;
-import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_DISPLAY_FORMAT;
-import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_DISPLAY_STATUSES;
-import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_FETCHED_ITEMS;
 import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_FOLLOWING;
 import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_HANDLE_LINKS;
 import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_HIGHLIGHT_INTRALINE_DIFFS;
 import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_HIGHLIGHT_TABS;
 import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_HIGHLIGHT_TRAILING_WHITESPACES;
-import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_HIGHLIGHT_UNREVIEWED;
 import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_HOME_PAGE;
-import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_INLINE_COMMENT_IN_MESSAGES;
-import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_MESSAGES_FOLDED;
-import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_MESSAGES_HIGHLIGHT_SCORED;
 import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_NOTIFICATIONS;
 import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_NOTIFICATIONS_EVENTS;
+import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_NOTIFICATIONS_LAST_POLL;
 import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_SEARCH_HISTORY;
 import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_SEARCH_MODE;
-import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_SHORT_FILENAMES;
 import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_TEXT_SIZE_FACTOR;
-import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_TOGGLE_CI_MESSAGES;
-import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_TOGGLE_TAGGED_MESSAGES;
-import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_USE_CUSTOM_TABS;
 import static com.ruesga.rview.preferences.Constants.PREF_ACCOUNT_WRAP_MODE;
 import static com.ruesga.rview.preferences.Constants.PREF_IS_FIRST_RUN;
 import static com.ruesga.rview.preferences.Constants.SEARCH_LAST_MODE;
@@ -88,6 +78,19 @@ import static com.ruesga.rview.preferences.Constants.SEARCH_MODE_CHANGE;
 
 public class Preferences {
 
+    // Accounts are parsed once and kept until the accounts preferences change. Callers only
+    // get copies of them, which must be saved (addOrUpdateAccount) after modifying them.
+    private static final Object sAccountsLock = new Object();
+    private static List<Account> sAccounts;
+    private static Account sAccount;
+    private static boolean sAccountLoaded;
+    private static OnSharedPreferenceChangeListener sAccountsListener;
+
+    private static final Map<String, AccountSettings> sAccountSettings = new HashMap<>();
+    // SharedPreferences only keeps weak references to its listeners
+    private static final Map<String, OnSharedPreferenceChangeListener> sAccountSettingsListeners =
+            new HashMap<>();
+
     private static String getPreferencesName(Context context) {
         return context.getPackageName();
     }
@@ -123,6 +126,16 @@ public class Preferences {
     }
 
     public static Account getAccount(Context context) {
+        synchronized (sAccountsLock) {
+            if (!sAccountLoaded) {
+                sAccount = loadAccount(context);
+                sAccountLoaded = true;
+            }
+            return sAccount != null ? new Account(sAccount) : null;
+        }
+    }
+
+    private static Account loadAccount(Context context) {
         final Gson gson = SerializationManager.getInstance();
         String value = getPreferences(context).getString(PREF_ACCOUNT, null);
         if (value == null) {
@@ -131,8 +144,7 @@ public class Preferences {
 
         // Ensure we obtain the most refreshed data from account
         Account account = gson.fromJson(value, Account.class);
-        List<Account> accounts = getAccounts(context);
-        for (Account acct : accounts) {
+        for (Account acct : loadAccounts(context)) {
             if (acct.getAccountHash().equals(account.getAccountHash())) {
                 return acct;
             }
@@ -149,19 +161,57 @@ public class Preferences {
             editor.remove(PREF_ACCOUNT);
         }
         editor.apply();
+        invalidateAccounts();
     }
 
     public static List<Account> getAccounts(Context context) {
-        final Gson gson = SerializationManager.getInstance();
-        Set<String> set = getPreferences(context).getStringSet(PREF_ACCOUNTS, null);
-        List<Account> accounts = new ArrayList<>();
-        if (set != null) {
-            for (String s : set) {
-                accounts.add(gson.fromJson(s, Account.class));
+        List<Account> accounts = loadAccounts(context);
+        List<Account> copies = new ArrayList<>(accounts.size());
+        for (Account account : accounts) {
+            copies.add(new Account(account));
+        }
+        return copies;
+    }
+
+    private static List<Account> loadAccounts(Context context) {
+        synchronized (sAccountsLock) {
+            if (sAccounts == null) {
+                registerAccountsListener(context);
+
+                final Gson gson = SerializationManager.getInstance();
+                Set<String> set = getPreferences(context).getStringSet(PREF_ACCOUNTS, null);
+                List<Account> accounts = new ArrayList<>();
+                if (set != null) {
+                    for (String s : set) {
+                        accounts.add(gson.fromJson(s, Account.class));
+                    }
+                    Collections.sort(accounts);
+                }
+                sAccounts = Collections.unmodifiableList(accounts);
             }
-            Collections.sort(accounts);
+            return sAccounts;
+        }
+    }
+
+    private static void registerAccountsListener(Context context) {
+        if (sAccountsListener == null) {
+            sAccountsListener = (prefs, key) -> {
+                if (PREF_ACCOUNT.equals(key) || PREF_ACCOUNTS.equals(key)) {
+                    invalidateAccounts();
+                }
+            };
+            getPreferences(context).registerOnSharedPreferenceChangeListener(sAccountsListener);
+        }
+    }
+
+    private static void invalidateAccounts() {
+        // Listeners are notified asynchronously when the preferences are changed
+        // outside the main thread, so writers invalidate the accounts too
+        synchronized (sAccountsLock) {
+            sAccounts = null;
+            sAccount = null;
+            sAccountLoaded = false;
         }
-        return accounts;
     }
 
     public static List<Account> addOrUpdateAccount(Context context, @NonNull Account account) {
@@ -215,12 +265,48 @@ public class Preferences {
         Editor editor = getPreferences(context).edit();
         editor.putStringSet(PREF_ACCOUNTS, set);
         editor.apply();
+        invalidateAccounts();
     }
 
     public static void removeAccountPreferences(Context context, Account account) {
         Editor editor = getAccountPreferences(context, account).edit();
         editor.clear();
         editor.apply();
+
+        // Clearing the preferences doesn't notify the listeners on all platforms
+        synchronized (sAccountSettings) {
+            sAccountSettings.remove(getAccountPreferencesName(account));
+        }
+    }
+
+    /**
+     * Returns a snapshot of the account preferences read in hot paths, or null if there is
+     * no account.
+     */
+    public static AccountSettings getAccountSettings(Context context, Account account) {
+        if (account == null) {
+            return null;
+        }
+
+        final String name = getAccountPreferencesName(account);
+        synchronized (sAccountSettings) {
+            AccountSettings settings = sAccountSettings.get(name);
+            if (settings == null) {
+                SharedPreferences prefs = getAccountPreferences(context, account);
+                if (!sAccountSettingsListeners.containsKey(name)) {
+                    OnSharedPreferenceChangeListener listener = (p, key) -> {
+                        synchronized (sAccountSettings) {
+                            sAccountSettings.remove(name);
+                        }
+                    };
+                    prefs.registerOnSharedPreferenceChangeListener(listener);
+                    sAccountSettingsListeners.put(name, listener);
+                }
+                settings = new AccountSettings(prefs);
+                sAccountSettings.put(name, settings);
+            }
+            return settings;
+        }
     }
 
     public static String getAccountHomePage(Context context, Account account) {
@@ -263,36 +349,30 @@ public class Preferences {
         if (account == null) {
             return Integer.valueOf(DEFAULT_FETCHED_ITEMS);
         }
-        return Integer.valueOf(getAccountPreferences(context, account).getString(
-                PREF_ACCOUNT_FETCHED_ITEMS, DEFAULT_FETCHED_ITEMS));
+        return getAccountSettings(context, account).mFetchedItems;
     }
 
     public static String getAccountDisplayFormat(Context context, Account account) {
         if (account == null) {
             return DEFAULT_DISPLAY_FORMAT;
         }
-        return getAccountPreferences(context, account).getString(
-                PREF_ACCOUNT_DISPLAY_FORMAT, DEFAULT_DISPLAY_FORMAT);
+        return getAccountSettings(context, account).mDisplayFormat;
     }
 
     public static boolean isAccountAnimatedAvatars(Context context, Account account) {
-        return account == null || getAccountPreferences(context, account)
-                .getBoolean(PREF_ACCOUNT_ANIMATED_AVATARS, true);
+        return account == null || getAccountSettings(context, account).mAnimatedAvatars;
     }
 
     public static boolean isAccountDisplayStatuses(Context context, Account account) {
-        return account == null || getAccountPreferences(context, account)
-                .getBoolean(PREF_ACCOUNT_DISPLAY_STATUSES, true);
+        return account == null || getAccountSettings(context, account).mDisplayStatuses;
     }
 
     public static boolean isAccountHighlightUnreviewed(Context context, Account account) {
-        return account == null || getAccountPreferences(context, account)
-                .getBoolean(PREF_ACCOUNT_HIGHLIGHT_UNREVIEWED, true);
+        return account == null || getAccountSettings(context, account).mHighlightUnreviewed;
     }
 
     public static boolean isAccountHandleLinks(Context context, Account account) {
-        return account == null || getAccountPreferences(context, account)
-                .getBoolean(PREF_ACCOUNT_HANDLE_LINKS, true);
+        return account == null || getAccountSettings(context, account).mHandleLinks;
     }
 
     public static void setAccountHandleLinks(Context context, Account account, boolean status) {
@@ -306,8 +386,7 @@ public class Preferences {
     }
 
     public static boolean isAccountUseCustomTabs(Context context, Account account) {
-        return account == null || getAccountPreferences(context, account)
-                .getBoolean(PREF_ACCOUNT_USE_CUSTOM_TABS, true);
+        return account == null || getAccountSettings(context, account).mUseCustomTabs;
     }
 
     public static String getAccountDiffMode(Context context, Account account) {
@@ -330,8 +409,7 @@ public class Preferences {
     }
 
     public static boolean getAccountWrapMode(Context context, Account account) {
-        return account == null ||
-                getAccountPreferences(context, account).getBoolean(PREF_ACCOUNT_WRAP_MODE, true);
+        return account == null || getAccountSettings(context, account).mWrapMode;
     }
 
     public static void setAccountWrapMode(Context context, Account account, boolean wrap) {
@@ -349,8 +427,7 @@ public class Preferences {
             return Constants.DEFAULT_TEXT_SIZE_NORMAL;
         }
 
-        return getAccountPreferences(context, account).getFloat(
-                PREF_ACCOUNT_TEXT_SIZE_FACTOR, Constants.DEFAULT_TEXT_SIZE_NORMAL);
+        return getAccountSettings(context, account).mTextSizeFactor;
     }
 
     public static void setAccountTextSizeFactor(
@@ -365,8 +442,7 @@ public class Preferences {
     }
 
     public static boolean isAccountHighlightTabs(Context context, Account account) {
-        return account == null || getAccountPreferences(
-                context, account).getBoolean(PREF_ACCOUNT_HIGHLIGHT_TABS, true);
+        return account == null || getAccountSettings(context, account).mHighlightTabs;
     }
 
     public static void setAccountHighlightTabs(
@@ -381,8 +457,7 @@ public class Preferences {
     }
 
     public static boolean isAccountHighlightTrailingWhitespaces(Context context, Account account) {
-        return account == null || getAccountPreferences(
-                context, account).getBoolean(PREF_ACCOUNT_HIGHLIGHT_TRAILING_WHITESPACES, true);
+        return account == null || getAccountSettings(context, account).mHighlightTrailingWhitespaces;
     }
 
     public static void setAccountHighlightTrailingWhitespaces(
@@ -397,8 +472,7 @@ public class Preferences {
     }
 
     public static boolean isAccountHighlightIntralineDiffs(Context context, Account account) {
-        return account == null || getAccountPreferences(
-                context, account).getBoolean(PREF_ACCOUNT_HIGHLIGHT_INTRALINE_DIFFS, true);
+        return account == null || getAccountSettings(context, account).mHighlightIntralineDiffs;
     }
 
     public static void setAccountHighlightIntralineDiffs(
@@ -432,37 +506,30 @@ public class Preferences {
     }
 
     public static boolean isAccountMessagesFolded(Context context, Account account) {
-        return account != null && getAccountPreferences(
-                context, account).getBoolean(PREF_ACCOUNT_MESSAGES_FOLDED, false);
+        return account != null && getAccountSettings(context, account).mMessagesFolded;
     }
 
     public static int getAccountMessagesHighlightScored(Context context, Account account) {
         if (account == null) {
             return HIGHLIGHT_SCORED_MESSAGE_MESSAGE;
         }
-        return Integer.parseInt(getAccountPreferences(
-                context, account).getString(PREF_ACCOUNT_MESSAGES_HIGHLIGHT_SCORED,
-                        String.valueOf(HIGHLIGHT_SCORED_MESSAGE_MESSAGE)));
+        return getAccountSettings(context, account).mMessagesHighlightScored;
     }
 
     public static boolean isAccountInlineCommentInMessages(Context context, Account account) {
-        return account == null || getAccountPreferences(
-                context, account).getBoolean(PREF_ACCOUNT_INLINE_COMMENT_IN_MESSAGES, true);
+        return account == null || getAccountSettings(context, account).mInlineCommentInMessages;
     }
 
     public static boolean isAccountToggleTaggedMessages(Context context, Account account) {
-        return account != null && getAccountPreferences(
-                context, account).getBoolean(PREF_ACCOUNT_TOGGLE_TAGGED_MESSAGES, false);
+        return account != null && getAccountSettings(context, account).mToggleTaggedMessages;
     }
 
     public static boolean isAccountToggleCIAccountsMessages(Context context, Account account) {
-        return account != null && getAccountPreferences(
-                context, account).getBoolean(PREF_ACCOUNT_TOGGLE_CI_MESSAGES, false);
+        return account != null && getAccountSettings(context, account).mToggleCIAccountsMessages;
     }
 
     public static boolean isAccountShortFilenames(Context context, Account account) {
-        return account != null && getAccountPreferences(
-                context, account).getBoolean(PREF_ACCOUNT_SHORT_FILENAMES, false);
+        return account != null && getAccountSettings(context, account).mShortFilenames;
     }
 
     public static boolean isAccountImageAttachmentsOptimizations(Context context, Account account) {
@@ -491,8 +558,7 @@ public class Preferences {
     }
 
     public static boolean isAccountShowCIStatuses(Context context, Account account) {
-        return account == null || getAccountPreferences(
-                context, account).getBoolean(PREF_ACCOUNT_CI_SHOW, true);
+        return account == null || getAccountSettings(context, account).mShowCIStatuses;
     }
 
     public static List<CustomFilter> getAccountCustomFilters(Context context, Account account) {
@@ -594,6 +660,22 @@ public class Preferences {
         return events;
     }
 
+    public static long getAccountNotificationsLastPoll(Context context, Account account) {
+        return account == null ? 0L : getAccountPreferences(
+                context, account).getLong(PREF_ACCOUNT_NOTIFICATIONS_LAST_POLL, 0L);
+    }
+
+    public static void setAccountNotificationsLastPoll(
+            Context context, Account account, long lastPoll) {
+        if (account == null) {
+            return;
+        }
+
+        Editor editor = getAccountPreferences(context, account).edit();
+        editor.putLong(PREF_ACCOUNT_NOTIFICATIONS_LAST_POLL, lastPoll);
+        editor.apply();
+    }
+
     public static String[] getAccountSearchHistory(Context context, Account account, int type) {
         if (account == null) {
             return null;
@@ -666,8 +748,7 @@ public class Preferences {
     }
 
     public static boolean isAccountDashboardOngoingSort(Context context, Account account) {
-        return account != null && getAccountPreferences(context, account)
-                .getBoolean(PREF_ACCOUNT_DASHBOARD_OUTGOING_SORT, false);
+        return account != null && getAccountSettings(context, account).mDashboardOngoingSort;
     }
 
     public static Set<AccountInfo> getAccountFollowingState(Context context, Account account) {
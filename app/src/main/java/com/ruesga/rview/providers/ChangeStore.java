@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2016 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.rview.providers;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import com.ruesga.rview.gerrit.adapters.InterningScope;
+import com.ruesga.rview.gerrit.filter.ChangeQueryEvaluator;
+import com.ruesga.rview.gerrit.filter.ChangeQueryEvaluator.Predicate;
+import com.ruesga.rview.gerrit.filter.antlr.QueryParseException;
+import com.ruesga.rview.gerrit.model.ChangeInfo;
+import com.ruesga.rview.misc.SerializationManager;
+import com.ruesga.rview.model.Account;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A local store of the fetched changes, so change queries can be answered from the device
+ * (see {@link ChangeQueryEvaluator}) while they are fetched from the server. The store is
+ * just a cache: it's trimmed to the most recently updated changes of every account and
+ * it can be dropped at any time.
+ */
+public class ChangeStore {
+
+    private static final String TAG = "ChangeStore";
+
+    private static final int VERSION = 1;
+    private static final String DATABASE_NAME = "changes.db";
+
+    private static final int MAX_CHANGES_PER_ACCOUNT = 2000;
+
+    static final String TABLE_NAME = "changes";
+
+    static final String ACCOUNT_ID = "account_id";
+    static final String CHANGE_ID = "change_id";
+    static final String PROJECT = ChangeQueryEvaluator.COLUMN_PROJECT;
+    static final String BRANCH = ChangeQueryEvaluator.COLUMN_BRANCH;
+    static final String OWNER = ChangeQueryEvaluator.COLUMN_OWNER;
+    static final String STATUS = ChangeQueryEvaluator.COLUMN_STATUS;
+    static final String UPDATED = ChangeQueryEvaluator.COLUMN_UPDATED;
+    static final String CHANGE = "change";
+
+    private static final String[] CHANGE_PROJECTION = {CHANGE};
+
+    private static class ChangeStoreHelper extends SQLiteOpenHelper {
+        ChangeStoreHelper(Context context) {
+            super(context, DATABASE_NAME, null, VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            Log.i(TAG, "Database created at version level " + VERSION);
+            recreateDatabase(db);
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            // Just a cache. Start again
+            Log.i(TAG, "Database was upgraded from " + oldVersion + " to " + newVersion + ".");
+            recreateDatabase(db);
+        }
+
+        @Override
+        public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            Log.i(TAG, "Database was downgraded from " + oldVersion + " to " + newVersion + ".");
+            recreateDatabase(db);
+        }
+
+        private void recreateDatabase(SQLiteDatabase db) {
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME + ";");
+            db.execSQL("CREATE TABLE " + TABLE_NAME + " (" +
+                    ACCOUNT_ID + " TEXT NOT NULL, " +
+                    CHANGE_ID + " TEXT NOT NULL, " +
+                    PROJECT + " TEXT, " +
+                    BRANCH + " TEXT, " +
+                    OWNER + " INTEGER, " +
+                    STATUS + " TEXT, " +
+                    UPDATED + " INTEGER, " +
+                    CHANGE + " TEXT NOT NULL, " +
+                    "PRIMARY KEY (" + ACCOUNT_ID + ", " + CHANGE_ID + "));");
+            createIndex(db, UPDATED);
+            createIndex(db, PROJECT);
+            createIndex(db, BRANCH);
+            createIndex(db, OWNER);
+            createIndex(db, STATUS);
+            Log.i(TAG, TABLE_NAME + " table created.");
+        }
+
+        private void createIndex(SQLiteDatabase db, String column) {
+            // Changes are always returned by update date, so keep it as part of every index
+            db.execSQL("CREATE INDEX " + TABLE_NAME + "_" + column + "_idx ON " + TABLE_NAME
+                    + "(" + ACCOUNT_ID + ", " + column
+                    + (column.equals(UPDATED) ? "" : ", " + UPDATED) + ");");
+        }
+    }
+
+    private static ChangeStore sInstance;
+
+    private final ChangeStoreHelper mHelper;
+
+    public static synchronized ChangeStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ChangeStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ChangeStore(Context context) {
+        mHelper = new ChangeStoreHelper(context);
+    }
+
+    /**
+     * Evaluates the query over the stored changes of the account.
+     *
+     * @return the matching changes sorted by update date, or null if the query can't be
+     * evaluated locally.
+     */
+    public List<ChangeInfo> query(Account account, String query, int count) {
+        final Predicate predicate;
+        try {
+            predicate = ChangeQueryEvaluator.compile(query, account.mAccount);
+        } catch (QueryParseException ex) {
+            return null;
+        }
+        if (predicate == null) {
+            return null;
+        }
+
+        List<String> args = new ArrayList<>();
+        args.add(account.getAccountHash());
+        String selection = predicate.toSelection(args);
+        String where = ACCOUNT_ID + " = ?" + (selection != null ? " AND (" + selection + ")" : "");
+        String sort = UPDATED + " DESC";
+        // Only an exact selection can be limited. Otherwise, filter until having enough changes
+        String limit = predicate.isExact() ? String.valueOf(count) : null;
+
+        List<ChangeInfo> changes = new ArrayList<>();
+        try {
+            Cursor c = mHelper.getReadableDatabase().query(TABLE_NAME, CHANGE_PROJECTION,
+                    where, args.toArray(new String[0]), null, null, sort, limit);
+            // Every change is stored apart, so share the accounts and strings between them
+            InterningScope.begin();
+            try {
+                while (changes.size() < count && c.moveToNext()) {
+                    ChangeInfo change = SerializationManager.getInstance().fromJson(
+                            c.getString(0), ChangeInfo.class);
+                    if (predicate.matches(change)) {
+                        changes.add(change);
+                    }
+                }
+            } finally {
+                InterningScope.end();
+                c.close();
+            }
+        } catch (RuntimeException ex) {
+            Log.w(TAG, "Failed to query the stored changes", ex);
+            return null;
+        }
+        return changes;
+    }
+
+    /**
+     * Stores or replaces the passed changes.
+     */
+    public void put(Account account, List<ChangeInfo> changes) {
+        reconcile(account, null, changes, false);
+    }
+
+    /**
+     * Stores the first page returned by the server for the query, and removes the stored
+     * changes that match the query locally, but weren't returned by the server (they were
+     * updated since they were stored, and don't match the query anymore).
+     *
+     * @param complete whether the server returned all the changes of the query.
+     */
+    public void reconcile(Account account, String query,
+            List<ChangeInfo> changes, boolean complete) {
+        Predicate predicate = null;
+        if (query != null) {
+            try {
+                predicate = ChangeQueryEvaluator.compile(query, account.mAccount);
+            } catch (QueryParseException ex) {
+                // Ignore
+            }
+        }
+
+        final String accountId = account.getAccountHash();
+        try {
+            SQLiteDatabase db = mHelper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                long oldest = Long.MAX_VALUE;
+                Set<String> ids = new HashSet<>();
+                for (ChangeInfo change : changes) {
+                    if (change.id == null) {
+                        continue;
+                    }
+                    ids.add(change.id);
+                    if (change.updated != null) {
+                        oldest = Math.min(oldest, change.updated.getTime());
+                    }
+                    db.insertWithOnConflict(TABLE_NAME, null, toContentValues(accountId, change),
+                            SQLiteDatabase.CONFLICT_REPLACE);
+                }
+
+                if (predicate != null) {
+                    removeStaleChanges(db, accountId, predicate, ids, complete ? 0 : oldest);
+                }
+                trim(db, accountId);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (RuntimeException ex) {
+            Log.w(TAG, "Failed to store the changes", ex);
+        }
+    }
+
+    public void deleteAccountChanges(String accountId) {
+        try {
+            mHelper.getWritableDatabase().delete(
+                    TABLE_NAME, ACCOUNT_ID + " = ?", new String[]{accountId});
+        } catch (RuntimeException ex) {
+            Log.w(TAG, "Failed to delete the account changes", ex);
+        }
+    }
+
+    private void removeStaleChanges(SQLiteDatabase db, String accountId,
+            Predicate predicate, Set<String> ids, long since) {
+        // The server returns the changes sorted by update date, so every change updated
+        // after the oldest returned one should have been returned
+        List<String> args = new ArrayList<>();
+        args.add(accountId);
+        args.add(String.valueOf(since));
+        String selection = predicate.toSelection(args);
+        String where = ACCOUNT_ID + " = ? AND " + UPDATED + " >= ?"
+                + (selection != null ? " AND (" + selection + ")" : "");
+        List<String> stale = new ArrayList<>();
+        Cursor c = db.query(TABLE_NAME, new String[]{CHANGE_ID, CHANGE},
+                where, args.toArray(new String[0]), null, null, null);
+        try {
+            while (c.moveToNext()) {
+                String id = c.getString(0);
+                if (!ids.contains(id) && predicate.matches(SerializationManager.getInstance()
+                        .fromJson(c.getString(1), ChangeInfo.class))) {
+                    stale.add(id);
+                }
+            }
+        } finally {
+            c.close();
+        }
+        for (String id : stale) {
+            db.delete(TABLE_NAME, ACCOUNT_ID + " = ? AND " + CHANGE_ID + " = ?",
+                    new String[]{accountId, id});
+        }
+    }
+
+    private void trim(SQLiteDatabase db, String accountId) {
+        db.execSQL("DELETE FROM " + TABLE_NAME + " WHERE " + ACCOUNT_ID + " = ? AND "
+                + CHANGE_ID + " NOT IN (SELECT " + CHANGE_ID + " FROM " + TABLE_NAME
+                + " WHERE " + ACCOUNT_ID + " = ? ORDER BY " + UPDATED + " DESC LIMIT "
+                + MAX_CHANGES_PER_ACCOUNT + ");", new String[]{accountId, accountId});
+    }
+
+    private static ContentValues toContentValues(String accountId, ChangeInfo change) {
+        ContentValues values = new ContentValues();
+        values.put(ACCOUNT_ID, accountId);
+        values.put(CHANGE_ID, change.id);
+        values.put(PROJECT, change.project);
+        values.put(BRANCH, change.branch);
+        values.put(OWNER, change.owner != null ? change.owner.accountId : null);
+        values.put(STATUS, change.status != null ? change.status.name() : null);
+        values.put(UPDATED, change.updated != null ? change.updated.getTime() : null);
+        values.put(CHANGE, SerializationManager.getInstance().toJson(change));
+        return values;
+    }
+}
@@ -24,7 +24,7 @@ class DatabaseHelper extends SQLiteOpenHelper {
 
     private static final String TAG = "DatabaseHelper";
 
-    private static final int VERSION = 1;
+    private static final int VERSION = 2;
     private static final String DATABASE_NAME = "rview.db";
 
     DatabaseHelper(Context context) {
@@ -40,6 +40,9 @@ class DatabaseHelper extends SQLiteOpenHelper {
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         Log.i(TAG, "Database was upgraded from " + oldVersion + " to " + newVersion + ".");
+        if (oldVersion < 2) {
+            upgradeToVersion2(db);
+        }
     }
 
     @Override
@@ -62,12 +65,32 @@ class DatabaseHelper extends SQLiteOpenHelper {
                 NotificationEntity.READ + " INTEGER NOT NULL DEFAULT 0, " +
                 NotificationEntity.DISMISSED + " INTEGER NOT NULL DEFAULT 0, " +
                 NotificationEntity.NOTIFICATION + " TEXT NOT NULL);");
-        db.execSQL("CREATE INDEX " + NotificationEntity.TABLE_NAME + "_"
-                + NotificationEntity.GROUP_ID + "_idx ON " +
-                NotificationEntity.TABLE_NAME +"(" + NotificationEntity.GROUP_ID + ");");
-        db.execSQL("CREATE INDEX " + NotificationEntity.TABLE_NAME + "_"
-                + NotificationEntity.ACCOUNT_ID + "_idx ON " +
-                NotificationEntity.TABLE_NAME +"(" + NotificationEntity.ACCOUNT_ID + ");");
+        createNotificationsIndexes(db);
         Log.i(TAG, NotificationEntity.TABLE_NAME + " table created.");
     }
+
+    private void createNotificationsIndexes(SQLiteDatabase db) {
+        // Notifications are always filtered by its group or account, and by its state
+        createNotificationsIndex(db, NotificationEntity.GROUP_ID);
+        createNotificationsIndex(db, NotificationEntity.ACCOUNT_ID);
+    }
+
+    private void createNotificationsIndex(SQLiteDatabase db, String column) {
+        db.execSQL("CREATE INDEX " + NotificationEntity.TABLE_NAME + "_"
+                + column + "_state_idx ON " + NotificationEntity.TABLE_NAME + "("
+                + column + ", "
+                + NotificationEntity.READ + ", "
+                + NotificationEntity.DISMISSED + ", "
+                + NotificationEntity.WHEN + ");");
+    }
+
+    private void upgradeToVersion2(SQLiteDatabase db) {
+        // Replace the single column indexes with the composite ones
+        db.execSQL("DROP INDEX IF EXISTS " + NotificationEntity.TABLE_NAME + "_"
+                + NotificationEntity.GROUP_ID + "_idx;");
+        db.execSQL("DROP INDEX IF EXISTS " + NotificationEntity.TABLE_NAME + "_"
+                + NotificationEntity.ACCOUNT_ID + "_idx;");
+        createNotificationsIndexes(db);
+        Log.i(TAG, NotificationEntity.TABLE_NAME + " table upgraded to version 2.");
+    }
 }
\ No newline at end of file
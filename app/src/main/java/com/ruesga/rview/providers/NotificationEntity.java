@@ -16,7 +16,6 @@
 package com.ruesga.rview.providers;
 
 import android.content.ContentResolver;
-import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
@@ -31,7 +30,12 @@ import com.ruesga.rview.misc.SerializationManager;
 import com.ruesga.rview.model.Notification;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class NotificationEntity implements BaseColumns, Parcelable {
 
@@ -58,6 +62,11 @@ public class NotificationEntity implements BaseColumns, Parcelable {
             NOTIFICATION
     };
 
+    // Projections that don't need to read the notification json
+    private static final String[] ID_PROJECTION = {_ID};
+    private static final String[] GROUPS_PROJECTION = {GROUP_ID, ACCOUNT_ID};
+    private static final String[] GROUPS_COUNT_PROJECTION = {"count(distinct " + GROUP_ID + ")"};
+
     private static final int MESSAGE_ID_IDX = 0;
     private static final int GROUP_ID_IDX = 1;
     private static final int ACCOUNT_ID_IDX = 2;
@@ -161,21 +170,99 @@ public class NotificationEntity implements BaseColumns, Parcelable {
         return stats;
     }
 
+    public static Map<Integer, String> getNotificationGroups(
+            Context context, boolean unread, boolean undismissed) {
+        Map<Integer, String> groups = new HashMap<>();
+        ContentResolver cr = context.getContentResolver();
+        String where = filterByState(null, unread, undismissed);
+        Cursor c  = cr.query(CONTENT_URI, GROUPS_PROJECTION, where, null, null);
+        if (c != null) {
+            try {
+                if (c.moveToFirst()) {
+                    do {
+                        groups.put(c.getInt(0), c.getString(1));
+                    } while (c.moveToNext());
+                }
+            } finally {
+                c.close();
+            }
+        }
+        return groups;
+    }
+
+    public static int countAccountNotificationGroups(
+            Context context, String accountId, boolean unread, boolean undismissed) {
+        ContentResolver cr = context.getContentResolver();
+        String where = filterByState(ACCOUNT_ID + " = ?", unread, undismissed);
+        String[] args = {accountId};
+        Cursor c  = cr.query(CONTENT_URI, GROUPS_COUNT_PROJECTION, where, args, null);
+        if (c != null) {
+            try {
+                if (c.moveToFirst()) {
+                    return c.getInt(0);
+                }
+            } finally {
+                c.close();
+            }
+        }
+        return 0;
+    }
+
+    public static Set<Long> getAccountNotificationIds(Context context, String accountId) {
+        Set<Long> ids = new HashSet<>();
+        ContentResolver cr = context.getContentResolver();
+        String where = ACCOUNT_ID + " = ?";
+        String[] args = {accountId};
+        Cursor c  = cr.query(CONTENT_URI, ID_PROJECTION, where, args, null);
+        if (c != null) {
+            try {
+                if (c.moveToFirst()) {
+                    do {
+                        ids.add(c.getLong(0));
+                    } while (c.moveToNext());
+                }
+            } finally {
+                c.close();
+            }
+        }
+        return ids;
+    }
+
+    private static String filterByState(String where, boolean unread, boolean undismissed) {
+        if (unread) {
+            where = TextUtils.isEmpty(where) ? READ + " = 0" : where + " and " + READ + " = 0";
+        }
+        if (undismissed) {
+            where = TextUtils.isEmpty(where)
+                    ? DISMISSED + " = 0" : where + " and " + DISMISSED + " = 0";
+        }
+        return where;
+    }
+
     public static void addOrUpdate(Context context, NotificationEntity entity) {
+        addOrUpdate(context, Collections.singletonList(entity));
+    }
+
+    public static void addOrUpdate(Context context, List<NotificationEntity> entities) {
+        if (entities.isEmpty()) {
+            return;
+        }
+
+        // The provider upserts all the notifications in a single transaction, keeping
+        // the read and dismissed state of the existing ones
         ContentResolver cr = context.getContentResolver();
-        Uri uri = ContentUris.withAppendedId(CONTENT_URI, entity.mMessageId);
-        ContentValues values = new ContentValues();
-        values.put(GROUP_ID, entity.mGroupId);
-        values.put(ACCOUNT_ID, entity.mAccountId);
-        values.put(WHEN, entity.mWhen);
-        values.remove(READ);
-        values.remove(DISMISSED);
-        values.put(NOTIFICATION, SerializationManager.getInstance().toJson(entity.mNotification));
-
-        if (cr.update(uri, values, null, null) == 0) {
-            values.put(_ID, entity.mMessageId);
-            cr.insert(CONTENT_URI, values);
+        ContentValues[] values = new ContentValues[entities.size()];
+        for (int i = 0; i < values.length; i++) {
+            NotificationEntity entity = entities.get(i);
+            values[i] = new ContentValues();
+            values[i].put(_ID, entity.mMessageId);
+            values[i].put(GROUP_ID, entity.mGroupId);
+            values[i].put(ACCOUNT_ID, entity.mAccountId);
+            values[i].put(WHEN, entity.mWhen);
+            values[i].put(NOTIFICATION,
+                    SerializationManager.getInstance().toJson(entity.mNotification));
         }
+        cr.bulkInsert(CONTENT_URI, values);
     }
 
     public static void markGroupNotificationsAsRead(Context context, int groupId) {
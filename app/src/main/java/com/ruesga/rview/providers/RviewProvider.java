@@ -46,6 +46,9 @@ public class RviewProvider extends ContentProvider {
 
     private DatabaseHelper mOpenHelper;
 
+    // Changes are notified once the whole batch is applied
+    private final ThreadLocal<Boolean> mInBatch = new ThreadLocal<>();
+
     private static final int NOTIFICATIONS_DATA = 1;
     private static final int NOTIFICATIONS_DATA_ID = 2;
 
@@ -176,6 +179,41 @@ public class RviewProvider extends ContentProvider {
         return count;
     }
 
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+        if (sURLMatcher.match(uri) != NOTIFICATIONS_DATA) {
+            return super.bulkInsert(uri, values);
+        }
+
+        // Insert or update all the notifications in a single transaction. The read and
+        // dismissed state of the existing ones are kept.
+        int count = 0;
+        SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (ContentValues v : values) {
+                ContentValues update = new ContentValues(v);
+                update.remove(NotificationEntity._ID);
+                update.remove(NotificationEntity.READ);
+                update.remove(NotificationEntity.DISMISSED);
+                String[] args = {v.getAsString(NotificationEntity._ID)};
+                if (db.update(NotificationEntity.TABLE_NAME, update,
+                        NotificationEntity._ID + " = ?", args) == 0) {
+                    db.insert(NotificationEntity.TABLE_NAME, null, v);
+                }
+                count++;
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        if (count > 0) {
+            notifyChange(uri, null);
+        }
+        return count;
+    }
+
     @NonNull
     @Override
     public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> ops)
@@ -183,18 +221,24 @@ public class RviewProvider extends ContentProvider {
         ContentProviderResult[] results;
         SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         db.beginTransaction();
+        mInBatch.set(Boolean.TRUE);
         try {
             results = super.applyBatch(ops);
             db.setTransactionSuccessful();
         } finally {
+            mInBatch.remove();
             db.endTransaction();
         }
+
+        if (results.length > 0) {
+            notifyChange(NotificationEntity.CONTENT_URI, null);
+        }
         return results;
     }
 
     private void notifyChange(Uri uri, String id) {
         final Context ctx = getContext();
-        if (ctx != null) {
+        if (ctx != null && mInBatch.get() == null) {
             if (DEBUG) {
                 if (id != null) {
                     Log.v(TAG, "notifyChange() id: " + id + "; url " + uri);
@@ -25,6 +25,8 @@ import android.util.Log;
 
 import com.ruesga.rview.BuildConfig;
 import com.ruesga.rview.misc.CacheHelper;
+import com.ruesga.rview.model.Account;
+import com.ruesga.rview.preferences.Preferences;
 
 import java.io.File;
 import java.util.Calendar;
@@ -46,9 +48,16 @@ public class CacheCleanerReceiver extends BroadcastReceiver {
     public static void cleanCache(Context context, boolean force) {
         cleanAttachmentCache(context, false);
         cleanPrivateDirectory(context, force);
+        trimAccountsCache(context);
         schedule(context);
     }
 
+    private static void trimAccountsCache(Context context) {
+        for (Account account : Preferences.getAccounts(context)) {
+            CacheHelper.trimAccountCache(context, account);
+        }
+    }
+
     @SuppressWarnings("ResultOfMethodCallIgnored")
     private static void cleanAttachmentCache(Context context, boolean force) {
         long yesterday = System.currentTimeMillis() - DateUtils.DAY_IN_MILLIS;
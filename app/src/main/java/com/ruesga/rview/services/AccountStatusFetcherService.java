@@ -79,10 +79,10 @@ public class AccountStatusFetcherService extends IntentService {
 
         try {
             if (account.hasAuthenticatedAccessMode() && api.supportsFeature(Features.ACCOUNT_STATUS)) {
-                account.mAccount.status =
-                        api.getAccountStatus(GerritApi.SELF_ACCOUNT).blockingFirst();
+                account.setAccountStatus(
+                        api.getAccountStatus(GerritApi.SELF_ACCOUNT).blockingFirst());
             } else {
-                account.mAccount.status = null;
+                account.setAccountStatus(null);
             }
             Preferences.addOrUpdateAccount(ctx, account);
             notifyAccountStatusChanged(ctx, account);
@@ -90,7 +90,7 @@ public class AccountStatusFetcherService extends IntentService {
         } catch (Exception ex) {
             // Check if feature is supported
             if (ExceptionHelper.isResourceNotFoundException(ex)) {
-                account.mAccount.status = null;
+                account.setAccountStatus(null);
                 Preferences.addOrUpdateAccount(ctx, account);
                 notifyAccountStatusChanged(ctx, account);
                 return;
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2016 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.rview.services;
+
+import android.app.IntentService;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.widget.Toast;
+
+import com.google.gson.Gson;
+import com.ruesga.rview.BuildConfig;
+import com.ruesga.rview.R;
+import com.ruesga.rview.gerrit.GerritApi;
+import com.ruesga.rview.gerrit.model.FileInfo;
+import com.ruesga.rview.misc.CacheHelper;
+import com.ruesga.rview.misc.ModelHelper;
+import com.ruesga.rview.misc.OfflineChangePack;
+import com.ruesga.rview.misc.SerializationManager;
+import com.ruesga.rview.model.Account;
+import com.ruesga.rview.preferences.Constants;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import io.reactivex.Observable;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Downloads the diffs, comments and drafts of all the files of a revision pair of a change
+ * into its offline pack, so the change can be reviewed without connectivity.
+ */
+public class OfflineChangeDownloadService extends IntentService {
+
+    private static final String TAG = "OfflineChangeDownload";
+
+    // The number of entries requested at the same time
+    private static final int MAX_CONCURRENT_REQUESTS = 4;
+
+    public static final String OFFLINE_CHANGE_DOWNLOAD_ACTION =
+            BuildConfig.APPLICATION_ID + ".actions.OFFLINE_CHANGE_DOWNLOAD";
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    public OfflineChangeDownloadService() {
+        super(TAG);
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        if (intent == null || !OFFLINE_CHANGE_DOWNLOAD_ACTION.equals(intent.getAction())) {
+            return;
+        }
+
+        final Context ctx = getApplicationContext();
+        final Account account = ModelHelper.getAccountFromHash(
+                ctx, intent.getStringExtra(Constants.EXTRA_ACCOUNT_HASH));
+        final int legacyChangeId = intent.getIntExtra(Constants.EXTRA_LEGACY_CHANGE_ID, -1);
+        final String revisionId = intent.getStringExtra(Constants.EXTRA_REVISION_ID);
+        final int revision = intent.getIntExtra(Constants.EXTRA_REVISION, -1);
+        final String base = intent.getStringExtra(Constants.EXTRA_BASE);
+        final long updated = intent.getLongExtra(Constants.EXTRA_UPDATED, 0L);
+        if (account == null || legacyChangeId == -1 || revisionId == null || revision == -1) {
+            return;
+        }
+
+        try {
+            performDownload(ctx, account, legacyChangeId, revisionId, revision, base, updated);
+            showMessage(ctx, ctx.getString(R.string.offline_download_completed, legacyChangeId));
+        } catch (Exception ex) {
+            Log.e(TAG, "Failed to download change " + legacyChangeId + " for offline review", ex);
+            showMessage(ctx, ctx.getString(R.string.offline_download_failed, legacyChangeId));
+        }
+    }
+
+    private void performDownload(Context ctx, Account account, int legacyChangeId,
+            String revisionId, int revision, String base, long updated) throws IOException {
+        final GerritApi api = ModelHelper.getGerritApi(ctx, account);
+        final String changeId = String.valueOf(legacyChangeId);
+        final String baseRevision = base == null ? "0" : base;
+        final String currentRevision = String.valueOf(revision);
+        final Integer baseNumber = base == null ? null : Integer.valueOf(base);
+        final boolean isSameBase = baseNumber != null && baseNumber == revision;
+
+        File pack = CacheHelper.getAccountOfflinePackFile(ctx, account, legacyChangeId);
+        try (OfflineChangePack.Writer writer = new OfflineChangePack.Writer(pack, updated)) {
+            // Entries are named as the diff cache files, so the diff viewer can
+            // read them the same way
+            Map<String, FileInfo> files = api.getChangeRevisionFiles(
+                    changeId, revisionId, isSameBase ? null : base, null).blockingFirst();
+            if (!isSameBase) {
+                put(writer, baseRevision + "_" + currentRevision + "_"
+                        + CacheHelper.CACHE_FILES_INFO_JSON, files);
+            }
+
+            Map<String, Callable<?>> entries = new LinkedHashMap<>();
+            entries.put(currentRevision + "_" + CacheHelper.CACHE_COMMENTS_JSON,
+                    () -> ModelHelper.fetchAllChangeRevisionComments(
+                            api, account, changeId, revisionId));
+            if (base != null) {
+                entries.put(baseRevision + "_" + CacheHelper.CACHE_COMMENTS_JSON,
+                        () -> ModelHelper.fetchAllChangeRevisionComments(
+                                api, account, changeId, baseRevision));
+            }
+            if (account.hasAuthenticatedAccessMode()) {
+                entries.put(currentRevision + "_" + CacheHelper.CACHE_DRAFT_JSON,
+                        () -> api.getChangeRevisionDrafts(changeId, revisionId).blockingFirst());
+                if (base != null) {
+                    entries.put(baseRevision + "_" + CacheHelper.CACHE_DRAFT_JSON,
+                            () -> api.getChangeRevisionDrafts(changeId, baseRevision)
+                                    .blockingFirst());
+                }
+            }
+
+            for (Map.Entry<String, FileInfo> entry : files.entrySet()) {
+                final String file = entry.getKey();
+                if (entry.getValue() != null && entry.getValue().binary
+                        && !file.equals(Constants.COMMIT_MESSAGE)) {
+                    // Binary files have no diff to fetch
+                    continue;
+                }
+
+                final boolean rectify = isSameBase && file.equals(Constants.COMMIT_MESSAGE);
+                entries.put(CacheHelper.getDiffCacheFileName(base, currentRevision, file),
+                        () -> ModelHelper.fetchChangeRevisionFileDiff(api, legacyChangeId,
+                                revisionId, file, rectify ? null : baseNumber, rectify));
+            }
+
+            // All the entries are independent. Fetch them with a bounded concurrency of
+            // its own, so a big change doesn't queue up in front of the app requests
+            Observable.fromIterable(entries.entrySet())
+                    .flatMap(entry -> Observable.fromCallable(() -> {
+                                put(writer, entry.getKey(), entry.getValue().call());
+                                return Boolean.TRUE;
+                            }).subscribeOn(Schedulers.io()),
+                            MAX_CONCURRENT_REQUESTS)
+                    .ignoreElements()
+                    .blockingAwait();
+            writer.commit();
+        }
+    }
+
+    private static void put(OfflineChangePack.Writer writer, String name, Object o)
+            throws IOException {
+        final Gson gson = SerializationManager.getInstance();
+        writer.put(name, gson.toJson(o).getBytes());
+    }
+
+    private void showMessage(Context ctx, String message) {
+        mHandler.post(() -> Toast.makeText(ctx, message, Toast.LENGTH_LONG).show());
+    }
+}
@@ -30,6 +30,7 @@ import com.ruesga.rview.gerrit.model.BlameInfo;
 import com.ruesga.rview.gerrit.model.CommentInfo;
 import com.ruesga.rview.gerrit.model.DiffContentInfo;
 import com.ruesga.rview.gerrit.model.DiffInfo;
+import com.ruesga.rview.gerrit.model.DiffIntralineInfo;
 import com.ruesga.rview.gerrit.model.RangeInfo;
 import com.ruesga.rview.misc.AndroidHelper;
 import com.ruesga.rview.misc.Formatter;
@@ -41,8 +42,13 @@ import com.ruesga.rview.widget.DiffView.SkipLineModel;
 import java.lang.ref.WeakReference;
 import java.text.DateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -57,6 +63,297 @@ public class AsyncTextDiffProcessor extends AsyncTask<Void, Void, List<DiffView.
 
     public static final int SKIPPED_LINES = 10;
 
+    private static final String TAB_HIGHLIGHT = "\u00BB    ";
+
+    /**
+     * The intraline edits of one side of a hunk, as absolute offsets. Every line only
+     * visits the edits that overlap it, and lines can be looked up in any order (they
+     * are spanned when they are bound).
+     */
+    static class IntralineEdits {
+        interface OnIntralineEditListener {
+            void onIntralineEdit(int start, int end);
+        }
+
+        private final int[] mStarts;
+        private final int[] mEnds;
+
+        IntralineEdits(List<? extends List<Integer>> edits) {
+            final int count = edits.size();
+            mStarts = new int[count];
+            mEnds = new int[count];
+            int s2 = 0;
+            for (int i = 0; i < count; i++) {
+                List<Integer> intra = edits.get(i);
+                int s1 = s2 + intra.get(0);
+                s2 = s1 + intra.get(1);
+                mStarts[i] = s1;
+                mEnds[i] = s2;
+            }
+        }
+
+        /**
+         * Returns the index of the first edit that doesn't end before the passed offset.
+         */
+        private int seek(int pos) {
+            int low = 0;
+            int high = mEnds.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (mEnds[mid] < pos) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Passes to the listener the edits that overlap the line at the passed offset, as
+         * ranges relative to the line.
+         */
+        void visit(int pos, int length, OnIntralineEditListener listener) {
+            final int end = pos + length;
+            final int count = mStarts.length;
+            for (int i = seek(pos); i < count && mStarts[i] <= end; i++) {
+                listener.onIntralineEdit(
+                        Math.max(pos, mStarts[i]) - pos, Math.min(end, mEnds[i]) - pos);
+            }
+        }
+    }
+
+    /**
+     * An index of the lines of a processed model (line number to model position, or to the
+     * line model if the line is hidden inside a skip marker) used to place comments, drafts
+     * and blames in constant time. Comments are collected per line and merged in the model
+     * once all of them were placed.
+     */
+    static class ModelIndex {
+        private static final int FILE_COMMENTS_POSITION = -1;
+
+        private final List<DiffView.AbstractModel> mModel;
+        private final int[] mPositionsA;
+        private final int[] mPositionsB;
+        private final DiffInfoModel[] mLinesA;
+        private final DiffInfoModel[] mLinesB;
+        private final Map<Integer, List<DiffView.CommentModel>> mComments = new HashMap<>();
+        private int mCommentsCount;
+
+        ModelIndex(List<DiffView.AbstractModel> model) {
+            mModel = model;
+
+            int maxA = 0, maxB = 0;
+            for (DiffView.AbstractModel m : model) {
+                if (m instanceof DiffInfoModel) {
+                    maxA = Math.max(maxA, ((DiffInfoModel) m).a);
+                    maxB = Math.max(maxB, ((DiffInfoModel) m).b);
+                } else if (m instanceof SkipLineModel
+                        && ((SkipLineModel) m).skippedLines != null) {
+                    for (DiffInfoModel diff : ((SkipLineModel) m).skippedLines) {
+                        maxA = Math.max(maxA, diff.a);
+                        maxB = Math.max(maxB, diff.b);
+                    }
+                }
+            }
+
+            mPositionsA = new int[maxA + 1];
+            mPositionsB = new int[maxB + 1];
+            Arrays.fill(mPositionsA, -1);
+            Arrays.fill(mPositionsB, -1);
+            mLinesA = new DiffInfoModel[maxA + 1];
+            mLinesB = new DiffInfoModel[maxB + 1];
+
+            int count = model.size();
+            for (int i = 0; i < count; i++) {
+                DiffView.AbstractModel m = model.get(i);
+                if (m instanceof DiffInfoModel) {
+                    index((DiffInfoModel) m, i);
+                } else if (m instanceof SkipLineModel
+                        && ((SkipLineModel) m).skippedLines != null) {
+                    for (DiffInfoModel diff : ((SkipLineModel) m).skippedLines) {
+                        index(diff, -1);
+                    }
+                }
+            }
+        }
+
+        private void index(DiffInfoModel diff, int position) {
+            if (diff.a > 0) {
+                if (mLinesA[diff.a] == null) {
+                    mLinesA[diff.a] = diff;
+                }
+                if (position != -1 && mPositionsA[diff.a] == -1) {
+                    mPositionsA[diff.a] = position;
+                }
+            }
+            if (diff.b > 0) {
+                if (mLinesB[diff.b] == null) {
+                    mLinesB[diff.b] = diff;
+                }
+                if (position != -1 && mPositionsB[diff.b] == -1) {
+                    mPositionsB[diff.b] = position;
+                }
+            }
+        }
+
+        /**
+         * Returns the model position of a visible line, or -1 if the line isn't visible.
+         */
+        int findLine(boolean isA, int line) {
+            int[] positions = isA ? mPositionsA : mPositionsB;
+            return line > 0 && line < positions.length ? positions[line] : -1;
+        }
+
+        /**
+         * Returns the model of a line, including the hidden ones.
+         */
+        DiffInfoModel findDiff(boolean isA, int line) {
+            DiffInfoModel[] lines = isA ? mLinesA : mLinesB;
+            return line > 0 && line < lines.length ? lines[line] : null;
+        }
+
+        void addComment(CommentInfo comment, boolean isA, boolean isDraft, int mode) {
+            boolean isLeft = comment.patchSet == 0 || isA;
+
+            final int pos;
+            final DiffInfoModel diff;
+            if (comment.line == null && comment.range == null) {
+                // File comment
+                pos = FILE_COMMENTS_POSITION;
+                diff = null;
+            } else if (comment.line == null) {
+                // We don't support comment range yet, so skip this comment
+                return;
+            } else {
+                pos = findLine(isLeft, comment.line);
+                if (pos == -1) {
+                    return;
+                }
+                diff = (DiffInfoModel) mModel.get(pos);
+            }
+
+            List<DiffView.CommentModel> comments = mComments.get(pos);
+            if (comments == null) {
+                comments = new ArrayList<>();
+                mComments.put(pos, comments);
+            }
+
+            if (mode == DiffView.UNIFIED_MODE) {
+                DiffView.CommentModel commentModel = new DiffView.CommentModel();
+                commentModel.diff = diff;
+                commentModel.isDraft = isDraft;
+                commentModel.commentA = comment;
+                comments.add(commentModel);
+                mCommentsCount++;
+                return;
+            }
+
+            // Reuse the first comment view that only has a comment in the other side
+            for (DiffView.CommentModel commentModel : comments) {
+                if ((isLeft && commentModel.commentA == null && commentModel.commentB != null)
+                        || (!isLeft && commentModel.commentB == null
+                                && commentModel.commentA != null)) {
+                    commentModel.diff = diff;
+                    commentModel.isDraft = isDraft;
+                    if (isLeft) {
+                        commentModel.commentA = comment;
+                    } else {
+                        commentModel.commentB = comment;
+                    }
+                    return;
+                }
+            }
+
+            DiffView.CommentModel commentModel = new DiffView.CommentModel();
+            commentModel.diff = diff;
+            commentModel.isDraft = isDraft;
+            if (isLeft) {
+                commentModel.commentA = comment;
+            } else {
+                commentModel.commentB = comment;
+            }
+            comments.add(commentModel);
+            mCommentsCount++;
+        }
+
+        /**
+         * Returns the model with the file comments at the top and the comments of every
+         * line just after the line.
+         */
+        List<DiffView.AbstractModel> toModel() {
+            if (mCommentsCount == 0) {
+                return mModel;
+            }
+
+            int count = mModel.size();
+            List<DiffView.AbstractModel> model = new ArrayList<>(count + mCommentsCount);
+            addComments(model, FILE_COMMENTS_POSITION);
+            for (int i = 0; i < count; i++) {
+                model.add(mModel.get(i));
+                addComments(model, i);
+            }
+            return model;
+        }
+
+        private void addComments(List<DiffView.AbstractModel> model, int pos) {
+            List<DiffView.CommentModel> comments = mComments.get(pos);
+            if (comments != null) {
+                model.addAll(comments);
+            }
+        }
+    }
+
+    /**
+     * The lines of one side of a hunk. Intraline edits and highlights are applied when a
+     * line is bound, from the raw line and its offset in the text of the hunk.
+     */
+    private class HunkLineSource extends DiffView.LineSource {
+        private final String[] mLines;
+        private final IntralineEdits mEdits;
+        private final String mOther;
+        private final int mColor;
+
+        private HunkLineSource(String[] lines, IntralineEdits edits, String other, int color) {
+            mLines = lines;
+            mEdits = edits;
+            mOther = other;
+            mColor = color;
+        }
+
+        @Override
+        public String lineAt(int index) {
+            return mLines[index];
+        }
+
+        @Override
+        public CharSequence span(int index, int offset) {
+            final String line = mLines[index];
+            CharSequence text = prepareTabs(line);
+            if (mEdits != null) {
+                Spannable span = Spannable.Factory.getInstance().newSpannable(text);
+                applyIntralineEdits(span, mEdits, offset, line.length(), mColor);
+                text = span;
+            } else if (mOther != null) {
+                // No intraline data, but it still could differ at start or at end
+                text = processNoIntralineData(line, mOther, mColor);
+            }
+            return processHighlights(text);
+        }
+
+        @Override
+        public int displayLength(int index) {
+            final String line = mLines[index];
+            int length = line.length();
+            if (mHighlightTabs) {
+                for (int i = line.indexOf('\t'); i != -1; i = line.indexOf('\t', i + 1)) {
+                    length += TAB_HIGHLIGHT.length() - 1;
+                }
+            }
+            return length;
+        }
+    }
+
     private final Pattern HIGHLIGHT_TRAIL_SPACES_PATTERN
             = Pattern.compile("( )+$", Pattern.MULTILINE);
 
@@ -67,11 +364,29 @@ public class AsyncTextDiffProcessor extends AsyncTask<Void, Void, List<DiffView.
     private final Pair<List<CommentInfo>, List<CommentInfo>> mComments;
     private final Pair<List<CommentInfo>, List<CommentInfo>> mDrafts;
     private final Pair<List<BlameInfo>, List<BlameInfo>> mBlames;
+    private final Set<Integer> mCommentedLinesA = new HashSet<>();
+    private final Set<Integer> mCommentedLinesB = new HashSet<>();
     private final boolean mHighlightTabs;
     private final boolean mHighlightTrailingWhitespaces;
     private final boolean mHighlightIntralineDiffs;
     private final OnTextDiffProcessEndedListener mCallback;
 
+    private final int mNoColor;
+    private final int mAddedBgColor;
+    private final int mAddedDueRebaseBgColor;
+    private final int mAddedFgColor;
+    private final int mAddedDueRebaseFgColor;
+    private final int mDeletedBgColor;
+    private final int mDeletedDueRebaseBgColor;
+    private final int mDeletedFgColor;
+    private final int mDeletedDueRebaseFgColor;
+    private final int mHighlightColor;
+
+    private int mLineNumberA;
+    private int mLineNumberB;
+    private DiffContentInfo mPendingHunk;
+    private int mStreamedHunks;
+
     public AsyncTextDiffProcessor(Context context, int mode, DiffInfo diff,
             Pair<List<CommentInfo>, List<CommentInfo>> comments,
             Pair<List<CommentInfo>, List<CommentInfo>> drafts,
@@ -85,15 +400,43 @@ public class AsyncTextDiffProcessor extends AsyncTask<Void, Void, List<DiffView.
         mComments = comments;
         mDrafts = drafts;
         mBlames = blames;
+        if (comments != null) {
+            addCommentedLines(mCommentedLinesA, comments.first);
+            addCommentedLines(mCommentedLinesB, comments.second);
+        }
+        if (drafts != null) {
+            addCommentedLines(mCommentedLinesA, drafts.first);
+            addCommentedLines(mCommentedLinesB, drafts.second);
+        }
         mHighlightTabs = highlightTabs;
         mHighlightTrailingWhitespaces = highlightTrailingWhitespaces;
         mHighlightIntralineDiffs = highlightIntralineDiffs;
         mCallback = cb;
+
+        mNoColor = ContextCompat.getColor(context, android.R.color.transparent);
+        mAddedBgColor = ContextCompat.getColor(context, R.color.diffAddedBackgroundColor);
+        mAddedDueRebaseBgColor = ContextCompat.getColor(
+                context, R.color.diffAddedDueRebaseBackgroundColor);
+        mAddedFgColor = ContextCompat.getColor(context, R.color.diffAddedForegroundColor);
+        mAddedDueRebaseFgColor = ContextCompat.getColor(
+                context, R.color.diffAddedDueRebaseForegroundColor);
+        mDeletedBgColor = ContextCompat.getColor(context, R.color.diffDeletedBackgroundColor);
+        mDeletedDueRebaseBgColor = ContextCompat.getColor(
+                context, R.color.diffDeletedDueRebaseBackgroundColor);
+        mDeletedFgColor = ContextCompat.getColor(context, R.color.diffDeletedForegroundColor);
+        mDeletedDueRebaseFgColor = ContextCompat.getColor(
+                context, R.color.diffDeletedDueRebaseForegroundColor);
+        mHighlightColor = ContextCompat.getColor(context, R.color.diffHighlightColor);
     }
 
     @Override
     protected List<DiffView.AbstractModel> doInBackground(Void... params) {
-        return processDrafts(processComments(processDiffs()));
+        List<DiffView.AbstractModel> model = processDiffs();
+        ModelIndex index = new ModelIndex(model);
+        processBlames(index);
+        processComments(index);
+        processDrafts(index);
+        return index.toModel();
     }
 
     @Override
@@ -101,276 +444,168 @@ public class AsyncTextDiffProcessor extends AsyncTask<Void, Void, List<DiffView.
         mCallback.onTextDiffProcessEnded(model);
     }
 
-    private List<DiffView.AbstractModel> processDiffs() {
-        List<DiffView.AbstractModel> model;
-        if (mMode == DiffView.SIDE_BY_SIDE_MODE) {
-            model = processSideBySideDiffs();
-        } else {
-            model = processUnifiedDiffs();
+    /**
+     * Processes the next hunk of a diff that is still being downloaded, and returns the
+     * models that can already be displayed. The last hunk of a diff is processed differently,
+     * so every hunk is held back until the next one (or the end of the stream) arrives.
+     * Comments, drafts and blames are not placed, so the diff must be processed again once
+     * it's complete. Hunks must be streamed from a single thread.
+     */
+    public List<DiffView.AbstractModel> streamHunk(DiffContentInfo hunk) {
+        final List<DiffView.AbstractModel> model = new ArrayList<>();
+        if (mPendingHunk != null) {
+            processHunk(model, mPendingHunk, mStreamedHunks == 0, false, false);
+            mStreamedHunks++;
         }
-        if (!model.isEmpty()) {
-            // Process blames
-            processBlames(model);
-
-            // Process hidden lines (show lines with non-visible comments)
-            processHiddenLines(model);
+        mPendingHunk = hunk;
+        return model;
+    }
 
-            // Add a decorator line
-            model.add(new DiffView.DecoratorModel());
+    /**
+     * Processes the hunk held back by {@link #streamHunk(DiffContentInfo)}, once the diff
+     * is completely downloaded.
+     */
+    public List<DiffView.AbstractModel> endStream() {
+        final List<DiffView.AbstractModel> model = new ArrayList<>();
+        if (mPendingHunk != null) {
+            boolean first = mStreamedHunks == 0;
+            boolean noDiffs = first && mPendingHunk.a == null && mPendingHunk.b == null;
+            processHunk(model, mPendingHunk, first, true, noDiffs);
+            mStreamedHunks++;
+            mPendingHunk = null;
         }
         return model;
     }
 
-    private List<DiffView.AbstractModel> processSideBySideDiffs() {
+    private List<DiffView.AbstractModel> processDiffs() {
         final List<DiffView.AbstractModel> model = new ArrayList<>();
-        final Context context = mContext.get();
-        if (context == null) {
+        if (mContext.get() == null) {
             return model;
         }
 
         addBinaryAdviseIfNeeded(model);
 
-        if (mDiffs == null) {
-            return model;
+        if (mDiffs != null) {
+            boolean noDiffs = mDiffs.length == 1 && mDiffs[0].a == null  && mDiffs[0].b == null;
+            int count = mDiffs.length;
+            for (int j = 0; j < count; j++) {
+                processHunk(model, mDiffs[j], j == 0, j == (count - 1), noDiffs);
+            }
         }
 
-        int lineNumberA = 0;
-        int lineNumberB = 0;
-
-        final Spannable.Factory spannableFactory = Spannable.Factory.getInstance();
-        final int noColor = ContextCompat.getColor(context, android.R.color.transparent);
-        final int addedBgColor = ContextCompat.getColor(
-                context, R.color.diffAddedBackgroundColor);
-        final int addedDueRebaseBgColor = ContextCompat.getColor(
-                context, R.color.diffAddedDueRebaseBackgroundColor);
-        final int addedFgColor = ContextCompat.getColor(
-                context, R.color.diffAddedForegroundColor);
-        final int addedDueRebaseFgColor = ContextCompat.getColor(
-                context, R.color.diffAddedDueRebaseForegroundColor);
-        final int deletedBgColor = ContextCompat.getColor(
-                context, R.color.diffDeletedBackgroundColor);
-        final int deletedDueRebaseBgColor = ContextCompat.getColor(
-                context, R.color.diffDeletedDueRebaseBackgroundColor);
-        final int deletedFgColor = ContextCompat.getColor(
-                context, R.color.diffDeletedForegroundColor);
-        final int deletedDueRebaseFgColor = ContextCompat.getColor(
-                context, R.color.diffDeletedDueRebaseForegroundColor);
-
-        boolean noDiffs = mDiffs.length == 1 && mDiffs[0].a == null  && mDiffs[0].b == null;
-        int j = 0;
-        for (DiffContentInfo diff : mDiffs) {
-            if (diff.ab != null) {
-                // Unchanged lines
-                int[] p = processUnchangedLines(
-                        diff, model, j, lineNumberA, lineNumberB, noColor, noDiffs);
-                lineNumberA = p[0];
-                lineNumberB = p[1];
-            } else {
-                int posA = 0;
-                int posB = 0;
-                int count = Math.max(
-                        diff.a == null ? 0 : diff.a.length,
-                        diff.b == null ? 0 : diff.b.length);
-                for (int i = 0; i < count; i++) {
-                    DiffInfoModel m = new DiffInfoModel();
-                    m.colorA = noColor;
-                    m.colorB = noColor;
-
-                    if (diff.a != null && i < diff.a.length) {
-                        int bg = diff.dueToRebase ? deletedDueRebaseBgColor : deletedBgColor;
-                        int fg = diff.dueToRebase ? deletedDueRebaseFgColor : deletedFgColor;
-
-                        String line = diff.a[i];
-                        m.a = ++lineNumberA;
-                        m.lineNumberA = String.valueOf(m.a);
-                        if (diff.editA != null) {
-                            Spannable span = spannableFactory.newSpannable(prepareTabs(line));
-                            if (mHighlightIntralineDiffs) {
-                                int s2 = 0;
-                                for (ArrayList<Integer> intra : diff.editA) {
-                                    int s1 = s2 + intra.get(0);
-                                    s2 = s1 + intra.get(1);
-                                    int l = posA + line.length();
-                                    if ((s1 >= posA && s1 <= l) || (s2 >= posA && s2 <= l)
-                                            || (s1 <= posA && s2 >= l)) {
-                                        span.setSpan(new BackgroundColorSpan(fg),
-                                                Math.max(posA, s1) - posA, Math.min(l, s2) - posA,
-                                                Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
-                                    }
-                                }
-                            }
-                            m.lineA = span;
-                        } else {
-                            // No intraline data, but it still could differ at start or at end
-                            processNoIntralineDataA(diff, m, line, fg);
-                        }
-                        m.colorA = bg;
-                        posA += line.length() + 1;
-                    }
-
-                    if (diff.b != null && i < diff.b.length) {
-                        int bg = diff.dueToRebase ? addedDueRebaseBgColor : addedBgColor;
-                        int fg = diff.dueToRebase ? addedDueRebaseFgColor : addedFgColor;
+        if (!model.isEmpty()) {
+            // Process hidden lines (show lines with non-visible comments)
+            processHiddenLines(model);
 
-                        String line = diff.b[i];
-                        m.b = ++lineNumberB;
-                        m.lineNumberB = String.valueOf(m.b);
-                        if (diff.editB != null) {
-                            Spannable span = spannableFactory.newSpannable(prepareTabs(line));
-                            if (mHighlightIntralineDiffs) {
-                                int s2 = 0;
-                                for (ArrayList<Integer> intra : diff.editB) {
-                                    int s1 = s2 + intra.get(0);
-                                    s2 = s1 + intra.get(1);
-                                    int l = posB + line.length();
-                                    if ((s1 >= posB && s1 <= l) || (s2 >= posB && s2 <= l)
-                                            || (s1 <= posB && s2 >= l)) {
-                                        span.setSpan(new BackgroundColorSpan(fg),
-                                                Math.max(posB, s1) - posB, Math.min(l, s2) - posB,
-                                                Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
-                                    }
-                                }
-                            }
-                            m.lineB = span;
-                        } else {
-                            // No intraline data, but it still could differ at start or at end
-                            processNoIntralineDataB(diff, m, line, fg);
-                        }
-                        m.colorB = bg;
-                        posB += line.length() + 1;
-                    }
-                    processHighlights(m);
-                    model.add(m);
-                }
-            }
-            j++;
+            // Add a decorator line
+            model.add(new DiffView.DecoratorModel());
         }
         return model;
     }
 
-    private List<DiffView.AbstractModel> processUnifiedDiffs() {
-        final List<DiffView.AbstractModel> model = new ArrayList<>();
-        final Context context = mContext.get();
-        if (context == null) {
-            return model;
+    private void processHunk(List<DiffView.AbstractModel> model, DiffContentInfo diff,
+            boolean first, boolean last, boolean noDiffs) {
+        if (diff.ab != null) {
+            // Unchanged lines
+            processUnchangedLines(diff, model, first, last, noDiffs);
+        } else if (mMode == DiffView.SIDE_BY_SIDE_MODE) {
+            processSideBySideHunk(diff, model);
+        } else {
+            processUnifiedHunk(diff, model);
         }
+    }
 
-        addBinaryAdviseIfNeeded(model);
+    private void processSideBySideHunk(DiffContentInfo diff, List<DiffView.AbstractModel> model) {
+        int posA = 0;
+        int posB = 0;
+        int fgA = diff.dueToRebase ? mDeletedDueRebaseFgColor : mDeletedFgColor;
+        int fgB = diff.dueToRebase ? mAddedDueRebaseFgColor : mAddedFgColor;
+        HunkLineSource sourceA = createHunkLineSource(diff, true, fgA);
+        HunkLineSource sourceB = createHunkLineSource(diff, false, fgB);
+        int count = Math.max(
+                diff.a == null ? 0 : diff.a.length,
+                diff.b == null ? 0 : diff.b.length);
+        for (int i = 0; i < count; i++) {
+            DiffInfoModel m = new DiffInfoModel();
+            m.colorA = mNoColor;
+            m.colorB = mNoColor;
+
+            if (diff.a != null && i < diff.a.length) {
+                m.a = ++mLineNumberA;
+                m.lineNumberA = String.valueOf(m.a);
+                m.lineA = new DiffView.LazyLine(sourceA, i, posA);
+                m.colorA = diff.dueToRebase ? mDeletedDueRebaseBgColor : mDeletedBgColor;
+                posA += diff.a[i].length() + 1;
+            }
 
-        if (mDiffs == null) {
-            return model;
+            if (diff.b != null && i < diff.b.length) {
+                m.b = ++mLineNumberB;
+                m.lineNumberB = String.valueOf(m.b);
+                m.lineB = new DiffView.LazyLine(sourceB, i, posB);
+                m.colorB = diff.dueToRebase ? mAddedDueRebaseBgColor : mAddedBgColor;
+                posB += diff.b[i].length() + 1;
+            }
+            model.add(m);
         }
+    }
 
-        int lineNumberA = 0;
-        int lineNumberB = 0;
-
-        final Spannable.Factory spannableFactory = Spannable.Factory.getInstance();
-        final int noColor = ContextCompat.getColor(context, android.R.color.transparent);
-        final int addedBgColor = ContextCompat.getColor(
-                context, R.color.diffAddedBackgroundColor);
-        final int addedDueRebaseBgColor = ContextCompat.getColor(
-                context, R.color.diffAddedDueRebaseBackgroundColor);
-        final int addedFgColor = ContextCompat.getColor(
-                context, R.color.diffAddedForegroundColor);
-        final int addedDueRebaseFgColor = ContextCompat.getColor(
-                context, R.color.diffAddedDueRebaseForegroundColor);
-        final int deletedBgColor = ContextCompat.getColor(
-                context, R.color.diffDeletedBackgroundColor);
-        final int deletedDueRebaseBgColor = ContextCompat.getColor(
-                context, R.color.diffDeletedDueRebaseBackgroundColor);
-        final int deletedFgColor = ContextCompat.getColor(
-                context, R.color.diffDeletedForegroundColor);
-        final int deletedDueRebaseFgColor = ContextCompat.getColor(
-                context, R.color.diffDeletedDueRebaseForegroundColor);
-
-        boolean noDiffs = mDiffs.length == 1 && mDiffs[0].a == null  && mDiffs[0].b == null;
-        int j = 0;
-        for (DiffContentInfo diff : mDiffs) {
-            if (diff.ab != null) {
-                // Unchanged lines
-                int[] p = processUnchangedLines(
-                        diff, model, j, lineNumberA, lineNumberB, noColor, noDiffs);
-                lineNumberA = p[0];
-                lineNumberB = p[1];
-            } else {
-                if (diff.a != null) {
-                    int bg = diff.dueToRebase ? deletedDueRebaseBgColor : deletedBgColor;
-                    int fg = diff.dueToRebase ? deletedDueRebaseFgColor : deletedFgColor;
-
-                    int pos = 0;
-                    for (String line : diff.a) {
-                        DiffInfoModel m = new DiffInfoModel();
-                        m.a = ++lineNumberA;
-                        m.lineNumberA = String.valueOf(m.a);
-                        if (diff.editA != null) {
-                            Spannable span = spannableFactory.newSpannable(prepareTabs(line));
-                            if (mHighlightIntralineDiffs) {
-                                int s2 = 0;
-                                for (ArrayList<Integer> intra : diff.editA) {
-                                    int s1 = s2 + intra.get(0);
-                                    s2 = s1 + intra.get(1);
-                                    int l = pos + line.length();
-                                    if ((s1 >= pos && s1 <= l) || (s2 >= pos && s2 <= l)
-                                            || (s1 <= pos && s2 >= l)) {
-                                        span.setSpan(new BackgroundColorSpan(fg),
-                                                Math.max(pos, s1) - pos, Math.min(l, s2) - pos,
-                                                Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
-                                    }
-                                }
-                            }
-                            m.lineA = span;
-                        } else {
-                            // No intraline data, but it still could differ at start or at end
-                            processNoIntralineDataA(diff, m, line, fg);
-                        }
-                        m.colorA = bg;
-                        m.colorB = noColor;
-                        processHighlights(m);
-                        model.add(m);
-                        pos += line.length() + 1;
-                    }
-                }
-                if (diff.b != null) {
-                    int bg = diff.dueToRebase ? addedDueRebaseBgColor : addedBgColor;
-                    int fg = diff.dueToRebase ? addedDueRebaseFgColor : addedFgColor;
-
-                    int pos = 0;
-                    for (String line : diff.b) {
-                        DiffInfoModel m = new DiffInfoModel();
-                        m.b = ++lineNumberB;
-                        m.lineNumberB = String.valueOf(m.b);
-                        if (diff.editB != null) {
-                            Spannable span = spannableFactory.newSpannable(prepareTabs(line));
-                            if (mHighlightIntralineDiffs) {
-                                int s2 = 0;
-                                for (ArrayList<Integer> intra : diff.editB) {
-                                    int s1 = s2 + intra.get(0);
-                                    s2 = s1 + intra.get(1);
-                                    int l = pos + line.length();
-                                    if ((s1 >= pos && s1 <= l) || (s2 >= pos && s2 <= l)
-                                            || (s1 <= pos && s2 >= l)) {
-                                        span.setSpan(new BackgroundColorSpan(fg),
-                                                Math.max(pos, s1) - pos, Math.min(l, s2) - pos,
-                                                Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
-                                    }
-                                }
-                            }
-                            m.lineB = span;
-                        } else {
-                            // No intraline data, but it still could differ at start or at end
-                            processNoIntralineDataB(diff, m, line, fg);
-                        }
-                        m.colorA = bg;
-                        m.colorB = noColor;
-                        processHighlights(m);
-                        model.add(m);
-                        pos += line.length() + 1;
-                    }
-                }
+    private void processUnifiedHunk(DiffContentInfo diff, List<DiffView.AbstractModel> model) {
+        if (diff.a != null) {
+            int bg = diff.dueToRebase ? mDeletedDueRebaseBgColor : mDeletedBgColor;
+            int fg = diff.dueToRebase ? mDeletedDueRebaseFgColor : mDeletedFgColor;
+
+            int pos = 0;
+            HunkLineSource source = createHunkLineSource(diff, true, fg);
+            for (int i = 0; i < diff.a.length; i++) {
+                DiffInfoModel m = new DiffInfoModel();
+                m.a = ++mLineNumberA;
+                m.lineNumberA = String.valueOf(m.a);
+                m.lineA = new DiffView.LazyLine(source, i, pos);
+                m.colorA = bg;
+                m.colorB = mNoColor;
+                model.add(m);
+                pos += diff.a[i].length() + 1;
+            }
+        }
+        if (diff.b != null) {
+            int bg = diff.dueToRebase ? mAddedDueRebaseBgColor : mAddedBgColor;
+            int fg = diff.dueToRebase ? mAddedDueRebaseFgColor : mAddedFgColor;
+
+            int pos = 0;
+            HunkLineSource source = createHunkLineSource(diff, false, fg);
+            for (int i = 0; i < diff.b.length; i++) {
+                DiffInfoModel m = new DiffInfoModel();
+                m.b = ++mLineNumberB;
+                m.lineNumberB = String.valueOf(m.b);
+                m.lineB = new DiffView.LazyLine(source, i, pos);
+                m.colorA = bg;
+                m.colorB = mNoColor;
+                model.add(m);
+                pos += diff.b[i].length() + 1;
             }
-            j++;
         }
-        return model;
+    }
+
+    private HunkLineSource createHunkLineSource(DiffContentInfo diff, boolean isA, int color) {
+        String[] lines = isA ? diff.a : diff.b;
+        DiffIntralineInfo edits = isA ? diff.editA : diff.editB;
+        if (lines == null) {
+            return null;
+        }
+        if (edits != null) {
+            return new HunkLineSource(lines, mHighlightIntralineDiffs
+                    ? new IntralineEdits(edits) : null, null, color);
+        }
+        if (diff.a != null && diff.b != null && diff.a.length == 1 && diff.b.length == 1) {
+            return new HunkLineSource(lines, null, isA ? diff.b[0] : diff.a[0], color);
+        }
+        return new HunkLineSource(lines, null, null, color);
+    }
+
+    private void applyIntralineEdits(
+            Spannable span, IntralineEdits edits, int pos, int length, int color) {
+        edits.visit(pos, length, (start, end) -> span.setSpan(new BackgroundColorSpan(color),
+                start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE));
     }
 
     private void addBinaryAdviseIfNeeded(List<DiffView.AbstractModel> model) {
@@ -386,11 +621,11 @@ public class AsyncTextDiffProcessor extends AsyncTask<Void, Void, List<DiffView.
         }
     }
 
-    private int[] processUnchangedLines(DiffContentInfo diff, List<DiffView.AbstractModel> model,
-            int j, int lineNumberA, int lineNumberB, int noColor, boolean noDiffs) {
+    private void processUnchangedLines(DiffContentInfo diff, List<DiffView.AbstractModel> model,
+            boolean first, boolean last, boolean noDiffs) {
         final Context context = mContext.get();
         if (context == null) {
-            return new int[]{lineNumberA, lineNumberB};
+            return;
         }
 
         if (noDiffs) {
@@ -399,14 +634,15 @@ public class AsyncTextDiffProcessor extends AsyncTask<Void, Void, List<DiffView.
             model.add(advise);
         }
 
+        HunkLineSource source = new HunkLineSource(diff.ab, null, null, mNoColor);
         int count = diff.ab.length;
         int skipStartAt = -1, skippedLines = -1;
         boolean breakAfterSkip = false;
         if (!noDiffs) {
-            if (j == 0 && diff.ab.length > SKIPPED_LINES) {
+            if (first && diff.ab.length > SKIPPED_LINES) {
                 skipStartAt = 0;
                 skippedLines = count - SKIPPED_LINES - skipStartAt;
-            } else if (j == (mDiffs.length - 1) && diff.ab.length > SKIPPED_LINES) {
+            } else if (last && diff.ab.length > SKIPPED_LINES) {
                 skipStartAt = SKIPPED_LINES;
                 skippedLines = count - skipStartAt;
                 breakAfterSkip = true;
@@ -419,10 +655,10 @@ public class AsyncTextDiffProcessor extends AsyncTask<Void, Void, List<DiffView.
         for (int i = 0; i < count; i++) {
             if (!noDiffs) {
                 if (skipStartAt != -1 && skipStartAt == i) {
-                    int startA = lineNumberA + 1;
-                    int startB = lineNumberB + 1;
-                    lineNumberA += skippedLines;
-                    lineNumberB += skippedLines;
+                    int startA = mLineNumberA + 1;
+                    int startB = mLineNumberB + 1;
+                    mLineNumberA += skippedLines;
+                    mLineNumberB += skippedLines;
                     i += skippedLines;
                     SkipLineModel skip = new SkipLineModel();
                     skip.msg = context.getResources().getQuantityString(
@@ -435,11 +671,11 @@ public class AsyncTextDiffProcessor extends AsyncTask<Void, Void, List<DiffView.
                         m.lineNumberA = String.valueOf(m.a);
                         m.lineNumberB = String.valueOf(m.b);
                         if (mMode == DiffView.SIDE_BY_SIDE_MODE) {
-                            m.lineA = m.lineB = processHighlights(prepareTabs(diff.ab[k]));
+                            m.lineA = m.lineB = new DiffView.LazyLine(source, k, 0);
                         } else {
-                            m.lineA = processHighlights(prepareTabs(diff.ab[k]));
+                            m.lineA = new DiffView.LazyLine(source, k, 0);
                         }
-                        m.colorA = m.colorB = noColor;
+                        m.colorA = m.colorB = mNoColor;
                         skip.skippedLines[l] = m;
                     }
                     model.add(skip);
@@ -449,78 +685,32 @@ public class AsyncTextDiffProcessor extends AsyncTask<Void, Void, List<DiffView.
                 }
             }
 
-            String line = diff.ab[i];
             DiffInfoModel m = new DiffInfoModel();
-            m.a = ++lineNumberA;
-            m.b = ++lineNumberB;
+            m.a = ++mLineNumberA;
+            m.b = ++mLineNumberB;
             m.lineNumberA = String.valueOf(m.a);
             m.lineNumberB = String.valueOf(m.b);
-            m.lineA = m.lineB = prepareTabs(line);
-            m.colorA = m.colorB = noColor;
-            processHighlights(m);
+            m.lineA = m.lineB = new DiffView.LazyLine(source, i, 0);
+            m.colorA = m.colorB = mNoColor;
             model.add(m);
         }
-
-        return new int[]{lineNumberA, lineNumberB};
     }
 
-    private void processNoIntralineDataA(
-            DiffContentInfo diff, DiffInfoModel m, String line, int color) {
-        final Spannable.Factory spannableFactory = Spannable.Factory.getInstance();
-        if (diff.a != null && diff.b != null
-                && diff.a.length == 1 && diff.b.length == 1) {
-            Spannable span = spannableFactory.newSpannable(prepareTabs(line));
-            int z = diff.a[0].indexOf(diff.b[0]);
-            if (z != -1) {
-                if (z > 0) {
-                    span.setSpan(new BackgroundColorSpan(color),
-                            0, z, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
-                }
-                if (z + diff.b[0].length() < diff.a[0].length()) {
-                    z = z + diff.b[0].length();
-                    span.setSpan(new BackgroundColorSpan(color),
-                            z, diff.a[0].length(),
-                            Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
-                }
+    private CharSequence processNoIntralineData(String line, String other, int color) {
+        Spannable span = Spannable.Factory.getInstance().newSpannable(prepareTabs(line));
+        int z = line.indexOf(other);
+        if (z != -1) {
+            if (z > 0) {
+                span.setSpan(new BackgroundColorSpan(color),
+                        0, z, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
             }
-            m.lineA = span;
-        } else {
-            m.lineA = prepareTabs(line);
-        }
-    }
-
-    private void processNoIntralineDataB(
-            DiffContentInfo diff, DiffInfoModel m, String line, int color) {
-        final Spannable.Factory spannableFactory = Spannable.Factory.getInstance();
-        if (diff.a != null && diff.b != null
-                && diff.a.length == 1 && diff.b.length == 1) {
-            Spannable span = spannableFactory.newSpannable(prepareTabs(line));
-            int z = diff.b[0].indexOf(diff.a[0]);
-            if (z != -1) {
-                if (z > 0) {
-                    span.setSpan(new BackgroundColorSpan(color),
-                            0, z, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
-                }
-                if (z + diff.a[0].length() < diff.b[0].length()) {
-                    z = z + diff.a[0].length();
-                    span.setSpan(new BackgroundColorSpan(color),
-                            z, diff.b[0].length(),
-                            Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
-                }
+            if (z + other.length() < line.length()) {
+                z = z + other.length();
+                span.setSpan(new BackgroundColorSpan(color),
+                        z, line.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
             }
-            m.lineB = span;
-        } else {
-            m.lineB = prepareTabs(line);
-        }
-    }
-
-    private void processHighlights(DiffInfoModel model) {
-        if (model.lineA != null) {
-            model.lineA = processHighlightTrailingSpaces(processHighlightTabs(model.lineA));
-        }
-        if (model.lineB != null) {
-            model.lineB = processHighlightTrailingSpaces(processHighlightTabs(model.lineB));
         }
+        return span;
     }
 
     private CharSequence processHighlights(CharSequence line) {
@@ -528,22 +718,16 @@ public class AsyncTextDiffProcessor extends AsyncTask<Void, Void, List<DiffView.
     }
 
     private CharSequence processHighlightTabs(CharSequence text) {
-        final Context context = mContext.get();
-        if (context == null) {
-            return text;
-        }
-
         if (!mHighlightTabs || !text.toString().contains(StringHelper.NON_PRINTABLE_CHAR)) {
             return text;
         }
 
-        int color = ContextCompat.getColor(context, R.color.diffHighlightColor);
         SpannableStringBuilder ssb = new SpannableStringBuilder(text);
         String line = text.toString();
         int index = line.length();
         while ((index = line.lastIndexOf(StringHelper.NON_PRINTABLE_CHAR, index)) != -1) {
-            ssb.replace(index, index + 1, "\u00BB    ");
-            ssb.setSpan(new ForegroundColorSpan(color),
+            ssb.replace(index, index + 1, TAB_HIGHLIGHT);
+            ssb.setSpan(new ForegroundColorSpan(mHighlightColor),
                     index, index + 1, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
             ssb.setSpan(new StyleSpan(Typeface.BOLD),
                     index, index + 1, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
@@ -553,16 +737,10 @@ public class AsyncTextDiffProcessor extends AsyncTask<Void, Void, List<DiffView.
     }
 
     private CharSequence processHighlightTrailingSpaces(CharSequence text) {
-        final Context context = mContext.get();
-        if (context == null) {
-            return text;
-        }
-
         if (!mHighlightTrailingWhitespaces) {
             return text;
         }
 
-        int color = ContextCompat.getColor(context, R.color.diffHighlightColor);
         final Spannable.Factory spannableFactory = Spannable.Factory.getInstance();
         String line = text.toString();
         final Matcher matcher = HIGHLIGHT_TRAIL_SPACES_PATTERN.matcher(line);
@@ -570,7 +748,7 @@ public class AsyncTextDiffProcessor extends AsyncTask<Void, Void, List<DiffView.
             int start = matcher.start();
             int end = matcher.end();
             Spannable span = spannableFactory.newSpannable(text);
-            span.setSpan(new BackgroundColorSpan(color),
+            span.setSpan(new BackgroundColorSpan(mHighlightColor),
                     start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
             return span;
         }
@@ -578,192 +756,56 @@ public class AsyncTextDiffProcessor extends AsyncTask<Void, Void, List<DiffView.
     }
 
     private String prepareTabs(String line) {
-        return line.replaceAll("\t", StringHelper.NON_PRINTABLE_CHAR);
+        return line.replace('\t', StringHelper.NON_PRINTABLE_CHAR.charAt(0));
     }
 
-    private List<DiffView.AbstractModel> processComments(List<DiffView.AbstractModel> model) {
+    private void addCommentedLines(Set<Integer> lines, List<CommentInfo> comments) {
+        if (comments != null) {
+            for (CommentInfo c : comments) {
+                if (c.line != null) {
+                    lines.add(c.line);
+                }
+            }
+        }
+    }
+
+    private void processComments(ModelIndex index) {
         if (mComments != null) {
             // Comments on A
             if (mComments.first != null) {
-                addCommentsToModel(model, mComments.first, true, false);
+                addCommentsToModel(index, mComments.first, true, false);
             }
 
             // Comments on B
             if (mComments.second != null) {
-                addCommentsToModel(model, mComments.second, false, false);
+                addCommentsToModel(index, mComments.second, false, false);
             }
         }
-        return model;
     }
 
-    private List<DiffView.AbstractModel> processDrafts(List<DiffView.AbstractModel> model) {
+    private void processDrafts(ModelIndex index) {
         if (mDrafts != null) {
             // Comments on A
             if (mDrafts.first != null) {
-                addCommentsToModel(model, mDrafts.first, true, true);
+                addCommentsToModel(index, mDrafts.first, true, true);
             }
 
             // Comments on B
             if (mDrafts.second != null) {
-                addCommentsToModel(model, mDrafts.second, false, true);
+                addCommentsToModel(index, mDrafts.second, false, true);
             }
         }
-        return model;
     }
 
-    private void addCommentsToModel(List<DiffView.AbstractModel> model,
+    private void addCommentsToModel(ModelIndex index,
             List<CommentInfo> comments, boolean isA, boolean isDraft) {
         if (comments == null) {
             return;
         }
         int count = comments.size();
         for (int i = 0; i < count; i++) {
-            CommentInfo comment = comments.get(i);
-            boolean isLeft = comment.patchSet == 0 || isA;
-
-            if (comment.line == null && comment.range == null) {
-                // File comment
-                if (mMode == DiffView.UNIFIED_MODE) {
-                    DiffView.CommentModel commentModel = new DiffView.CommentModel();
-                    commentModel.diff = null;
-                    commentModel.isDraft = isDraft;
-                    commentModel.commentA = comment;
-                    int pos = findNextPositionWithoutComment(model, -1);
-                    model.add(pos == -1 ? 0 : pos, commentModel);
-                } else {
-                    int reusablePos = findReusableCommentView(model, -1, isLeft);
-                    if (reusablePos != -1) {
-                        DiffView.CommentModel commentModel =
-                                (DiffView.CommentModel) model.get(reusablePos);
-                        commentModel.isDraft = isDraft;
-                        if (isLeft) {
-                            commentModel.commentA = comment;
-                        } else {
-                            commentModel.commentB = comment;
-                        }
-                    } else {
-                        DiffView.CommentModel commentModel = new DiffView.CommentModel();
-                        commentModel.isDraft = isDraft;
-                        if (isLeft) {
-                            commentModel.commentA = comment;
-                        } else {
-                            commentModel.commentB = comment;
-                        }
-                        int pos = findNextPositionWithoutComment(model, -1);
-                        model.add(pos == -1 ? 0 : pos, commentModel);
-                    }
-                }
-                continue;
-            }
-
-
-            // We don't support comment range yet, so skip this comment
-            if (comment.line == null) {
-                continue;
-            }
-
-            int pos = findLineInModel(model, isLeft, comment.line);
-            if (pos != -1) {
-                if (mMode == DiffView.UNIFIED_MODE) {
-                    DiffInfoModel diff = (DiffInfoModel) model.get(findDiffForComment(model, pos));
-                    DiffView.CommentModel commentModel = new DiffView.CommentModel();
-                    commentModel.diff = diff;
-                    commentModel.isDraft = isDraft;
-                    commentModel.commentA = comment;
-                    int nextPos = findNextPositionWithoutComment(model, pos);
-                    if (nextPos != -1) {
-                        model.add(nextPos, commentModel);
-                    } else {
-                        model.add(pos + 1, commentModel);
-                    }
-                } else {
-                    int reusablePos = findReusableCommentView(model, pos, isLeft);
-                    if (reusablePos != -1) {
-                        DiffInfoModel diff = (DiffInfoModel) model.get(
-                                findDiffForComment(model, reusablePos));
-                        DiffView.CommentModel commentModel =
-                                (DiffView.CommentModel) model.get(reusablePos);
-                        commentModel.diff = diff;
-                        commentModel.isDraft = isDraft;
-                        if (isLeft) {
-                            commentModel.commentA = comment;
-                        } else {
-                            commentModel.commentB = comment;
-                        }
-                    } else {
-                        DiffInfoModel diff = (DiffInfoModel) model.get(
-                                findDiffForComment(model, pos));
-                        DiffView.CommentModel commentModel = new DiffView.CommentModel();
-                        commentModel.diff = diff;
-                        commentModel.isDraft = isDraft;
-                        if (isLeft) {
-                            commentModel.commentA = comment;
-                        } else {
-                            commentModel.commentB = comment;
-                        }
-                        int nextPos = findNextPositionWithoutComment(model, pos);
-                        if (nextPos != -1) {
-                            model.add(nextPos, commentModel);
-                        } else {
-                            model.add(pos + 1, commentModel);
-                        }
-                    }
-                }
-            }
-        }
-    }
-
-    private int findLineInModel(List<DiffView.AbstractModel> model, boolean isA, int line) {
-        int count = model.size();
-        for (int i = 0; i < count; i++) {
-            DiffView.AbstractModel m = model.get(i);
-            if (m instanceof DiffInfoModel) {
-                DiffInfoModel diff = (DiffInfoModel) m;
-                if (isA && diff.a == line) {
-                    return i;
-                } else if (!isA && diff.b == line) {
-                    return i;
-                }
-            }
-        }
-        return -1;
-    }
-
-    private int findDiffForComment(List<DiffView.AbstractModel> model, int pos) {
-        for (int i = pos; i >= 0; i--) {
-            if (model.get(i) instanceof DiffInfoModel) {
-                return i;
-            }
-        }
-        return -1;
-    }
-
-    private int findReusableCommentView(List<DiffView.AbstractModel> model, int pos, boolean isA) {
-        int count = model.size();
-        for (int i = pos + 1; i < count; i++) {
-            DiffView.AbstractModel m = model.get(i);
-            if (!(m instanceof DiffView.CommentModel)) {
-                break;
-            }
-
-            DiffView.CommentModel comment = (DiffView.CommentModel) m;
-            if ((isA && comment.commentA == null && comment.commentB != null)
-                    || (!isA && comment.commentB == null && comment.commentA != null)) {
-                return i;
-            }
-        }
-        return -1;
-    }
-
-    private int findNextPositionWithoutComment(List<DiffView.AbstractModel> model, int pos) {
-        int count = model.size();
-        for (int i = pos + 1; i < count; i++) {
-            DiffView.AbstractModel m = model.get(i);
-            if (!(m instanceof DiffView.CommentModel)) {
-                return i;
-            }
+            index.addComment(comments.get(i), isA, isDraft, mMode);
         }
-        return -1;
     }
 
     private void processHiddenLines(List<DiffView.AbstractModel> model) {
@@ -828,37 +870,11 @@ public class AsyncTextDiffProcessor extends AsyncTask<Void, Void, List<DiffView.
         }
     }
 
-    @SuppressWarnings("RedundantIfStatement")
     private boolean hasCommentOrDraftInSkippedLine(DiffInfoModel diff) {
-        if (mComments != null && mComments.first != null
-                && hasComment(diff.a, mComments.first)) {
-            return true;
-        }
-        if (mComments != null && mComments.second != null
-                && hasComment(diff.b, mComments.second)) {
-            return true;
-        }
-        if (mDrafts != null && mDrafts.first != null
-                && hasComment(diff.a, mDrafts.first)) {
-            return true;
-        }
-        if (mDrafts != null && mDrafts.second != null
-                && hasComment(diff.b, mDrafts.second)) {
-            return true;
-        }
-        return false;
+        return mCommentedLinesA.contains(diff.a) || mCommentedLinesB.contains(diff.b);
     }
 
-    private boolean hasComment(int diffLine, List<CommentInfo> comments) {
-        for (CommentInfo c : comments) {
-            if (c.line != null && c.line == diffLine) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    private void processBlames(List<DiffView.AbstractModel> model) {
+    private void processBlames(ModelIndex index) {
         final Context context = mContext.get();
         if (context == null) {
             return;
@@ -873,18 +889,14 @@ public class AsyncTextDiffProcessor extends AsyncTask<Void, Void, List<DiffView.
 
         if (mBlames.first != null) {
             for (BlameInfo blame : mBlames.first) {
-                int start = 0;
+                String blameText = null;
                 for (RangeInfo range : blame.ranges) {
-                    Pair<Integer, DiffInfoModel> p =
-                            findDiffModelByLine(model, range.start, start, true);
-                    if (p != null) {
-                        //noinspection ConstantConditions
-                        start = p.first;
-                        String commit = Formatter.toShortenCommit(blame.id);
-                        String date = df.format(new Date(blame.time * 1000L)); //Unix time
-                        //noinspection ConstantConditions
-                        p.second.blameA = context.getString(
-                                R.string.blame_format, commit, date, blame.author);
+                    DiffInfoModel diff = index.findDiff(true, range.start);
+                    if (diff != null) {
+                        if (blameText == null) {
+                            blameText = toBlameText(context, df, blame);
+                        }
+                        diff.blameA = blameText;
                     }
                 }
             }
@@ -892,44 +904,23 @@ public class AsyncTextDiffProcessor extends AsyncTask<Void, Void, List<DiffView.
 
         if (mBlames.second != null) {
             for (BlameInfo blame : mBlames.second) {
-                int start = 0;
+                String blameText = null;
                 for (RangeInfo range : blame.ranges) {
-                    Pair<Integer, DiffInfoModel> p =
-                            findDiffModelByLine(model, range.start, start, false);
-                    if (p != null) {
-                        //noinspection ConstantConditions
-                        start = p.first;
-                        String commit = Formatter.toShortenCommit(blame.id);
-                        String date = df.format(new Date(blame.time * 1000L)); //Unix time
-                        //noinspection ConstantConditions
-                        p.second.blameB = context.getString(
-                                R.string.blame_format, commit, date, blame.author);
+                    DiffInfoModel diff = index.findDiff(false, range.start);
+                    if (diff != null) {
+                        if (blameText == null) {
+                            blameText = toBlameText(context, df, blame);
+                        }
+                        diff.blameB = blameText;
                     }
                 }
             }
         }
     }
 
-    private Pair<Integer, DiffInfoModel> findDiffModelByLine(
-            List<DiffView.AbstractModel> model, int line, int start, boolean isLeft) {
-        int count = model.size();
-        for (int i = start; i < count; i++) {
-            DiffView.AbstractModel m = model.get(i);
-            if (m instanceof DiffInfoModel) {
-                if ((isLeft && ((DiffInfoModel) m).a == line)
-                        || (!isLeft && ((DiffInfoModel) m).b == line)) {
-                    return new Pair<>(i, (DiffInfoModel) m);
-                }
-            } else if (m instanceof SkipLineModel) {
-                if (((SkipLineModel) m).skippedLines != null) {
-                    for (DiffInfoModel m1 : ((SkipLineModel) m).skippedLines) {
-                        if ((isLeft && m1.a == line) || (!isLeft && m1.b == line)) {
-                            return new Pair<>(i, m1);
-                        }
-                    }
-                }
-            }
-        }
-        return null;
+    private String toBlameText(Context context, DateFormat df, BlameInfo blame) {
+        String commit = Formatter.toShortenCommit(blame.id);
+        String date = df.format(new Date(blame.time * 1000L)); //Unix time
+        return context.getString(R.string.blame_format, commit, date, blame.author);
     }
 }
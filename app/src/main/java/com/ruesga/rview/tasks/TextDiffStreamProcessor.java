@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2016 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.rview.tasks;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.ruesga.rview.gerrit.DiffStreamReader;
+import com.ruesga.rview.gerrit.model.DiffContentInfo;
+import com.ruesga.rview.gerrit.model.DiffInfo;
+import com.ruesga.rview.widget.DiffView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Processes the hunks of a text diff while the diff is being downloaded, and delivers the
+ * models to the listener (in the main thread) in batches, so the first hunks can be
+ * displayed while the rest of the diff is still in flight.
+ */
+public class TextDiffStreamProcessor implements DiffStreamReader.OnDiffHunkListener {
+
+    public interface OnTextDiffStreamListener {
+        void onTextDiffStreamed(List<DiffView.AbstractModel> model, boolean first);
+    }
+
+    private static final int BATCH_SIZE = 500;
+
+    private final AsyncTextDiffProcessor mProcessor;
+    private final OnTextDiffStreamListener mCallback;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final List<DiffView.AbstractModel> mBatch = new ArrayList<>();
+    private boolean mFirst = true;
+
+    public TextDiffStreamProcessor(Context context, int mode, boolean highlightTabs,
+            boolean highlightTrailingWhitespaces, boolean highlightIntralineDiffs,
+            OnTextDiffStreamListener cb) {
+        mProcessor = new AsyncTextDiffProcessor(context, mode, new DiffInfo(), null, null, null,
+                highlightTabs, highlightTrailingWhitespaces, highlightIntralineDiffs, null);
+        mCallback = cb;
+    }
+
+    @Override
+    public void onDiffHunk(DiffContentInfo hunk) {
+        mBatch.addAll(mProcessor.streamHunk(hunk));
+        // Deliver the first hunk at once, so there is something to display
+        if ((mFirst && !mBatch.isEmpty()) || mBatch.size() >= BATCH_SIZE) {
+            deliver();
+        }
+    }
+
+    public void onEnd() {
+        mBatch.addAll(mProcessor.endStream());
+        if (!mBatch.isEmpty()) {
+            deliver();
+        }
+    }
+
+    private void deliver() {
+        final List<DiffView.AbstractModel> batch = new ArrayList<>(mBatch);
+        final boolean first = mFirst;
+        mBatch.clear();
+        mFirst = false;
+        mHandler.post(() -> mCallback.onTextDiffStreamed(batch, first));
+    }
+}
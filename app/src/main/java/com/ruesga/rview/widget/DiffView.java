@@ -78,6 +78,8 @@ public class DiffView extends FrameLayout {
     private static final int ADVISE_VIEW_TYPE = 3;
     private static final int DECORATOR_VIEW_TYPE = 4;
 
+    private static final String MEASURE_CHAR = "M";
+
     @Keep
     @SuppressWarnings({"UnusedParameters", "unused"})
     public static class EventHandlers {
@@ -264,6 +266,63 @@ public class DiffView extends FrameLayout {
         public String blameB;
     }
 
+    /**
+     * The lines of one side of a hunk. Lines are referenced by their index and by their
+     * offset in the text of the hunk, and their spans are only built when they are bound.
+     */
+    public static abstract class LineSource {
+        public abstract String lineAt(int index);
+
+        public abstract CharSequence span(int index, int offset);
+
+        public abstract int displayLength(int index);
+    }
+
+    /**
+     * A raw line of a {@link LineSource}. The line doesn't hold any text nor spans by itself,
+     * so huge files only cost a few bytes per line until they are displayed.
+     */
+    public static class LazyLine implements CharSequence {
+        private final LineSource mSource;
+        private final int mIndex;
+        private final int mOffset;
+
+        public LazyLine(LineSource source, int index, int offset) {
+            mSource = source;
+            mIndex = index;
+            mOffset = offset;
+        }
+
+        public CharSequence span() {
+            return mSource.span(mIndex, mOffset);
+        }
+
+        public int displayLength() {
+            return mSource.displayLength(mIndex);
+        }
+
+        @Override
+        public int length() {
+            return mSource.lineAt(mIndex).length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return mSource.lineAt(mIndex).charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return mSource.lineAt(mIndex).subSequence(start, end);
+        }
+
+        @Override
+        @NonNull
+        public String toString() {
+            return mSource.lineAt(mIndex);
+        }
+    }
+
     @Keep
     public static class CommentModel extends AbstractModel {
         public CommentInfo commentA;
@@ -330,6 +389,8 @@ public class DiffView extends FrameLayout {
         private final List<AbstractModel> mModel = new ArrayList<>();
         private final DiffViewMeasurement mDiffViewMeasurement = new DiffViewMeasurement();
         private final int mMode;
+        private float mLineWidth;
+        private float mLineNumWidth;
 
         private final List<SkipLinesOpHistory> mSkipLinesOpHistory = new ArrayList<>();
 
@@ -350,10 +411,23 @@ public class DiffView extends FrameLayout {
         }
 
         private void refresh() {
-            computeViewChildMeasuresIfNeeded();
+            computeViewChildMeasuresIfNeeded(0);
             notifyDataSetChanged();
         }
 
+        private void append(List<AbstractModel> diffs) {
+            final int from = mModel.size();
+            final float width = mDiffViewMeasurement.width;
+            mModel.addAll(diffs);
+            computeViewChildMeasuresIfNeeded(from);
+            if (width == mDiffViewMeasurement.width) {
+                notifyItemRangeInserted(from, diffs.size());
+            } else {
+                // Rows already bound must be measured again
+                notifyDataSetChanged();
+            }
+        }
+
         private void processSkipLinesOpHistory(List<SkipLinesOpHistory> skipLinesOpHistory) {
             for (SkipLinesOpHistory op : skipLinesOpHistory) {
                 switch (op.type) {
@@ -463,10 +537,10 @@ public class DiffView extends FrameLayout {
                 DiffInfoModel diff = (DiffInfoModel) model;
                 if (mMode == UNIFIED_MODE) {
                     CharSequence text = diff.lineA != null ? diff.lineA : diff.lineB;
-                    holder.mBinding.diffA.setText(text, TextView.BufferType.NORMAL);
+                    holder.mBinding.diffA.setText(toSpan(text), TextView.BufferType.NORMAL);
                 } else {
-                    holder.mBinding.diffA.setText(diff.lineA, TextView.BufferType.NORMAL);
-                    holder.mBinding.diffB.setText(diff.lineB, TextView.BufferType.NORMAL);
+                    holder.mBinding.diffA.setText(toSpan(diff.lineA), TextView.BufferType.NORMAL);
+                    holder.mBinding.diffB.setText(toSpan(diff.lineB), TextView.BufferType.NORMAL);
                 }
 
                 holder.mBinding.setWrap(isWrapMode());
@@ -563,24 +637,34 @@ public class DiffView extends FrameLayout {
             return mModel.size();
         }
 
-        @SuppressWarnings("Convert2streamapi")
-        private void computeViewChildMeasuresIfNeeded() {
+        private void computeViewChildMeasuresIfNeeded(int from) {
             boolean wrap = isWrapMode();
             if (!mModel.isEmpty()) {
                 final Resources res = getResources();
                 TextPaint paint = new TextPaint();
                 paint.setTextSize(res.getDimension(R.dimen.diff_line_text_size) * mTextSizeFactor);
                 paint.setTypeface(TypefaceCache.getTypeface(getContext(), TypefaceCache.TF_MONOSPACE));
+                // Lines are displayed with a monospace typeface, so measure one char and
+                // estimate the width of every line from its length.
+                float charWidth = paint.measureText(MEASURE_CHAR);
                 float padding = res.getDimension(R.dimen.diff_line_text_padding);
                 float margin = res.getDimension(R.dimen.diff_line_separator_width) * 2;
                 float blameWidth = res.getDimension(R.dimen.diff_line_blame_width);
-                mDiffViewMeasurement.clear();
-
-                for (AbstractModel model : mModel) {
+                // Only models from the passed position need to be measured
+                if (from == 0) {
+                    mLineWidth = -1;
+                    mLineNumWidth = -1;
+                }
+                final int count = mModel.size();
+                for (int i = from; i < count; i++) {
+                    AbstractModel model = mModel.get(i);
                     if (model instanceof DiffInfoModel) {
-                        measureDiffInfoModel((DiffInfoModel) model, wrap, paint, padding, margin);
+                        measureDiffInfoModel((DiffInfoModel) model, wrap, charWidth, padding, margin);
                     }
                 }
+                mDiffViewMeasurement.clear();
+                mDiffViewMeasurement.lineWidth = mLineWidth;
+                mDiffViewMeasurement.lineNumWidth = mLineNumWidth;
 
                 // Give line number a minimum width
                 mDiffViewMeasurement.lineNumWidth = Math.max(
@@ -626,57 +710,61 @@ public class DiffView extends FrameLayout {
         }
 
         private void measureDiffInfoModel(
-                DiffInfoModel diff, boolean wrap, TextPaint paint, float padding, float margin) {
+                DiffInfoModel diff, boolean wrap, float charWidth, float padding, float margin) {
             if (wrap) {
-                mDiffViewMeasurement.lineWidth = MATCH_PARENT;
+                mLineWidth = MATCH_PARENT;
             } else {
                 if (mMode == UNIFIED_MODE) {
                     // All lines are displayed in A
                     CharSequence line = diff.lineA != null ? diff.lineA : diff.lineB;
-                    mDiffViewMeasurement.lineWidth = Math.max(
-                            mDiffViewMeasurement.lineWidth,
-                            paint.measureText(String.valueOf(line)) + padding + margin);
+                    mLineWidth = Math.max(
+                            mLineWidth,
+                            charWidth * displayLength(line) + padding + margin);
                 } else {
                     // Lines are displayed in A and B and both have the same size
                     if (diff.lineA != null) {
-                        String lineA = String.valueOf(diff.lineA);
-                        mDiffViewMeasurement.lineWidth = Math.max(
-                                mDiffViewMeasurement.lineWidth,
-                                paint.measureText(lineA) + padding + margin);
+                        mLineWidth = Math.max(
+                                mLineWidth,
+                                charWidth * displayLength(diff.lineA) + padding + margin);
                     }
                     if (diff.lineB != null) {
-                        String lineB = String.valueOf(diff.lineB);
-                        mDiffViewMeasurement.lineWidth = Math.max(
-                                mDiffViewMeasurement.lineWidth,
-                                paint.measureText(lineB) + padding + margin);
+                        mLineWidth = Math.max(
+                                mLineWidth,
+                                charWidth * displayLength(diff.lineB) + padding + margin);
                     }
                 }
             }
 
             if (diff.lineNumberA != null) {
-                mDiffViewMeasurement.lineNumWidth = Math.max(
-                        mDiffViewMeasurement.lineNumWidth, paint.measureText(diff.lineNumberA));
+                mLineNumWidth = Math.max(
+                        mLineNumWidth, charWidth * diff.lineNumberA.length());
             }
             if (diff.lineNumberB != null) {
-                mDiffViewMeasurement.lineNumWidth = Math.max(
-                        mDiffViewMeasurement.lineNumWidth, paint.measureText(diff.lineNumberB));
+                mLineNumWidth = Math.max(
+                        mLineNumWidth, charWidth * diff.lineNumberB.length());
             }
         }
+
+        private int displayLength(CharSequence line) {
+            if (line instanceof LazyLine) {
+                return ((LazyLine) line).displayLength();
+            }
+            return line == null ? 0 : line.length();
+        }
+
+        private CharSequence toSpan(CharSequence line) {
+            if (line instanceof LazyLine) {
+                return ((LazyLine) line).span();
+            }
+            return line;
+        }
     }
 
     private OnTextDiffProcessEndedListener mTextProcessorListener
             = new OnTextDiffProcessEndedListener() {
         @Override
         public void onTextDiffProcessEnded(List<AbstractModel> model) {
-            if (mNeedsNewLayoutManager || !mLayoutManager.equals(mTmpLayoutManager)) {
-                mDiffAdapter = new DiffView.DiffAdapter(mDiffMode);
-                if (mTmpLayoutManager != null) {
-                    mLayoutManager = mTmpLayoutManager;
-                }
-                mRecyclerView.setLayoutManager(mLayoutManager);
-                mRecyclerView.setAdapter(mDiffAdapter);
-                mNeedsNewLayoutManager = false;
-            }
+            prepareAdapterIfNeeded();
             mDiffAdapter.update(model, mPendingSkipLinesOpHistory);
             mTmpLayoutManager = null;
 
@@ -964,6 +1052,43 @@ public class DiffView extends FrameLayout {
         }
     }
 
+    /**
+     * Displays the models of a diff that is still being downloaded (see
+     * {@link com.ruesga.rview.tasks.TextDiffStreamProcessor}). The first batch replaces the
+     * current models and the rest are appended to them. Comments, drafts and blames are only
+     * placed once the diff is complete and {@link #update()} is called.
+     */
+    public void append(List<AbstractModel> model, boolean first) {
+        if (mDiffMode == IMAGE_MODE) {
+            return;
+        }
+
+        if (first) {
+            stopTasks();
+            prepareAdapterIfNeeded();
+            // Keep the adapter for the final update
+            mTmpLayoutManager = mLayoutManager;
+            mDiffAdapter.update(model, null);
+        } else {
+            mDiffAdapter.append(model);
+        }
+
+        mBinding.setProcessing(false);
+        mBinding.executePendingBindings();
+    }
+
+    private void prepareAdapterIfNeeded() {
+        if (mNeedsNewLayoutManager || !mLayoutManager.equals(mTmpLayoutManager)) {
+            mDiffAdapter = new DiffView.DiffAdapter(mDiffMode);
+            if (mTmpLayoutManager != null) {
+                mLayoutManager = mTmpLayoutManager;
+            }
+            mRecyclerView.setLayoutManager(mLayoutManager);
+            mRecyclerView.setAdapter(mDiffAdapter);
+            mNeedsNewLayoutManager = false;
+        }
+    }
+
     private boolean isWrapMode() {
         return !(mLayoutManager instanceof UnwrappedLinearLayoutManager);
     }
@@ -36,12 +36,15 @@ import com.ruesga.rview.preferences.Constants;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
-import java.util.Set;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.VisibleForTesting;
@@ -50,6 +53,10 @@ import me.saket.bettermovementmethod.BetterLinkMovementMethod;
 public class RegExLinkifyTextView extends StyleableTextView {
     private static final String TAG = "RegExLinkifyTextView";
 
+    private static final int REGEXP_FLAGS =
+            Pattern.CASE_INSENSITIVE | Pattern.MULTILINE | Pattern.DOTALL;
+    private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\([1-9]|k<)");
+
     public static class RegExLink {
         interface RegExLinkExtractor {
             String extractLink(String group);
@@ -68,14 +75,232 @@ public class RegExLinkifyTextView extends StyleableTextView {
         private RegExLink(String type, String regEx, String link,
                 boolean multiGroup, RegExLinkExtractor extractor) {
             mType = type;
-            mPattern = Pattern.compile(regEx,
-                    Pattern.CASE_INSENSITIVE | Pattern.MULTILINE | Pattern.DOTALL);
+            mPattern = Pattern.compile(regEx, REGEXP_FLAGS);
             mLink = link;
             mMultiGroup = multiGroup;
             mExtractor = extractor;
         }
     }
 
+    /**
+     * A compiled set of regexps. The regexps are combined into one alternation (when they
+     * don't use back references) to find quickly the first link of a text, or that the
+     * text doesn't have any link at all. Links of later regexps replace the overlapping links
+     * of the previous ones, except when both start at the same position. Linkifiers are
+     * immutable, so they can be shared and used from a background thread.
+     */
+    public static class Linkifier {
+        private final List<RegExLink> mRegEx;
+        private final Pattern mAnyPattern;
+
+        public Linkifier(List<RegExLink> regExs) {
+            mRegEx = new ArrayList<>();
+            for (RegExLink regEx : regExs) {
+                if (regEx != null && regEx.mLink != null && regEx.mPattern != null) {
+                    mRegEx.add(regEx);
+                }
+            }
+            mAnyPattern = combine(mRegEx);
+        }
+
+        public List<RegExLink> getRegExs() {
+            return Collections.unmodifiableList(mRegEx);
+        }
+
+        public boolean matches(String text) {
+            if (mAnyPattern != null) {
+                return mAnyPattern.matcher(text).find();
+            }
+            for (RegExLink regEx : mRegEx) {
+                if (regEx.mPattern.matcher(text).find()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Applies the links of the regular expressions to the text. This doesn't touch any
+         * view, so it's safe to call it from a background thread.
+         */
+        public Spannable linkify(@NonNull CharSequence text) {
+            List<Link> links = findLinks(text);
+            if (links == null) {
+                return null;
+            }
+            Spannable span = text instanceof Spannable
+                    ? (Spannable) text : Spannable.Factory.getInstance().newSpannable(text);
+            if (links.isEmpty()) {
+                return span;
+            }
+
+            // Remove the previous spans overlapped by the new links
+            final int count = links.size();
+            ClickableSpan[] old = span.getSpans(0, span.length(), ClickableSpan.class);
+            if (old != null) {
+                for (ClickableSpan s : old) {
+                    if (overlaps(links, span.getSpanStart(s), span.getSpanEnd(s))) {
+                        span.removeSpan(s);
+                    }
+                }
+            }
+
+            for (int i = 0; i < count; i++) {
+                Link link = links.get(i);
+                span.setSpan(new LinkSpan(link.mLink), link.mStart, link.mEnd,
+                        Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            }
+            return span;
+        }
+
+        /**
+         * Returns the links of the text sorted by position, or null if a link can't be
+         * resolved.
+         */
+        @VisibleForTesting
+        List<Link> findLinks(CharSequence text) {
+            int from = 0;
+            if (mAnyPattern != null) {
+                Matcher matcher = mAnyPattern.matcher(text);
+                if (!matcher.find()) {
+                    return new ArrayList<>();
+                }
+                from = matcher.start();
+            }
+
+            // Accepted links never overlap, so they are sorted by both start and end
+            TreeMap<Integer, Link> accepted = new TreeMap<>();
+            BitSet starts = new BitSet();
+            for (RegExLink regEx : mRegEx) {
+                final Matcher matcher = regEx.mPattern.matcher(text);
+                if (!matcher.find(from)) {
+                    continue;
+                }
+                do {
+                    if (starts.get(matcher.start())) {
+                        continue;
+                    }
+                    starts.set(matcher.start());
+
+                    final String link = replaceLink(regEx, matcher);
+                    if (link == null) {
+                        return null;
+                    }
+
+                    // Try to deal with ".", ")", "]" catches by the regexp (this shouldn't
+                    // be the case for the 99% of the urls). Also trim up spaces.
+                    String group = matcher.group();
+                    int start = matcher.start();
+                    int end = matcher.end();
+                    if (group == null || start == -1 || end == -1) {
+                        return null;
+                    }
+                    if (StringHelper.endsWithPunctuationMark(group)) {
+                        group = group.substring(0, group.length() - 1);
+                        end--;
+                    }
+                    while (group.startsWith(" ") || group.startsWith("\n")) {
+                        group = group.substring(1);
+                        start++;
+                    }
+                    while (group.endsWith(" ") || group.endsWith("\n")) {
+                        group = group.substring(0, group.length() - 1);
+                        end++;
+                    }
+
+                    // Remove the previous links overlapped by this one
+                    Map.Entry<Integer, Link> entry = accepted.lowerEntry(end);
+                    while (entry != null && entry.getValue().mEnd > start) {
+                        accepted.remove(entry.getKey());
+                        entry = accepted.lowerEntry(entry.getKey());
+                    }
+                    accepted.put(start, new Link(start, end, link));
+                } while (matcher.find());
+            }
+            return new ArrayList<>(accepted.values());
+        }
+
+        private static boolean overlaps(List<Link> links, int start, int end) {
+            // Binary search of the first link that ends after the start
+            int lo = 0;
+            int hi = links.size();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (links.get(mid).mEnd <= start) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo < links.size() && links.get(lo).mStart < end;
+        }
+
+        @VisibleForTesting
+        static Pattern combine(List<RegExLink> regExs) {
+            if (regExs.size() < 2) {
+                return null;
+            }
+            StringBuilder sb = new StringBuilder();
+            for (RegExLink regEx : regExs) {
+                String pattern = regEx.mPattern.pattern();
+                if (BACK_REFERENCE.matcher(pattern).find()) {
+                    // Groups are renumbered in the alternation
+                    return null;
+                }
+                if (sb.length() > 0) {
+                    sb.append('|');
+                }
+                sb.append("(?:").append(pattern).append(')');
+            }
+            try {
+                return Pattern.compile(sb.toString(), REGEXP_FLAGS);
+            } catch (PatternSyntaxException ex) {
+                // Named groups can't be duplicated
+                Log.w(TAG, "Can't combine the linkify regexps", ex);
+                return null;
+            }
+        }
+    }
+
+    @VisibleForTesting
+    static class Link {
+        final int mStart;
+        final int mEnd;
+        final String mLink;
+
+        private Link(int start, int end, String link) {
+            mStart = start;
+            mEnd = end;
+            mLink = link;
+        }
+    }
+
+    private static class LinkSpan extends ClickableSpan {
+        private final String mLink;
+
+        private LinkSpan(String link) {
+            mLink = link;
+        }
+
+        @Override
+        @SuppressWarnings("ConstantConditions")
+        public void onClick(@NonNull View v) {
+            // Click on span doesn't provide sound feedback it the text view doesn't
+            // handle a click event. Just perform a click effect.
+            v.playSoundEffect(SoundEffectConstants.CLICK);
+
+            final Context context = v.getContext();
+            Uri uri = StringHelper.buildUriAndEnsureScheme(mLink);
+            boolean isHttpScheme = uri.getScheme().equals("http")
+                    || uri.getScheme().equals("https");
+            if (!isHttpScheme || ModelHelper.canAnyAccountHandleUrl(context, mLink)) {
+                ActivityHelper.handleUri(context, uri);
+            } else {
+                ActivityHelper.openUriInCustomTabs((Activity) context, uri);
+            }
+        }
+    }
+
     public static final RegExLink EMAIL_REGEX = new RegExLink(
             "email",
             StringHelper.EMAIL_REGEXP,
@@ -98,6 +323,7 @@ public class RegExLinkifyTextView extends StyleableTextView {
             false);
 
     private final List<RegExLink> mRegEx = new ArrayList<>();
+    private Linkifier mLinkifier;
 
     public RegExLinkifyTextView(Context context) {
         this(context, null);
@@ -156,85 +382,12 @@ public class RegExLinkifyTextView extends StyleableTextView {
     }
 
     @Override
-    @SuppressWarnings("ConstantConditions")
     public void setText(CharSequence text, BufferType type) {
-        if (text != null) {
-            Spannable span = text instanceof Spannable
-                    ? (Spannable) text : Spannable.Factory.getInstance().newSpannable(text);
-            if (mRegEx != null) {
-                Set<Integer> links = new HashSet<>();
-                for (final RegExLink regEx : mRegEx) {
-                    if (regEx == null || regEx.mLink == null || regEx.mPattern == null) {
-                        continue;
-                    }
-
-                    final Matcher matcher = regEx.mPattern.matcher(text);
-                    while (matcher.find()) {
-                        if (links.contains(matcher.start())) {
-                            continue;
-                        }
-                        links.add(matcher.start());
-
-                        final String link = replaceLink(regEx, matcher);
-                        if (link == null) {
-                            return;
-                        }
-
-                        // Try to deal with ".", ")", "]" catches by the regexp (this shouldn't
-                        // be the case for the 99% of the urls). Also trim up spaces.
-                        String group = matcher.group();
-                        int start = matcher.start();
-                        int end = matcher.end();
-                        if (group == null || start == -1 || end == -1) {
-                            return;
-                        }
-                        if (StringHelper.endsWithPunctuationMark(group)) {
-                            group = group.substring(0, group.length() - 1);
-                            end--;
-                        }
-                        while (group.startsWith(" ") || group.startsWith("\n")) {
-                            group = group.substring(1);
-                            start++;
-                        }
-                        while (group.endsWith(" ") || group.endsWith("\n")) {
-                            group = group.substring(0, group.length() - 1);
-                            end++;
-                        }
-
-                        // Remove previous spans
-                        ClickableSpan[] old = span.getSpans(start, end, ClickableSpan.class);
-                        if (old != null) {
-                            for (ClickableSpan s : old) {
-                                span.removeSpan(s);
-                            }
-                        }
-
-                        // Avoid to apply more than one clickable span over the same range
-                        ClickableSpan[] spans = span.getSpans(start, end, ClickableSpan.class);
-                        if (spans != null && spans.length > 0) {
-                            continue;
-                        }
-
-                        span.setSpan(new ClickableSpan() {
-                            @Override
-                            public void onClick(@NonNull View v) {
-                                // Click on span doesn't provide sound feedback it the text view doesn't
-                                // handle a click event. Just perform a click effect.
-                                v.playSoundEffect(SoundEffectConstants.CLICK);
-
-                                Uri uri = StringHelper.buildUriAndEnsureScheme(link);
-                                boolean isHttpScheme = uri.getScheme().equals("http")
-                                        || uri.getScheme().equals("https");
-                                if (!isHttpScheme ||
-                                        ModelHelper.canAnyAccountHandleUrl(getContext(), link)) {
-                                    ActivityHelper.handleUri(getContext(), uri);
-                                } else {
-                                    ActivityHelper.openUriInCustomTabs((Activity) getContext(), uri);
-                                }
-                            }
-                        }, start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
-                    }
-                }
+        // Called by the super constructor before the regexps are initialized
+        if (text != null && mRegEx != null) {
+            Spannable span = getLinkifier().linkify(text);
+            if (span == null) {
+                return;
             }
             super.setText(span, BufferType.SPANNABLE);
             return;
@@ -242,11 +395,40 @@ public class RegExLinkifyTextView extends StyleableTextView {
         super.setText(text, type);
     }
 
+    /**
+     * Sets a text already linkified by {@link Linkifier#linkify(CharSequence)}, so the text
+     * doesn't need to be scanned again.
+     */
+    public void setLinkifiedText(CharSequence text) {
+        super.setText(text, BufferType.SPANNABLE);
+    }
+
     public void addRegEx(RegExLink... regexs) {
         mRegEx.addAll(Arrays.asList(regexs));
+        mLinkifier = null;
+        setText(getText(), BufferType.SPANNABLE);
+    }
+
+    /**
+     * Replaces all the regexps of this view with the ones of an already compiled linkifier.
+     */
+    public void setLinkifier(Linkifier linkifier) {
+        if (mLinkifier == linkifier) {
+            return;
+        }
+        mRegEx.clear();
+        mRegEx.addAll(linkifier.mRegEx);
+        mLinkifier = linkifier;
         setText(getText(), BufferType.SPANNABLE);
     }
 
+    private Linkifier getLinkifier() {
+        if (mLinkifier == null) {
+            mLinkifier = new Linkifier(mRegEx);
+        }
+        return mLinkifier;
+    }
+
     @VisibleForTesting
     public static String replaceLink(
             RegExLink regEx, Matcher matcher) {
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.rview.misc;
+
+import com.ruesga.rview.TestUtils;
+import com.ruesga.rview.misc.EmojiHelperTest.Regexp;
+
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.List;
+import java.util.Locale;
+
+import static com.ruesga.rview.misc.EmojiHelperTest.loadCorpus;
+
+/**
+ * Compares the single pass emoji replacement with the previous regexps. It only reports
+ * timings, so it doesn't run with the unit tests. Remove the {@link Ignore} annotation
+ * to run it locally.
+ */
+@Ignore("Benchmark")
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({android.util.Log.class, android.text.TextUtils.class})
+public class EmojiHelperBenchmark {
+
+    @Before
+    public void setUp() {
+        TestUtils.mockCommonAndroidClasses();
+    }
+
+    @Test
+    public void benchmarkReplaceEmojis() throws Exception {
+        List<String> messages = loadCorpus();
+        Regexp regexp = new Regexp();
+        int length = 0;
+        for (String message : messages) {
+            length += message.length();
+        }
+
+        // Warm up
+        for (int i = 0; i < 20; i++) {
+            replaceAll(messages, regexp, true);
+            replaceAll(messages, regexp, false);
+        }
+
+        final int iterations = 50;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            replaceAll(messages, regexp, true);
+        }
+        long trie = (System.nanoTime() - start) / iterations;
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            replaceAll(messages, regexp, false);
+        }
+        long regex = (System.nanoTime() - start) / iterations;
+
+        System.out.println(String.format(Locale.US,
+                "Emojis: %d messages, %d chars => single pass %.2f ms, regexps %.2f ms",
+                messages.size(), length, trie / 1e6d, regex / 1e6d));
+    }
+
+    private static void replaceAll(List<String> messages, Regexp regexp, boolean singlePass) {
+        for (String message : messages) {
+            if (singlePass) {
+                EmojiHelper.replaceEmojis(message);
+            } else {
+                regexp.replace(message);
+            }
+        }
+    }
+}
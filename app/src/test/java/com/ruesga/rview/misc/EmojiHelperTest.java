@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.rview.misc;
+
+import com.google.gson.reflect.TypeToken;
+import com.ruesga.rview.TestUtils;
+import com.ruesga.rview.gerrit.model.ChangeMessageInfo;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({android.util.Log.class, android.text.TextUtils.class})
+public class EmojiHelperTest {
+
+    private static final String[] CORPUS = {
+            "ci-aosp-1.txt", "ci-aosp-2.txt", "ci-chromium.txt", "ci-couchbase.txt",
+            "ci-diamondlightsource.txt", "ci-gerrit.txt", "ci-intelhpdd.txt", "ci-linaro.txt",
+            "ci-lineageos.txt", "ci-onap.txt", "ci-opendev.txt", "ci-ovirt.txt"
+    };
+
+    @Before
+    public void setUp() {
+        TestUtils.mockCommonAndroidClasses();
+    }
+
+    @Test
+    public void testReplaceEmojis() throws Exception {
+        Regexp regexp = new Regexp();
+        String[] messages = {
+                ":)",
+                "LGTM :)",
+                "LGTM:)",
+                "Nice! :D\n:P thanks",
+                ":)) :(( :-) :-( 3:) O:) >:( >:O",
+                "\\o/ merged",
+                "see http://example.com :/ and a:/b",
+                ":+1: :-1: <3 ^_^ -_- o.O",
+                "o.O oxO",
+                "Patch Set 3: Code-Review+2\n\n:O:)",
+                "",
+                "no emojis here"
+        };
+        for (String msg : messages) {
+            assertEquals(regexp.replace(msg), EmojiHelper.replaceEmojis(msg));
+        }
+    }
+
+    @Test
+    public void testReplaceEmojisRandom() throws Exception {
+        Regexp regexp = new Regexp();
+        String alphabet = ":;-_()'/\\|*^<>+&?13oOxXBDPS \n";
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            char[] msg = new char[random.nextInt(30)];
+            for (int j = 0; j < msg.length; j++) {
+                msg[j] = alphabet.charAt(random.nextInt(alphabet.length()));
+            }
+            String s = new String(msg);
+            assertEquals(s, regexp.replace(s), EmojiHelper.replaceEmojis(s));
+        }
+    }
+
+    @Test
+    public void testReplaceEmojisCorpus() throws Exception {
+        Regexp regexp = new Regexp();
+        for (String message : loadCorpus()) {
+            assertEquals(regexp.replace(message), EmojiHelper.replaceEmojis(message));
+        }
+    }
+
+    static List<String> loadCorpus() throws IOException {
+        List<String> messages = new ArrayList<>();
+        for (String resource : CORPUS) {
+            List<ChangeMessageInfo> infos = TestUtils.loadJson(
+                    new TypeToken<List<ChangeMessageInfo>>(){}.getType(),
+                    "/com/ruesga/rview/misc/" + resource);
+            for (ChangeMessageInfo info : infos) {
+                if (info.message != null) {
+                    messages.add(info.message);
+                }
+            }
+        }
+        return messages;
+    }
+
+    // The previous implementation: two regexps per emoji, applied one after another
+    static class Regexp {
+        private final String[] mTexts;
+        private final String[] mEmojis;
+        private final Pattern[] mLineStart;
+        private final Pattern[] mAfterSpace;
+
+        Regexp() throws Exception {
+            mTexts = (String[]) field("TEXT");
+            int[] codes = (int[]) field("CODES");
+            int count = mTexts.length;
+            mEmojis = new String[count];
+            mLineStart = new Pattern[count];
+            mAfterSpace = new Pattern[count];
+            for (int i = 0; i < count; i++) {
+                mEmojis[i] = EmojiHelper.getEmojiByUnicode(codes[i]);
+                mLineStart[i] = Pattern.compile(
+                        "^" + Pattern.quote(mTexts[i]), Pattern.MULTILINE);
+                mAfterSpace[i] = Pattern.compile(" " + Pattern.quote(mTexts[i]));
+            }
+        }
+
+        String replace(String msg) {
+            int count = mTexts.length;
+            for (int i = 0; i < count; i++) {
+                if (msg.contains(mTexts[i])) {
+                    msg = mLineStart[i].matcher(msg).replaceAll(
+                            Matcher.quoteReplacement(mEmojis[i]));
+                    msg = mAfterSpace[i].matcher(msg).replaceAll(
+                            Matcher.quoteReplacement(" " + mEmojis[i]));
+                }
+            }
+            return msg;
+        }
+
+        private static Object field(String name) throws Exception {
+            Field field = EmojiHelper.class.getDeclaredField(name);
+            field.setAccessible(true);
+            return field.get(null);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2016 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.rview.misc;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OfflineChangePackTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testReadWrite() throws IOException {
+        File pack = new File(mFolder.getRoot(), "1.pack");
+        assertNull(OfflineChangePack.read(pack, "0_1_diff.json"));
+        assertFalse(OfflineChangePack.contains(pack, "0_1_diff.json"));
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append("{\"ab\":[\"line ").append(i).append("\"]},");
+        }
+        byte[] diff = sb.toString().getBytes();
+        try (OfflineChangePack.Writer writer = new OfflineChangePack.Writer(pack, 1000L)) {
+            writer.put("0_1_diff.json", diff);
+            writer.put("1_comments.json", "{}".getBytes());
+            writer.put("empty", new byte[0]);
+            writer.commit();
+        }
+
+        assertTrue(pack.length() < diff.length);
+        assertArrayEquals(diff, OfflineChangePack.read(pack, "0_1_diff.json"));
+        assertEquals("{}", new String(OfflineChangePack.read(pack, "1_comments.json")));
+        assertEquals(0, OfflineChangePack.read(pack, "empty").length);
+        assertNull(OfflineChangePack.read(pack, "1_drafts.json"));
+        assertTrue(OfflineChangePack.contains(pack, "0_1_diff.json"));
+        assertFalse(OfflineChangePack.contains(pack, "1_drafts.json"));
+    }
+
+    @Test
+    public void testUncommittedWriter() throws IOException {
+        File pack = new File(mFolder.getRoot(), "2.pack");
+        try (OfflineChangePack.Writer writer = new OfflineChangePack.Writer(pack, 1000L)) {
+            writer.put("a", "1".getBytes());
+            writer.commit();
+        }
+        try (OfflineChangePack.Writer writer = new OfflineChangePack.Writer(pack, 1000L)) {
+            writer.put("a", "2".getBytes());
+        }
+
+        // The previous pack is kept and the temporary file removed
+        assertEquals("1", new String(OfflineChangePack.read(pack, "a")));
+        assertFalse(new File(mFolder.getRoot(), "2.pack.tmp").exists());
+    }
+
+    @Test
+    public void testDelete() throws IOException {
+        File pack = new File(mFolder.getRoot(), "3.pack");
+        try (OfflineChangePack.Writer writer = new OfflineChangePack.Writer(pack, 1000L)) {
+            writer.put("a", "1".getBytes());
+            writer.commit();
+        }
+        assertEquals("1", new String(OfflineChangePack.read(pack, "a")));
+
+        assertTrue(OfflineChangePack.delete(pack));
+        assertFalse(pack.exists());
+        assertNull(OfflineChangePack.read(pack, "a"));
+        assertFalse(OfflineChangePack.delete(pack));
+    }
+
+    @Test
+    public void testMarkStale() throws IOException {
+        File pack = new File(mFolder.getRoot(), "4.pack");
+        assertFalse(OfflineChangePack.isStale(pack));
+        try (OfflineChangePack.Writer writer = new OfflineChangePack.Writer(pack, 1000L)) {
+            writer.put("a", "1".getBytes());
+            writer.commit();
+        }
+        assertEquals(1000L, OfflineChangePack.getUpdated(pack));
+        assertFalse(OfflineChangePack.isStale(pack));
+
+        // The entries are kept
+        OfflineChangePack.markStale(pack);
+        assertTrue(OfflineChangePack.isStale(pack));
+        assertEquals(1000L, OfflineChangePack.getUpdated(pack));
+        assertEquals("1", new String(OfflineChangePack.read(pack, "a")));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2016 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.rview.tasks;
+
+import com.ruesga.rview.gerrit.model.CommentInfo;
+import com.ruesga.rview.tasks.AsyncTextDiffProcessor.ModelIndex;
+import com.ruesga.rview.widget.DiffView;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static com.ruesga.rview.tasks.AsyncTextDiffProcessorTest.createComments;
+import static com.ruesga.rview.tasks.AsyncTextDiffProcessorTest.createEdits;
+import static com.ruesga.rview.tasks.AsyncTextDiffProcessorTest.createLines;
+import static com.ruesga.rview.tasks.AsyncTextDiffProcessorTest.createModel;
+import static com.ruesga.rview.tasks.AsyncTextDiffProcessorTest.naive;
+import static com.ruesga.rview.tasks.AsyncTextDiffProcessorTest.sweep;
+
+/**
+ * Microbenchmarks of the text diff processor. They only report timings, so they don't run
+ * with the unit tests. Remove the {@link Ignore} annotation to run them locally.
+ */
+@Ignore("Benchmark")
+public class AsyncTextDiffProcessorBenchmark {
+
+    @Test
+    public void benchmarkIntralineEdits() {
+        Random random = new Random(42);
+        for (int size : new int[]{10000, 100000}) {
+            String[] lines = createLines(random, size);
+            List<ArrayList<Integer>> edits = createEdits(random, lines);
+
+            // Warm up
+            sweep(lines, edits);
+
+            long start = System.nanoTime();
+            sweep(lines, edits);
+            long sweep = System.nanoTime() - start;
+            System.out.println(String.format(Locale.US,
+                    "Intraline sweep: %d lines, %d edits => %d ms (%.0f lines/s)",
+                    size, edits.size(), sweep / 1000000, size / (sweep / 1e9d)));
+
+            // The naive approach is quadratic, so only measure the small hunk
+            if (size <= 10000) {
+                start = System.nanoTime();
+                naive(lines, edits);
+                long naive = System.nanoTime() - start;
+                System.out.println(String.format(Locale.US,
+                        "Intraline naive: %d lines, %d edits => %d ms (%.0f lines/s)",
+                        size, edits.size(), naive / 1000000, size / (naive / 1e9d)));
+            }
+        }
+    }
+
+    @Test
+    public void benchmarkModelIndex() {
+        Random random = new Random(42);
+        int lines = 50000;
+        List<DiffView.AbstractModel> model = createModel(lines);
+        List<CommentInfo> comments = createComments(random, lines, 1000);
+
+        long start = System.nanoTime();
+        ModelIndex index = new ModelIndex(model);
+        for (CommentInfo comment : comments) {
+            index.addComment(comment, comment.patchSet == 1, false, DiffView.SIDE_BY_SIDE_MODE);
+        }
+        index.toModel();
+        long elapsed = System.nanoTime() - start;
+        System.out.println(String.format(Locale.US,
+                "Comments placement: %d lines, %d comments => %d ms",
+                lines, comments.size(), elapsed / 1000000));
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2016 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.rview.tasks;
+
+import com.ruesga.rview.gerrit.model.CommentInfo;
+import com.ruesga.rview.tasks.AsyncTextDiffProcessor.IntralineEdits;
+import com.ruesga.rview.tasks.AsyncTextDiffProcessor.ModelIndex;
+import com.ruesga.rview.widget.DiffView;
+import com.ruesga.rview.widget.DiffView.CommentModel;
+import com.ruesga.rview.widget.DiffView.DiffInfoModel;
+import com.ruesga.rview.widget.DiffView.SkipLineModel;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class AsyncTextDiffProcessorTest {
+
+    @Test
+    public void testIntralineEdits() {
+        String[] lines = {"abcdef", "", "ghijklmn", "op", "qrstuvwxyz"};
+        List<ArrayList<Integer>> edits = Arrays.asList(
+                edit(1, 2), edit(2, 6), edit(0, 0), edit(4, 2), edit(3, 10));
+        assertEquals(Arrays.asList("0:1-3", "0:5-6", "1:0-0", "2:0-3", "2:3-3", "2:7-8",
+                "3:0-0", "4:0-10"), sweep(lines, edits));
+        assertEquals(naive(lines, edits), sweep(lines, edits));
+
+        // An edit covering the whole hunk
+        edits = Arrays.asList(edit(0, 50));
+        assertEquals(naive(lines, edits), sweep(lines, edits));
+
+        // No edits
+        edits = new ArrayList<>();
+        assertEquals(naive(lines, edits), sweep(lines, edits));
+    }
+
+    @Test
+    public void testIntralineEditsRandomHunks() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100; i++) {
+            String[] lines = createLines(random, 200);
+            List<ArrayList<Integer>> edits = createEdits(random, lines);
+            assertEquals(naive(lines, edits), sweep(lines, edits));
+        }
+    }
+
+    @Test
+    public void testIntralineEditsRandomAccess() {
+        // Lines are spanned when they are bound, so they can be visited in any order
+        Random random = new Random(42);
+        String[] lines = createLines(random, 500);
+        List<ArrayList<Integer>> edits = createEdits(random, lines);
+        List<String> expected = naive(lines, edits);
+        IntralineEdits intralineEdits = new IntralineEdits(edits);
+        int[] offsets = new int[lines.length];
+        for (int i = 1; i < lines.length; i++) {
+            offsets[i] = offsets[i - 1] + lines[i - 1].length() + 1;
+        }
+        List<String> ranges = new ArrayList<>();
+        for (int i = lines.length - 1; i >= 0; i--) {
+            List<String> line = new ArrayList<>();
+            addRanges(line, intralineEdits, i, offsets[i], lines[i].length());
+            ranges.addAll(0, line);
+        }
+        assertEquals(expected, ranges);
+    }
+
+    @Test
+    public void testModelIndexSideBySide() {
+        List<DiffView.AbstractModel> model = new ArrayList<>();
+        model.add(line(1, 1));
+        model.add(line(2, -1));
+        model.add(line(-1, 2));
+        SkipLineModel skip = new SkipLineModel();
+        skip.skippedLines = new DiffInfoModel[]{line(3, 3), line(4, 4)};
+        model.add(skip);
+        model.add(line(5, 5));
+        model.add(new DiffView.DecoratorModel());
+
+        ModelIndex index = new ModelIndex(model);
+        assertEquals(1, index.findLine(true, 2));
+        assertEquals(2, index.findLine(false, 2));
+        assertEquals(-1, index.findLine(true, 3));
+        assertSame(skip.skippedLines[1], index.findDiff(false, 4));
+        assertNull(index.findDiff(true, 6));
+
+        CommentInfo fileComment = comment(null, 1);
+        CommentInfo leftComment = comment(5, 1);
+        CommentInfo rightComment = comment(5, 2);
+        CommentInfo otherRightComment = comment(5, 2);
+        CommentInfo hiddenComment = comment(3, 2);
+        index.addComment(rightComment, false, false, DiffView.SIDE_BY_SIDE_MODE);
+        index.addComment(otherRightComment, false, false, DiffView.SIDE_BY_SIDE_MODE);
+        index.addComment(leftComment, true, true, DiffView.SIDE_BY_SIDE_MODE);
+        index.addComment(hiddenComment, false, false, DiffView.SIDE_BY_SIDE_MODE);
+        index.addComment(fileComment, true, false, DiffView.SIDE_BY_SIDE_MODE);
+
+        List<DiffView.AbstractModel> result = index.toModel();
+        assertEquals(model.size() + 3, result.size());
+        CommentModel file = (CommentModel) result.get(0);
+        assertSame(fileComment, file.commentA);
+        assertNull(file.diff);
+        assertSame(model.get(4), result.get(5));
+
+        // The left comment reuses the first right comment view
+        CommentModel first = (CommentModel) result.get(6);
+        assertSame(leftComment, first.commentA);
+        assertSame(rightComment, first.commentB);
+        assertSame(model.get(4), first.diff);
+        CommentModel second = (CommentModel) result.get(7);
+        assertNull(second.commentA);
+        assertSame(otherRightComment, second.commentB);
+    }
+
+    @Test
+    public void testModelIndexUnified() {
+        List<DiffView.AbstractModel> model = new ArrayList<>();
+        model.add(line(1, 1));
+        model.add(line(2, -1));
+        model.add(line(-1, 2));
+        model.add(new DiffView.DecoratorModel());
+
+        ModelIndex index = new ModelIndex(model);
+        CommentInfo left = comment(2, 1);
+        CommentInfo right = comment(2, 2);
+        CommentInfo base = comment(2, 0);
+        index.addComment(right, false, false, DiffView.UNIFIED_MODE);
+        index.addComment(left, true, false, DiffView.UNIFIED_MODE);
+        index.addComment(base, false, false, DiffView.UNIFIED_MODE);
+
+        List<DiffView.AbstractModel> result = index.toModel();
+        assertEquals(7, result.size());
+        assertSame(left, ((CommentModel) result.get(2)).commentA);
+        assertSame(base, ((CommentModel) result.get(3)).commentA);
+        assertSame(model.get(2), result.get(4));
+        assertSame(right, ((CommentModel) result.get(5)).commentA);
+    }
+
+    @Test
+    public void testModelIndexRandomComments() {
+        Random random = new Random(42);
+        List<DiffView.AbstractModel> model = createModel(2000);
+        List<CommentInfo> comments = createComments(random, 2000, 500);
+
+        ModelIndex index = new ModelIndex(model);
+        for (CommentInfo comment : comments) {
+            index.addComment(comment, comment.patchSet == 1, false, DiffView.SIDE_BY_SIDE_MODE);
+        }
+        List<DiffView.AbstractModel> result = index.toModel();
+
+        int count = 0;
+        for (DiffView.AbstractModel m : result) {
+            if (m instanceof CommentModel) {
+                CommentModel c = (CommentModel) m;
+                if (c.commentA != null) {
+                    assertEquals(c.commentA.line.intValue(), c.diff.a);
+                    count++;
+                }
+                if (c.commentB != null) {
+                    assertEquals(c.commentB.line.intValue(), c.diff.b);
+                    count++;
+                }
+            }
+        }
+        assertEquals(comments.size(), count);
+    }
+
+    static List<DiffView.AbstractModel> createModel(int lines) {
+        List<DiffView.AbstractModel> model = new ArrayList<>();
+        for (int i = 1; i <= lines; i++) {
+            model.add(line(i, i));
+        }
+        model.add(new DiffView.DecoratorModel());
+        return model;
+    }
+
+    static List<CommentInfo> createComments(Random random, int lines, int count) {
+        List<CommentInfo> comments = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            comments.add(comment(1 + random.nextInt(lines), 1 + random.nextInt(2)));
+        }
+        return comments;
+    }
+
+    private static DiffInfoModel line(int a, int b) {
+        DiffInfoModel m = new DiffInfoModel();
+        m.a = a;
+        m.b = b;
+        return m;
+    }
+
+    private static CommentInfo comment(Integer line, int patchSet) {
+        CommentInfo comment = new CommentInfo();
+        comment.line = line;
+        comment.patchSet = patchSet;
+        return comment;
+    }
+
+    private static ArrayList<Integer> edit(int skip, int mark) {
+        return new ArrayList<>(Arrays.asList(skip, mark));
+    }
+
+    static String[] createLines(Random random, int count) {
+        String[] lines = new String[count];
+        for (int i = 0; i < count; i++) {
+            char[] line = new char[random.nextInt(80)];
+            Arrays.fill(line, 'x');
+            lines[i] = new String(line);
+        }
+        return lines;
+    }
+
+    static List<ArrayList<Integer>> createEdits(Random random, String[] lines) {
+        int length = 0;
+        for (String line : lines) {
+            length += line.length() + 1;
+        }
+        List<ArrayList<Integer>> edits = new ArrayList<>();
+        int pos = 0;
+        while (pos < length) {
+            int skip = random.nextInt(40);
+            int mark = random.nextInt(random.nextInt(10) == 0 ? 200 : 10);
+            edits.add(edit(skip, mark));
+            pos += skip + mark;
+        }
+        return edits;
+    }
+
+    static List<String> naive(String[] lines, List<ArrayList<Integer>> edits) {
+        List<String> ranges = new ArrayList<>();
+        int pos = 0;
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            int s2 = 0;
+            for (ArrayList<Integer> intra : edits) {
+                int s1 = s2 + intra.get(0);
+                s2 = s1 + intra.get(1);
+                int l = pos + line.length();
+                if ((s1 >= pos && s1 <= l) || (s2 >= pos && s2 <= l)
+                        || (s1 <= pos && s2 >= l)) {
+                    ranges.add(i + ":" + (Math.max(pos, s1) - pos)
+                            + "-" + (Math.min(l, s2) - pos));
+                }
+            }
+            pos += line.length() + 1;
+        }
+        return ranges;
+    }
+
+    static List<String> sweep(String[] lines, List<ArrayList<Integer>> edits) {
+        List<String> ranges = new ArrayList<>();
+        IntralineEdits intralineEdits = new IntralineEdits(edits);
+        int pos = 0;
+        for (int i = 0; i < lines.length; i++) {
+            addRanges(ranges, intralineEdits, i, pos, lines[i].length());
+            pos += lines[i].length() + 1;
+        }
+        return ranges;
+    }
+
+    private static void addRanges(List<String> ranges,
+            IntralineEdits intralineEdits, int line, int pos, int length) {
+        intralineEdits.visit(pos, length,
+                (start, end) -> ranges.add(line + ":" + start + "-" + end));
+    }
+}
@@ -18,14 +18,17 @@ package com.ruesga.rview.widget;
 import com.ruesga.rview.BuildConfig;
 import com.ruesga.rview.model.Repository;
 import com.ruesga.rview.preferences.Constants;
+import com.ruesga.rview.widget.RegExLinkifyTextView.Linkifier;
 import com.ruesga.rview.widget.RegExLinkifyTextView.RegExLink;
 
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.regex.Matcher;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
 public class RegExLinkifyTextViewTest {
@@ -127,6 +130,47 @@ public class RegExLinkifyTextViewTest {
                         "#JIRA-894"));
     }
 
+    @Test
+    public void testLinkifierFindLinks() {
+        Linkifier linkifier = new Linkifier(Arrays.asList(
+                RegExLinkifyTextView.EMAIL_REGEX,
+                RegExLinkifyTextView.WEB_LINK_REGEX,
+                RegExLinkifyTextView.GERRIT_CHANGE_ID_REGEX,
+                RegExLinkifyTextView.GERRIT_COMMIT_REGEX));
+        assertNotNull(Linkifier.combine(linkifier.getRegExs()));
+        assertEquals("", links(linkifier, "text without links"));
+        assertEquals("5-22:http://test.com/a|27-68:" + BuildConfig.APPLICATION_ID + "://"
+                        + Constants.CUSTOM_URI_CHANGE + "/I528af53639e27b3b8297079b0bd18dc123d5b168",
+                links(linkifier, "text http://test.com/a and I528af53639e27b3b8297079b0bd18dc123d5b168"));
+
+        // Later regexps replace the overlapped links, unless they start at the same position
+        linkifier = new Linkifier(Arrays.asList(
+                createRegExLink("(abc)", "a/$1"),
+                createRegExLink("(bcd)", "b/$1"),
+                createRegExLink("(abce)", "c/$1"),
+                createRegExLink("(x)", "x/$1")));
+        assertEquals("1-4:b/bcd|5-6:x/x", links(linkifier, "abcdex"));
+        assertEquals("0-3:a/abc|4-5:x/x", links(linkifier, "abcex"));
+
+        // Back references can't be combined in an alternation
+        assertNull(Linkifier.combine(Arrays.asList(
+                createRegExLink("(a)\\1", "$1"), createRegExLink("(b)", "$1"))));
+        linkifier = new Linkifier(Arrays.asList(
+                createRegExLink("(a)\\1", "1/$1"), createRegExLink("(b)", "2/$1")));
+        assertEquals("0-2:1/a|3-4:2/b", links(linkifier, "aa b"));
+    }
+
+    private static String links(Linkifier linkifier, String text) {
+        StringBuilder sb = new StringBuilder();
+        for (RegExLinkifyTextView.Link link : linkifier.findLinks(text)) {
+            if (sb.length() > 0) {
+                sb.append("|");
+            }
+            sb.append(link.mStart).append("-").append(link.mEnd).append(":").append(link.mLink);
+        }
+        return sb.toString();
+    }
+
     private String replaceLink(RegExLink regEx, String test) {
         Matcher matcher = regEx.mPattern.matcher(test);
         if (!matcher.find()) {
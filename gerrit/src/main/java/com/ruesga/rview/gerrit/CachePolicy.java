@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2016 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.rview.gerrit;
+
+/**
+ * How a GET request should use the http response cache.
+ */
+public enum CachePolicy {
+    /**
+     * Always go to the network (revalidating the cached response with its ETag, if any),
+     * and fallback to the cached response if the network is not available.
+     */
+    NETWORK_FIRST,
+    /**
+     * Return the cached response if there is one, regardless of its age. Otherwise, go
+     * to the network.
+     */
+    CACHE_FIRST,
+    /**
+     * Return the cached response if there is one, regardless of its age, and revalidate it
+     * in the background, so the next request obtains a fresh response. Otherwise, go to
+     * the network.
+     */
+    STALE_WHILE_REVALIDATE
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2016 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.rview.gerrit;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.ruesga.rview.gerrit.model.DiffContentInfo;
+import com.ruesga.rview.gerrit.model.DiffInfo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Reads a {@link DiffInfo} from a stream, delivering every hunk of the diff to a listener
+ * as soon as it's read, so hunks can be processed while the rest of the diff is still
+ * being downloaded.
+ */
+public class DiffStreamReader implements Closeable {
+
+    public interface OnDiffHunkListener {
+        void onDiffHunk(DiffContentInfo hunk);
+    }
+
+    private static final String CONTENT = "content";
+
+    private final Gson mGson;
+    private final JsonReader mReader;
+
+    public DiffStreamReader(@NonNull Gson gson, @NonNull Reader reader) {
+        mGson = gson;
+        mReader = new JsonReader(reader);
+        // Lenient readers skip the non-executable prefix of the gerrit responses
+        mReader.setLenient(true);
+    }
+
+    /**
+     * Reads the diff. The returned diff holds all the hunks passed to the listener.
+     */
+    public DiffInfo read(@NonNull OnDiffHunkListener listener) throws IOException {
+        List<DiffContentInfo> content = new ArrayList<>();
+        JsonObject metadata = new JsonObject();
+        boolean hasContent = false;
+
+        mReader.beginObject();
+        while (mReader.hasNext()) {
+            String name = mReader.nextName();
+            if (CONTENT.equals(name) && mReader.peek() == JsonToken.BEGIN_ARRAY) {
+                hasContent = true;
+                mReader.beginArray();
+                while (mReader.hasNext()) {
+                    DiffContentInfo hunk = mGson.fromJson(mReader, DiffContentInfo.class);
+                    content.add(hunk);
+                    listener.onDiffHunk(hunk);
+                }
+                mReader.endArray();
+            } else {
+                // Metadata is small, so just bind it once the whole diff is read
+                metadata.add(name, mGson.fromJson(mReader, JsonElement.class));
+            }
+        }
+        mReader.endObject();
+
+        DiffInfo diff = mGson.fromJson(metadata, DiffInfo.class);
+        if (hasContent) {
+            diff.content = content.toArray(new DiffContentInfo[0]);
+        }
+        return diff;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+}
@@ -110,6 +110,11 @@ public interface GerritApi {
      */
     boolean supportsFeature(Features feature, ServerVersion version);
 
+    /**
+     * Return a view of this api that resolves its GET requests with the passed cache policy
+     */
+    GerritApi withCachePolicy(@NonNull CachePolicy policy);
+
 
 
 
@@ -541,6 +546,18 @@ public interface GerritApi {
             @Nullable Integer start,
             @Nullable List<ChangeOptions> options);
 
+    /**
+     * Queries several change lists in a single request. The results are returned in
+     * the same order as the queries.
+     *
+     * @link "https://gerrit-review.googlesource.com/Documentation/rest-api-changes.html#list-changes"
+     */
+    Observable<List<List<ChangeInfo>>> getChangesMulti(
+            @NonNull List<ChangeQuery> queries,
+            @Nullable Integer count,
+            @Nullable Integer start,
+            @Nullable List<ChangeOptions> options);
+
     /**
      * @link "https://gerrit-review.googlesource.com/Documentation/rest-api-changes.html#get-change"
      */
@@ -1212,6 +1229,24 @@ public interface GerritApi {
             @Nullable WhitespaceType whitespace,
             @Nullable ContextType context);
 
+    /**
+     * Same as {@link #getChangeRevisionFileDiff(String, String, String, Integer, Option,
+     * Option, WhitespaceType, ContextType)}, but the response is streamed and every hunk
+     * is passed to the listener as soon as it's read.
+     *
+     * @link "https://gerrit-review.googlesource.com/Documentation/rest-api-changes.html#get-diff"
+     */
+    Observable<DiffInfo> getChangeRevisionFileDiff(
+            @NonNull String changeId,
+            @NonNull String revisionId,
+            @NonNull String fileId,
+            @Nullable Integer base,
+            @Nullable Option intraline,
+            @Nullable Option weblinksOnly,
+            @Nullable WhitespaceType whitespace,
+            @Nullable ContextType context,
+            @NonNull DiffStreamReader.OnDiffHunkListener listener);
+
     /**
      * @link "https://gerrit-review.googlesource.com/Documentation/rest-api-changes.html#get-blame"
      */
@@ -25,8 +25,7 @@ import com.burgstaller.okhttp.basic.BasicAuthenticator;
 import com.burgstaller.okhttp.digest.CachingAuthenticator;
 import com.burgstaller.okhttp.digest.Credentials;
 import com.burgstaller.okhttp.digest.DigestAuthenticator;
-import com.google.gson.annotations.Since;
-import com.ruesga.rview.gerrit.annotations.Until;
+import com.google.gson.Gson;
 import com.ruesga.rview.gerrit.filter.AccountQuery;
 import com.ruesga.rview.gerrit.filter.ChangeQuery;
 import com.ruesga.rview.gerrit.filter.GroupQuery;
@@ -34,13 +33,19 @@ import com.ruesga.rview.gerrit.filter.Option;
 import com.ruesga.rview.gerrit.filter.ProjectQuery;
 import com.ruesga.rview.gerrit.model.*;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -48,7 +53,12 @@ import java.util.regex.Pattern;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import io.reactivex.Observable;
+import io.reactivex.Single;
 import me.tatarka.rxloader2.safe.SafeObservable;
+import okhttp3.Cache;
+import okhttp3.CacheControl;
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.Cookie;
 import okhttp3.CookieJar;
 import okhttp3.FormBody;
@@ -67,13 +77,24 @@ import retrofit2.converter.gson.GsonConverterFactory;
 class GerritApiClient implements GerritApi {
 
     private final String mEndPoint;
+    private final OkHttpClient mClient;
+    private final Retrofit mRetrofit;
+    private final Gson mGson;
     private final GerritRestApi mService;
     private final CookieManager mCookieManager;
-    private boolean mWasAuthorizedPreviously = false;
+    // Cache policy clients share the interceptors of their root client, so the authorization
+    // state is only tracked by the root client
+    private volatile boolean mWasAuthorizedPreviously = false;
     private final PlatformAbstractionLayer mAbstractionLayer;
-    private long mLastServerVersionCheck = 0;
-    ServerVersion mServerVersion;
-    private List<Features> mSupportedFeatures = new ArrayList<>();
+    private volatile long mLastServerVersionCheck = 0;
+    volatile ServerVersion mServerVersion;
+    private volatile VersionedEnums mVersionedEnums;
+    private volatile Set<Features> mSupportedFeatures = EnumSet.noneOf(Features.class);
+    private final Object mServerVersionLock = new Object();
+    private Single<ServerVersion> mServerVersionRequest;
+    private final GerritApiClient mRoot;
+    private final Map<CachePolicy, GerritApiClient> mCachedPolicyClients =
+            new EnumMap<>(CachePolicy.class);
 
     private static final String AUTHENTICATED_PATH = "/a/";
     private static final String LOGIN_PATH = "login/";
@@ -149,6 +170,12 @@ class GerritApiClient implements GerritApi {
 
     GerritApiClient(String endpoint, Authorization authorization,
             PlatformAbstractionLayer abstractionLayer) {
+        this(endpoint, authorization, abstractionLayer, null, 0);
+    }
+
+    GerritApiClient(String endpoint, Authorization authorization,
+            PlatformAbstractionLayer abstractionLayer, File cacheDir, long maxCacheSize) {
+        mRoot = this;
         mAbstractionLayer = abstractionLayer;
         mEndPoint = endpoint;
         mCookieManager = new CookieManager(toUnauthenticatedEndpoint(mEndPoint));
@@ -187,25 +214,51 @@ class GerritApiClient implements GerritApi {
                     .authenticator(new CachingAuthenticatorDecorator(authenticator, authCache))
                     .addInterceptor(new AuthenticationCacheInterceptor(authCache));
         }
-        OkHttpClient client = clientBuilder.build();
+        if (cacheDir != null) {
+            clientBuilder
+                    .cache(new Cache(cacheDir, maxCacheSize))
+                    .addNetworkInterceptor(createCacheableResponseInterceptor());
+        }
+        mClient = clientBuilder.build();
 
         // Gson adapter
-        GsonConverterFactory gsonFactory = GsonConverterFactory.create(
-                GsonHelper.createGerritGsonBuilder(true, mAbstractionLayer).create());
+        mGson = GsonHelper.createGerritGsonBuilder(true, mAbstractionLayer).create();
+        GsonConverterFactory gsonFactory = GsonConverterFactory.create(mGson);
 
-        // RxJava adapter
-        RxJava2CallAdapterFactory rxAdapter = RxJava2CallAdapterFactory.create();
+        // RxJava adapter. Calls are enqueued in the OkHttp dispatcher, so no thread is
+        // blocked waiting for the response
+        RxJava2CallAdapterFactory rxAdapter = RxJava2CallAdapterFactory.createAsync();
 
         // Retrofit
-        Retrofit retrofit = new Retrofit.Builder()
+        mRetrofit = new Retrofit.Builder()
                 .baseUrl(endpoint)
-                .client(client)
+                .client(mClient)
                 .addConverterFactory(gsonFactory)
                 .addCallAdapterFactory(rxAdapter)
                 .build();
 
         // Build the api
-        mService = retrofit.create(GerritRestApi.class);
+        mService = mRetrofit.create(GerritRestApi.class);
+    }
+
+    private GerritApiClient(GerritApiClient parent, CachePolicy policy) {
+        mRoot = parent;
+        mAbstractionLayer = parent.mAbstractionLayer;
+        mEndPoint = parent.mEndPoint;
+        mCookieManager = parent.mCookieManager;
+        mServerVersion = parent.mServerVersion;
+        mVersionedEnums = parent.mVersionedEnums;
+        mSupportedFeatures = parent.mSupportedFeatures;
+        mLastServerVersionCheck = parent.mLastServerVersionCheck;
+        mGson = parent.mGson;
+
+        // The cache policy must be resolved before any other interceptor, so cached
+        // responses can be returned even if there is no connectivity
+        OkHttpClient.Builder clientBuilder = parent.mClient.newBuilder();
+        clientBuilder.interceptors().add(0, createCachePolicyInterceptor(parent.mClient, policy));
+        mClient = clientBuilder.build();
+        mRetrofit = parent.mRetrofit.newBuilder().client(mClient).build();
+        mService = mRetrofit.create(GerritRestApi.class);
     }
 
     private HttpLoggingInterceptor createLoggingInterceptor() {
@@ -228,7 +281,7 @@ class GerritApiClient implements GerritApi {
             // anything more. Just can an assume the result of the response
             if (auth.isAnonymousUser()) {
                 Request request = requestBuilder.build();
-                mWasAuthorizedPreviously = false;
+                mRoot.mWasAuthorizedPreviously = false;
                 return chain.proceed(request);
             }
 
@@ -257,7 +310,8 @@ class GerritApiClient implements GerritApi {
             // Proceed with the request
             Request request = requestBuilder.build();
             Response response = chain.proceed(request);
-            if (response.code() == 401 || (response.code() == 403 && !mWasAuthorizedPreviously)) {
+            if (response.code() == 401
+                    || (response.code() == 403 && !mRoot.mWasAuthorizedPreviously)) {
                 // Unauthorized or Forbidden without previous being authorized.
                 // Try to login in order to obtain a XSRF token
                 if (login(chain, auth)) {
@@ -272,8 +326,8 @@ class GerritApiClient implements GerritApi {
     }
 
     private Response markAsAuthorized(Response response) {
-        if (!mWasAuthorizedPreviously) {
-            mWasAuthorizedPreviously = response.isSuccessful();
+        if (!mRoot.mWasAuthorizedPreviously) {
+            mRoot.mWasAuthorizedPreviously = response.isSuccessful();
         }
         return response;
     }
@@ -369,74 +423,175 @@ class GerritApiClient implements GerritApi {
 
     private Interceptor createConnectivityCheckInterceptor() {
         return chain -> {
-            if (!mAbstractionLayer.hasConnectivity()) {
+            // Requests resolved only from the cache don't need network
+            if (!mAbstractionLayer.hasConnectivity()
+                    && !chain.request().cacheControl().onlyIfCached()) {
                 throw new NoConnectivityException();
             }
             return chain.proceed(chain.request());
         };
     }
 
-    private <T> Observable<T> withVersionRequestCheck(final Observable<T> observable) {
-        return SafeObservable.fromNullCallable(() -> {
-            long now = System.currentTimeMillis();
-            if (mServerVersion == null ||
-                    (now - mLastServerVersionCheck > DateUtils.DAY_IN_MILLIS)) {
-                mServerVersion = getServerVersion().blockingFirst();
-                mSupportedFeatures = filterByVersion(Arrays.asList(Features.values()));
-                mLastServerVersionCheck = now;
+    private Interceptor createCacheableResponseInterceptor() {
+        return chain -> {
+            Request request = chain.request();
+            Response response = chain.proceed(request);
+            if (!isCacheableRequest(request)
+                    || (!response.isSuccessful() && response.code() != 304)) {
+                return response;
             }
-            return observable.blockingFirst();
-        });
-    }
 
-    private <T> Observable<T> withEmptyObservable(final Observable<T> observable) {
-        return SafeObservable.fromNullCallable(observable::blockingFirst);
+            // Gerrit marks its api responses as non cacheable. Just store them and let
+            // every request revalidate the response (through its ETag, if any). The
+            // cache policy of every call decides if a stale response could be used.
+            return response.newBuilder()
+                    .removeHeader("Pragma")
+                    .header("Cache-Control", "private, max-age=0")
+                    .build();
+        };
     }
 
-    private Observable<ServerVersion> andCacheVersion(final Observable<ServerVersion> observable) {
-        return SafeObservable.fromNullCallable(() -> {
-            mServerVersion = observable.blockingFirst();
-            return mServerVersion;
-        });
+    private Interceptor createCachePolicyInterceptor(OkHttpClient client, CachePolicy policy) {
+        return chain -> {
+            Request request = chain.request();
+            if (!isCacheableRequest(request)) {
+                return chain.proceed(request);
+            }
+
+            switch (policy) {
+                case CACHE_FIRST:
+                    return proceedWithCacheOrNetwork(chain, request);
+
+                case STALE_WHILE_REVALIDATE:
+                    Response cached = proceedWithCache(chain, request);
+                    if (cached != null) {
+                        // Revalidate the response in background. The response will
+                        // update the cache for the next request.
+                        client.newCall(request).enqueue(new Callback() {
+                            @Override
+                            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                                // Ignore
+                            }
+
+                            @Override
+                            public void onResponse(@NonNull Call call, @NonNull Response r) {
+                                r.close();
+                            }
+                        });
+                        return cached;
+                    }
+                    return chain.proceed(request);
+
+                case NETWORK_FIRST:
+                default:
+                    try {
+                        return chain.proceed(request);
+                    } catch (IOException ex) {
+                        Response fallback = proceedWithCache(chain, request);
+                        if (fallback == null) {
+                            throw ex;
+                        }
+                        return fallback;
+                    }
+            }
+        };
     }
 
-    private <T> List<T> filterByVersion(List<T> o) {
-        if (mServerVersion == null) {
-            mServerVersion = getServerVersion().blockingFirst();
+    private Response proceedWithCacheOrNetwork(Interceptor.Chain chain, Request request)
+            throws IOException {
+        Response cached = proceedWithCache(chain, request);
+        if (cached != null) {
+            return cached;
         }
-        return filterByVersion(o, mServerVersion);
+        return chain.proceed(request);
     }
 
-    private <T> List<T> filterByVersion(List<T> o, ServerVersion serverVersion) {
-        if (o == null) {
+    private Response proceedWithCache(Interceptor.Chain chain, Request request)
+            throws IOException {
+        Response response = chain.proceed(
+                request.newBuilder().cacheControl(CacheControl.FORCE_CACHE).build());
+        if (response.code() == 504) {
+            // Unsatisfiable request. There is no cached response
+            response.close();
             return null;
         }
+        return response;
+    }
 
-        ArrayList<T> filter = new ArrayList<>(o.size());
-        for (T t : o) {
-            boolean isSupported = true;
-            try {
-                Since a = t.getClass().getDeclaredField(t.toString()).getAnnotation(Since.class);
-                if (a != null && a.value() > serverVersion.getVersion()) {
-                    isSupported = false;
-                }
-            } catch (Exception e) {
-                // Ignore
-            }
-            try {
-                Until a = t.getClass().getDeclaredField(t.toString()).getAnnotation(Until.class);
-                if (a != null && a.value() <= serverVersion.getVersion()) {
-                    isSupported = false;
-                }
-            } catch (Exception e) {
-                // Ignore
-            }
+    private boolean isCacheableRequest(Request request) {
+        return "GET".equals(request.method())
+                && !request.url().encodedPath().endsWith("/" + LOGIN_PATH);
+    }
+
+    /**
+     * Chains the request after the server version check. The request is created once the
+     * version is known, so it can resolve its arguments based on the server version.
+     */
+    private <T> Observable<T> withVersionRequestCheck(final Callable<Observable<T>> request) {
+        return ensureServerVersion().flatMapObservable(version -> request.call());
+    }
 
-            if (isSupported) {
-                filter.add(t);
+    private <T> Observable<T> withVersionRequestCheck(final Observable<T> observable) {
+        return withVersionRequestCheck(() -> observable);
+    }
+
+    private <T> Observable<T> withEmptyObservable(final Observable<T> observable) {
+        // Retrofit emits a null body for empty responses, which RxJava doesn't allow. Drop
+        // it and emit a null-safe value instead, so callers still receive an item
+        return observable.filter(o -> o != null)
+                .switchIfEmpty(SafeObservable.fromNullCallable(() -> null));
+    }
+
+    private Observable<ServerVersion> andCacheVersion(final Observable<ServerVersion> observable) {
+        return observable.doOnNext(this::updateServerVersion);
+    }
+
+    private void updateServerVersion(ServerVersion version) {
+        mVersionedEnums = VersionedEnums.forVersion(version);
+        mSupportedFeatures = mVersionedEnums.supported(Features.class);
+        mServerVersion = version;
+        mLastServerVersionCheck = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the server version, requesting it if it is unknown or too old. Concurrent
+     * calls share the same request.
+     */
+    private Single<ServerVersion> ensureServerVersion() {
+        if (mRoot != this) {
+            // Cache policy clients share the server version of its root client
+            return mRoot.ensureServerVersion().doOnSuccess(version -> {
+                mVersionedEnums = mRoot.mVersionedEnums;
+                mSupportedFeatures = mRoot.mSupportedFeatures;
+                mServerVersion = version;
+                mLastServerVersionCheck = mRoot.mLastServerVersionCheck;
+            });
+        }
+
+        synchronized (mServerVersionLock) {
+            ServerVersion version = mServerVersion;
+            long now = System.currentTimeMillis();
+            if (version != null && (now - mLastServerVersionCheck <= DateUtils.DAY_IN_MILLIS)) {
+                return Single.just(version);
             }
+            if (mServerVersionRequest == null) {
+                mServerVersionRequest = getServerVersion()
+                        .firstOrError()
+                        .doOnEvent((v, e) -> {
+                            synchronized (mServerVersionLock) {
+                                mServerVersionRequest = null;
+                            }
+                        })
+                        .cache();
+            }
+            return mServerVersionRequest;
         }
-        return filter;
+    }
+
+    private <T> List<T> filterByVersion(List<T> o) {
+        // The server version is already resolved by withVersionRequestCheck
+        VersionedEnums enums = mVersionedEnums;
+        return enums == null ? o : enums.filter(o);
     }
 
     // ===============================
@@ -558,8 +713,22 @@ class GerritApiClient implements GerritApi {
         if (version == null) {
             return false;
         }
-        List<Features> features = filterByVersion(Arrays.asList(Features.values()), version);
-        return features.contains(feature);
+        return VersionedEnums.forVersion(version).supported(Features.class).contains(feature);
+    }
+
+    @Override
+    public GerritApi withCachePolicy(@NonNull CachePolicy policy) {
+        if (mRoot != this) {
+            return mRoot.withCachePolicy(policy);
+        }
+        synchronized (mCachedPolicyClients) {
+            GerritApiClient client = mCachedPolicyClients.get(policy);
+            if (client == null) {
+                client = new GerritApiClient(this, policy);
+                mCachedPolicyClients.put(policy, client);
+            }
+            return client;
+        }
     }
 
 
@@ -589,9 +758,8 @@ class GerritApiClient implements GerritApi {
     public Observable<List<AccountInfo>> getAccounts(
             @NonNull AccountQuery query, @Nullable Integer count,
             @Nullable Integer start, @Nullable List<AccountOptions> options) {
-        return withVersionRequestCheck(SafeObservable.fromNullCallable(
-                () -> mService.getAccounts(query, count, start, filterByVersion(options))
-                        .blockingFirst()));
+        return withVersionRequestCheck(
+                () -> mService.getAccounts(query, count, start, filterByVersion(options)));
     }
 
     @Override
@@ -781,9 +949,8 @@ class GerritApiClient implements GerritApi {
     @Override
     public Observable<AccountCapabilityInfo> getAccountCapabilities(
             @NonNull String accountId, @Nullable List<Capability> filter) {
-        return withVersionRequestCheck(SafeObservable.fromNullCallable(
-                () -> mService.getAccountCapabilities(accountId, filterByVersion(filter))
-                        .blockingFirst()));
+        return withVersionRequestCheck(
+                () -> mService.getAccountCapabilities(accountId, filterByVersion(filter)));
     }
 
     @Override
@@ -953,17 +1120,31 @@ class GerritApiClient implements GerritApi {
     public Observable<List<ChangeInfo>> getChanges(
             @NonNull ChangeQuery query, @Nullable Integer count,
             @Nullable Integer start, @Nullable List<ChangeOptions> options) {
-        return withVersionRequestCheck(SafeObservable.fromNullCallable(
-                () -> mService.getChanges(query, count, start, filterByVersion(options))
-                        .blockingFirst()));
+        return withVersionRequestCheck(
+                () -> mService.getChanges(query, count, start, filterByVersion(options)));
+    }
+
+    @Override
+    public Observable<List<List<ChangeInfo>>> getChangesMulti(
+            @NonNull List<ChangeQuery> queries, @Nullable Integer count,
+            @Nullable Integer start, @Nullable List<ChangeOptions> options) {
+        if (queries.isEmpty()) {
+            return Observable.just(new ArrayList<>());
+        }
+        if (queries.size() == 1) {
+            // The server only returns a list of lists when there is more than one query
+            return getChanges(queries.get(0), count, start, options)
+                    .map(changes -> Collections.singletonList(changes));
+        }
+        return withVersionRequestCheck(
+                () -> mService.getChangesMulti(queries, count, start, filterByVersion(options)));
     }
 
     @Override
     public Observable<ChangeInfo> getChange(
             @NonNull String changeId, @Nullable List<ChangeOptions> options) {
-        return withVersionRequestCheck(SafeObservable.fromNullCallable(
-                () -> mService.getChange(changeId, filterByVersion(options))
-                        .blockingFirst()));
+        return withVersionRequestCheck(
+                () -> mService.getChange(changeId, filterByVersion(options)));
     }
 
     @Override
@@ -981,9 +1162,8 @@ class GerritApiClient implements GerritApi {
     @Override
     public Observable<ChangeInfo> getChangeDetail(
             @NonNull String changeId, @Nullable List<ChangeOptions> options) {
-        return withVersionRequestCheck(SafeObservable.fromNullCallable(
-                () -> mService.getChangeDetail(changeId, filterByVersion(options))
-                        .blockingFirst()));
+        return withVersionRequestCheck(
+                () -> mService.getChangeDetail(changeId, filterByVersion(options)));
     }
 
     @Override
@@ -1318,7 +1498,7 @@ class GerritApiClient implements GerritApi {
     public Observable<List<SuggestedReviewerInfo>> getChangeSuggestedReviewers(
             @NonNull String changeId, @NonNull String query, @Nullable Integer count,
             @Nullable Option excludeGroups, @Nullable SuggestedReviewersState reviewersState) {
-        return withVersionRequestCheck(
+        return withVersionRequestCheck(() ->
             mServerVersion.getVersion() >= 3.1d
                     ? mService.getChangeSuggestedReviewers(
                             changeId, query, count, excludeGroups, reviewersState)
@@ -1404,15 +1584,15 @@ class GerritApiClient implements GerritApi {
     @Override
     public Observable<ReviewResultInfo> setChangeRevisionReview(@NonNull String changeId,
             @NonNull String revisionId, @NonNull ReviewInput input) {
-        return withVersionRequestCheck(SafeObservable.fromNullCallable(() -> {
+        return withVersionRequestCheck(() -> {
             if (mServerVersion.getVersion() >= 2.15) {
                 // Since 2.15, strictLabels was remove from ReviewInput
                 input.strictLabels = null;
             }
             input.drafts = resolveDraftActionType(input.drafts);
             return mService.setChangeRevisionReview(
-                    changeId, revisionId, input).blockingFirst();
-        }));
+                    changeId, revisionId, input);
+        });
     }
 
     @Override
@@ -1588,11 +1768,11 @@ class GerritApiClient implements GerritApi {
     @Override
     public Observable<ResponseBody> getChangeRevisionFileContent(@NonNull String changeId,
             @NonNull String revisionId, @NonNull String fileId, Integer parent) {
-        return withVersionRequestCheck(SafeObservable.fromCallable(() -> {
+        return withVersionRequestCheck(() -> {
             Integer p = resolve(parent, 2.15d);
             return mService.getChangeRevisionFileContent(
-                    changeId, revisionId, fileId, p).blockingFirst();
-        }));
+                    changeId, revisionId, fileId, p);
+        });
     }
 
     @Override
@@ -1608,13 +1788,32 @@ class GerritApiClient implements GerritApi {
             @NonNull String revisionId, @NonNull String fileId, @Nullable Integer base,
             @Nullable Option intraline, @Nullable Option weblinksOnly,
             @Nullable WhitespaceType whitespace, @Nullable ContextType context) {
-        return withVersionRequestCheck(mService.getChangeRevisionFileDiff(changeId, revisionId,
-                        fileId, base, intraline, weblinksOnly,
+        return withVersionRequestCheck(() -> mService.getChangeRevisionFileDiff(
+                        changeId, revisionId, fileId, base, intraline, weblinksOnly,
                         resolve(whitespace, 2.13d),
                         resolveIgnoreWhiteSpaceType(whitespace),
                         context));
     }
 
+    @Override
+    public Observable<DiffInfo> getChangeRevisionFileDiff(@NonNull String changeId,
+            @NonNull String revisionId, @NonNull String fileId, @Nullable Integer base,
+            @Nullable Option intraline, @Nullable Option weblinksOnly,
+            @Nullable WhitespaceType whitespace, @Nullable ContextType context,
+            @NonNull DiffStreamReader.OnDiffHunkListener listener) {
+        return withVersionRequestCheck(() -> mService.getChangeRevisionFileDiffStream(
+                        changeId, revisionId, fileId, base, intraline, weblinksOnly,
+                        resolve(whitespace, 2.13d),
+                        resolveIgnoreWhiteSpaceType(whitespace),
+                        context)
+                .map(body -> {
+                    try (DiffStreamReader reader =
+                            new DiffStreamReader(mGson, body.charStream())) {
+                        return reader.read(listener);
+                    }
+                }));
+    }
+
     @Override
     public Observable<List<BlameInfo>> getChangeRevisionFileBlames(@NonNull String changeId,
             @NonNull String revisionId, @NonNull String fileId, @Nullable BlameBaseType base) {
@@ -1677,13 +1876,10 @@ class GerritApiClient implements GerritApi {
 
     @Override
     public Observable<ServerVersion> getServerVersion() {
-        return andCacheVersion(SafeObservable.fromNullCallable(() -> {
-            ServerVersion version = mService.getServerVersion().blockingFirst();
-            if (version != null && version.isDevelopmentVersion()) {
-                return version.createDevelopmentVersion();
-            }
-            return version;
-        }));
+        return andCacheVersion(mService.getServerVersion()
+                .filter(version -> version != null)
+                .map(version -> version.isDevelopmentVersion()
+                        ? version.createDevelopmentVersion() : version));
     }
 
     @Override
@@ -1823,21 +2019,19 @@ class GerritApiClient implements GerritApi {
             @Nullable Option visibleToAll, @Nullable Option verbose,
             @Nullable List<GroupOptions> options, @Nullable String suggest,
             @Nullable String regexp, @Nullable String match) {
-        return withVersionRequestCheck(SafeObservable.fromNullCallable(
+        return withVersionRequestCheck(
                 () -> mService.getGroups(count, start, project, user, owned,
                         visibleToAll, verbose, filterByVersion(options),suggest,
-                        resolve(regexp, 2.15d), resolve(match, 2.15d))
-                        .blockingFirst()));
+                        resolve(regexp, 2.15d), resolve(match, 2.15d)));
     }
 
     @Override
     public Observable<List<GroupInfo>> getGroups(
             @NonNull GroupQuery query, @Nullable Integer count, @Nullable Integer start,
             @Nullable String ownedBy, @Nullable List<GroupOptions> options) {
-        return withVersionRequestCheck(SafeObservable.fromNullCallable(
-                () -> mService.getGroups(
-                            query, count, start, resolve(ownedBy, 2.16d), filterByVersion(options))
-                        .blockingFirst()));
+        return withVersionRequestCheck(
+                () -> mService.getGroups(query, count, start,
+                        resolve(ownedBy, 2.16d), filterByVersion(options)));
     }
 
     @Override
@@ -2004,7 +2198,7 @@ class GerritApiClient implements GerritApi {
     public Observable<Map<String, PluginInfo>> getPlugins(
             @Nullable Option all, @Nullable Integer count, @Nullable Integer skip,
             @Nullable String prefix, @Nullable String regexp, @Nullable String match) {
-        return withVersionRequestCheck(mService.getPlugins(
+        return withVersionRequestCheck(() -> mService.getPlugins(
                 all,
                 resolve(count, 2.15d),
                 resolve(skip, 2.15d),
@@ -2168,7 +2362,7 @@ class GerritApiClient implements GerritApi {
     @SuppressWarnings("deprecation")
     public Observable<AccessCheckInfo> checkProjectAccessRights(
             @NonNull String projectName, @NonNull AccessCheckInput input) {
-        return withVersionRequestCheck(
+        return withVersionRequestCheck(() ->
                 mServerVersion.getVersion() >= 3.0d
                     ? mService.getCheckProjectAccessRights(projectName, input.account, input.ref)
                     : mService.postCheckProjectAccessRights(projectName, input));
@@ -2197,11 +2391,11 @@ class GerritApiClient implements GerritApi {
     public Observable<List<BranchInfo>> getProjectBranches(@NonNull String projectName,
             @Nullable Integer count, @Nullable Integer start, @Nullable String match,
             @Nullable String regexp) {
-        return withVersionRequestCheck(SafeObservable.fromNullCallable(() -> {
+        return withVersionRequestCheck(() -> {
             Integer[] s = resolveStartFor21413(start);
             return mService.getProjectBranches(
-                    projectName, count, s[0], s[1], match, regexp).blockingFirst();
-        }));
+                    projectName, count, s[0], s[1], match, regexp);
+        });
     }
 
     @Override
@@ -2269,11 +2463,11 @@ class GerritApiClient implements GerritApi {
     public Observable<List<TagInfo>> getProjectTags(@NonNull String projectName,
             @Nullable Integer count, @Nullable Integer start, @Nullable String match,
             @Nullable String regexp) {
-        return withVersionRequestCheck(SafeObservable.fromNullCallable(() -> {
+        return withVersionRequestCheck(() -> {
             Integer[] s = resolveStartFor21413(start);
             return mService.getProjectTags(
-                    projectName, count, s[0], s[1], match, regexp).blockingFirst();
-        }));
+                    projectName, count, s[0], s[1], match, regexp);
+        });
     }
 
     @Override
@@ -39,6 +39,7 @@ import retrofit2.http.POST;
 import retrofit2.http.PUT;
 import retrofit2.http.Path;
 import retrofit2.http.Query;
+import retrofit2.http.Streaming;
 
 /**
  * Gerrit REST api
@@ -541,6 +542,16 @@ interface GerritRestApi {
             @Nullable @Query("S") Integer start,
             @Nullable @Query("o") List<ChangeOptions> options);
 
+    /**
+     * @link "https://gerrit-review.googlesource.com/Documentation/rest-api-changes.html#list-changes"
+     */
+    @GET("changes/")
+    Observable<List<List<ChangeInfo>>> getChangesMulti(
+            @NonNull @Query("q") List<ChangeQuery> queries,
+            @Nullable @Query("n") Integer count,
+            @Nullable @Query("S") Integer start,
+            @Nullable @Query("o") List<ChangeOptions> options);
+
     /**
      * @link "https://gerrit-review.googlesource.com/Documentation/rest-api-changes.html#get-change"
      */
@@ -1356,6 +1367,24 @@ interface GerritRestApi {
             @Nullable @Query("ignore-whitespace") IgnoreWhitespaceType ignoreWhitespace,
             @Nullable @Query("context") ContextType context);
 
+    /**
+     * @link "https://gerrit-review.googlesource.com/Documentation/rest-api-changes.html#get-diff"
+     */
+    @Streaming
+    @GET("changes/{change-id}/revisions/{revision-id}/files/{file-id}/diff")
+    Observable<ResponseBody> getChangeRevisionFileDiffStream(
+            @NonNull @Path("change-id") String changeId,
+            @NonNull @Path("revision-id") String revisionId,
+            @NonNull @Path("file-id") String fileId,
+            @Nullable @Query("base") Integer base,
+            @Nullable @Query("intraline") Option intraline,
+            @Nullable @Query("weblinks-only") Option weblinksOnly,
+            // Used in 2.13+
+            @Nullable @Query("whitespace") WhitespaceType whitespace,
+            // Used in 2.12-
+            @Nullable @Query("ignore-whitespace") IgnoreWhitespaceType ignoreWhitespace,
+            @Nullable @Query("context") ContextType context);
+
     /**
      * @link "https://gerrit-review.googlesource.com/Documentation/rest-api-changes.html#get-blame"
      */
@@ -29,6 +29,7 @@ import android.util.Base64;
 import android.util.Log;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.HashMap;
@@ -38,6 +39,7 @@ import java.util.Map;
 import javax.security.auth.x500.X500Principal;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 public class GerritServiceFactory {
 
@@ -137,6 +139,12 @@ public class GerritServiceFactory {
 
     public static GerritApiClient getInstance(@NonNull Context applicationContext,
             @NonNull String endpoint, @NonNull Authorization authorization) {
+        return getInstance(applicationContext, endpoint, authorization, null, 0);
+    }
+
+    public static GerritApiClient getInstance(@NonNull Context applicationContext,
+            @NonNull String endpoint, @NonNull Authorization authorization,
+            @Nullable File cacheDir, long maxCacheSize) {
 
         // Ensure we have a correct endpoint to invoke gerrit
         endpoint = sanitizeEndpoint(endpoint);
@@ -160,7 +168,8 @@ public class GerritServiceFactory {
         if (!sInstances.containsKey(endpointHash)) {
             sInstances.put(endpointHash,
                     new GerritApiClient(endpoint, authorization,
-                            new AndroidPlatformAbstractionLayer(applicationContext)));
+                            new AndroidPlatformAbstractionLayer(applicationContext),
+                            cacheDir, maxCacheSize));
         }
         return sInstances.get(endpointHash);
     }
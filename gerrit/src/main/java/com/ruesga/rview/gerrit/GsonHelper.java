@@ -18,10 +18,11 @@ package com.ruesga.rview.gerrit;
 import com.google.gson.GsonBuilder;
 import com.ruesga.rview.gerrit.adapters.GerritApprovalInfoAdapter;
 import com.ruesga.rview.gerrit.adapters.GerritBas64Adapter;
+import com.ruesga.rview.gerrit.adapters.GerritInterningAdapterFactory;
 import com.ruesga.rview.gerrit.adapters.GerritServerVersionAdapter;
 import com.ruesga.rview.gerrit.adapters.GerritUtcDateAdapter;
-import com.ruesga.rview.gerrit.model.ApprovalInfo;
 import com.ruesga.rview.gerrit.model.Base64Data;
+import com.ruesga.rview.gerrit.model.ModelTypeAdapterFactory;
 import com.ruesga.rview.gerrit.model.ServerVersion;
 
 import java.util.Date;
@@ -30,12 +31,17 @@ public class GsonHelper {
 
     public static GsonBuilder createGerritGsonBuilder(
             boolean nonExecutable, PlatformAbstractionLayer abstractionLayer) {
+        // Gson gives precedence to the latest registered adapters, so the custom adapters
+        // below take precedence over the generated ones, and the interning adapters wrap
+        // all of them
         GsonBuilder builder = new GsonBuilder()
                 .setVersion(GerritApi.API_VERSION)
+                .registerTypeAdapterFactory(new ModelTypeAdapterFactory(GerritApi.API_VERSION))
                 .registerTypeAdapter(Date.class, new GerritUtcDateAdapter())
                 .registerTypeAdapter(ServerVersion.class, new GerritServerVersionAdapter())
-                .registerTypeAdapter(ApprovalInfo.class, new GerritApprovalInfoAdapter())
+                .registerTypeAdapterFactory(new GerritApprovalInfoAdapter())
                 .registerTypeAdapter(Base64Data.class, new GerritBas64Adapter(abstractionLayer))
+                .registerTypeAdapterFactory(new GerritInterningAdapterFactory())
                 .setLenient();
         if (nonExecutable) {
             builder.generateNonExecutableJson();
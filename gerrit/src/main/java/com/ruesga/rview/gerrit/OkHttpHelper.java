@@ -21,6 +21,8 @@ import android.os.Build;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
 import java.net.Socket;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
@@ -28,17 +30,83 @@ import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.net.SocketFactory;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.X509TrustManager;
 
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
 import okhttp3.ConnectionSpec;
+import okhttp3.Dispatcher;
+import okhttp3.EventListener;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 
 public class OkHttpHelper {
 
+    private static final int MAX_IDLE_CONNECTIONS = 10;
+    private static final long KEEP_ALIVE_MINUTES = 5L;
+    private static final int MAX_REQUESTS = 64;
+    private static final int MAX_REQUESTS_PER_HOST = 10;
+
+    /**
+     * Counters of the connections used by all the clients, to know how often connections
+     * (and their TLS sessions) are reused.
+     */
+    public static class ConnectionStats extends EventListener {
+        private final AtomicLong mAcquired = new AtomicLong();
+        private final AtomicLong mConnected = new AtomicLong();
+        private final AtomicLong mHandshakes = new AtomicLong();
+
+        private ConnectionStats() {
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            mConnected.incrementAndGet();
+        }
+
+        @Override
+        public void secureConnectStart(Call call) {
+            mHandshakes.incrementAndGet();
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            mAcquired.incrementAndGet();
+        }
+
+        public long getAcquiredConnections() {
+            return mAcquired.get();
+        }
+
+        public long getNewConnections() {
+            return mConnected.get();
+        }
+
+        public long getReusedConnections() {
+            return Math.max(0, mAcquired.get() - mConnected.get());
+        }
+
+        public long getTlsHandshakes() {
+            return mHandshakes.get();
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "connections: acquired=%d, new=%d, reused=%d, tls handshakes=%d",
+                    getAcquiredConnections(), getNewConnections(),
+                    getReusedConnections(), getTlsHandshakes());
+        }
+    }
+
     // https://github.com/square/okhttp/blob/master/okhttp-tests/src/test/java/okhttp3/DelegatingSocketFactory.java
     private static class DelegatingSocketFactory extends SocketFactory {
         private final javax.net.SocketFactory mDelegate;
@@ -104,22 +172,48 @@ public class OkHttpHelper {
         }
     };
 
+    private static final ConnectionStats sConnectionStats = new ConnectionStats();
+
     private static SSLSocketFactory sSSLSocketFactory;
-    private static DelegatingSocketFactory sDelegatingSocketFactory;
+    private static OkHttpClient sBaseClient;
+
+    /**
+     * Returns the process-wide client. All the clients of the app must be derived from this
+     * one (through {@link OkHttpClient#newBuilder()}), so they share the connection pool,
+     * the dispatcher threads and the TLS sessions.
+     */
+    public static synchronized OkHttpClient getBaseClient() {
+        if (sBaseClient == null) {
+            Dispatcher dispatcher = new Dispatcher();
+            dispatcher.setMaxRequests(MAX_REQUESTS);
+            dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+
+            sBaseClient = new OkHttpClient.Builder()
+                    .connectionPool(new ConnectionPool(
+                            MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                    .dispatcher(dispatcher)
+                    .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                    .connectionSpecs(createConnectionSpecs(ConnectionSpec.RESTRICTED_TLS, false))
+                    .socketFactory(new DelegatingSocketFactory(SocketFactory.getDefault()))
+                    .eventListener(sConnectionStats)
+                    .build();
+        }
+        return sBaseClient;
+    }
+
+    public static ConnectionStats getConnectionStats() {
+        return sConnectionStats;
+    }
 
     public static OkHttpClient.Builder getSafeClientBuilder() {
-        if (sDelegatingSocketFactory == null) {
-            sDelegatingSocketFactory = new DelegatingSocketFactory(SocketFactory.getDefault());
-        }
-        return new OkHttpClient.Builder()
-                .connectionSpecs(createConnectionSpecs(ConnectionSpec.RESTRICTED_TLS, false))
-                .socketFactory(sDelegatingSocketFactory);
+        return getBaseClient().newBuilder();
     }
 
     @SuppressLint("BadHostnameVerifier")
     static OkHttpClient.Builder getUnsafeClientBuilder() {
         OkHttpClient.Builder builder = getSafeClientBuilder();
         try {
+            // Reuse the same factory, so its TLS sessions can be resumed
             if (sSSLSocketFactory == null) {
                 final SSLContext sslContext = SSLContext.getInstance("SSL");
                 sslContext.init(null, new X509TrustManager[]{TRUST_ALL_CERTS}, null);
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2016 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.rview.gerrit;
+
+import com.google.gson.annotations.Since;
+import com.ruesga.rview.gerrit.annotations.Until;
+import com.ruesga.rview.gerrit.model.ServerVersion;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The constants of the api enums supported by a server version, based on their {@link Since}
+ * and {@link Until} annotations. The annotations of every enum are only read once, and the
+ * supported constants are computed once per server version.
+ */
+final class VersionedEnums {
+
+    private static final Map<Class<?>, double[][]> sRanges = new ConcurrentHashMap<>();
+    private static final Map<String, VersionedEnums> sVersions = new ConcurrentHashMap<>();
+
+    private final double mVersion;
+    private final Map<Class<?>, EnumSet<?>> mSupported = new ConcurrentHashMap<>();
+
+    private VersionedEnums(double version) {
+        mVersion = version;
+    }
+
+    static VersionedEnums forVersion(ServerVersion version) {
+        String key = version.major + "." + version.minor;
+        VersionedEnums enums = sVersions.get(key);
+        if (enums == null) {
+            enums = new VersionedEnums(version.getVersion());
+            VersionedEnums previous = sVersions.putIfAbsent(key, enums);
+            if (previous != null) {
+                enums = previous;
+            }
+        }
+        return enums;
+    }
+
+    @SuppressWarnings("unchecked")
+    <E extends Enum<E>> EnumSet<E> supported(Class<E> type) {
+        EnumSet<E> supported = (EnumSet<E>) mSupported.get(type);
+        if (supported == null) {
+            double[][] ranges = ranges(type);
+            supported = EnumSet.noneOf(type);
+            for (E constant : type.getEnumConstants()) {
+                int ordinal = constant.ordinal();
+                if (ranges[0][ordinal] <= mVersion && mVersion < ranges[1][ordinal]) {
+                    supported.add(constant);
+                }
+            }
+            mSupported.put(type, supported);
+        }
+        return supported;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    boolean isSupported(Object o) {
+        if (!(o instanceof Enum)) {
+            return true;
+        }
+        Enum constant = (Enum) o;
+        return supported(constant.getDeclaringClass()).contains(constant);
+    }
+
+    /**
+     * Returns the supported items of the list. The same list is returned if all of them
+     * are supported.
+     */
+    <T> List<T> filter(List<T> o) {
+        if (o == null) {
+            return null;
+        }
+        int count = o.size();
+        for (int i = 0; i < count; i++) {
+            if (!isSupported(o.get(i))) {
+                List<T> filter = new ArrayList<>(count);
+                for (int j = 0; j < count; j++) {
+                    T t = o.get(j);
+                    if (isSupported(t)) {
+                        filter.add(t);
+                    }
+                }
+                return filter;
+            }
+        }
+        return o;
+    }
+
+    private static double[][] ranges(Class<? extends Enum<?>> type) {
+        double[][] ranges = sRanges.get(type);
+        if (ranges == null) {
+            Enum<?>[] constants = type.getEnumConstants();
+            ranges = new double[2][constants.length];
+            for (Enum<?> constant : constants) {
+                double since = Double.NEGATIVE_INFINITY;
+                double until = Double.POSITIVE_INFINITY;
+                try {
+                    Field field = type.getField(constant.name());
+                    Since s = field.getAnnotation(Since.class);
+                    if (s != null) {
+                        since = s.value();
+                    }
+                    Until u = field.getAnnotation(Until.class);
+                    if (u != null) {
+                        until = u.value();
+                    }
+                } catch (NoSuchFieldException e) {
+                    // Ignore
+                }
+                ranges[0][constant.ordinal()] = since;
+                ranges[1][constant.ordinal()] = until;
+            }
+            sRanges.put(type, ranges);
+        }
+        return ranges;
+    }
+}
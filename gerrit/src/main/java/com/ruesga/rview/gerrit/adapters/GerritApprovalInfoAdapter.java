@@ -16,28 +16,168 @@
 package com.ruesga.rview.gerrit.adapters;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import com.ruesga.rview.gerrit.model.AccountInfo;
 import com.ruesga.rview.gerrit.model.ApprovalInfo;
+import com.ruesga.rview.gerrit.model.AvatarInfo;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
 import java.util.Date;
 
-public class GerritApprovalInfoAdapter implements JsonDeserializer<ApprovalInfo> {
-
-    private static final Gson GSON = new GsonBuilder()
-            .registerTypeAdapter(Date.class, new GerritUtcDateAdapter())
-            .create();
+/**
+ * Gerrit sends the approval and its owner account merged in the same object. This
+ * factory reads both in a single pass over the stream.
+ */
+public class GerritApprovalInfoAdapter implements TypeAdapterFactory {
 
     @Override
-    public ApprovalInfo deserialize(JsonElement json, Type typeof, JsonDeserializationContext ctx)
-            throws JsonParseException {
-        ApprovalInfo approvalInfo = GSON.fromJson(json, ApprovalInfo.class);
-        approvalInfo.owner = GSON.fromJson(json, AccountInfo.class);
-        return approvalInfo;
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        if (type.getRawType() != ApprovalInfo.class) {
+            return null;
+        }
+        return (TypeAdapter<T>) new ApprovalInfoTypeAdapter(
+                gson.getAdapter(Date.class),
+                gson.getAdapter(AccountInfo.class),
+                gson.getAdapter(String[].class),
+                gson.getAdapter(AvatarInfo[].class));
+    }
+
+    private static class ApprovalInfoTypeAdapter extends TypeAdapter<ApprovalInfo> {
+        private final TypeAdapter<Date> mDateAdapter;
+        private final TypeAdapter<AccountInfo> mAccountAdapter;
+        private final TypeAdapter<String[]> mStringsAdapter;
+        private final TypeAdapter<AvatarInfo[]> mAvatarsAdapter;
+
+        private ApprovalInfoTypeAdapter(TypeAdapter<Date> dateAdapter,
+                TypeAdapter<AccountInfo> accountAdapter, TypeAdapter<String[]> stringsAdapter,
+                TypeAdapter<AvatarInfo[]> avatarsAdapter) {
+            mDateAdapter = dateAdapter;
+            mAccountAdapter = accountAdapter;
+            mStringsAdapter = stringsAdapter;
+            mAvatarsAdapter = avatarsAdapter;
+        }
+
+        @Override
+        public ApprovalInfo read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            ApprovalInfo approval = new ApprovalInfo();
+            AccountInfo owner = new AccountInfo();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "value":
+                        approval.value = in.nextInt();
+                        break;
+                    case "date":
+                        approval.date = mDateAdapter.read(in);
+                        break;
+                    case "tag":
+                        approval.tag = in.nextString();
+                        break;
+                    case "owner":
+                        // Approvals written by older versions of the app
+                        owner = mAccountAdapter.read(in);
+                        break;
+                    case "_account_id":
+                        owner.accountId = in.nextInt();
+                        break;
+                    case "name":
+                        owner.name = in.nextString();
+                        break;
+                    case "username":
+                        owner.username = in.nextString();
+                        break;
+                    case "display_name":
+                        owner.displayName = in.nextString();
+                        break;
+                    case "email":
+                        owner.email = in.nextString();
+                        break;
+                    case "secondary_emails":
+                        owner.secondaryEmails = mStringsAdapter.read(in);
+                        break;
+                    case "avatars":
+                        owner.avatars = mAvatarsAdapter.read(in);
+                        break;
+                    case "status":
+                        owner.status = in.nextString();
+                        break;
+                    case "inactive":
+                        owner.inactive = in.nextBoolean();
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            approval.owner = InterningScope.of(in).intern(owner);
+            return approval;
+        }
+
+        @Override
+        public void write(JsonWriter out, ApprovalInfo value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+
+            // Write it back in the same flattened form that Gerrit uses
+            out.beginObject();
+            if (value.value != null) {
+                out.name("value").value(value.value);
+            }
+            if (value.date != null) {
+                out.name("date");
+                mDateAdapter.write(out, value.date);
+            }
+            if (value.tag != null) {
+                out.name("tag").value(value.tag);
+            }
+            AccountInfo owner = value.owner;
+            if (owner != null) {
+                out.name("_account_id").value(owner.accountId);
+                if (owner.name != null) {
+                    out.name("name").value(owner.name);
+                }
+                if (owner.username != null) {
+                    out.name("username").value(owner.username);
+                }
+                if (owner.displayName != null) {
+                    out.name("display_name").value(owner.displayName);
+                }
+                if (owner.email != null) {
+                    out.name("email").value(owner.email);
+                }
+                if (owner.secondaryEmails != null) {
+                    out.name("secondary_emails");
+                    mStringsAdapter.write(out, owner.secondaryEmails);
+                }
+                if (owner.avatars != null) {
+                    out.name("avatars");
+                    mAvatarsAdapter.write(out, owner.avatars);
+                }
+                if (owner.status != null) {
+                    out.name("status").value(owner.status);
+                }
+                out.name("inactive").value(owner.inactive);
+            }
+            out.endObject();
+        }
     }
 }
@@ -15,19 +15,16 @@
  */
 package com.ruesga.rview.gerrit.adapters;
 
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonParseException;
-import com.google.gson.JsonPrimitive;
-import com.google.gson.JsonSerializationContext;
-import com.google.gson.JsonSerializer;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import com.ruesga.rview.gerrit.PlatformAbstractionLayer;
 import com.ruesga.rview.gerrit.model.Base64Data;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
 
-public class GerritBas64Adapter implements JsonDeserializer<Base64Data>, JsonSerializer<Base64Data> {
+public class GerritBas64Adapter extends TypeAdapter<Base64Data> {
 
     private final PlatformAbstractionLayer mAbstractionLayer;
 
@@ -35,14 +32,23 @@ public class GerritBas64Adapter implements JsonDeserializer<Base64Data>, JsonSer
         mAbstractionLayer = abstractionLayer;
     }
 
-    public Base64Data deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext ctx)
-            throws JsonParseException {
+    @Override
+    public Base64Data read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
         Base64Data data = new Base64Data();
-        data.data = mAbstractionLayer.decodeBase64(json.getAsString().getBytes());
+        data.data = mAbstractionLayer.decodeBase64(in.nextString().getBytes());
         return data;
     }
 
-    public JsonElement serialize(Base64Data src, Type typeof, JsonSerializationContext ctx) {
-        return new JsonPrimitive(new String(mAbstractionLayer.encodeBase64(src.data)));
+    @Override
+    public void write(JsonWriter out, Base64Data value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.value(new String(mAbstractionLayer.encodeBase64(value.data)));
     }
 }
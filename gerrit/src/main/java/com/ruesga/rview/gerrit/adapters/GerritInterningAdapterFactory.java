@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2016 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.rview.gerrit.adapters;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.ruesga.rview.gerrit.model.AccountInfo;
+import com.ruesga.rview.gerrit.model.ChangeInfo;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Replaces the accounts and the strings repeated across a response (project, branch and
+ * label names, ...) with the canonical instances of its {@link InterningScope}. The reads
+ * of the types that can be the top level value of a response (changes, accounts and
+ * collections) are tracked to know when the response was read. Must be registered after
+ * all the other adapters, since it delegates on them.
+ */
+public class GerritInterningAdapterFactory implements TypeAdapterFactory {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        if (type.getRawType() == AccountInfo.class) {
+            final TypeAdapter<AccountInfo> delegate =
+                    (TypeAdapter<AccountInfo>) gson.getDelegateAdapter(this, type);
+            return (TypeAdapter<T>) new ScopedTypeAdapter<>(
+                    new InterningTypeAdapter<AccountInfo>(delegate) {
+                        @Override
+                        AccountInfo intern(InterningScope scope, AccountInfo account) {
+                            return scope.intern(account);
+                        }
+                    });
+        }
+        if (type.getRawType() == ChangeInfo.class) {
+            final TypeAdapter<ChangeInfo> delegate =
+                    (TypeAdapter<ChangeInfo>) gson.getDelegateAdapter(this, type);
+            return (TypeAdapter<T>) new ScopedTypeAdapter<>(
+                    new InterningTypeAdapter<ChangeInfo>(delegate) {
+                        @Override
+                        ChangeInfo intern(InterningScope scope, ChangeInfo change) {
+                            change.project = scope.intern(change.project);
+                            change.branch = scope.intern(change.branch);
+                            change.topic = scope.intern(change.topic);
+                            change.labels = internKeys(scope, change.labels);
+                            change.permittedLabels = internKeys(scope, change.permittedLabels);
+                            return change;
+                        }
+                    });
+        }
+        if (isContainer(type.getRawType())) {
+            return new ScopedTypeAdapter<>(gson.getDelegateAdapter(this, type));
+        }
+        return null;
+    }
+
+    private static boolean isContainer(Class<?> type) {
+        return type.isArray() || Collection.class.isAssignableFrom(type)
+                || Map.class.isAssignableFrom(type);
+    }
+
+    private static <V> Map<String, V> internKeys(InterningScope scope, Map<String, V> map) {
+        if (map == null || map.isEmpty()) {
+            return map;
+        }
+        Map<String, V> interned = new LinkedHashMap<>(map.size() * 4 / 3 + 1);
+        for (Map.Entry<String, V> entry : map.entrySet()) {
+            interned.put(scope.intern(entry.getKey()), entry.getValue());
+        }
+        return interned;
+    }
+
+    private static class ScopedTypeAdapter<T> extends TypeAdapter<T> {
+        private final TypeAdapter<T> mDelegate;
+
+        private ScopedTypeAdapter(TypeAdapter<T> delegate) {
+            mDelegate = delegate;
+        }
+
+        @Override
+        public T read(JsonReader in) throws IOException {
+            return InterningScope.read(mDelegate, in);
+        }
+
+        @Override
+        public void write(JsonWriter out, T value) throws IOException {
+            mDelegate.write(out, value);
+        }
+    }
+
+    private static abstract class InterningTypeAdapter<T> extends TypeAdapter<T> {
+        private final TypeAdapter<T> mDelegate;
+
+        private InterningTypeAdapter(TypeAdapter<T> delegate) {
+            mDelegate = delegate;
+        }
+
+        abstract T intern(InterningScope scope, T value);
+
+        @Override
+        public T read(JsonReader in) throws IOException {
+            T value = mDelegate.read(in);
+            return value == null ? null : intern(InterningScope.of(in), value);
+        }
+
+        @Override
+        public void write(JsonWriter out, T value) throws IOException {
+            mDelegate.write(out, value);
+        }
+    }
+}
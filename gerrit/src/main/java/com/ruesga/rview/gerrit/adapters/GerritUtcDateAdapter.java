@@ -15,47 +15,143 @@
  */
 package com.ruesga.rview.gerrit.adapters;
 
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
 import com.google.gson.JsonParseException;
-import com.google.gson.JsonPrimitive;
-import com.google.gson.JsonSerializationContext;
-import com.google.gson.JsonSerializer;
-
-import java.lang.reflect.Type;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
 import java.util.Date;
-import java.util.Locale;
-import java.util.TimeZone;
 
-public class GerritUtcDateAdapter implements JsonDeserializer<Date>, JsonSerializer<Date> {
+/**
+ * A streaming adapter for the Gerrit timestamps ("yyyy-MM-dd HH:mm:ss.SSSSSSSSS", in UTC).
+ * Dates are parsed and formatted by hand, so the adapter holds no state and can be used
+ * concurrently without locking.
+ */
+public class GerritUtcDateAdapter extends TypeAdapter<Date> {
+
+    private static final long MILLIS_PER_SECOND = 1000L;
+    private static final long MILLIS_PER_MINUTE = MILLIS_PER_SECOND * 60L;
+    private static final long MILLIS_PER_HOUR = MILLIS_PER_MINUTE * 60L;
+    private static final long MILLIS_PER_DAY = MILLIS_PER_HOUR * 24L;
 
-    private final DateFormat mDateFormat;
+    // Gerrit timestamps have nanoseconds precision, but dates only hold milliseconds
+    private static final String NANOS_PADDING = "000000";
 
-    public GerritUtcDateAdapter() {
-        mDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
-        mDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    @Override
+    public Date read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return parse(in.nextString());
     }
 
     @Override
-    public Date deserialize(JsonElement json, Type typeof, JsonDeserializationContext ctx)
-            throws JsonParseException {
-        try {
-            synchronized (mDateFormat) {
-                return mDateFormat.parse(json.getAsString());
+    public void write(JsonWriter out, Date value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.value(format(value));
+    }
+
+    static Date parse(String s) {
+        // yyyy-MM-dd HH:mm:ss[.fraction]
+        int len = s.length();
+        if (len < 19 || s.charAt(4) != '-' || s.charAt(7) != '-' || s.charAt(10) != ' '
+                || s.charAt(13) != ':' || s.charAt(16) != ':' || (len > 19 && s.charAt(19) != '.')) {
+            throw new JsonParseException("Unparseable date: \"" + s + "\"");
+        }
+        int year = digits(s, 0, 4);
+        int month = digits(s, 5, 2);
+        int day = digits(s, 8, 2);
+        int hours = digits(s, 11, 2);
+        int minutes = digits(s, 14, 2);
+        int seconds = digits(s, 17, 2);
+        if (month < 1 || month > 12 || day < 1 || day > 31
+                || hours > 23 || minutes > 59 || seconds > 60) {
+            throw new JsonParseException("Unparseable date: \"" + s + "\"");
+        }
+
+        // Only the milliseconds of the fraction are meaningful
+        int millis = 0;
+        int fraction = len - 20;
+        if (fraction > 0) {
+            digits(s, 20, fraction);
+            millis = digits(s, 20, Math.min(3, fraction));
+            for (int i = fraction; i < 3; i++) {
+                millis *= 10;
+            }
+        }
+
+        return new Date(daysFromCivil(year, month, day) * MILLIS_PER_DAY
+                + hours * MILLIS_PER_HOUR + minutes * MILLIS_PER_MINUTE
+                + seconds * MILLIS_PER_SECOND + millis);
+    }
+
+    static String format(Date date) {
+        long time = date.getTime();
+        long days = time / MILLIS_PER_DAY;
+        if (time % MILLIS_PER_DAY < 0) {
+            days--;
+        }
+        int millisOfDay = (int) (time - days * MILLIS_PER_DAY);
+
+        // Civil date from days since epoch (proleptic gregorian calendar)
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        int doe = (int) (z - era * 146097);
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        int day = doy - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        int year = (int) (yoe + era * 400 + (month <= 2 ? 1 : 0));
+
+        char[] buf = new char[23];
+        pad(buf, 0, 4, year);
+        buf[4] = '-';
+        pad(buf, 5, 2, month);
+        buf[7] = '-';
+        pad(buf, 8, 2, day);
+        buf[10] = ' ';
+        pad(buf, 11, 2, (int) (millisOfDay / MILLIS_PER_HOUR));
+        buf[13] = ':';
+        pad(buf, 14, 2, (int) ((millisOfDay % MILLIS_PER_HOUR) / MILLIS_PER_MINUTE));
+        buf[16] = ':';
+        pad(buf, 17, 2, (int) ((millisOfDay % MILLIS_PER_MINUTE) / MILLIS_PER_SECOND));
+        buf[19] = '.';
+        pad(buf, 20, 3, (int) (millisOfDay % MILLIS_PER_SECOND));
+        return new String(buf) + NANOS_PADDING;
+    }
+
+    private static long daysFromCivil(int year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        int era = (year >= 0 ? year : year - 399) / 400;
+        int yoe = year - era * 400;
+        int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097L + doe - 719468;
+    }
+
+    private static int digits(String s, int start, int count) {
+        int value = 0;
+        for (int i = start, end = start + count; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new JsonParseException("Unparseable date: \"" + s + "\"");
             }
-        } catch (ParseException e) {
-            throw new JsonParseException(e);
+            value = value * 10 + (c - '0');
         }
+        return value;
     }
 
-    @Override
-    public JsonElement serialize(Date src, Type typeof, JsonSerializationContext ctx) {
-        synchronized (mDateFormat) {
-            return new JsonPrimitive(mDateFormat.format(src));
+    private static void pad(char[] buf, int start, int count, int value) {
+        for (int i = start + count - 1; i >= start; i--) {
+            buf[i] = (char) ('0' + value % 10);
+            value /= 10;
         }
     }
 }
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2016 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.rview.gerrit.adapters;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.ruesga.rview.gerrit.model.AccountInfo;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Canonical instances of the accounts and repeated strings found while parsing. By default
+ * a scope lives for a single response (the top level value read from a reader), but a scope
+ * can be opened explicitly to share the canonical instances between several parses in the
+ * same thread.
+ * <p>
+ * The same {@link AccountInfo} instance is shared by all the places of the response where
+ * the account is found, so the parsed accounts must be treated as read-only.
+ */
+public final class InterningScope {
+
+    private static class ResponseState {
+        private InterningScope mScope;
+        private int mDepth;
+    }
+
+    private static final ThreadLocal<ResponseState> sResponseState =
+            new ThreadLocal<ResponseState>() {
+                @Override
+                protected ResponseState initialValue() {
+                    return new ResponseState();
+                }
+            };
+    private static final ThreadLocal<InterningScope> sExplicitScope = new ThreadLocal<>();
+
+    private final WeakReference<JsonReader> mReader;
+    private final Map<Integer, AccountInfo> mAccounts = new HashMap<>();
+    private final Map<String, String> mStrings = new HashMap<>();
+    private int mDepth;
+
+    private InterningScope(JsonReader reader) {
+        mReader = new WeakReference<>(reader);
+    }
+
+    /**
+     * Opens a scope that is shared by all the parses done by the current thread until
+     * the matching {@link #end()} call.
+     */
+    public static void begin() {
+        InterningScope scope = sExplicitScope.get();
+        if (scope == null) {
+            scope = new InterningScope(null);
+            sExplicitScope.set(scope);
+        }
+        scope.mDepth++;
+    }
+
+    public static void end() {
+        InterningScope scope = sExplicitScope.get();
+        if (scope != null && --scope.mDepth <= 0) {
+            sExplicitScope.remove();
+        }
+    }
+
+    static InterningScope of(JsonReader reader) {
+        InterningScope scope = sExplicitScope.get();
+        if (scope != null) {
+            return scope;
+        }
+        ResponseState state = sResponseState.get();
+        scope = state.mScope;
+        if (scope == null || scope.mReader.get() != reader) {
+            scope = new InterningScope(reader);
+            state.mScope = scope;
+        }
+        return scope;
+    }
+
+    /**
+     * Reads a value with the passed adapter, dropping the response scope once the top
+     * level value of the response was read, so its canonical instances aren't kept
+     * reachable by the thread.
+     */
+    static <T> T read(TypeAdapter<T> adapter, JsonReader reader) throws IOException {
+        ResponseState state = sResponseState.get();
+        state.mDepth++;
+        try {
+            return adapter.read(reader);
+        } finally {
+            if (--state.mDepth == 0) {
+                state.mScope = null;
+            }
+        }
+    }
+
+    AccountInfo intern(AccountInfo account) {
+        // Subclasses hold information related to where they were found (reviewer
+        // approvals, ...), so only plain accounts can be shared
+        if (account == null || account.getClass() != AccountInfo.class
+                || account.accountId == 0) {
+            return account;
+        }
+
+        AccountInfo canonical = mAccounts.get(account.accountId);
+        if (canonical == null) {
+            mAccounts.put(account.accountId, account);
+            return account;
+        }
+
+        // Fill the information that the canonical instance could be missing
+        if (canonical.name == null) {
+            canonical.name = account.name;
+        }
+        if (canonical.username == null) {
+            canonical.username = account.username;
+        }
+        if (canonical.displayName == null) {
+            canonical.displayName = account.displayName;
+        }
+        if (canonical.email == null) {
+            canonical.email = account.email;
+        }
+        if (canonical.secondaryEmails == null) {
+            canonical.secondaryEmails = account.secondaryEmails;
+        }
+        if (canonical.avatars == null) {
+            canonical.avatars = account.avatars;
+        }
+        if (canonical.status == null) {
+            canonical.status = account.status;
+        }
+        return canonical;
+    }
+
+    String intern(String s) {
+        if (s == null) {
+            return null;
+        }
+        String canonical = mStrings.get(s);
+        if (canonical == null) {
+            mStrings.put(s, s);
+            return s;
+        }
+        return canonical;
+    }
+}
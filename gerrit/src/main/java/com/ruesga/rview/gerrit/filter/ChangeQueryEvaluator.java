@@ -0,0 +1,540 @@
+/*
+ * Copyright (C) 2016 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.rview.gerrit.filter;
+
+import com.ruesga.rview.gerrit.GerritApi;
+import com.ruesga.rview.gerrit.filter.antlr.QueryLexer;
+import com.ruesga.rview.gerrit.filter.antlr.QueryParseException;
+import com.ruesga.rview.gerrit.filter.antlr.QueryParser;
+import com.ruesga.rview.gerrit.model.AccountInfo;
+import com.ruesga.rview.gerrit.model.ChangeInfo;
+import com.ruesga.rview.gerrit.model.ChangeStatus;
+
+import org.antlr.runtime.tree.Tree;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Evaluates a change query against locally stored {@link ChangeInfo}s. Only the operators
+ * that can be resolved with the information returned by a change list request are
+ * supported. For any other operator, {@link #compile(String, AccountInfo)} returns null and
+ * the query must be sent to the server.
+ */
+public final class ChangeQueryEvaluator {
+
+    /**
+     * The indexed columns used by {@link Predicate#toSelection(List)}.
+     */
+    public static final String COLUMN_PROJECT = "project";
+    public static final String COLUMN_BRANCH = "branch";
+    public static final String COLUMN_OWNER = "owner";
+    public static final String COLUMN_STATUS = "status";
+    public static final String COLUMN_UPDATED = "updated";
+
+    private static final String REFS_HEADS = "refs/heads/";
+    // Project and branch values starting with this prefix are regular expressions
+    private static final String REGEX_PREFIX = "^";
+
+    private static final Set<ChangeStatus> OPEN_STATUSES =
+            EnumSet.of(ChangeStatus.NEW, ChangeStatus.SUBMITTED, ChangeStatus.DRAFT);
+    private static final Set<ChangeStatus> CLOSED_STATUSES =
+            EnumSet.of(ChangeStatus.MERGED, ChangeStatus.ABANDONED);
+
+    private static final long SECOND_IN_MILLIS = 1000L;
+    private static final long[] TIME_UNITS_IN_MILLIS = {
+            SECOND_IN_MILLIS,
+            SECOND_IN_MILLIS * 60L,
+            SECOND_IN_MILLIS * 60L * 60L,
+            SECOND_IN_MILLIS * 60L * 60L * 24L,
+            SECOND_IN_MILLIS * 60L * 60L * 24L * 7L,
+            SECOND_IN_MILLIS * 60L * 60L * 24L * 30L,
+            SECOND_IN_MILLIS * 60L * 60L * 24L * 365L
+    };
+
+    public static abstract class Predicate {
+        public abstract boolean matches(ChangeInfo change);
+
+        /**
+         * Returns a selection over the indexed columns that every matching change satisfies
+         * (so the store can narrow the changes to evaluate), or null if the predicate can't
+         * be expressed in terms of the indexed columns. The selection arguments are appended
+         * to the passed list only if a selection is returned.
+         */
+        public String toSelection(List<String> args) {
+            return null;
+        }
+
+        /**
+         * Whether the selection returned by {@link #toSelection(List)} is exactly this predicate.
+         */
+        public boolean isExact() {
+            return false;
+        }
+    }
+
+    private interface Condition {
+        boolean matches(ChangeInfo change);
+    }
+
+    private static class FieldPredicate extends Predicate {
+        private final Condition mCondition;
+        private final String mColumn;
+        private final String mSelection;
+        private final String[] mArgs;
+
+        private FieldPredicate(Condition condition) {
+            this(condition, null, null);
+        }
+
+        private FieldPredicate(
+                Condition condition, String column, String selection, String... args) {
+            mCondition = condition;
+            mColumn = column;
+            mSelection = selection;
+            mArgs = args;
+        }
+
+        @Override
+        public boolean matches(ChangeInfo change) {
+            return mCondition.matches(change);
+        }
+
+        @Override
+        public String toSelection(List<String> args) {
+            if (mSelection != null) {
+                args.addAll(Arrays.asList(mArgs));
+            }
+            return mSelection;
+        }
+
+        @Override
+        public boolean isExact() {
+            return mSelection != null;
+        }
+    }
+
+    private static class AndPredicate extends Predicate {
+        private final List<Predicate> mPredicates;
+
+        private AndPredicate(List<Predicate> predicates) {
+            mPredicates = predicates;
+        }
+
+        @Override
+        public boolean matches(ChangeInfo change) {
+            for (Predicate predicate : mPredicates) {
+                if (!predicate.matches(change)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toSelection(List<String> args) {
+            // Every condition narrows the result, so just skip the ones without a selection
+            StringBuilder sb = new StringBuilder();
+            for (Predicate predicate : mPredicates) {
+                String selection = predicate.toSelection(args);
+                if (selection != null) {
+                    if (sb.length() > 0) {
+                        sb.append(" AND ");
+                    }
+                    sb.append("(").append(selection).append(")");
+                }
+            }
+            return sb.length() > 0 ? sb.toString() : null;
+        }
+
+        @Override
+        public boolean isExact() {
+            for (Predicate predicate : mPredicates) {
+                if (!predicate.isExact()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class OrPredicate extends Predicate {
+        private final List<Predicate> mPredicates;
+
+        private OrPredicate(List<Predicate> predicates) {
+            mPredicates = predicates;
+        }
+
+        @Override
+        public boolean matches(ChangeInfo change) {
+            for (Predicate predicate : mPredicates) {
+                if (predicate.matches(change)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String toSelection(List<String> args) {
+            // All the conditions must have a selection, otherwise anything could match
+            List<String> orArgs = new ArrayList<>();
+            StringBuilder sb = new StringBuilder();
+            for (Predicate predicate : mPredicates) {
+                String selection = predicate.toSelection(orArgs);
+                if (selection == null) {
+                    return null;
+                }
+                if (sb.length() > 0) {
+                    sb.append(" OR ");
+                }
+                sb.append("(").append(selection).append(")");
+            }
+            args.addAll(orArgs);
+            return sb.toString();
+        }
+
+        @Override
+        public boolean isExact() {
+            for (Predicate predicate : mPredicates) {
+                if (!predicate.isExact()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class NotPredicate extends Predicate {
+        private final Predicate mPredicate;
+
+        private NotPredicate(Predicate predicate) {
+            mPredicate = predicate;
+        }
+
+        @Override
+        public boolean matches(ChangeInfo change) {
+            return !mPredicate.matches(change);
+        }
+
+        @Override
+        public String toSelection(List<String> args) {
+            // Only the selection of a single column can be negated. A change without a
+            // value doesn't match the condition, so it matches its negation, while in sql
+            // both the selection and its negation are null
+            if (!isExact()) {
+                return null;
+            }
+            final String column = ((FieldPredicate) mPredicate).mColumn;
+            return "(" + column + " IS NULL OR NOT (" + mPredicate.toSelection(args) + "))";
+        }
+
+        @Override
+        public boolean isExact() {
+            return mPredicate instanceof FieldPredicate && mPredicate.isExact();
+        }
+    }
+
+    private static class UnsupportedQueryException extends Exception {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private final AccountInfo mSelf;
+    private final long mNow;
+    private final SimpleDateFormat mTimeFormatter = new ChangeQuery().getTimeFormatter();
+
+    private ChangeQueryEvaluator(AccountInfo self, long now) {
+        mSelf = self;
+        mNow = now;
+    }
+
+    /**
+     * Compiles the query into a predicate over the stored changes.
+     *
+     * @param query the change query.
+     * @param self the account used to resolve the self references (may be null).
+     * @return the compiled predicate, or null if the query can't be evaluated locally.
+     */
+    public static Predicate compile(String query, AccountInfo self) throws QueryParseException {
+        return compile(QueryParser.parse(query), self, System.currentTimeMillis());
+    }
+
+    static Predicate compile(Tree tree, AccountInfo self, long now) throws QueryParseException {
+        try {
+            return new ChangeQueryEvaluator(self, now).toPredicate(tree);
+        } catch (UnsupportedQueryException ex) {
+            return null;
+        }
+    }
+
+    private Predicate toPredicate(Tree tree)
+            throws QueryParseException, UnsupportedQueryException {
+        switch (tree.getType()) {
+            case QueryLexer.AND:
+            case QueryLexer.OR:
+                List<Predicate> predicates = new ArrayList<>();
+                for (int i = 0; i < tree.getChildCount(); i++) {
+                    predicates.add(toPredicate(tree.getChild(i)));
+                }
+                return tree.getType() == QueryLexer.AND
+                        ? new AndPredicate(predicates) : new OrPredicate(predicates);
+            case QueryLexer.NOT:
+                return new NotPredicate(toPredicate(tree.getChild(0)));
+            case QueryLexer.DEFAULT_FIELD:
+                return toChangePredicate(tree.getChild(0).getText());
+            case QueryLexer.FIELD_NAME:
+                return toFieldPredicate(tree.getText(), tree.getChild(0).getText());
+            default:
+                throw new QueryParseException("Invalid query at " +
+                        tree.getCharPositionInLine() + ": " + tree.getText());
+        }
+    }
+
+    private Predicate toFieldPredicate(String field, String value)
+            throws QueryParseException, UnsupportedQueryException {
+        switch (field) {
+            case "status":
+            case "is":
+                return toIsPredicate(value.toLowerCase(Locale.US));
+            case "project":
+                if (value.startsWith(REGEX_PREFIX)) {
+                    throw new UnsupportedQueryException();
+                }
+                return new FieldPredicate(c -> value.equals(c.project),
+                        COLUMN_PROJECT, COLUMN_PROJECT + " = ?", value);
+            case "projects":
+                return new FieldPredicate(c -> c.project != null && c.project.startsWith(value));
+            case "branch":
+                if (value.startsWith(REGEX_PREFIX)) {
+                    throw new UnsupportedQueryException();
+                }
+                String branch = value.startsWith(REFS_HEADS)
+                        ? value.substring(REFS_HEADS.length()) : value;
+                return new FieldPredicate(c -> branch.equals(c.branch),
+                        COLUMN_BRANCH, COLUMN_BRANCH + " = ?", branch);
+            case "ref":
+                if (!value.startsWith(REFS_HEADS)) {
+                    throw new UnsupportedQueryException();
+                }
+                return toFieldPredicate("branch", value);
+            case "topic":
+                return new FieldPredicate(c -> value.equals(c.topic));
+            case "intopic":
+                String topic = value.toLowerCase(Locale.US);
+                return new FieldPredicate(c -> c.topic != null
+                        && c.topic.toLowerCase(Locale.US).contains(topic));
+            case "hashtag":
+                return new FieldPredicate(c -> {
+                    if (c.hashtags != null) {
+                        for (String hashtag : c.hashtags) {
+                            if (hashtag.equalsIgnoreCase(value)) {
+                                return true;
+                            }
+                        }
+                    }
+                    return false;
+                });
+            case "change":
+                return toChangePredicate(value);
+            case "owner":
+                Integer owner = toAccountId(value);
+                if (owner != null) {
+                    return new FieldPredicate(c -> c.owner != null && c.owner.accountId == owner,
+                            COLUMN_OWNER, COLUMN_OWNER + " = ?", String.valueOf(owner));
+                }
+                return new FieldPredicate(c -> matchesAccount(c.owner, value));
+            case "assignee":
+                Integer assignee = toAccountId(value);
+                if (assignee != null) {
+                    return new FieldPredicate(
+                            c -> c.assignee != null && c.assignee.accountId == assignee);
+                }
+                return new FieldPredicate(c -> matchesAccount(c.assignee, value));
+            case "age":
+                long age = mNow - toMillis(value);
+                return new FieldPredicate(c -> c.updated != null && c.updated.getTime() <= age,
+                        COLUMN_UPDATED, COLUMN_UPDATED + " <= ?", String.valueOf(age));
+            case "before":
+            case "until":
+                long before = toDate(value).getTime();
+                return new FieldPredicate(c -> c.updated != null && c.updated.getTime() <= before,
+                        COLUMN_UPDATED, COLUMN_UPDATED + " <= ?", String.valueOf(before));
+            case "after":
+            case "since":
+                long after = toDate(value).getTime();
+                return new FieldPredicate(c -> c.updated != null && c.updated.getTime() >= after,
+                        COLUMN_UPDATED, COLUMN_UPDATED + " >= ?", String.valueOf(after));
+            case "added":
+                return toRelationPredicate(value, c -> c.insertions);
+            case "deleted":
+                return toRelationPredicate(value, c -> c.deletions);
+            case "delta":
+                return toRelationPredicate(value, c -> c.insertions + c.deletions);
+            default:
+                // Reviewers, labels, messages, files, ... aren't part of the stored changes
+                throw new UnsupportedQueryException();
+        }
+    }
+
+    private Predicate toIsPredicate(String value)
+            throws QueryParseException, UnsupportedQueryException {
+        switch (value) {
+            case "open":
+            case "pending":
+                return toStatusPredicate(OPEN_STATUSES);
+            case "closed":
+                return toStatusPredicate(CLOSED_STATUSES);
+            case "new":
+                return toStatusPredicate(EnumSet.of(ChangeStatus.NEW));
+            case "merged":
+                return toStatusPredicate(EnumSet.of(ChangeStatus.MERGED));
+            case "abandoned":
+                return toStatusPredicate(EnumSet.of(ChangeStatus.ABANDONED));
+            case "draft":
+                return toStatusPredicate(EnumSet.of(ChangeStatus.DRAFT));
+            case "starred":
+                return new FieldPredicate(c -> c.starred);
+            case "reviewed":
+                return new FieldPredicate(c -> c.reviewed);
+            case "private":
+                return new FieldPredicate(c -> c.isPrivate);
+            case "wip":
+                return new FieldPredicate(c -> c.isWorkInProgress);
+            case "assigned":
+                return new FieldPredicate(c -> c.assignee != null);
+            case "unassigned":
+                return new FieldPredicate(c -> c.assignee == null);
+            case "owner":
+                return toFieldPredicate("owner", GerritApi.SELF_ACCOUNT);
+            default:
+                throw new UnsupportedQueryException();
+        }
+    }
+
+    private static Predicate toStatusPredicate(Set<ChangeStatus> statuses) {
+        StringBuilder sb = new StringBuilder(COLUMN_STATUS).append(" IN (");
+        List<String> args = new ArrayList<>();
+        for (ChangeStatus status : statuses) {
+            sb.append(args.isEmpty() ? "?" : ", ?");
+            args.add(status.name());
+        }
+        sb.append(")");
+        return new FieldPredicate(c -> c.status != null && statuses.contains(c.status),
+                COLUMN_STATUS, sb.toString(), args.toArray(new String[0]));
+    }
+
+    private static Predicate toChangePredicate(String value) throws UnsupportedQueryException {
+        try {
+            int number = Integer.parseInt(value);
+            return new FieldPredicate(c -> c.legacyChangeId == number);
+        } catch (NumberFormatException ex) {
+            // Not a change number
+        }
+        if (value.length() > 1 && value.charAt(0) == 'I') {
+            return new FieldPredicate(c -> value.equals(c.changeId));
+        }
+        if (value.contains("~")) {
+            return new FieldPredicate(c -> value.equals(c.id));
+        }
+        throw new UnsupportedQueryException();
+    }
+
+    private interface IntValue {
+        int get(ChangeInfo change);
+    }
+
+    private static Predicate toRelationPredicate(String value, IntValue field)
+            throws QueryParseException {
+        for (Relation relation : Relation.values()) {
+            if (!value.startsWith(relation.mRelation)) {
+                continue;
+            }
+            final int v;
+            try {
+                v = Integer.parseInt(value.substring(relation.mRelation.length()));
+            } catch (NumberFormatException ex) {
+                continue;
+            }
+            switch (relation) {
+                case GREATER_OR_EQUALS_THAN:
+                    return new FieldPredicate(c -> field.get(c) >= v);
+                case GREATER_THAN:
+                    return new FieldPredicate(c -> field.get(c) > v);
+                case LOWER_OR_EQUALS_THAN:
+                    return new FieldPredicate(c -> field.get(c) <= v);
+                case LOWER_THAN:
+                    return new FieldPredicate(c -> field.get(c) < v);
+                default:
+                    return new FieldPredicate(c -> field.get(c) == v);
+            }
+        }
+        throw new QueryParseException("Illegal relation value: " + value);
+    }
+
+    private Integer toAccountId(String value) throws UnsupportedQueryException {
+        if (value.equalsIgnoreCase(GerritApi.SELF_ACCOUNT)) {
+            if (mSelf == null) {
+                throw new UnsupportedQueryException();
+            }
+            return mSelf.accountId;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    private static boolean matchesAccount(AccountInfo account, String value) {
+        return account != null && (value.equalsIgnoreCase(account.username)
+                || value.equalsIgnoreCase(account.email)
+                || value.equalsIgnoreCase(account.name)
+                || value.equalsIgnoreCase(account.displayName));
+    }
+
+    private static long toMillis(String value) throws QueryParseException {
+        String v = value.toLowerCase(Locale.US);
+        TimeUnit[] units = TimeUnit.values();
+        for (int i = 0; i < units.length; i++) {
+            for (String suffix : units[i].mUnits) {
+                if (v.endsWith(suffix)) {
+                    try {
+                        return Long.parseLong(v.substring(0, v.length() - suffix.length()))
+                                * TIME_UNITS_IN_MILLIS[i];
+                    } catch (NumberFormatException ex) {
+                        // Try the next unit
+                    }
+                }
+            }
+        }
+        throw new QueryParseException("Illegal time value: " + value);
+    }
+
+    private Date toDate(String value) throws QueryParseException {
+        try {
+            return mTimeFormatter.parse("\"" + value + "\"");
+        } catch (ParseException ex) {
+            throw new QueryParseException("Illegal date value: " + value);
+        }
+    }
+}
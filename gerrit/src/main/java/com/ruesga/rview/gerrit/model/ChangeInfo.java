@@ -66,6 +66,7 @@ public class ChangeInfo {
     @SerializedName("work_in_progress") public boolean isWorkInProgress;
     @SerializedName("has_review_started") public boolean hasReviewStarted;
     @SerializedName("revert_of") public String revertOf;
+    @SerializedName("_more_changes") public boolean moreChanges;
 
 
     // internal usage
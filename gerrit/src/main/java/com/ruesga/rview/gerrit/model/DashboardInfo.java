@@ -30,9 +30,9 @@ public class DashboardInfo {
     @SerializedName("foreach") public String foreach;
     @SerializedName("url") public String url;
     // Used by 2.14-
-    @SerializedName("default") private boolean defaultDashboard;
+    @SerializedName("default") boolean defaultDashboard;
     // Used by 2.15+
-    @SerializedName("is_default") private boolean isDefaultDashboard;
+    @SerializedName("is_default") boolean isDefaultDashboard;
     @SerializedName("title") public String title;
     @SerializedName("sections") public DashboardSectionInfo[] sections;
 
@@ -35,8 +35,8 @@ public class RevisionInfo {
     @SerializedName("files") public Map<String, FileInfo> files;
     @SerializedName("actions") public Map<String, ActionInfo> actions;
     @SerializedName("reviewed") public boolean reviewed;
-    @SerializedName("messageWithFooter") private String messageWithFooter;
-    @SerializedName("commitWithFooters") private String commitWithFooters;
+    @SerializedName("messageWithFooter") String messageWithFooter;
+    @SerializedName("commitWithFooters") String commitWithFooters;
     @SerializedName("push_certificate") public PushCertificateInfo pushCertificate;
     @SerializedName("description") public String description;
 
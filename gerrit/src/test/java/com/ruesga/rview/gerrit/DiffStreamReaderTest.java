@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2016 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.rview.gerrit;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.ruesga.rview.gerrit.model.DiffContentInfo;
+import com.ruesga.rview.gerrit.model.DiffInfo;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DiffStreamReaderTest {
+
+    private static final String DIFF = ")]}'\n{"
+            + "\"meta_a\":{\"name\":\"a.txt\",\"lines\":3},"
+            + "\"meta_b\":{\"name\":\"a.txt\",\"lines\":3},"
+            + "\"change_type\":\"MODIFIED\","
+            + "\"diff_header\":[\"diff --git a/a.txt b/a.txt\"],"
+            + "\"content\":["
+            + "{\"ab\":[\"line 1\"]},"
+            + "{\"a\":[\"line 2\"],\"b\":[\"line two\"],\"edit_a\":[[5,1]],\"edit_b\":[[5,3]]},"
+            + "{\"ab\":[\"line 3\"]}],"
+            + "\"binary\":false}";
+
+    private final Gson mGson = new GsonBuilder().setLenient().create();
+
+    @Test
+    public void testReadHunks() throws IOException {
+        final List<DiffContentInfo> hunks = new ArrayList<>();
+        DiffInfo diff;
+        try (DiffStreamReader reader = new DiffStreamReader(mGson, new StringReader(DIFF))) {
+            diff = reader.read(hunks::add);
+        }
+
+        assertEquals(3, hunks.size());
+        assertEquals(3, diff.content.length);
+        for (int i = 0; i < hunks.size(); i++) {
+            assertSame(hunks.get(i), diff.content[i]);
+        }
+        assertArrayEquals(new String[]{"line 1"}, diff.content[0].ab);
+        assertArrayEquals(new String[]{"line two"}, diff.content[1].b);
+        assertEquals(1, diff.content[1].editA.size());
+        assertEquals("a.txt", diff.metaA.name);
+        assertEquals(1, diff.diffHeader.length);
+        assertTrue(!diff.binary);
+    }
+
+    @Test
+    public void testReadWithoutContent() throws IOException {
+        final List<DiffContentInfo> hunks = new ArrayList<>();
+        DiffInfo diff;
+        try (DiffStreamReader reader = new DiffStreamReader(
+                mGson, new StringReader(")]}'\n{\"binary\":true}"))) {
+            diff = reader.read(hunks::add);
+        }
+
+        assertTrue(hunks.isEmpty());
+        assertNull(diff.content);
+        assertTrue(diff.binary);
+    }
+}
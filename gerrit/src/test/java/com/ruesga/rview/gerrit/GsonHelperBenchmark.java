@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2016 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.rview.gerrit;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonParseException;
+import com.ruesga.rview.gerrit.model.AccountInfo;
+import com.ruesga.rview.gerrit.model.ApprovalInfo;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.ruesga.rview.gerrit.GsonHelperTest.CHANGES_TYPE;
+import static com.ruesga.rview.gerrit.GsonHelperTest.TEST_PLATFORM;
+import static com.ruesga.rview.gerrit.GsonHelperTest.createChangesPage;
+import static com.ruesga.rview.gerrit.GsonHelperTest.createReflectiveGson;
+
+/**
+ * Times the parsing of change pages with the Gerrit Gson adapters. It only reports wall
+ * clock timings, so it doesn't run with the unit tests. Remove the {@link Ignore}
+ * annotation to run it locally.
+ */
+@Ignore("Benchmark")
+public class GsonHelperBenchmark {
+
+    private final Gson mGson = GsonHelper.createGerritGsonBuilder(false, TEST_PLATFORM).create();
+
+    @Test
+    public void benchmarkChangesPages() throws Exception {
+        Random random = new Random(42);
+        List<String> pages = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            pages.add(createChangesPage(random, 100));
+        }
+        Gson reflective = createReflectiveGson();
+        Gson legacy = createLegacyGson();
+
+        // Warm up
+        for (String page : pages) {
+            legacy.fromJson(page, CHANGES_TYPE);
+            reflective.fromJson(page, CHANGES_TYPE);
+            mGson.fromJson(page, CHANGES_TYPE);
+        }
+
+        // Adapters creation (the first page parsed by a new Gson instance)
+        long start = System.nanoTime();
+        for (int i = 0; i < 50; i++) {
+            GsonHelper.createGerritGsonBuilder(false, TEST_PLATFORM).create()
+                    .fromJson(pages.get(0), CHANGES_TYPE);
+        }
+        long generated = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < 50; i++) {
+            createReflectiveGson().fromJson(pages.get(0), CHANGES_TYPE);
+        }
+        long reflectiveCold = System.nanoTime() - start;
+        System.out.println(String.format(Locale.US,
+                "Changes pages: first page => generated %d ms, reflective %d ms",
+                generated / 1000000, reflectiveCold / 1000000));
+
+        for (int threads : new int[]{1, 4}) {
+            generated = parse(mGson, pages, threads);
+            long streaming = parse(reflective, pages, threads);
+            long tree = parse(legacy, pages, threads);
+            System.out.println(String.format(Locale.US,
+                    "Changes pages: %d pages, %d threads => generated %d ms, "
+                            + "reflective %d ms, tree %d ms",
+                    pages.size(), threads, generated / 1000000,
+                    streaming / 1000000, tree / 1000000));
+        }
+    }
+
+    private static long parse(Gson gson, List<String> pages, int threads) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    for (String page : pages) {
+                        gson.fromJson(page, CHANGES_TYPE);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            return System.nanoTime() - start;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static Gson createLegacyGson() {
+        // The previous tree model deserializers, sharing a synchronized date format
+        DateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        JsonDeserializer<Date> dates = (json, typeOf, ctx) -> {
+            try {
+                synchronized (format) {
+                    return format.parse(json.getAsString());
+                }
+            } catch (ParseException e) {
+                throw new JsonParseException(e);
+            }
+        };
+        Gson approvals = new GsonBuilder().registerTypeAdapter(Date.class, dates).create();
+        return new GsonBuilder()
+                .registerTypeAdapter(Date.class, dates)
+                .registerTypeAdapter(ApprovalInfo.class, (JsonDeserializer<ApprovalInfo>)
+                        (json, typeOf, ctx) -> {
+                            ApprovalInfo approval = approvals.fromJson(json, ApprovalInfo.class);
+                            approval.owner = approvals.fromJson(json, AccountInfo.class);
+                            return approval;
+                        })
+                .create();
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2016 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.rview.gerrit;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.ruesga.rview.gerrit.adapters.GerritApprovalInfoAdapter;
+import com.ruesga.rview.gerrit.adapters.GerritUtcDateAdapter;
+import com.ruesga.rview.gerrit.adapters.InterningScope;
+import com.ruesga.rview.gerrit.model.ApprovalInfo;
+import com.ruesga.rview.gerrit.model.Base64Data;
+import com.ruesga.rview.gerrit.model.ChangeInfo;
+import com.ruesga.rview.gerrit.model.ReviewerStatus;
+
+import net.iharder.Base64;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class GsonHelperTest {
+
+    static final Type CHANGES_TYPE = new TypeToken<List<ChangeInfo>>(){}.getType();
+
+    static final PlatformAbstractionLayer TEST_PLATFORM = new PlatformAbstractionLayer() {
+        @Override
+        public boolean isDebugBuild() {
+            return true;
+        }
+
+        @Override
+        public void log(String message) {
+            System.out.println(message);
+        }
+
+        @Override
+        public byte[] encodeBase64(byte[] data) {
+            return Base64.encodeBytesToBytes(data);
+        }
+
+        @Override
+        public byte[] decodeBase64(byte[] data) {
+            try {
+                return Base64.decode(data);
+            } catch (IOException ex) {
+                throw new IllegalArgumentException(ex);
+            }
+        }
+
+        @Override
+        public boolean hasConnectivity() {
+            return true;
+        }
+    };
+
+    private final Gson mGson = GsonHelper.createGerritGsonBuilder(false, TEST_PLATFORM).create();
+
+    @Test
+    public void testDates() throws ParseException {
+        DateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        String[] dates = {"1970-01-01 00:00:00.000", "1969-12-31 23:59:59.999",
+                "2000-02-29 12:30:45.120", "2016-12-31 23:59:59.001", "2100-03-01 00:00:00.500"};
+        for (String date : dates) {
+            Date expected = format.parse(date);
+            assertEquals(expected, mGson.fromJson("\"" + date + "000000\"", Date.class));
+            assertEquals(expected, mGson.fromJson("\"" + date + "\"", Date.class));
+            assertEquals("\"" + date + "000000\"", mGson.toJson(expected));
+        }
+
+        assertEquals(format.parse("2013-02-01 09:59:32.000"),
+                mGson.fromJson("\"2013-02-01 09:59:32\"", Date.class));
+        assertEquals(format.parse("2013-02-01 09:59:32.100"),
+                mGson.fromJson("\"2013-02-01 09:59:32.1\"", Date.class));
+        assertNull(mGson.fromJson("null", Date.class));
+
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            Date date = new Date((random.nextLong() % 10000000000000L));
+            assertEquals(date, mGson.fromJson(mGson.toJson(date), Date.class));
+        }
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void testInvalidDate() {
+        mGson.fromJson("\"2013-02-01T09:59:32.126000000\"", Date.class);
+    }
+
+    @Test
+    public void testBase64() {
+        Base64Data data = mGson.fromJson("\"cnZpZXc=\"", Base64Data.class);
+        assertArrayEquals("rview".getBytes(), data.data);
+        assertArrayEquals(data.data, mGson.fromJson(mGson.toJson(data), Base64Data.class).data);
+    }
+
+    @Test
+    public void testApprovals() {
+        String json = "{\"value\":2,\"date\":\"2013-02-01 09:59:32.126000000\",\"tag\":\"ci\","
+                + "\"_account_id\":1000096,\"name\":\"John Doe\",\"email\":\"john.doe@example.com\","
+                + "\"avatars\":[{\"url\":\"https://example.com/a.png\",\"height\":26}],"
+                + "\"unknown\":{\"a\":[1,2]}}";
+        ApprovalInfo approval = mGson.fromJson(json, ApprovalInfo.class);
+        assertEquals(2, approval.value.intValue());
+        assertEquals(1359712772126L, approval.date.getTime());
+        assertEquals("ci", approval.tag);
+        assertEquals(1000096, approval.owner.accountId);
+        assertEquals("John Doe", approval.owner.name);
+        assertEquals(26, approval.owner.avatars[0].height);
+
+        // Round trip
+        ApprovalInfo copy = mGson.fromJson(mGson.toJson(approval), ApprovalInfo.class);
+        assertEquals(approval.date, copy.date);
+        assertEquals(approval.owner.email, copy.owner.email);
+        assertEquals(approval.owner.avatars[0].url, copy.owner.avatars[0].url);
+
+        // Without a vote
+        approval = mGson.fromJson("{\"_account_id\":1000097}", ApprovalInfo.class);
+        assertNull(approval.value);
+        assertEquals(1000097, approval.owner.accountId);
+    }
+
+    @Test
+    public void testInterning() {
+        String change = "{\"project\":\"rview\",\"branch\":\"master\","
+                + "\"owner\":{\"_account_id\":1000096},"
+                + "\"labels\":{\"Code-Review\":{\"all\":[{\"value\":1,\"_account_id\":1000096,"
+                + "\"name\":\"John Doe\"}]}},"
+                + "\"messages\":[{\"author\":{\"_account_id\":1000096,\"name\":\"John Doe\"}}],"
+                + "\"reviewers\":{\"REVIEWER\":[{\"_account_id\":1000097}]}}";
+        List<ChangeInfo> changes = mGson.fromJson("[" + change + "," + change + "]", CHANGES_TYPE);
+        ChangeInfo a = changes.get(0);
+        ChangeInfo b = changes.get(1);
+        assertSame(a.owner, a.labels.get("Code-Review").all[0].owner);
+        assertSame(a.owner, a.messages[0].author);
+        assertSame(a.owner, b.owner);
+        assertSame(a.project, b.project);
+        assertSame(a.branch, b.branch);
+        assertSame(a.labels.keySet().iterator().next(), b.labels.keySet().iterator().next());
+        assertEquals("John Doe", a.owner.name);
+
+        // Every response has its own scope, unless a scope is opened explicitly
+        ChangeInfo c = mGson.fromJson(change, ChangeInfo.class);
+        assertNotSame(a.owner, c.owner);
+        InterningScope.begin();
+        try {
+            c = mGson.fromJson(change, ChangeInfo.class);
+            ChangeInfo d = mGson.fromJson(change, ChangeInfo.class);
+            assertSame(c.owner, d.owner);
+            assertSame(c.reviewers.get(ReviewerStatus.REVIEWER)[0],
+                    d.reviewers.get(ReviewerStatus.REVIEWER)[0]);
+        } finally {
+            InterningScope.end();
+        }
+    }
+
+    @Test
+    public void testGeneratedAdapters() {
+        Random random = new Random(42);
+        String page = createChangesPage(random, 20);
+        Gson reflective = createReflectiveGson();
+        List<ChangeInfo> expected = reflective.fromJson(page, CHANGES_TYPE);
+        List<ChangeInfo> changes = mGson.fromJson(page, CHANGES_TYPE);
+        assertEquals(reflective.toJson(expected), reflective.toJson(changes));
+        assertEquals(reflective.toJson(expected), mGson.toJson(changes));
+    }
+
+    static String createChangesPage(Random random, int count) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(",");
+            }
+            sb.append("{\"id\":\"rview~master~I").append(i).append("\",")
+                    .append("\"project\":\"rview\",\"branch\":\"master\",")
+                    .append("\"subject\":\"Change ").append(i).append("\",")
+                    .append("\"status\":\"NEW\",")
+                    .append("\"created\":").append(createDate(random)).append(",")
+                    .append("\"updated\":").append(createDate(random)).append(",")
+                    .append("\"_number\":").append(i).append(",")
+                    .append("\"owner\":").append(createAccount(random)).append(",")
+                    .append("\"labels\":{");
+            String[] labels = {"Code-Review", "Verified"};
+            for (int j = 0; j < labels.length; j++) {
+                if (j > 0) {
+                    sb.append(",");
+                }
+                sb.append("\"").append(labels[j]).append("\":{\"all\":[");
+                for (int k = 0, approvals = 2 + random.nextInt(8); k < approvals; k++) {
+                    if (k > 0) {
+                        sb.append(",");
+                    }
+                    String account = createAccount(random);
+                    sb.append("{\"value\":").append(random.nextInt(5) - 2)
+                            .append(",\"date\":").append(createDate(random))
+                            .append(",").append(account.substring(1));
+                }
+                sb.append("],\"values\":{\"-1\":\"No\",\"0\":\"No score\",\"+1\":\"Yes\"}}");
+            }
+            String revision = Integer.toHexString(random.nextInt());
+            sb.append("},\"current_revision\":\"").append(revision).append("\",")
+                    .append("\"revisions\":{\"").append(revision).append("\":{")
+                    .append("\"_number\":").append(1 + random.nextInt(10)).append(",")
+                    .append("\"created\":").append(createDate(random)).append(",")
+                    .append("\"uploader\":").append(createAccount(random)).append(",")
+                    .append("\"ref\":\"refs/changes/").append(i).append("\",")
+                    .append("\"commit\":{\"subject\":\"Change ").append(i).append("\",")
+                    .append("\"author\":{\"name\":\"Author\",\"email\":\"author@example.com\",")
+                    .append("\"date\":").append(createDate(random)).append(",\"tz\":60}},")
+                    .append("\"files\":{");
+            for (int j = 0, files = 1 + random.nextInt(10); j < files; j++) {
+                if (j > 0) {
+                    sb.append(",");
+                }
+                sb.append("\"src/File").append(j).append(".java\":{")
+                        .append("\"lines_inserted\":").append(random.nextInt(100)).append(",")
+                        .append("\"size_delta\":").append(random.nextInt(1000)).append(",")
+                        .append("\"size\":").append(random.nextInt(10000)).append("}");
+            }
+            sb.append("}}}}");
+        }
+        return sb.append("]").toString();
+    }
+
+    private static String createAccount(Random random) {
+        int id = 1000000 + random.nextInt(200);
+        return "{\"_account_id\":" + id + ",\"name\":\"User " + id + "\","
+                + "\"email\":\"user" + id + "@example.com\",\"username\":\"user" + id + "\","
+                + "\"avatars\":[{\"url\":\"https://example.com/" + id + ".png\",\"height\":26}]}";
+    }
+
+    private static String createDate(Random random) {
+        return String.format(Locale.US, "\"2020-%02d-%02d %02d:%02d:%02d.%03d000000\"",
+                1 + random.nextInt(12), 1 + random.nextInt(28), random.nextInt(24),
+                random.nextInt(60), random.nextInt(60), random.nextInt(1000));
+    }
+
+    static Gson createReflectiveGson() {
+        // Same adapters, but without the generated ones
+        return new GsonBuilder()
+                .setVersion(GerritApi.API_VERSION)
+                .registerTypeAdapter(Date.class, new GerritUtcDateAdapter())
+                .registerTypeAdapterFactory(new GerritApprovalInfoAdapter())
+                .setLenient()
+                .create();
+    }
+}
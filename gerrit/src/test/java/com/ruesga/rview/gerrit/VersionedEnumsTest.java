@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2016 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.rview.gerrit;
+
+import com.ruesga.rview.gerrit.model.ChangeOptions;
+import com.ruesga.rview.gerrit.model.Features;
+import com.ruesga.rview.gerrit.model.ServerVersion;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class VersionedEnumsTest {
+
+    @Test
+    public void testSupported() {
+        VersionedEnums v212 = VersionedEnums.forVersion(new ServerVersion("2.12.2"));
+        assertTrue(v212.isSupported(Features.AVATARS));
+        assertFalse(v212.isSupported(Features.BLAME));
+        assertTrue(v212.isSupported(ChangeOptions.COMMIT_FOOTERS));
+        assertFalse(v212.isSupported(ChangeOptions.NO_LIMIT));
+        assertSame(v212, VersionedEnums.forVersion(new ServerVersion("2.12.4")));
+
+        VersionedEnums v30 = VersionedEnums.forVersion(new ServerVersion("3.0.1"));
+        assertTrue(v30.isSupported(ChangeOptions.NO_LIMIT));
+        assertEquals(Features.values().length, v30.supported(Features.class).size());
+    }
+
+    @Test
+    public void testFilter() {
+        VersionedEnums enums = VersionedEnums.forVersion(new ServerVersion("2.13.1"));
+        List<ChangeOptions> supported = Arrays.asList(
+                ChangeOptions.DETAILED_ACCOUNTS, ChangeOptions.REVIEWER_UPDATES);
+        assertSame(supported, enums.filter(supported));
+
+        List<ChangeOptions> options = Arrays.asList(ChangeOptions.LABELS,
+                ChangeOptions.SKIP_MERGEABLE, ChangeOptions.MESSAGES, ChangeOptions.NO_LIMIT);
+        assertEquals(Arrays.asList(ChangeOptions.LABELS, ChangeOptions.MESSAGES),
+                enums.filter(options));
+    }
+}
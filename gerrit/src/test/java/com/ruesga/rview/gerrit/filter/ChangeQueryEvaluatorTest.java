@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2016 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.rview.gerrit.filter;
+
+import com.ruesga.rview.gerrit.filter.ChangeQueryEvaluator.Predicate;
+import com.ruesga.rview.gerrit.filter.antlr.QueryParser;
+import com.ruesga.rview.gerrit.model.AccountInfo;
+import com.ruesga.rview.gerrit.model.ChangeInfo;
+import com.ruesga.rview.gerrit.model.ChangeStatus;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ChangeQueryEvaluatorTest {
+
+    private static final long NOW = 10000L;
+
+    private final List<ChangeInfo> mChanges = Arrays.asList(
+            change(1, "platform/a", "master", 1, ChangeStatus.NEW, 1000L),
+            change(2, "platform/a", "dev", 2, ChangeStatus.MERGED, 2000L),
+            change(3, "platform/b", "master", 2, ChangeStatus.NEW, 3000L),
+            change(4, "tools/c", "master", 1, ChangeStatus.ABANDONED, 4000L));
+
+    @Test
+    public void testEvaluateQuery() {
+        testEvaluateQuery("status:open owner:self", true, 1);
+        testEvaluateQuery("project:platform/a OR is:closed", true, 1, 2, 4);
+        testEvaluateQuery("-project:platform/a", true, 3, 4);
+        testEvaluateQuery("projects:platform -branch:refs/heads/master", false, 2);
+        testEvaluateQuery("-(project:platform/a branch:master)", false, 2, 3, 4);
+        testEvaluateQuery("owner:user2 added:>=3", false, 3);
+        testEvaluateQuery("age:8s", true, 1, 2);
+        testEvaluateQuery("3", false, 3);
+        testEvaluateQuery(new ChangeQuery().status(StatusType.MERGED)
+                .or(new ChangeQuery().since(new Date(4000L))).toString(), true, 2, 4);
+    }
+
+    @Test
+    public void testUnsupportedQuery() {
+        assertNull(compile("project:platform/a OR reviewer:self"));
+        assertNull(compile("label:Code-Review=+2"));
+        assertNull(ChangeQueryEvaluator.compile("owner:self", null));
+        assertNull(compile("project:^platform/.*"));
+        assertNull(compile("branch:^stable-.*"));
+    }
+
+    @Test
+    public void testNegatedSelection() {
+        List<String> args = new ArrayList<>();
+        assertEquals("(project IS NULL OR NOT (project = ?))",
+                compile("-project:platform/a").toSelection(args));
+        assertEquals(Arrays.asList("platform/a"), args);
+    }
+
+    private void testEvaluateQuery(String query, boolean exact, Integer... expected) {
+        Predicate predicate = compile(query);
+        List<Integer> result = new ArrayList<>();
+        for (ChangeInfo change : mChanges) {
+            if (predicate.matches(change)) {
+                result.add(change.legacyChangeId);
+            }
+        }
+        assertEquals(query, Arrays.asList(expected), result);
+        assertEquals(query, exact, predicate.isExact());
+        if (exact) {
+            assertTrue(query, predicate.toSelection(new ArrayList<>()) != null);
+        }
+    }
+
+    private static Predicate compile(String query) {
+        AccountInfo self = new AccountInfo();
+        self.accountId = 1;
+        return ChangeQueryEvaluator.compile(QueryParser.parse(query), self, NOW);
+    }
+
+    private static ChangeInfo change(int number, String project, String branch, int owner,
+            ChangeStatus status, long updated) {
+        ChangeInfo change = new ChangeInfo();
+        change.id = project + "~" + branch + "~I" + number;
+        change.legacyChangeId = number;
+        change.project = project;
+        change.branch = branch;
+        change.owner = new AccountInfo();
+        change.owner.accountId = owner;
+        change.owner.username = "user" + owner;
+        change.status = status;
+        change.updated = new Date(updated);
+        change.insertions = number;
+        return change;
+    }
+}
@@ -0,0 +1,618 @@
+/*
+ * Copyright (C) 2016 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.rview.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates the Gson type adapters of the packages annotated with GenerateTypeAdapters.
+ * <p>
+ * Every generated adapter binds the fields of its class directly (the same fields and json
+ * names that the Gson reflective adapter would bind, honoring the Gson Since and Until
+ * annotations). Classes that can't be bound without reflection (private or final fields, no
+ * public default constructor, generics, collections, ...) are skipped, so Gson keeps handling
+ * them.
+ */
+@SupportedAnnotationTypes(TypeAdaptersProcessor.GENERATE_TYPE_ADAPTERS)
+public class TypeAdaptersProcessor extends AbstractProcessor {
+
+    static final String GENERATE_TYPE_ADAPTERS =
+            "com.ruesga.rview.gerrit.annotations.GenerateTypeAdapters";
+
+    private static final String SERIALIZED_NAME = "com.google.gson.annotations.SerializedName";
+    private static final String SINCE = "com.google.gson.annotations.Since";
+    private static final String UNTIL = "com.google.gson.annotations.Until";
+    private static final String JSON_ADAPTER = "com.google.gson.annotations.JsonAdapter";
+
+    private static final String ADAPTER_SUFFIX = "TypeAdapter";
+
+    // Helpers used by the generated adapters. They mimic the Gson builtin adapters.
+    private static final String HELPERS =
+            "    static boolean isSupported(double version, double since, double until) {\n"
+            + "        return version == IGNORE_VERSIONS || (since <= version && version < until);\n"
+            + "    }\n\n"
+            + "    static String readString(JsonReader in) throws IOException {\n"
+            + "        JsonToken token = in.peek();\n"
+            + "        if (token == JsonToken.NULL) {\n"
+            + "            in.nextNull();\n"
+            + "            return null;\n"
+            + "        }\n"
+            + "        if (token == JsonToken.BOOLEAN) {\n"
+            + "            return Boolean.toString(in.nextBoolean());\n"
+            + "        }\n"
+            + "        return in.nextString();\n"
+            + "    }\n\n"
+            + "    static boolean readBoolean(JsonReader in, boolean defValue) throws IOException {\n"
+            + "        JsonToken token = in.peek();\n"
+            + "        if (token == JsonToken.NULL) {\n"
+            + "            in.nextNull();\n"
+            + "            return defValue;\n"
+            + "        }\n"
+            + "        if (token == JsonToken.STRING) {\n"
+            + "            return Boolean.parseBoolean(in.nextString());\n"
+            + "        }\n"
+            + "        return in.nextBoolean();\n"
+            + "    }\n\n"
+            + "    static int readInt(JsonReader in, int defValue) throws IOException {\n"
+            + "        if (in.peek() == JsonToken.NULL) {\n"
+            + "            in.nextNull();\n"
+            + "            return defValue;\n"
+            + "        }\n"
+            + "        return in.nextInt();\n"
+            + "    }\n\n"
+            + "    static long readLong(JsonReader in, long defValue) throws IOException {\n"
+            + "        if (in.peek() == JsonToken.NULL) {\n"
+            + "            in.nextNull();\n"
+            + "            return defValue;\n"
+            + "        }\n"
+            + "        return in.nextLong();\n"
+            + "    }\n\n"
+            + "    static double readDouble(JsonReader in, double defValue) throws IOException {\n"
+            + "        if (in.peek() == JsonToken.NULL) {\n"
+            + "            in.nextNull();\n"
+            + "            return defValue;\n"
+            + "        }\n"
+            + "        return in.nextDouble();\n"
+            + "    }\n";
+
+    private static class Field {
+        private String name;
+        private final List<String> serializedNames = new ArrayList<>();
+        private TypeMirror type;
+        private String since;
+        private String until;
+        private String adapter;
+        private String supported;
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() != ElementKind.PACKAGE) {
+                    error(element, "Only packages can be annotated with " + GENERATE_TYPE_ADAPTERS);
+                    continue;
+                }
+
+                PackageElement pkg = (PackageElement) element;
+                String factory = getAnnotationValue(pkg, GENERATE_TYPE_ADAPTERS);
+                List<TypeElement> types = new ArrayList<>();
+                for (TypeElement type : ElementFilter.typesIn(pkg.getEnclosedElements())) {
+                    List<Field> fields = getFields(pkg, type);
+                    if (fields != null) {
+                        writeTypeAdapter(pkg, factory, type, fields);
+                        types.add(type);
+                    }
+                }
+                writeFactory(pkg, factory, types);
+            }
+        }
+        return true;
+    }
+
+    private List<Field> getFields(PackageElement pkg, TypeElement type) {
+        if (type.getKind() != ElementKind.CLASS
+                || !type.getModifiers().contains(Modifier.PUBLIC)
+                || type.getModifiers().contains(Modifier.ABSTRACT)
+                || !type.getTypeParameters().isEmpty()
+                || !hasPublicDefaultConstructor(type)
+                || isAssignable(type, "java.util.Collection")
+                || isAssignable(type, "java.util.Map")) {
+            return null;
+        }
+
+        // Same order than the Gson reflective adapter: fields of the class, then the ones
+        // of its superclasses
+        List<Field> fields = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        Set<String> serializedNames = new HashSet<>();
+        TypeElement clazz = type;
+        while (clazz != null && !clazz.getQualifiedName().contentEquals("java.lang.Object")) {
+            if (!clazz.getTypeParameters().isEmpty()) {
+                return null;
+            }
+            for (VariableElement e : ElementFilter.fieldsIn(clazz.getEnclosedElements())) {
+                Set<Modifier> modifiers = e.getModifiers();
+                if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) {
+                    continue;
+                }
+                if (!isAccessible(pkg, clazz, modifiers) || modifiers.contains(Modifier.FINAL)
+                        || getAnnotation(e, JSON_ADAPTER) != null
+                        || !isBindable(e.asType())
+                        || !names.add(e.getSimpleName().toString())) {
+                    return null;
+                }
+
+                Field field = new Field();
+                field.name = e.getSimpleName().toString();
+                field.type = e.asType();
+                AnnotationMirror serializedName = getAnnotation(e, SERIALIZED_NAME);
+                if (serializedName != null) {
+                    for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value
+                            : serializedName.getElementValues().entrySet()) {
+                        String key = value.getKey().getSimpleName().toString();
+                        if (key.equals("value")) {
+                            field.serializedNames.add(0, (String) value.getValue().getValue());
+                        } else if (key.equals("alternate")) {
+                            @SuppressWarnings("unchecked")
+                            List<? extends AnnotationValue> alternates =
+                                    (List<? extends AnnotationValue>) value.getValue().getValue();
+                            for (AnnotationValue alternate : alternates) {
+                                field.serializedNames.add((String) alternate.getValue());
+                            }
+                        }
+                    }
+                } else {
+                    field.serializedNames.add(field.name);
+                }
+                for (String name : field.serializedNames) {
+                    if (!serializedNames.add(name)) {
+                        return null;
+                    }
+                }
+                field.since = getAnnotationValue(e, SINCE);
+                field.until = getAnnotationValue(e, UNTIL);
+                fields.add(field);
+            }
+
+            TypeMirror superclass = clazz.getSuperclass();
+            clazz = superclass.getKind() == TypeKind.DECLARED
+                    ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+        }
+        return fields;
+    }
+
+    private boolean isAccessible(PackageElement pkg, TypeElement clazz, Set<Modifier> modifiers) {
+        // Adapters live in the package of the class, so they can access its non private fields
+        return modifiers.contains(Modifier.PUBLIC) || (!modifiers.contains(Modifier.PRIVATE)
+                && processingEnv.getElementUtils().getPackageOf(clazz).equals(pkg));
+    }
+
+    private boolean hasPublicDefaultConstructor(TypeElement type) {
+        for (ExecutableElement c : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (c.getParameters().isEmpty() && c.getModifiers().contains(Modifier.PUBLIC)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isAssignable(TypeElement type, String other) {
+        TypeElement otherType = processingEnv.getElementUtils().getTypeElement(other);
+        return otherType != null && processingEnv.getTypeUtils().isAssignable(
+                processingEnv.getTypeUtils().erasure(type.asType()),
+                processingEnv.getTypeUtils().erasure(otherType.asType()));
+    }
+
+    private boolean isBindable(TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+            case CHAR:
+            case FLOAT:
+            case DOUBLE:
+                return true;
+            case ARRAY:
+                return isBindable(((ArrayType) type).getComponentType());
+            case DECLARED:
+                for (TypeMirror argument : ((DeclaredType) type).getTypeArguments()) {
+                    if (!isBindable(argument)) {
+                        return false;
+                    }
+                }
+                return true;
+            default:
+                // Type variables, wildcards, ...
+                return false;
+        }
+    }
+
+    private void writeTypeAdapter(
+            PackageElement pkg, String factory, TypeElement type, List<Field> fields) {
+        String name = type.getSimpleName().toString();
+        String adapterName = name + ADAPTER_SUFFIX;
+
+        // One adapter per distinct non primitive type
+        Map<String, String> adapters = new LinkedHashMap<>();
+        for (Field field : fields) {
+            if (!isInlined(field.type)) {
+                String typeName = boxedTypeName(field.type);
+                field.adapter = adapters.get(typeName);
+                if (field.adapter == null) {
+                    field.adapter = "mAdapter" + adapters.size();
+                    adapters.put(typeName, field.adapter);
+                }
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("// Generated by ").append(getClass().getSimpleName()).append(". Do not edit.\n")
+                .append("package ").append(pkg.getQualifiedName()).append(";\n\n")
+                .append("import com.google.gson.Gson;\n")
+                .append("import com.google.gson.JsonSyntaxException;\n")
+                .append("import com.google.gson.TypeAdapter;\n")
+                .append("import com.google.gson.reflect.TypeToken;\n")
+                .append("import com.google.gson.stream.JsonReader;\n")
+                .append("import com.google.gson.stream.JsonToken;\n")
+                .append("import com.google.gson.stream.JsonWriter;\n\n")
+                .append("import java.io.IOException;\n\n")
+                .append("@SuppressWarnings({\"unchecked\", \"rawtypes\", \"deprecation\"})\n")
+                .append("final class ").append(adapterName)
+                .append(" extends TypeAdapter<").append(name).append("> {\n");
+
+        for (Map.Entry<String, String> adapter : adapters.entrySet()) {
+            sb.append("    private final TypeAdapter<").append(adapter.getKey()).append("> ")
+                    .append(adapter.getValue()).append(";\n");
+        }
+        int versioned = 0;
+        for (Field field : fields) {
+            if (field.since != null || field.until != null) {
+                field.supported = "mSupported" + versioned++;
+                sb.append("    private final boolean ").append(field.supported).append(";\n");
+            }
+        }
+
+        // Constructor
+        sb.append("\n    ").append(adapterName).append("(Gson gson, double version) {\n");
+        for (Map.Entry<String, String> adapter : adapters.entrySet()) {
+            TypeMirror adapterType = null;
+            for (Field field : fields) {
+                if (adapter.getValue().equals(field.adapter)) {
+                    adapterType = field.type;
+                    break;
+                }
+            }
+            sb.append("        ").append(adapter.getValue()).append(" = ");
+            if (hasTypeArguments(adapterType)) {
+                // Only the parameterized type tokens lose their type
+                sb.append("(TypeAdapter<").append(adapter.getKey()).append(">) ");
+            }
+            sb.append("gson.getAdapter(TypeToken.get(").append(typeExpression(adapterType))
+                    .append("));\n");
+        }
+        for (Field field : fields) {
+            if (field.supported != null) {
+                sb.append("        ").append(field.supported).append(" = ").append(factory).append(".isSupported(")
+                        .append("version, ")
+                        .append(field.since != null ? field.since : "Double.NEGATIVE_INFINITY")
+                        .append(", ")
+                        .append(field.until != null ? field.until : "Double.POSITIVE_INFINITY")
+                        .append(");\n");
+            }
+        }
+        sb.append("    }\n");
+
+        // Read
+        sb.append("\n    @Override\n")
+                .append("    public ").append(name).append(" read(JsonReader in) throws IOException {\n")
+                .append("        if (in.peek() == JsonToken.NULL) {\n")
+                .append("            in.nextNull();\n")
+                .append("            return null;\n")
+                .append("        }\n\n")
+                .append("        ").append(name).append(" value = new ").append(name).append("();\n")
+                .append("        try {\n")
+                .append("            in.beginObject();\n")
+                .append("            while (in.hasNext()) {\n")
+                .append("                switch (in.nextName()) {\n");
+        for (Field field : fields) {
+            for (String serializedName : field.serializedNames) {
+                sb.append("                    case \"").append(escape(serializedName)).append("\":\n");
+            }
+            String indent = "                        ";
+            if (field.supported != null) {
+                sb.append(indent).append("if (!").append(field.supported).append(") {\n")
+                        .append(indent).append("    in.skipValue();\n")
+                        .append(indent).append("    break;\n")
+                        .append(indent).append("}\n");
+            }
+            appendReadField(sb, indent, factory, field);
+            sb.append(indent).append("break;\n");
+        }
+        sb.append("                    default:\n")
+                .append("                        in.skipValue();\n")
+                .append("                        break;\n")
+                .append("                }\n")
+                .append("            }\n")
+                .append("            in.endObject();\n")
+                .append("        } catch (IllegalStateException | NumberFormatException ex) {\n")
+                .append("            throw new JsonSyntaxException(ex);\n")
+                .append("        }\n")
+                .append("        return value;\n")
+                .append("    }\n");
+
+        // Write
+        sb.append("\n    @Override\n")
+                .append("    public void write(JsonWriter out, ").append(name)
+                .append(" value) throws IOException {\n")
+                .append("        if (value == null) {\n")
+                .append("            out.nullValue();\n")
+                .append("            return;\n")
+                .append("        }\n\n")
+                .append("        out.beginObject();\n");
+        for (Field field : fields) {
+            String indent = "        ";
+            if (field.supported != null) {
+                sb.append(indent).append("if (").append(field.supported).append(") {\n");
+                indent += "    ";
+            }
+            sb.append(indent).append("out.name(\"")
+                    .append(escape(field.serializedNames.get(0))).append("\");\n");
+            if (field.adapter != null) {
+                sb.append(indent).append(field.adapter).append(".write(out, value.")
+                        .append(field.name).append(");\n");
+            } else {
+                sb.append(indent).append("out.value(value.").append(field.name).append(");\n");
+            }
+            if (field.supported != null) {
+                sb.append("        }\n");
+            }
+        }
+        sb.append("        out.endObject();\n")
+                .append("    }\n")
+                .append("}\n");
+
+        writeSource(pkg.getQualifiedName() + "." + adapterName, sb.toString(), type);
+    }
+
+    private void appendReadField(StringBuilder sb, String indent, String factory, Field field) {
+        String target = "value." + field.name;
+        if (field.adapter != null) {
+            if (field.type.getKind().isPrimitive()) {
+                // Keep the default value if the json value is null
+                sb.append(indent).append("if (in.peek() == JsonToken.NULL) {\n")
+                        .append(indent).append("    in.nextNull();\n")
+                        .append(indent).append("} else {\n")
+                        .append(indent).append("    ").append(target).append(" = ")
+                        .append(field.adapter).append(".read(in);\n")
+                        .append(indent).append("}\n");
+            } else {
+                sb.append(indent).append(target).append(" = ")
+                        .append(field.adapter).append(".read(in);\n");
+            }
+            return;
+        }
+
+        String method;
+        switch (field.type.getKind()) {
+            case BOOLEAN:
+                method = "readBoolean";
+                break;
+            case INT:
+                method = "readInt";
+                break;
+            case LONG:
+                method = "readLong";
+                break;
+            case DOUBLE:
+                method = "readDouble";
+                break;
+            default:
+                sb.append(indent).append(target).append(" = ").append(factory)
+                        .append(".readString(in);\n");
+                return;
+        }
+        sb.append(indent).append(target).append(" = ").append(factory).append(".").append(method)
+                .append("(in, ").append(target).append(");\n");
+    }
+
+    private boolean isInlined(TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+            case INT:
+            case LONG:
+            case DOUBLE:
+                return true;
+            case DECLARED:
+                return type.toString().equals("java.lang.String");
+            default:
+                return false;
+        }
+    }
+
+    private String boxedTypeName(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return processingEnv.getTypeUtils()
+                    .boxedClass((javax.lang.model.type.PrimitiveType) type).toString();
+        }
+        return type.toString();
+    }
+
+    private String typeExpression(TypeMirror type) {
+        switch (type.getKind()) {
+            case ARRAY:
+                TypeMirror component = ((ArrayType) type).getComponentType();
+                if (!hasTypeArguments(component)) {
+                    return rawTypeName(type) + ".class";
+                }
+                return "TypeToken.getArray(" + typeExpression(component) + ").getType()";
+            case DECLARED:
+                if (!hasTypeArguments(type)) {
+                    return rawTypeName(type) + ".class";
+                }
+                StringBuilder sb = new StringBuilder("TypeToken.getParameterized(")
+                        .append(rawTypeName(type)).append(".class");
+                for (TypeMirror argument : ((DeclaredType) type).getTypeArguments()) {
+                    sb.append(", ").append(typeExpression(argument));
+                }
+                return sb.append(").getType()").toString();
+            default:
+                return type.toString() + ".class";
+        }
+    }
+
+    private boolean hasTypeArguments(TypeMirror type) {
+        if (type.getKind() == TypeKind.ARRAY) {
+            return hasTypeArguments(((ArrayType) type).getComponentType());
+        }
+        return type.getKind() == TypeKind.DECLARED
+                && !((DeclaredType) type).getTypeArguments().isEmpty();
+    }
+
+    private String rawTypeName(TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+
+    private void writeFactory(PackageElement pkg, String factory, List<TypeElement> types) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("// Generated by ").append(getClass().getSimpleName()).append(". Do not edit.\n")
+                .append("package ").append(pkg.getQualifiedName()).append(";\n\n")
+                .append("import com.google.gson.Gson;\n")
+                .append("import com.google.gson.TypeAdapter;\n")
+                .append("import com.google.gson.TypeAdapterFactory;\n")
+                .append("import com.google.gson.reflect.TypeToken;\n")
+                .append("import com.google.gson.stream.JsonReader;\n")
+                .append("import com.google.gson.stream.JsonToken;\n\n")
+                .append("import java.io.IOException;\n\n")
+                .append("/**\n")
+                .append(" * Non reflective type adapters of the ").append(pkg.getQualifiedName())
+                .append(" classes.\n")
+                .append(" */\n")
+                .append("@SuppressWarnings({\"unchecked\", \"deprecation\"})\n")
+                .append("public final class ").append(factory)
+                .append(" implements TypeAdapterFactory {\n\n")
+                .append("    private static final double IGNORE_VERSIONS = -1.0d;\n\n")
+                .append("    private final double mVersion;\n\n")
+                .append("    /**\n")
+                .append("     * Creates a factory whose adapters bind all the fields, regardless of\n")
+                .append("     * their Since and Until annotations.\n")
+                .append("     */\n")
+                .append("    public ").append(factory).append("() {\n")
+                .append("        this(IGNORE_VERSIONS);\n")
+                .append("    }\n\n")
+                .append("    /**\n")
+                .append("     * Creates a factory whose adapters only bind the fields supported by\n")
+                .append("     * the passed version (the same version passed to GsonBuilder#setVersion).\n")
+                .append("     */\n")
+                .append("    public ").append(factory).append("(double version) {\n")
+                .append("        mVersion = version;\n")
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {\n")
+                .append("        switch (type.getRawType().getName()) {\n");
+        for (TypeElement type : types) {
+            sb.append("            case \"")
+                    .append(processingEnv.getElementUtils().getBinaryName(type))
+                    .append("\":\n")
+                    .append("                return (TypeAdapter<T>) new ")
+                    .append(type.getSimpleName()).append(ADAPTER_SUFFIX)
+                    .append("(gson, mVersion);\n");
+        }
+        sb.append("        }\n")
+                .append("        return null;\n")
+                .append("    }\n\n")
+                .append(HELPERS)
+                .append("}\n");
+
+        Element[] originating = types.toArray(new Element[types.size() + 1]);
+        originating[types.size()] = pkg;
+        writeSource(pkg.getQualifiedName() + "." + factory, sb.toString(), originating);
+    }
+
+    private void writeSource(String name, String source, Element... originating) {
+        try (Writer writer = processingEnv.getFiler()
+                .createSourceFile(name, originating).openWriter()) {
+            writer.write(source);
+        } catch (IOException ex) {
+            error(originating[0], "Unable to write " + name + ": " + ex.getMessage());
+        }
+    }
+
+    private AnnotationMirror getAnnotation(Element element, String annotation) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (mirror.getAnnotationType().toString().equals(annotation)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private String getAnnotationValue(Element element, String annotation) {
+        AnnotationMirror mirror = getAnnotation(element, annotation);
+        if (mirror == null) {
+            return null;
+        }
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value
+                : mirror.getElementValues().entrySet()) {
+            if (value.getKey().getSimpleName().contentEquals("value")) {
+                return String.valueOf(value.getValue().getValue());
+            }
+        }
+        return null;
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}